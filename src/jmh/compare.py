@@ -0,0 +1,95 @@
+#!/usr/bin/env python3
+"""Сравнение результатов JMH с базовой линией.
+
+Использование:
+    python3 src/jmh/compare.py src/jmh/baseline.json target/jmh-result.json [--threshold 10]
+
+Для каждого бенчмарка печатает изменение относительно базовой линии. Регрессией считается
+ухудшение больше порога (в процентах), при котором доверительные интервалы не пересекаются.
+Код возврата 1, если найдена хотя бы одна регрессия.
+"""
+import argparse
+import json
+import sys
+
+# Режимы, в которых меньшее значение лучше (время на операцию)
+LOWER_IS_BETTER = {"avgt", "sample", "ss"}
+
+
+def load(path):
+    with open(path, encoding="utf-8") as f:
+        results = {}
+        for entry in json.load(f):
+            params = entry.get("params") or {}
+            key = entry["benchmark"]
+            if params:
+                key += "(" + ",".join(f"{k}={v}" for k, v in sorted(params.items())) + ")"
+            metric = entry["primaryMetric"]
+            error = metric.get("scoreError")
+            try:
+                error = float(error)
+            except (TypeError, ValueError):
+                error = 0.0
+            results[key] = {
+                "mode": entry["mode"],
+                "score": float(metric["score"]),
+                "error": error,
+                "unit": metric["scoreUnit"],
+            }
+        return results
+
+
+def short_name(key):
+    prefix = "com.example.springbootapp.benchmark."
+    return key[len(prefix):] if key.startswith(prefix) else key
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Сравнение результатов JMH с базовой линией")
+    parser.add_argument("baseline")
+    parser.add_argument("current")
+    parser.add_argument("--threshold", type=float, default=10.0,
+                        help="допустимое ухудшение в процентах (по умолчанию 10)")
+    args = parser.parse_args()
+
+    baseline = load(args.baseline)
+    current = load(args.current)
+
+    regressions = 0
+    rows = []
+    for key in sorted(set(baseline) | set(current)):
+        base, cur = baseline.get(key), current.get(key)
+        if base is None or cur is None:
+            rows.append((short_name(key), "-", "-", "-", "нет в " + ("базовой линии" if base is None else "текущем прогоне")))
+            continue
+        if base["unit"] != cur["unit"]:
+            rows.append((short_name(key), "-", "-", "-", f"разные единицы: {base['unit']} / {cur['unit']}"))
+            continue
+
+        change = (cur["score"] - base["score"]) / base["score"] * 100 if base["score"] else 0.0
+        worse = -change if base["mode"] not in LOWER_IS_BETTER else change
+        overlap = abs(cur["score"] - base["score"]) <= base["error"] + cur["error"]
+        if worse > args.threshold and not overlap:
+            status = "РЕГРЕССИЯ"
+            regressions += 1
+        elif -worse > args.threshold and not overlap:
+            status = "улучшение"
+        else:
+            status = "ok"
+        rows.append((short_name(key), f"{base['score']:.3f}", f"{cur['score']:.3f} {cur['unit']}",
+                     f"{change:+.1f}%", status))
+
+    widths = [max(len(str(row[i])) for row in rows + [("бенчмарк", "база", "сейчас", "изменение", "")])
+              for i in range(5)]
+    header = ("бенчмарк", "база", "сейчас", "изменение", "")
+    for row in [header] + rows:
+        print("  ".join(str(value).ljust(widths[i]) for i, value in enumerate(row)).rstrip())
+
+    if regressions:
+        print(f"\nНайдено регрессий: {regressions} (порог {args.threshold:.0f}%)")
+        return 1
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
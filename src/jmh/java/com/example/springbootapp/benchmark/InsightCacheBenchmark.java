@@ -0,0 +1,64 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.config.CacheConfig;
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.cache.Cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк кэша инсайтов под конкурентной нагрузкой.
+ * Группа readWrite моделирует типичную смесь: большинство потоков читают популярные темы,
+ * один поток записывает новые результаты генерации
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsightCacheBenchmark {
+
+    private static final int TOPICS = 1024;
+
+    private Cache cache;
+    private String[] keys;
+    private Map<String, Object> insight;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new CacheConfig().cacheManager(new InsightConfig(), new SimpleMeterRegistry()).getCache("insightsCache");
+        keys = new String[TOPICS];
+        insight = new HashMap<>();
+        insight.put("overview", "Обзор темы");
+        for (int i = 0; i < TOPICS; i++) {
+            keys[i] = "тема " + i;
+            cache.put(keys[i], insight);
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Cache.ValueWrapper get() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt(TOPICS)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void put() {
+        cache.put(keys[ThreadLocalRandom.current().nextInt(TOPICS)], insight);
+    }
+}
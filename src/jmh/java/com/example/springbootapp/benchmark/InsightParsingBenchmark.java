@@ -0,0 +1,76 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.metrics.OllamaMetrics;
+import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.service.impl.NeuralApiServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк разбора ответа нейросети в {@link NeuralApiServiceImpl#convertResponseToInsightFormat}.
+ * Форматы ответа покрывают все ветки извлечения: JSON в markdown-блоке, JSON без обрамления
+ * и текст без JSON (резервный разбор extractDataManually)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsightParsingBenchmark {
+
+    private static final String JSON_BODY = "{\n"
+            + "  \"overview\": \"Квантовые вычисления используют суперпозицию и запутанность кубитов для решения задач,"
+            + " недоступных классическим компьютерам. Область развивается с 1980-х годов.\",\n"
+            + "  \"keyConcepts\": [\"Кубит: единица квантовой информации\", \"Суперпозиция: одновременное нахождение"
+            + " в нескольких состояниях\", \"Запутанность: корреляция состояний кубитов\", \"Декогеренция: потеря"
+            + " квантовых свойств\"],\n"
+            + "  \"facts\": [\"Первый квантовый алгоритм предложен в 1985 году\", \"Алгоритм Шора раскладывает числа"
+            + " на множители за полиномиальное время\", \"Кубиты охлаждают почти до абсолютного нуля\"],\n"
+            + "  \"applications\": \"Криптография, моделирование молекул, оптимизация логистики и машинное обучение\"\n"
+            + "}";
+
+    private static final String MALFORMED_BODY = "Конечно! Вот обзор темы квантовые вычисления:\n\n"
+            + "Квантовые вычисления используют суперпозицию и запутанность. Область активно развивается"
+            + " и находит применение в науке и промышленности.\n\n"
+            + "- Кубит является единицей квантовой информации\n"
+            + "- Суперпозиция позволяет выполнять вычисления параллельно\n"
+            + "- Запутанность связывает состояния нескольких кубитов\n";
+
+    @Param({"fenced", "raw", "malformed"})
+    public String format;
+
+    private NeuralApiServiceImpl service;
+    private NeuralApiResponse response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OllamaConfig config = new OllamaConfig();
+        config.setApiUrl("http://localhost:11434");
+        config.setModel("llama3");
+        service = new NeuralApiServiceImpl(config, new OllamaMetrics(new SimpleMeterRegistry(), config));
+
+        response = new NeuralApiResponse();
+        response.setModel("llama3");
+        response.setDone(true);
+        switch (format) {
+            case "fenced" -> response.setResponse("Вот анализ темы:\n```json\n" + JSON_BODY + "\n```\nГотово.");
+            case "raw" -> response.setResponse(JSON_BODY);
+            default -> response.setResponse(MALFORMED_BODY);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> convertResponse() {
+        return service.convertResponseToInsightFormat(response);
+    }
+}
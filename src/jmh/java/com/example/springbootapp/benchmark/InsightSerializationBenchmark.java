@@ -0,0 +1,58 @@
+package com.example.springbootapp.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк сериализации ответа /api/insights в JSON тем же ObjectMapper, что использует Spring MVC
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsightSerializationBenchmark {
+
+    private ObjectMapper mapper;
+    private Map<String, Object> insight;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+
+        insight = new HashMap<>();
+        insight.put("topic", "квантовые вычисления");
+        insight.put("overview", "Квантовые вычисления используют суперпозицию и запутанность кубитов. ".repeat(8));
+        List<String> concepts = new ArrayList<>();
+        List<String> facts = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            concepts.add("Концепция " + i + ": краткое пояснение ключевого понятия темы");
+            facts.add("Интересный факт " + i + " о квантовых вычислениях");
+        }
+        insight.put("keyConcepts", concepts);
+        insight.put("facts", facts);
+        insight.put("applications", "Криптография, моделирование молекул, оптимизация и машинное обучение");
+        List<Map<String, String>> links = new ArrayList<>();
+        links.add(Map.of("title", "Дополнительная информация о llama3", "url", "https://ollama.com/library/llama3"));
+        insight.put("relatedLinks", links);
+        insight.put("timestamp", System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public byte[] writeInsight() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(insight);
+    }
+}
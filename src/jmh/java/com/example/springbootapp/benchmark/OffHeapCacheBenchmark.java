@@ -0,0 +1,103 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.cache.OffHeapInsightCache;
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк кэша инсайтов в куче и вне кучи ({@link OffHeapInsightCache}) на инсайтах размером в несколько
+ * килобайт. Чтение вне кучи дороже на десериализацию, зато значения не занимают кучу: с профайлером
+ * {@code -Djmh.args="-prof gc"} видно, сколько мусора порождает каждое обращение, а размер кучи
+ * не зависит от числа записей
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OffHeapCacheBenchmark {
+
+    private static final int TOPICS = 10_000;
+
+    @Param({"heap", "offheap"})
+    public String storage;
+
+    @Param({"true"})
+    public boolean compress;
+
+    private Cache cache;
+    private String[] keys;
+    private Map<String, Object> insight;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("offheap".equals(storage)) {
+            InsightConfig.OffHeapCache config = new InsightConfig.OffHeapCache();
+            config.setEnabled(true);
+            config.setCapacity(DataSize.ofMegabytes(256));
+            config.setCompress(compress);
+            cache = new OffHeapInsightCache("insightsCache", config, new SimpleMeterRegistry());
+        } else {
+            cache = new ConcurrentMapCache("insightsCache");
+        }
+        insight = insight();
+        keys = new String[TOPICS];
+        for (int i = 0; i < TOPICS; i++) {
+            keys[i] = "тема " + i;
+            cache.put(keys[i], insight);
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Cache.ValueWrapper get() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt(TOPICS)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void put() {
+        cache.put(keys[ThreadLocalRandom.current().nextInt(TOPICS)], insight);
+    }
+
+    private static Map<String, Object> insight() {
+        List<String> concepts = new ArrayList<>();
+        List<String> facts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            concepts.add("Понятие " + i + ": квантовая суперпозиция позволяет кубиту находиться в нескольких"
+                    + " состояниях одновременно до измерения");
+            facts.add("Факт " + i + ": первые эксперименты с кубитами на сверхпроводниках проведены в 1999 году,"
+                    + " а время когерентности с тех пор выросло на несколько порядков");
+        }
+        Map<String, Object> insight = new LinkedHashMap<>();
+        insight.put("overview", "Квантовые вычисления используют суперпозицию и запутанность кубитов для решения"
+                + " задач, недоступных классическим компьютерам. ".repeat(6));
+        insight.put("keyConcepts", concepts);
+        insight.put("facts", facts);
+        insight.put("applications", "Криптография, моделирование молекул, оптимизация логистики. ".repeat(4));
+        insight.put("relatedTopics", List.of(Map.of("topic", "Кубит", "score", 0.91),
+                Map.of("topic", "Квантовая криптография", "score", 0.87)));
+        return insight;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.metrics.OllamaMetrics;
+import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.service.impl.NeuralApiServiceImpl;
+import com.example.springbootapp.simulator.OllamaSimulator;
+import com.example.springbootapp.simulator.OllamaSimulatorConfig;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.LoggerFactory;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк накладных расходов транспорта до Ollama: запрос /api/generate через {@link NeuralApiServiceImpl}
+ * к локальному серверу, который без задержек отдает ответ симулятора Ollama. Время генерации исключено,
+ * поэтому разница между вариантами - это стоимость соединения и протокола:
+ * tcp - HTTP/1.1 через loopback, h2c - HTTP/2 без TLS, unix - HTTP/1.1 через unix-сокет.
+ * Вариант с 8 потоками показывает мультиплексирование одновременных запросов в h2c
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OllamaTransportBenchmark {
+
+    private static final String TOPIC = "квантовые вычисления";
+
+    @Param({"tcp", "h2c", "unix"})
+    public String transport;
+
+    private Path socketDir;
+    private DisposableServer server;
+    private NeuralApiServiceImpl service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Без конфигурации logback пишет DEBUG-лог reactor-netty на каждый запрос, что искажает замер
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        // Ответ симулятора с полным текстом инсайта, как в непотоковом режиме Ollama
+        OllamaSimulator simulator = new OllamaSimulator(new OllamaSimulatorConfig(), () -> new Random(42));
+        OllamaSimulator.GenerationPlan plan = simulator.plan("llama3", TOPIC, 250);
+        String response = new ObjectMapper().writeValueAsString(simulator.finalResponse(plan, true));
+
+        HttpServer httpServer = HttpServer.create()
+                .route(routes -> routes.post("/api/generate", (request, reply) -> reply
+                        .header("Content-Type", "application/json")
+                        .sendString(request.receive().aggregate().asString().map(body -> response))));
+        OllamaConfig config = new OllamaConfig();
+        config.setModel("llama3");
+        if ("unix".equals(transport)) {
+            socketDir = Files.createTempDirectory("ollama-bench");
+            Path socket = socketDir.resolve("ollama.sock");
+            server = httpServer.bindAddress(() -> new DomainSocketAddress(socket.toString())).bindNow();
+            config.setApiUrl("unix://" + socket);
+        } else {
+            if ("h2c".equals(transport)) {
+                httpServer = httpServer.protocol(HttpProtocol.H2C);
+                config.getTransport().setH2c(true);
+            }
+            server = httpServer.host("localhost").port(0).bindNow();
+            config.setApiUrl("http://localhost:" + server.port());
+        }
+        service = new NeuralApiServiceImpl(config, new OllamaMetrics(new SimpleMeterRegistry(), config));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.disposeNow();
+        if (socketDir != null) {
+            Files.deleteIfExists(socketDir.resolve("ollama.sock"));
+            Files.deleteIfExists(socketDir);
+        }
+    }
+
+    @Benchmark
+    public NeuralApiResponse generate() {
+        return service.requestInsightsFromApi(TOPIC).block(Duration.ofSeconds(10));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public NeuralApiResponse generateConcurrent() {
+        return service.requestInsightsFromApi(TOPIC).block(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.related.HnswIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк поиска связанных тем в индексе {@link HnswIndex} с параметрами по умолчанию
+ * (m = 16, efConstruction = 100, efSearch = 32). Эмбеддинги сгруппированы вокруг центров,
+ * как эмбеддинги тем реальной модели. Построение индекса на миллион тем занимает несколько минут:
+ * {@code -Djmh.args="-p topics=1000000"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RelatedTopicsBenchmark {
+
+    private static final int CLUSTERS = 1000;
+
+    @Param({"100000"})
+    private int topics;
+
+    @Param({"384"})
+    private int dimensions;
+
+    private HnswIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, dimensions, 1.0f);
+        }
+        index = new HnswIndex(16, 100, 42);
+        for (int i = 0; i < topics; i++) {
+            float[] center = centers[random.nextInt(CLUSTERS)];
+            float[] noise = gaussian(random, dimensions, 0.5f);
+            for (int d = 0; d < dimensions; d++) {
+                noise[d] += center[d];
+            }
+            index.add("тема " + i, noise);
+        }
+    }
+
+    @Benchmark
+    public List<HnswIndex.Match> searchByKey() {
+        return index.searchByKey("тема " + ThreadLocalRandom.current().nextInt(topics), 5, 32);
+    }
+
+    private static float[] gaussian(Random random, int dimensions, float scale) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            vector[d] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
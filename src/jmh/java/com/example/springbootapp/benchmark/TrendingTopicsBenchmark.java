@@ -0,0 +1,49 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.trending.TrendingTopics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк учета популярных тем {@link TrendingTopics#record} на пути запроса.
+ * Темы распределены по Ципфу-подобному закону: несколько популярных и длинный хвост редких,
+ * поэтому скетчи постоянно вытесняют счетчики
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrendingTopicsBenchmark {
+
+    private static final int TOPICS = 100_000;
+
+    private TrendingTopics trendingTopics;
+    private String[] topics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trendingTopics = new TrendingTopics(new InsightConfig(), new SimpleMeterRegistry());
+        topics = new String[TOPICS];
+        for (int i = 0; i < TOPICS; i++) {
+            topics[i] = "тема " + i;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        trendingTopics.record(topics[(int) (TOPICS * u * u * u)]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.springbootapp.benchmark;
+
+import com.example.springbootapp.dto.UserDTO;
+import com.example.springbootapp.model.Role;
+import com.example.springbootapp.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк преобразований пользователя: {@link UserDTO#fromUser}, {@link UserDTO#toUser}
+ * и {@link User#getAuthorities()}, который Spring Security вызывает на каждый аутентифицированный запрос
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserMappingBenchmark {
+
+    private User user;
+    private UserDTO dto;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        user = new User("benchmark", "$2a$10$abcdefghijklmnopqrstuv", "benchmark@example.com");
+        user.setId(42L);
+        user.setCreatedAt(LocalDateTime.now());
+        user.setLastLogin(LocalDateTime.now());
+        user.addRole(new Role(1, "USER", "Пользователь"));
+        user.addRole(new Role(2, "ADMIN", "Администратор"));
+        dto = UserDTO.fromUser(user);
+        dto.setPassword("secret");
+    }
+
+    @Benchmark
+    public UserDTO fromUser() {
+        return UserDTO.fromUser(user);
+    }
+
+    @Benchmark
+    public User toUser() {
+        return UserDTO.toUser(dto);
+    }
+
+    @Benchmark
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return user.getAuthorities();
+    }
+}
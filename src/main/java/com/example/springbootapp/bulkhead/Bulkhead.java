@@ -0,0 +1,88 @@
+package com.example.springbootapp.bulkhead;
+
+import com.example.springbootapp.config.BulkheadConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лимит одновременно обрабатываемых запросов одной группы эндпоинтов
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+    private final Semaphore permits;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public Bulkhead(String name, BulkheadConfig.Group config, MeterRegistry registry) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, config.getMaxConcurrent());
+        this.maxWait = config.getMaxWait() != null ? config.getMaxWait() : Duration.ZERO;
+        this.permits = new Semaphore(maxConcurrent, true);
+
+        Gauge.builder("http.bulkhead.active", this, Bulkhead::getActive)
+                .description("Количество запросов группы в обработке")
+                .tag("group", name)
+                .register(registry);
+        Gauge.builder("http.bulkhead.max", this, Bulkhead::getMaxConcurrent)
+                .description("Лимит одновременно обрабатываемых запросов группы")
+                .tag("group", name)
+                .register(registry);
+        Gauge.builder("http.bulkhead.queued", permits, Semaphore::getQueueLength)
+                .description("Количество запросов группы, ожидающих свободного места")
+                .tag("group", name)
+                .register(registry);
+        this.waitTimer = Timer.builder("http.bulkhead.wait")
+                .description("Время ожидания свободного места в группе")
+                .tag("group", name)
+                .register(registry);
+        this.rejected = Counter.builder("http.bulkhead.rejected")
+                .description("Количество запросов, отклоненных из-за переполнения группы")
+                .tag("group", name)
+                .register(registry);
+    }
+
+    /**
+     * Занимает место в группе, ожидая не дольше maxWait
+     *
+     * @return true, если место получено; его нужно вернуть вызовом {@link #release()}
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean acquired = !maxWait.isZero() && permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        if (acquired) {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } else {
+            rejected.increment();
+        }
+        return acquired;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+}
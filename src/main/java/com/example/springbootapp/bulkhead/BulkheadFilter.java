@@ -0,0 +1,109 @@
+package com.example.springbootapp.bulkhead;
+
+import com.example.springbootapp.config.BulkheadConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Фильтр, изолирующий группы эндпоинтов друг от друга: insights, users, auth и actuator.
+ * Запрос занимает место в лимите своей группы, пока его обрабатывает поток сервера. Асинхронный запрос
+ * (генерация инсайта через DeferredResult, потоковый ответ) освобождает место, как только поток
+ * вернулся из обработчика: ожидание Ollama не занимает потоков, и его ограничивают планировщик генераций
+ * и контроль допуска, а не группа. Если место не освободилось за maxWait, клиент получает 503.
+ * Фильтр стоит перед Spring Security, чтобы проверка паролей тоже учитывалась в лимите группы auth.
+ * Запросы вне групп (страницы, статика) не ограничиваются
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 10)
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkheadFilter.class);
+
+    private final boolean enabled;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final List<Route> routes = new ArrayList<>();
+
+    public BulkheadFilter(BulkheadConfig config, MeterRegistry registry) {
+        this.enabled = config.isEnabled();
+        addGroup("insights", config.getInsights(), registry);
+        addGroup("users", config.getUsers(), registry);
+        addGroup("auth", config.getAuth(), registry);
+        addGroup("actuator", config.getActuator(), registry);
+    }
+
+    private void addGroup(String name, BulkheadConfig.Group group, MeterRegistry registry) {
+        Bulkhead bulkhead = new Bulkhead(name, group, registry);
+        for (String pattern : group.getPaths()) {
+            routes.add(new Route(pattern, bulkhead));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || resolve(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Bulkhead bulkhead = resolve(request);
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            log.debug("Группа {} переполнена, запрос {} отклонен", bulkhead.getName(), request.getRequestURI());
+            reject(response, bulkhead);
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    Bulkhead resolve(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Route route : routes) {
+            if (pathMatcher.match(route.pattern, path)) {
+                return route.bulkhead;
+            }
+        }
+        return null;
+    }
+
+    private static void reject(HttpServletResponse response, Bulkhead bulkhead) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("{\"error\":true,\"message\":\"Сервис перегружен (группа "
+                + bulkhead.getName() + "), повторите запрос позже\"}");
+    }
+
+    private record Route(String pattern, Bulkhead bulkhead) {
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.springbootapp.cache;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Кэш, хранящий значения вне кучи.
+ * <p>
+ * Значения сериализуются в JSON, при insights.off-heap-cache.compress сжимаются Deflate и дописываются
+ * в кольцевой журнал из сегментов: direct-буферов или областей отображенного в память файла.
+ * В куче остаются только ключи и дескрипторы записей (позиция и длина в журнале), поэтому объем кэша
+ * не увеличивает старое поколение и паузы GC. Сегменты выделяются по мере заполнения журнала.
+ * <p>
+ * Вытеснение идет в порядке записи: новая запись затирает самые старые, и их ключи удаляются.
+ * При повторной записи ключа новое значение дописывается в конец журнала, а старое освобождается,
+ * когда до него дойдет кольцо.
+ * <p>
+ * Запись выполняется под блокировкой, чтение - оптимистично без нее: если во время копирования байтов
+ * была запись, они перечитываются под блокировкой. Каждое чтение возвращает новую копию значения
+ */
+public class OffHeapInsightCache extends AbstractValueAdaptingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapInsightCache.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String name;
+    private final int segmentSize;
+    private final long capacity;
+    private final boolean compress;
+    private final FileChannel file;
+    private final ByteBuffer[] segments;
+    private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter evicted;
+    private final Counter rejected;
+
+    // Поля ниже защищены lock
+    private final StampedLock lock = new StampedLock();
+    // Записи в порядке позиции в журнале, включая замененные и удаленные по ключу
+    private final Deque<Entry> journal = new ArrayDeque<>();
+    // Позиция следующей записи; растет монотонно, физическое смещение - остаток от деления на capacity
+    private long head;
+    // Записи с позицией меньше tail затерты
+    private long tail;
+
+    public OffHeapInsightCache(String name, InsightConfig.OffHeapCache config, MeterRegistry registry) {
+        super(false);
+        long capacityBytes = config.getCapacity().toBytes();
+        long segmentBytes = Math.min(config.getSegmentSize().toBytes(), capacityBytes);
+        if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Размер сегмента off-heap кэша должен быть от 1 байта до 2 ГБ: "
+                    + config.getSegmentSize());
+        }
+        this.name = name;
+        this.segmentSize = (int) segmentBytes;
+        this.segments = new ByteBuffer[(int) Math.max(1, capacityBytes / segmentBytes)];
+        this.capacity = (long) segments.length * segmentSize;
+        this.compress = config.isCompress();
+        this.file = config.getPath() == null || config.getPath().isBlank() ? null : open(Path.of(config.getPath()));
+
+        Gauge.builder("insight.cache.offheap.entries", entries, ConcurrentHashMap::size)
+                .description("Количество записей off-heap кэша")
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("insight.cache.offheap.used", this, OffHeapInsightCache::getUsedBytes)
+                .description("Объем журнала off-heap кэша, занятый незатертыми записями")
+                .baseUnit("bytes")
+                .tag("cache", name)
+                .register(registry);
+        this.evicted = Counter.builder("insight.cache.offheap.evicted")
+                .description("Количество записей, затертых новыми записями")
+                .tag("cache", name)
+                .register(registry);
+        this.rejected = Counter.builder("insight.cache.offheap.rejected")
+                .description("Количество значений, не помещенных в кэш: больше сегмента или не сериализуются")
+                .tag("cache", name)
+                .register(registry);
+
+        log.info("Off-heap кэш {}: {} байт, {} сегментов по {} байт, {}", name, capacity, segments.length,
+                segmentSize, file != null ? "файл " + config.getPath() : "direct-буферы");
+    }
+
+    private static FileChannel open(Path path) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось открыть файл off-heap кэша: " + path, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        byte[] bytes = read(entry);
+        if (bytes == null) {
+            entries.remove(key, entry);
+            return null;
+        }
+        try (InputStream in = entry.compressed()
+                ? new InflaterInputStream(new ByteArrayInputStream(bytes))
+                : new ByteArrayInputStream(bytes)) {
+            return MAPPER.readValue(in, Object.class);
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать запись off-heap кэша {}: {}", name, e.toString());
+            entries.remove(key, entry);
+            return null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        byte[] bytes = serialize(toStoreValue(value));
+        boolean compressed = false;
+        if (bytes != null && compress) {
+            byte[] deflated = deflate(bytes);
+            if (deflated.length < bytes.length) {
+                bytes = deflated;
+                compressed = true;
+            }
+        }
+        if (bytes == null || bytes.length > segmentSize) {
+            // Старое значение ключа не должно оставаться в кэше после неудачной записи
+            rejected.increment();
+            entries.remove(key);
+            return;
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            long position = head;
+            int offset = (int) (position % segmentSize);
+            if (offset + bytes.length > segmentSize) {
+                // Запись не пересекает границу сегмента: остаток сегмента пропускается
+                position += segmentSize - offset;
+                offset = 0;
+            }
+            long overwritten = position + bytes.length - capacity;
+            while (!journal.isEmpty() && journal.peekFirst().position() < overwritten) {
+                Entry oldest = journal.pollFirst();
+                if (entries.remove(oldest.key(), oldest)) {
+                    evicted.increment();
+                }
+            }
+            tail = Math.max(tail, overwritten);
+
+            int segment = (int) (position % capacity / segmentSize);
+            if (segments[segment] == null) {
+                segments[segment] = allocate(segment);
+            }
+            segments[segment].put(offset, bytes);
+            Entry entry = new Entry(key, position, bytes.length, compressed);
+            journal.addLast(entry);
+            entries.put(key, entry);
+            head = position + bytes.length;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            entries.clear();
+            journal.clear();
+            tail = head;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Объем журнала, занятый незатертыми записями, включая замененные значения
+     */
+    public long getUsedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return Math.min(capacity, head - tail);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private byte[] read(Entry entry) {
+        long stamp = lock.tryOptimisticRead();
+        byte[] bytes = copy(entry);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                bytes = copy(entry);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Копирует байты записи или возвращает null, если запись уже затерта
+     */
+    private byte[] copy(Entry entry) {
+        if (entry.position() < tail) {
+            return null;
+        }
+        long physical = entry.position() % capacity;
+        byte[] bytes = new byte[entry.length()];
+        segments[(int) (physical / segmentSize)].get((int) (physical % segmentSize), bytes);
+        return bytes;
+    }
+
+    private ByteBuffer allocate(int segment) {
+        if (file == null) {
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        try {
+            return file.map(FileChannel.MapMode.READ_WRITE, (long) segment * segmentSize, segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось отобразить сегмент off-heap кэша " + name, e);
+        }
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (IOException e) {
+            log.warn("Значение не помещено в off-heap кэш {}: {}", name, e.toString());
+            return null;
+        }
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater)) {
+            stream.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Дескриптор записи в журнале
+     *
+     * @param key ключ кэша
+     * @param position позиция в журнале
+     * @param length длина сериализованного значения
+     * @param compressed сжато ли значение
+     */
+    private record Entry(Object key, long position, int length, boolean compressed) {
+    }
+}
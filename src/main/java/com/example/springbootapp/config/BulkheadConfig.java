@@ -0,0 +1,121 @@
+package com.example.springbootapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Конфигурация изоляции групп эндпоинтов (bulkhead).
+ * Каждая группа получает собственный лимит одновременно обрабатываемых запросов,
+ * поэтому перегрузка одной подсистемы не занимает потоки сервера, нужные остальным
+ */
+@Configuration
+@ConfigurationProperties(prefix = "bulkhead")
+public class BulkheadConfig {
+
+    private boolean enabled = true;
+
+    // Генерация инсайтов: лимит на запросы, пока их поток сервлета проходит цепочку фильтров;
+    // ожидание ответа генерации в асинхронном режиме место не занимает
+    private Group insights = new Group(32, Duration.ZERO, "/api/insights/**");
+
+    // CRUD пользователей
+    private Group users = new Group(16, Duration.ofMillis(100), "/api/users/**");
+
+    // Вход, регистрация и выход: проверка пароля BCrypt заметно нагружает процессор
+    private Group auth = new Group(16, Duration.ofMillis(100), "/login", "/register", "/logout", "/api/auth/**");
+
+    // Пробы Kubernetes и сбор метрик
+    private Group actuator = new Group(8, Duration.ofSeconds(1), "/actuator/**");
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Group getInsights() {
+        return insights;
+    }
+
+    public void setInsights(Group insights) {
+        this.insights = insights;
+    }
+
+    public Group getUsers() {
+        return users;
+    }
+
+    public void setUsers(Group users) {
+        this.users = users;
+    }
+
+    public Group getAuth() {
+        return auth;
+    }
+
+    public void setAuth(Group auth) {
+        this.auth = auth;
+    }
+
+    public Group getActuator() {
+        return actuator;
+    }
+
+    public void setActuator(Group actuator) {
+        this.actuator = actuator;
+    }
+
+    /**
+     * Настройки группы эндпоинтов
+     */
+    public static class Group {
+
+        // Максимальное число одновременно обрабатываемых запросов группы
+        private int maxConcurrent;
+
+        // Сколько запрос может ждать свободного места, прежде чем получит 503
+        private Duration maxWait;
+
+        // Шаблоны путей группы (Ant-стиль)
+        private List<String> paths = new ArrayList<>();
+
+        public Group() {
+        }
+
+        public Group(int maxConcurrent, Duration maxWait, String... paths) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxWait = maxWait;
+            this.paths = new ArrayList<>(List.of(paths));
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+    }
+}
@@ -1,26 +1,40 @@
 package com.example.springbootapp.config;
 
+import com.example.springbootapp.cache.OffHeapInsightCache;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurer;
 import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 /**
  * Конфигурация кэширования для приложения
- * Настраивает базовый CacheManager на основе ConcurrentHashMap
+ * Настраивает базовый CacheManager на основе ConcurrentHashMap или, при insights.off-heap-cache.enabled,
+ * хранение значений insightsCache вне кучи
  */
 @Configuration
 public class CacheConfig implements CachingConfigurer {
 
     /**
      * Создает CacheManager для кэширования ответов API
-     * 
-     * @return CacheManager на основе ConcurrentHashMap
+     *
+     * @param insightConfig настройки хранения инсайтов вне кучи
+     * @param registry реестр метрик off-heap кэша
+     * @return CacheManager на основе ConcurrentHashMap или off-heap кэша
      */
     @Bean
-    public CacheManager cacheManager() {
-        // Создаем простой in-memory кэш менеджер с указанными кэшами
-        return new ConcurrentMapCacheManager("insightsCache");
+    public CacheManager cacheManager(InsightConfig insightConfig, MeterRegistry registry) {
+        if (!insightConfig.getOffHeapCache().isEnabled()) {
+            // Создаем простой in-memory кэш менеджер с указанными кэшами
+            return new ConcurrentMapCacheManager("insightsCache");
+        }
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(
+                new OffHeapInsightCache("insightsCache", insightConfig.getOffHeapCache(), registry)));
+        return cacheManager;
     }
 }
@@ -0,0 +1,701 @@
+package com.example.springbootapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Конфигурация обработки запросов на получение инсайтов
+ */
+@Configuration
+@ConfigurationProperties(prefix = "insights")
+public class InsightConfig {
+
+    private Deadlines deadline = new Deadlines();
+    private Scheduler scheduler = new Scheduler();
+    private Admission admission = new Admission();
+    private Shutdown shutdown = new Shutdown();
+    private Trending trending = new Trending();
+    private Related related = new Related();
+    private Followup followup = new Followup();
+    private Race race = new Race();
+    private OffHeapCache offHeapCache = new OffHeapCache();
+    private History history = new History();
+    private Idempotency idempotency = new Idempotency();
+
+    public Deadlines getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Deadlines deadline) {
+        this.deadline = deadline;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(Admission admission) {
+        this.admission = admission;
+    }
+
+    public Shutdown getShutdown() {
+        return shutdown;
+    }
+
+    public void setShutdown(Shutdown shutdown) {
+        this.shutdown = shutdown;
+    }
+
+    public Trending getTrending() {
+        return trending;
+    }
+
+    public void setTrending(Trending trending) {
+        this.trending = trending;
+    }
+
+    public Related getRelated() {
+        return related;
+    }
+
+    public void setRelated(Related related) {
+        this.related = related;
+    }
+
+    public Followup getFollowup() {
+        return followup;
+    }
+
+    public void setFollowup(Followup followup) {
+        this.followup = followup;
+    }
+
+    public Race getRace() {
+        return race;
+    }
+
+    public void setRace(Race race) {
+        this.race = race;
+    }
+
+    public OffHeapCache getOffHeapCache() {
+        return offHeapCache;
+    }
+
+    public void setOffHeapCache(OffHeapCache offHeapCache) {
+        this.offHeapCache = offHeapCache;
+    }
+
+    public History getHistory() {
+        return history;
+    }
+
+    public void setHistory(History history) {
+        this.history = history;
+    }
+
+    public Idempotency getIdempotency() {
+        return idempotency;
+    }
+
+    public void setIdempotency(Idempotency idempotency) {
+        this.idempotency = idempotency;
+    }
+
+    /**
+     * Крайние сроки обработки запросов.
+     * Клиент может задать свой срок заголовком (в миллисекундах или в формате 30s),
+     * иначе используется значение по умолчанию для эндпоинта
+     */
+    public static class Deadlines {
+
+        private String header = "X-Request-Timeout";
+
+        // Срок по умолчанию для POST /api/insights
+        private Duration insightsTimeout = Duration.ofSeconds(60);
+
+        // Срок по умолчанию для POST /api/insights/generate
+        private Duration generateTimeout = Duration.ofSeconds(120);
+
+        // Верхняя граница срока, заданного клиентом
+        private Duration maxTimeout = Duration.ofSeconds(300);
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public Duration getInsightsTimeout() {
+            return insightsTimeout;
+        }
+
+        public void setInsightsTimeout(Duration insightsTimeout) {
+            this.insightsTimeout = insightsTimeout;
+        }
+
+        public Duration getGenerateTimeout() {
+            return generateTimeout;
+        }
+
+        public void setGenerateTimeout(Duration generateTimeout) {
+            this.generateTimeout = generateTimeout;
+        }
+
+        public Duration getMaxTimeout() {
+            return maxTimeout;
+        }
+
+        public void setMaxTimeout(Duration maxTimeout) {
+            this.maxTimeout = maxTimeout;
+        }
+    }
+
+    /**
+     * Настройки планировщика генераций
+     */
+    public static class Scheduler {
+
+        // Число одновременных генераций в Ollama (обычно равно OLLAMA_NUM_PARALLEL)
+        private int maxConcurrent = 2;
+
+        // Заголовок с классом приоритета запроса: interactive, batch или background
+        private String priorityHeader = "X-Request-Priority";
+
+        // При равных метках справедливости первым запускать запрос с меньшим num_predict
+        private boolean shortestJobFirst = true;
+
+        // Веса пользователей в справедливой очереди; по умолчанию вес 1
+        private Map<String, Double> userWeights = new HashMap<>();
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public String getPriorityHeader() {
+            return priorityHeader;
+        }
+
+        public void setPriorityHeader(String priorityHeader) {
+            this.priorityHeader = priorityHeader;
+        }
+
+        public boolean isShortestJobFirst() {
+            return shortestJobFirst;
+        }
+
+        public void setShortestJobFirst(boolean shortestJobFirst) {
+            this.shortestJobFirst = shortestJobFirst;
+        }
+
+        public Map<String, Double> getUserWeights() {
+            return userWeights;
+        }
+
+        public void setUserWeights(Map<String, Double> userWeights) {
+            this.userWeights = userWeights;
+        }
+    }
+
+    /**
+     * Настройки допуска запросов в очередь генераций.
+     * Запрос, который не успеет дождаться генерации, отклоняется сразу с кодом 503 и заголовком Retry-After;
+     * ответы из кэша допускаются всегда
+     */
+    public static class Admission {
+
+        private boolean enabled = true;
+
+        // Максимальное число запросов, ожидающих генерации во всех классах
+        private int maxQueueDepth = 64;
+
+        // Максимальное ожидаемое время в очереди
+        private Duration maxQueueWait = Duration.ofSeconds(30);
+
+        // Начальная оценка длительности генерации до первых измерений
+        private Duration initialServiceTime = Duration.ofSeconds(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public void setMaxQueueDepth(int maxQueueDepth) {
+            this.maxQueueDepth = maxQueueDepth;
+        }
+
+        public Duration getMaxQueueWait() {
+            return maxQueueWait;
+        }
+
+        public void setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+
+        public Duration getInitialServiceTime() {
+            return initialServiceTime;
+        }
+
+        public void setInitialServiceTime(Duration initialServiceTime) {
+            this.initialServiceTime = initialServiceTime;
+        }
+    }
+
+    /**
+     * Настройки остановки приложения
+     */
+    public static class Shutdown {
+
+        // Сколько дожидаться принятых генераций; должно быть меньше spring.lifecycle.timeout-per-shutdown-phase
+        // и terminationGracePeriodSeconds пода
+        private Duration drainTimeout = Duration.ofSeconds(20);
+
+        public Duration getDrainTimeout() {
+            return drainTimeout;
+        }
+
+        public void setDrainTimeout(Duration drainTimeout) {
+            this.drainTimeout = drainTimeout;
+        }
+    }
+
+    /**
+     * Настройки популярных тем
+     */
+    public static class Trending {
+
+        // Число счетчиков на окно: тема с долей запросов больше 1 / capacity гарантированно попадает в список
+        private int capacity = 1000;
+
+        // Окна затухания частоты тем
+        private List<Duration> windows = new ArrayList<>(List.of(
+                Duration.ofMinutes(5), Duration.ofHours(1), Duration.ofHours(24)));
+
+        // Максимальное число тем в ответе
+        private int maxLimit = 100;
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public List<Duration> getWindows() {
+            return windows;
+        }
+
+        public void setWindows(List<Duration> windows) {
+            this.windows = windows;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+    }
+
+    /**
+     * Настройки связанных тем: индекс ближайших соседей по эмбеддингам тем (HNSW)
+     */
+    public static class Related {
+
+        private boolean enabled = true;
+
+        // Число связанных тем в ответе
+        private int limit = 5;
+
+        // Минимальное косинусное сходство связанной темы
+        private double minSimilarity = 0.5;
+
+        // Верхняя граница числа тем в индексе; память - около размерности эмбеддинга плюс 200 байт на тему
+        private int maxTopics = 1_000_000;
+
+        // Число соседей узла в графе HNSW (на нижнем уровне - вдвое больше)
+        private int m = 16;
+
+        // Ширина поиска при добавлении темы и при поиске соседей
+        private int efConstruction = 100;
+        private int efSearch = 32;
+
+        // Число запросов эмбеддингов, одновременно ожидающих в планировщике при перестроении индекса
+        // из insight_history; сохраненные в topic_embedding эмбеддинги заново не запрашиваются
+        private int rebuildConcurrency = 4;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        public double getMinSimilarity() {
+            return minSimilarity;
+        }
+
+        public void setMinSimilarity(double minSimilarity) {
+            this.minSimilarity = minSimilarity;
+        }
+
+        public int getMaxTopics() {
+            return maxTopics;
+        }
+
+        public void setMaxTopics(int maxTopics) {
+            this.maxTopics = maxTopics;
+        }
+
+        public int getM() {
+            return m;
+        }
+
+        public void setM(int m) {
+            this.m = m;
+        }
+
+        public int getEfConstruction() {
+            return efConstruction;
+        }
+
+        public void setEfConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+        }
+
+        public int getEfSearch() {
+            return efSearch;
+        }
+
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+
+        public int getRebuildConcurrency() {
+            return rebuildConcurrency;
+        }
+
+        public void setRebuildConcurrency(int rebuildConcurrency) {
+            this.rebuildConcurrency = rebuildConcurrency;
+        }
+    }
+
+    /**
+     * Настройки уточняющих вопросов к инсайту: диалоги через /api/chat, хранящиеся в памяти
+     */
+    public static class Followup {
+
+        private boolean enabled = true;
+
+        // Число последних инсайтов, к которым можно задать вопрос
+        private int maxInsights = 5000;
+
+        // Число пользователей с диалогами и диалогов одного пользователя; при превышении
+        // вытесняются давно не использованные
+        private int maxUsers = 10000;
+        private int maxConversationsPerUser = 5;
+
+        // Число последних вопросов с ответами, которые передаются модели вместе с инсайтом
+        private int maxTurns = 10;
+
+        // Диалог без вопросов дольше этого времени удаляется
+        private Duration idleTimeout = Duration.ofMinutes(30);
+
+        private int maxQuestionLength = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxInsights() {
+            return maxInsights;
+        }
+
+        public void setMaxInsights(int maxInsights) {
+            this.maxInsights = maxInsights;
+        }
+
+        public int getMaxUsers() {
+            return maxUsers;
+        }
+
+        public void setMaxUsers(int maxUsers) {
+            this.maxUsers = maxUsers;
+        }
+
+        public int getMaxConversationsPerUser() {
+            return maxConversationsPerUser;
+        }
+
+        public void setMaxConversationsPerUser(int maxConversationsPerUser) {
+            this.maxConversationsPerUser = maxConversationsPerUser;
+        }
+
+        public int getMaxTurns() {
+            return maxTurns;
+        }
+
+        public void setMaxTurns(int maxTurns) {
+            this.maxTurns = maxTurns;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public int getMaxQuestionLength() {
+            return maxQuestionLength;
+        }
+
+        public void setMaxQuestionLength(int maxQuestionLength) {
+            this.maxQuestionLength = maxQuestionLength;
+        }
+    }
+
+    /**
+     * Настройки режима гонки моделей (параметр race): тема отправляется нескольким моделям одновременно,
+     * и клиент получает первый структурированный ответ
+     */
+    public static class Race {
+
+        // Модели, которые участвуют в гонке, например маленькая и большая; должны быть разрешены
+        // в ollama.allowed-models
+        private List<String> models = new ArrayList<>();
+
+        // Дожидаться проигравших генераций и кэшировать их результат вместо отмены
+        private boolean completeLosers = false;
+
+        public List<String> getModels() {
+            return models;
+        }
+
+        public void setModels(List<String> models) {
+            this.models = models;
+        }
+
+        public boolean isCompleteLosers() {
+            return completeLosers;
+        }
+
+        public void setCompleteLosers(boolean completeLosers) {
+            this.completeLosers = completeLosers;
+        }
+    }
+
+    /**
+     * Хранение значений кэша insightsCache вне кучи: в куче остаются только ключи и дескрипторы записей,
+     * а сериализованные инсайты лежат в direct-буферах или в отображенном в память файле
+     */
+    public static class OffHeapCache {
+
+        private boolean enabled = false;
+
+        // Объем памяти под записи; при заполнении вытесняются самые старые записи
+        private DataSize capacity = DataSize.ofMegabytes(512);
+
+        // Память выделяется сегментами; запись больше сегмента не кэшируется
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        // Файл, отображаемый в память; без него используются direct-буферы (-XX:MaxDirectMemorySize).
+        // Содержимое файла не переживает перезапуск
+        private String path;
+
+        // Сжимать записи (Deflate)
+        private boolean compress = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(DataSize capacity) {
+            this.capacity = capacity;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public boolean isCompress() {
+            return compress;
+        }
+
+        public void setCompress(boolean compress) {
+            this.compress = compress;
+        }
+    }
+
+    /**
+     * Обслуживание помесячных секций insight_history: секции создаются заранее, а устаревшие
+     * отсоединяются и удаляются целиком вместо удаления строк
+     */
+    public static class History {
+
+        private boolean partitionMaintenance = true;
+
+        // Сколько месяцев вперед, кроме текущего, должны существовать секции
+        private int partitionsAhead = 3;
+
+        // Сколько полных прошедших месяцев хранить, кроме текущего; 0 - хранить всю историю
+        private int retentionMonths = 12;
+
+        private Duration maintenanceInterval = Duration.ofHours(6);
+
+        public boolean isPartitionMaintenance() {
+            return partitionMaintenance;
+        }
+
+        public void setPartitionMaintenance(boolean partitionMaintenance) {
+            this.partitionMaintenance = partitionMaintenance;
+        }
+
+        public int getPartitionsAhead() {
+            return partitionsAhead;
+        }
+
+        public void setPartitionsAhead(int partitionsAhead) {
+            this.partitionsAhead = partitionsAhead;
+        }
+
+        public int getRetentionMonths() {
+            return retentionMonths;
+        }
+
+        public void setRetentionMonths(int retentionMonths) {
+            this.retentionMonths = retentionMonths;
+        }
+
+        public Duration getMaintenanceInterval() {
+            return maintenanceInterval;
+        }
+
+        public void setMaintenanceInterval(Duration maintenanceInterval) {
+            this.maintenanceInterval = maintenanceInterval;
+        }
+    }
+
+    /**
+     * Ключи идемпотентности запросов генерации: повтор запроса с тем же ключом присоединяется
+     * к идущей генерации или получает ее сохраненный результат
+     */
+    public static class Idempotency {
+
+        private boolean enabled = true;
+
+        private String header = "Idempotency-Key";
+
+        // Время от первого запроса с ключом, в течение которого повтор получает его результат
+        private Duration ttl = Duration.ofMinutes(10);
+
+        // Число ключей в памяти; при превышении вытесняются самые старые
+        private int maxKeys = 10000;
+
+        private int maxKeyLength = 255;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getHeader() {
+            return header;
+        }
+
+        public void setHeader(String header) {
+            this.header = header;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        public int getMaxKeyLength() {
+            return maxKeyLength;
+        }
+
+        public void setMaxKeyLength(int maxKeyLength) {
+            this.maxKeyLength = maxKeyLength;
+        }
+    }
+}
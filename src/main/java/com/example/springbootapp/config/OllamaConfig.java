@@ -3,6 +3,12 @@ package com.example.springbootapp.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Конфигурация для работы с Ollama API
  */
@@ -10,8 +16,17 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "ollama")
 public class OllamaConfig {
     
+    // http://host:port или unix:///путь/к/сокету для Ollama на том же хосте
     private String apiUrl;
     private String model;
+    private Duration timeout = Duration.ofSeconds(120);
+    // Модели, которые клиент может выбрать в запросе; модель по умолчанию разрешена всегда
+    private List<String> allowedModels = new ArrayList<>();
+    private Generation generation = new Generation();
+    private Metrics metrics = new Metrics();
+    private Logging logging = new Logging();
+    private Embedding embedding = new Embedding();
+    private Transport transport = new Transport();
     
     public String getApiUrl() {
         return apiUrl;
@@ -28,4 +43,193 @@ public class OllamaConfig {
     public void setModel(String model) {
         this.model = model;
     }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public List<String> getAllowedModels() {
+        return allowedModels;
+    }
+
+    public void setAllowedModels(List<String> allowedModels) {
+        this.allowedModels = allowedModels;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public Generation getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(Generation generation) {
+        this.generation = generation;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Logging getLogging() {
+        return logging;
+    }
+
+    public void setLogging(Logging logging) {
+        this.logging = logging;
+    }
+
+    public Embedding getEmbedding() {
+        return embedding;
+    }
+
+    public void setEmbedding(Embedding embedding) {
+        this.embedding = embedding;
+    }
+
+    /**
+     * Ограничения параметров генерации, передаваемых клиентом
+     */
+    public static class Generation {
+
+        // Верхняя граница num_predict, которую может запросить клиент
+        private int maxNumPredict = 4096;
+
+        // Запрашивать разделы инсайта отдельными промптами одновременно
+        private boolean parallelSections = false;
+
+        // Передавать неизменные инструкции в поле system, а в prompt - только тему
+        private boolean systemPrompt = true;
+
+        // Значения num_predict для параметра length (глубины анализа) из клиентского запроса
+        private Map<String, Integer> lengthPresets = new LinkedHashMap<>(Map.of(
+                "short", 300, "medium", 800, "long", 1600));
+
+        public int getMaxNumPredict() {
+            return maxNumPredict;
+        }
+
+        public void setMaxNumPredict(int maxNumPredict) {
+            this.maxNumPredict = maxNumPredict;
+        }
+
+        public boolean isParallelSections() {
+            return parallelSections;
+        }
+
+        public void setParallelSections(boolean parallelSections) {
+            this.parallelSections = parallelSections;
+        }
+
+        public boolean isSystemPrompt() {
+            return systemPrompt;
+        }
+
+        public void setSystemPrompt(boolean systemPrompt) {
+            this.systemPrompt = systemPrompt;
+        }
+
+        public Map<String, Integer> getLengthPresets() {
+            return lengthPresets;
+        }
+
+        public void setLengthPresets(Map<String, Integer> lengthPresets) {
+            this.lengthPresets = lengthPresets;
+        }
+    }
+
+    /**
+     * Настройки метрик запросов к Ollama API
+     */
+    public static class Metrics {
+
+        // Границы SLO-гистограммы для времени запроса к Ollama
+        private List<Duration> slo = new ArrayList<>(List.of(
+                Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(10),
+                Duration.ofSeconds(30), Duration.ofSeconds(60), Duration.ofSeconds(120)));
+
+        public List<Duration> getSlo() {
+            return slo;
+        }
+
+        public void setSlo(List<Duration> slo) {
+            this.slo = slo;
+        }
+    }
+
+    /**
+     * Настройки логирования запросов к Ollama API
+     */
+    public static class Logging {
+
+        // В DEBUG-лог попадает одна из N успешных генераций
+        private int successSampleRate = 100;
+
+        public int getSuccessSampleRate() {
+            return successSampleRate;
+        }
+
+        public void setSuccessSampleRate(int successSampleRate) {
+            this.successSampleRate = successSampleRate;
+        }
+    }
+
+    /**
+     * Настройки запросов эмбеддингов (/api/embeddings)
+     */
+    public static class Embedding {
+
+        // Модель эмбеддингов; должна быть загружена в Ollama
+        private String model = "nomic-embed-text";
+
+        // Максимальное время ожидания эмбеддинга
+        private Duration timeout = Duration.ofSeconds(5);
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Настройки соединения с Ollama API
+     */
+    public static class Transport {
+
+        // HTTP/2 без TLS (prior knowledge): одновременные запросы мультиплексируются в одном соединении.
+        // Сервер или прокси перед Ollama должен принимать h2c
+        private boolean h2c = false;
+
+        public boolean isH2c() {
+            return h2c;
+        }
+
+        public void setH2c(boolean h2c) {
+            this.h2c = h2c;
+        }
+    }
 }
@@ -1,17 +1,42 @@
 package com.example.springbootapp.controller;
 
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.followup.ConversationNotFoundException;
+import com.example.springbootapp.idempotency.IdempotencyKeyReusedException;
+import com.example.springbootapp.idempotency.IdempotencyKeys;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightRequestContext.Priority;
+import com.example.springbootapp.model.InsightStreamEvent;
+import com.example.springbootapp.scheduler.GenerationRejectedException;
 import com.example.springbootapp.service.InsightService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * Контроллер для обработки запросов к ИИ API для получения аналитических данных по заданной теме
@@ -22,78 +47,332 @@ import java.util.Map;
 public class InsightController {
 
     private final InsightService insightService;
+    private final IdempotencyKeys idempotencyKeys;
+    private final InsightConfig.Deadlines deadlines;
+    private final String priorityHeader;
+    private final int maxQuestionLength;
     
     /**
      * Конструктор с автоматическим внедрением зависимостей
      * 
      * @param insightService сервис для работы с ИИ API
+     * @param insightConfig настройки обработки запросов (крайние сроки)
+     * @param idempotencyKeys ключи идемпотентности запросов генерации
      */
     @Autowired
-    public InsightController(InsightService insightService) {
+    public InsightController(InsightService insightService, InsightConfig insightConfig,
+                             IdempotencyKeys idempotencyKeys) {
         this.insightService = insightService;
+        this.idempotencyKeys = idempotencyKeys;
+        this.deadlines = insightConfig.getDeadline();
+        this.priorityHeader = insightConfig.getScheduler().getPriorityHeader();
+        this.maxQuestionLength = insightConfig.getFollowup().getMaxQuestionLength();
     }
 
     /**
      * Обрабатывает POST-запрос для получения аналитических данных по указанной теме
-     * Проверяет входные данные и делегирует обработку сервису InsightService
+     * Проверяет входные данные и делегирует обработку сервису InsightService.
+     * Запрос обрабатывается асинхронно с крайним сроком из заголовка X-Request-Timeout
+     * или сроком по умолчанию; по его истечении возвращается 504.
+     * Класс приоритета в очереди генераций задается заголовком X-Request-Priority
      * 
      * @param requestBody тело запроса, содержащее поле topic с темой для анализа
+     * @param fields разделы инсайта через запятую (по умолчанию все)
+     * @param headers заголовки запроса
+     * @param principal аутентифицированный пользователь (для справедливой очереди генераций)
      * @return ResponseEntity с JSON, содержащим обзор, ключевые понятия и связанные ссылки
      */
     @PostMapping
-    public ResponseEntity<Map<String, Object>> getInsights(@RequestBody Map<String, String> requestBody) {
-        try {
-            // Проверка наличия обязательного поля
-            if (!requestBody.containsKey("topic") || requestBody.get("topic").isEmpty()) {
-                return ResponseEntity.badRequest().body(createErrorResponse("Не указана тема для анализа"));
-            }
-            
-            String topic = requestBody.get("topic");
-            
-            // Вызов сервиса для получения данных от ИИ API
-            Map<String, Object> aiResponse = insightService.getInsightsForTopic(topic);
-            
-            return ResponseEntity.ok(aiResponse);
-            
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(createErrorResponse("Произошла ошибка при обработке запроса: " + e.getMessage()));
+    public DeferredResult<ResponseEntity<Map<String, Object>>> getInsights(@RequestBody Map<String, String> requestBody,
+                                                                           @RequestParam(required = false) String fields,
+                                                                           @RequestHeader HttpHeaders headers,
+                                                                           Principal principal) {
+        // Проверка наличия обязательного поля
+        if (!requestBody.containsKey("topic") || requestBody.get("topic").isEmpty()) {
+            return completed(ResponseEntity.badRequest().body(createErrorResponse("Не указана тема для анализа")));
         }
+        
+        String topic = requestBody.get("topic");
+        Map<String, Object> parameters = new HashMap<>();
+        if (fields != null) {
+            parameters.put("fields", fields);
+        }
+        
+        // Вызов сервиса для получения данных от ИИ API
+        return processAsync(context -> insightService.getInsightsForTopicAsync(topic, parameters, context),
+                headers, principal, deadlines.getInsightsTimeout());
     }
     
     /**
      * Обрабатывает POST-запрос для генерации инсайтов по указанной теме с дополнительными параметрами
-     * Поддерживает структуру запроса, отправляемую с клиентской стороны
+     * Поддерживает структуру запроса, отправляемую с клиентской стороны.
+     * Повтор запроса с тем же заголовком Idempotency-Key не запускает новую генерацию,
+     * а получает результат первого запроса
      * 
      * @param requestBody тело запроса, содержащее тему и параметры генерации
-     * @return ResponseEntity с JSON, содержащим результат генерации
+     *                    (model из списка разрешенных, length, num_predict, temperature, top_p, top_k,
+     *                    repeat_penalty, seed, fields)
+     * @param fields разделы инсайта через запятую; заменяет parameters.fields
+     * @param headers заголовки запроса
+     * @param principal аутентифицированный пользователь (для справедливой очереди генераций)
+     * @return ResponseEntity с JSON, содержащим результат генерации, 400 при недопустимых параметрах,
+     *         422, если ключ идемпотентности уже использован для другого запроса
      */
     @PostMapping("/generate")
-    public ResponseEntity<Map<String, Object>> generateInsights(@RequestBody Map<String, Object> requestBody) {
+    public DeferredResult<ResponseEntity<Map<String, Object>>> generateInsights(@RequestBody Map<String, Object> requestBody,
+                                                                                @RequestParam(required = false) String fields,
+                                                                                @RequestHeader HttpHeaders headers,
+                                                                                Principal principal) {
+        // Проверка наличия обязательного поля
+        if (!requestBody.containsKey("topic") || requestBody.get("topic") == null) {
+            return completed(ResponseEntity.badRequest().body(createErrorResponse("Не указана тема для анализа")));
+        }
+        
+        String topic = requestBody.get("topic").toString();
+        
+        // Извлечение параметров генерации (model, length, опции Ollama), если есть
+        Map<String, Object> parameters = generationParameters(requestBody.get("parameters"), fields);
+        if (parameters == null) {
+            return completed(ResponseEntity.badRequest().body(createErrorResponse("Поле parameters должно быть объектом")));
+        }
+        
+        String idempotencyKey = headers.getFirst(idempotencyKeys.getHeader());
+        String fingerprint = IdempotencyKeys.fingerprint(topic, parameters);
+        return processAsync(context -> idempotencyKeys.execute(context.getUser(), idempotencyKey, fingerprint,
+                        () -> insightService.getInsightsForTopicAsync(topic, parameters, context)),
+                headers, principal, deadlines.getGenerateTimeout());
+    }
+
+    /**
+     * Генерирует инсайт потоком событий, чтобы клиент мог показать обзор, не дожидаясь остальных разделов.
+     * Принимает то же тело, что и /generate. По умолчанию отвечает Server-Sent Events (text/event-stream):
+     * событие field с полями field и value на каждый готовый раздел и последнее событие result
+     * с итоговым инсайтом. С заголовком Accept: application/x-ndjson те же события передаются
+     * строками JSON вида {"event": "field", "data": {...}}.
+     * Ошибка после начала потока передается событием error со статусом, который получил бы обычный запрос
+     *
+     * @param requestBody тело запроса, содержащее тему и параметры генерации
+     * @param fields разделы инсайта через запятую; заменяет parameters.fields
+     * @param headers заголовки запроса (X-Request-Timeout, X-Request-Priority, Accept)
+     * @param principal аутентифицированный пользователь (для справедливой очереди генераций)
+     * @return поток событий или 400 с событием error при недопустимых параметрах
+     */
+    @PostMapping("/stream")
+    public ResponseEntity<ResponseBodyEmitter> streamInsights(@RequestBody Map<String, Object> requestBody,
+                                                              @RequestParam(required = false) String fields,
+                                                              @RequestHeader HttpHeaders headers,
+                                                              Principal principal) {
+        boolean ndjson = headers.getAccept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        if (requestBody.get("topic") == null) {
+            return errorStream(ndjson, HttpStatus.BAD_REQUEST, "Не указана тема для анализа");
+        }
+        String topic = requestBody.get("topic").toString();
+        Map<String, Object> parameters = generationParameters(requestBody.get("parameters"), fields);
+        if (parameters == null) {
+            return errorStream(ndjson, HttpStatus.BAD_REQUEST, "Поле parameters должно быть объектом");
+        }
+
         try {
-            // Проверка наличия обязательного поля
-            if (!requestBody.containsKey("topic") || requestBody.get("topic") == null) {
-                return ResponseEntity.badRequest().body(createErrorResponse("Не указана тема для анализа"));
-            }
-            
-            String topic = requestBody.get("topic").toString();
-            
-            // Извлечение параметров, если есть (не используются в текущей реализации, но могут быть добавлены)
-            @SuppressWarnings("unchecked")
-            Map<String, Object> parameters = requestBody.containsKey("parameters") ? 
-                                           (Map<String, Object>) requestBody.get("parameters") : 
-                                           new HashMap<>();
-            
-            // Вызов сервиса для получения данных от ИИ API
-            Map<String, Object> aiResponse = insightService.getInsightsForTopic(topic);
-            
-            return ResponseEntity.ok(aiResponse);
-            
+            Duration timeout = resolveTimeout(headers.getFirst(deadlines.getHeader()), deadlines.getGenerateTimeout());
+            InsightRequestContext context = requestContext(headers, principal, timeout);
+
+            ResponseBodyEmitter emitter = ndjson ? new ResponseBodyEmitter(timeout.toMillis())
+                    : new SseEmitter(timeout.toMillis());
+            Disposable subscription = insightService.streamInsightsForTopic(topic, parameters, context)
+                    .subscribe(event -> send(emitter, event),
+                            error -> {
+                                ResponseEntity<Map<String, Object>> response = errorResponse(error);
+                                send(emitter, InsightStreamEvent.error(response.getStatusCode().value(),
+                                        (String) response.getBody().get("message")));
+                                emitter.complete();
+                            },
+                            emitter::complete);
+            emitter.onTimeout(() -> {
+                subscription.dispose();
+                send(emitter, InsightStreamEvent.error(HttpStatus.GATEWAY_TIMEOUT.value(),
+                        "Превышен срок обработки запроса"));
+                emitter.complete();
+            });
+            emitter.onError(error -> subscription.dispose());
+            emitter.onCompletion(subscription::dispose);
+            return ResponseEntity.ok().contentType(streamMediaType(ndjson)).body(emitter);
+
+        } catch (IllegalArgumentException e) {
+            // Недопустимые параметры генерации, срок или приоритет в заголовках
+            return errorStream(ndjson, HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Обрабатывает уточняющий вопрос к сгенерированному инсайту.
+     * Вопрос продолжает диалог текущего пользователя с моделью по этому инсайту
+     *
+     * @param id идентификатор инсайта из поля insightId ответа
+     * @param requestBody тело запроса с полем question
+     * @param headers заголовки запроса
+     * @param principal аутентифицированный пользователь, которому принадлежит диалог
+     * @return ResponseEntity с ответом на вопрос, 400 при пустом или слишком длинном вопросе,
+     *         404, если инсайт неизвестен или устарел
+     */
+    @PostMapping("/{id}/followup")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> followUp(@PathVariable String id,
+                                                                        @RequestBody Map<String, String> requestBody,
+                                                                        @RequestHeader HttpHeaders headers,
+                                                                        Principal principal) {
+        String question = requestBody.get("question");
+        if (question == null || question.isBlank()) {
+            return completed(ResponseEntity.badRequest().body(createErrorResponse("Не указан вопрос")));
+        }
+        if (question.length() > maxQuestionLength) {
+            return completed(ResponseEntity.badRequest().body(createErrorResponse(
+                    "Вопрос длиннее " + maxQuestionLength + " символов")));
+        }
+        return processAsync(context -> insightService.followUp(id, question, context),
+                headers, principal, deadlines.getInsightsTimeout());
+    }
+
+    /**
+     * Запускает асинхронное получение инсайтов с крайним сроком.
+     * Подписка на результат отменяется, если истек срок или контейнер сообщил об ошибке
+     * асинхронного запроса (например, клиент закрыл соединение), - это прерывает генерацию в Ollama
+     *
+     * @param call запрос к сервису с контекстом запроса
+     * @param headers заголовки запроса
+     * @param principal аутентифицированный пользователь или null
+     * @param defaultTimeout срок по умолчанию для эндпоинта
+     * @return отложенный результат запроса
+     */
+    private DeferredResult<ResponseEntity<Map<String, Object>>> processAsync(
+            Function<InsightRequestContext, Mono<Map<String, Object>>> call,
+            HttpHeaders headers, Principal principal, Duration defaultTimeout) {
+        try {
+            Duration timeout = resolveTimeout(headers.getFirst(deadlines.getHeader()), defaultTimeout);
+            InsightRequestContext context = requestContext(headers, principal, timeout);
+
+            DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeout.toMillis());
+            Disposable subscription = call.apply(context)
+                    .subscribe(body -> result.setResult(ResponseEntity.ok(body)),
+                            error -> result.setResult(errorResponse(error)));
+            result.onTimeout(() -> {
+                subscription.dispose();
+                result.setResult(deadlineExceededResponse());
+            });
+            result.onError(error -> subscription.dispose());
+            result.onCompletion(subscription::dispose);
+            return result;
+
+        } catch (IllegalArgumentException e) {
+            // Недопустимые параметры генерации, срок или приоритет в заголовках
+            return completed(ResponseEntity.badRequest().body(createErrorResponse(e.getMessage())));
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(createErrorResponse("Произошла ошибка при обработке запроса: " + e.getMessage()));
+            return completed(errorResponse(e));
         }
     }
+
+    private InsightRequestContext requestContext(HttpHeaders headers, Principal principal, Duration timeout) {
+        Priority priority = Priority.parse(headers.getFirst(priorityHeader));
+        return InsightRequestContext.of(principal != null ? principal.getName() : null, priority, Deadline.after(timeout));
+    }
+
+    /**
+     * Параметры генерации из поля parameters и параметра запроса fields
+     *
+     * @return изменяемая копия параметров или null, если parameters не объект
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> generationParameters(Object rawParameters, String fields) {
+        if (rawParameters != null && !(rawParameters instanceof Map)) {
+            return null;
+        }
+        Map<String, Object> parameters = rawParameters != null
+                ? new HashMap<>((Map<String, Object>) rawParameters) : new HashMap<>();
+        if (fields != null) {
+            parameters.put("fields", fields);
+        }
+        return parameters;
+    }
+
+    /**
+     * Отправляет событие потока. Ошибка записи означает, что клиент отключился:
+     * поток завершается, и подписка на генерацию отменяется
+     */
+    private static void send(ResponseBodyEmitter emitter, InsightStreamEvent event) {
+        try {
+            if (emitter instanceof SseEmitter sse) {
+                sse.send(SseEmitter.event().name(event.getEvent()).data(event.getData(), MediaType.APPLICATION_JSON));
+            } else {
+                emitter.send(event, MediaType.APPLICATION_JSON);
+                emitter.send("\n", MediaType.TEXT_PLAIN);
+            }
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static ResponseEntity<ResponseBodyEmitter> errorStream(boolean ndjson, HttpStatus status, String message) {
+        ResponseBodyEmitter emitter = ndjson ? new ResponseBodyEmitter() : new SseEmitter();
+        send(emitter, InsightStreamEvent.error(status.value(), message));
+        emitter.complete();
+        return ResponseEntity.status(status).contentType(streamMediaType(ndjson)).body(emitter);
+    }
+
+    private static MediaType streamMediaType(boolean ndjson) {
+        return ndjson ? MediaType.APPLICATION_NDJSON : MediaType.TEXT_EVENT_STREAM;
+    }
+
+    /**
+     * Определяет срок обработки запроса из заголовка: число миллисекунд или длительность (30s, 2m).
+     * Срок из заголовка ограничен сверху insights.deadline.max-timeout
+     */
+    private Duration resolveTimeout(String headerValue, Duration defaultTimeout) {
+        if (headerValue == null || headerValue.isBlank()) {
+            return defaultTimeout;
+        }
+        Duration timeout;
+        try {
+            String value = headerValue.trim();
+            timeout = value.chars().allMatch(Character::isDigit)
+                    ? Duration.ofMillis(Long.parseLong(value))
+                    : DurationStyle.detectAndParse(value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректное значение заголовка " + deadlines.getHeader() + ": " + headerValue);
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Срок в заголовке " + deadlines.getHeader() + " должен быть положительным");
+        }
+        return timeout.compareTo(deadlines.getMaxTimeout()) > 0 ? deadlines.getMaxTimeout() : timeout;
+    }
+
+    private ResponseEntity<Map<String, Object>> errorResponse(Throwable error) {
+        if (error instanceof TimeoutException) {
+            return deadlineExceededResponse();
+        }
+        if (error instanceof ConversationNotFoundException) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(createErrorResponse(error.getMessage()));
+        }
+        if (error instanceof IdempotencyKeyReusedException) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(createErrorResponse(error.getMessage()));
+        }
+        if (error instanceof GenerationRejectedException rejected) {
+            // Перегрузка: клиенту выгоднее сразу повторить позже, чем ждать до истечения срока
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(rejected.getRetryAfter().toSeconds()))
+                    .body(createErrorResponse(rejected.getMessage()));
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(createErrorResponse("Произошла ошибка при обработке запроса: " + error.getMessage()));
+    }
+
+    private ResponseEntity<Map<String, Object>> deadlineExceededResponse() {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .body(createErrorResponse("Превышен срок обработки запроса"));
+    }
+
+    private static DeferredResult<ResponseEntity<Map<String, Object>>> completed(ResponseEntity<Map<String, Object>> response) {
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
     
     /**
      * Создает стандартную структуру ответа с ошибкой
@@ -0,0 +1,68 @@
+package com.example.springbootapp.controller;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.trending.SpaceSavingSketch;
+import com.example.springbootapp.trending.TrendingTopics;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Контроллер популярных тем инсайтов
+ */
+@RestController
+@RequestMapping("/api/insights/trending")
+public class TrendingController {
+
+    private final TrendingTopics trendingTopics;
+    private final int maxLimit;
+
+    public TrendingController(TrendingTopics trendingTopics, InsightConfig insightConfig) {
+        this.trendingTopics = trendingTopics;
+        this.maxLimit = insightConfig.getTrending().getMaxLimit();
+    }
+
+    /**
+     * Возвращает самые популярные темы за окно.
+     * Оценка score - число запросов с экспоненциальным затуханием по длине окна,
+     * error - верхняя граница ее завышения
+     *
+     * @param window окно: 5m, 1h или 24h
+     * @param limit максимальное число тем
+     * @return ResponseEntity со списком тем или 400 при недопустимом окне
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getTrending(@RequestParam(defaultValue = "5m") String window,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        try {
+            Duration duration = DurationStyle.detectAndParse(window);
+            List<Map<String, Object>> topics = new ArrayList<>();
+            for (SpaceSavingSketch.Entry entry : trendingTopics.top(duration, Math.max(1, Math.min(limit, maxLimit)))) {
+                Map<String, Object> topic = new LinkedHashMap<>();
+                topic.put("topic", entry.key());
+                topic.put("score", Math.round(entry.weight() * 100) / 100.0);
+                topic.put("error", Math.round(entry.error() * 100) / 100.0);
+                topics.add(topic);
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("window", window);
+            response.put("topics", topics);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", true);
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+}
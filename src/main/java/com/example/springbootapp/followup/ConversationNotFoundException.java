@@ -0,0 +1,11 @@
+package com.example.springbootapp.followup;
+
+/**
+ * Инсайт, к которому задан уточняющий вопрос, неизвестен или уже вытеснен из памяти
+ */
+public class ConversationNotFoundException extends RuntimeException {
+
+    public ConversationNotFoundException(String insightId) {
+        super("Инсайт " + insightId + " не найден или устарел: запросите инсайт заново");
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.springbootapp.followup;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.model.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Диалоги с уточняющими вопросами к инсайтам.
+ * <p>
+ * Каждому сгенерированному инсайту присваивается идентификатор, по которому хранится начало диалога:
+ * сообщения, с которыми инсайт генерировался, и ответ модели. Пользователь, задавший вопрос к инсайту,
+ * получает свой диалог из этого начала и последних insights.followup.max-turns вопросов с ответами.
+ * Начало диалога не меняется, поэтому запрос к /api/chat совпадает с предыдущим до нового вопроса,
+ * и Ollama оценивает заново только его.
+ * <p>
+ * Все хранится в памяти и ограничено: инсайты, пользователи и диалоги пользователя вытесняются
+ * по давности использования, а диалоги без вопросов дольше insights.followup.idle-timeout удаляются
+ */
+@Component
+public class InsightConversations {
+
+    static final String EVICTED_CAPACITY = "capacity";
+    static final String EVICTED_IDLE = "idle";
+
+    private final InsightConfig.Followup config;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+    private final Counter evictedByCapacity;
+    private final Counter evictedByIdle;
+
+    // Все поля ниже защищены lock; карты упорядочены по давности использования
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Seed> seeds;
+    private final LinkedHashMap<String, UserConversations> users;
+    private int conversationCount;
+
+    public InsightConversations(InsightConfig insightConfig, MeterRegistry registry) {
+        this(insightConfig, registry, System::nanoTime);
+    }
+
+    InsightConversations(InsightConfig insightConfig, MeterRegistry registry, LongSupplier clock) {
+        this.config = insightConfig.getFollowup();
+        this.idleTimeoutNanos = config.getIdleTimeout().toNanos();
+        this.clock = clock;
+        int maxInsights = Math.max(1, config.getMaxInsights());
+        int maxUsers = Math.max(1, config.getMaxUsers());
+        this.seeds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Seed> eldest) {
+                return size() > maxInsights;
+            }
+        };
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserConversations> eldest) {
+                if (size() <= maxUsers) {
+                    return false;
+                }
+                conversationCount -= eldest.getValue().conversations.size();
+                evictedByCapacity.increment(eldest.getValue().conversations.size());
+                return true;
+            }
+        };
+        Gauge.builder("insight.followup.conversations", this, InsightConversations::getConversationCount)
+                .description("Количество диалогов с уточняющими вопросами в памяти")
+                .register(registry);
+        this.evictedByCapacity = evictionCounter(registry, EVICTED_CAPACITY);
+        this.evictedByIdle = evictionCounter(registry, EVICTED_IDLE);
+    }
+
+    private static Counter evictionCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("insight.followup.evicted")
+                .description("Количество диалогов, удаленных из памяти")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Запоминает начало диалога для сгенерированного инсайта, заменяя прежнее начало с тем же ключом
+     *
+     * @param key ключ инсайта в кэше; идентификатор инсайта выводится из него
+     * @param topic тема инсайта
+     * @param model модель, сгенерировавшая инсайт
+     * @param prompt сообщения, с которыми генерировался инсайт
+     * @param answer ответ модели
+     * @return идентификатор инсайта для уточняющих вопросов
+     */
+    public String register(String key, String topic, String model, List<ChatMessage> prompt, String answer) {
+        String insightId = insightId(key);
+        Seed seed = seed(topic, model, prompt, answer);
+        lock.lock();
+        try {
+            seeds.put(insightId, seed);
+        } finally {
+            lock.unlock();
+        }
+        return insightId;
+    }
+
+    /**
+     * Возвращает идентификатор инсайта, отданного из кэша. Если начало диалога уже вытеснено
+     * или потеряно при перезапуске, а кэш пережил его, начало восстанавливается из инсайта
+     *
+     * @param key ключ инсайта в кэше
+     * @param topic тема инсайта
+     * @param model модель, сгенерировавшая инсайт
+     * @param prompt сообщения, с которыми генерировался инсайт; вычисляются только при восстановлении
+     * @param answer текст инсайта вместо ответа модели; вычисляется только при восстановлении
+     * @return идентификатор инсайта для уточняющих вопросов
+     */
+    public String reseed(String key, String topic, String model, Supplier<List<ChatMessage>> prompt,
+                         Supplier<String> answer) {
+        String insightId = insightId(key);
+        lock.lock();
+        try {
+            // get обновляет давность использования начала диалога
+            if (seeds.get(insightId) != null) {
+                return insightId;
+            }
+        } finally {
+            lock.unlock();
+        }
+        Seed seed = seed(topic, model, prompt.get(), answer.get());
+        lock.lock();
+        try {
+            seeds.putIfAbsent(insightId, seed);
+        } finally {
+            lock.unlock();
+        }
+        return insightId;
+    }
+
+    /**
+     * Идентификатор инсайта не случаен, а выводится из ключа кэша: инсайт, отданный из кэша после
+     * вытеснения начала диалога или перезапуска, получает тот же идентификатор, что и при генерации
+     */
+    private static String insightId(String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static Seed seed(String topic, String model, List<ChatMessage> prompt, String answer) {
+        List<ChatMessage> messages = new ArrayList<>(prompt.size() + 1);
+        messages.addAll(prompt);
+        messages.add(new ChatMessage(ChatMessage.ASSISTANT, answer));
+        return new Seed(topic, model, List.copyOf(messages));
+    }
+
+    /**
+     * Открывает диалог пользователя по инсайту: существующий или новый из начала диалога инсайта
+     *
+     * @param user пользователь
+     * @param insightId идентификатор инсайта
+     * @return снимок диалога для запроса к модели
+     * @throws ConversationNotFoundException если инсайт неизвестен или уже вытеснен
+     */
+    public Snapshot open(String user, String insightId) {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            expireIdle(now);
+            Conversation conversation = conversation(user, insightId, now);
+            List<ChatMessage> messages = new ArrayList<>(conversation.seed.messages);
+            for (ChatMessage[] turn : conversation.turns) {
+                messages.add(turn[0]);
+                messages.add(turn[1]);
+            }
+            return new Snapshot(conversation.seed.topic, conversation.seed.model, messages, conversation.asked);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет вопрос с ответом в диалог. Вопросы сверх insights.followup.max-turns
+     * вытесняют самые старые; начало диалога с инсайтом сохраняется
+     *
+     * @param user пользователь
+     * @param insightId идентификатор инсайта
+     * @param question сообщение с вопросом
+     * @param answer ответ модели
+     * @return номер вопроса в диалоге
+     * @throws ConversationNotFoundException если диалог и инсайт уже вытеснены
+     */
+    public int append(String user, String insightId, ChatMessage question, ChatMessage answer) {
+        lock.lock();
+        try {
+            Conversation conversation = conversation(user, insightId, clock.getAsLong());
+            conversation.turns.addLast(new ChatMessage[]{question, answer});
+            while (conversation.turns.size() > Math.max(0, config.getMaxTurns())) {
+                conversation.turns.removeFirst();
+            }
+            return ++conversation.asked;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getConversationCount() {
+        lock.lock();
+        try {
+            return conversationCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Conversation conversation(String user, String insightId, long now) {
+        UserConversations userConversations = users.get(user);
+        if (userConversations != null) {
+            expireIdle(userConversations, now);
+        }
+        Conversation conversation = userConversations != null ? userConversations.conversations.get(insightId) : null;
+        if (conversation == null) {
+            Seed seed = seeds.get(insightId);
+            if (seed == null) {
+                throw new ConversationNotFoundException(insightId);
+            }
+            if (userConversations == null) {
+                userConversations = new UserConversations();
+                users.put(user, userConversations);
+            }
+            conversation = new Conversation(seed);
+            userConversations.conversations.put(insightId, conversation);
+            conversationCount++;
+            Iterator<Conversation> eldest = userConversations.conversations.values().iterator();
+            while (userConversations.conversations.size() > Math.max(1, config.getMaxConversationsPerUser())) {
+                eldest.next();
+                eldest.remove();
+                conversationCount--;
+                evictedByCapacity.increment();
+            }
+        }
+        conversation.lastUsedNanos = now;
+        userConversations.lastUsedNanos = now;
+        return conversation;
+    }
+
+    /**
+     * Удаляет пользователей без вопросов дольше idle-timeout. Пользователи и их диалоги упорядочены
+     * по давности использования, поэтому просмотр останавливается на первом активном;
+     * устаревшие диалоги активного пользователя удаляются при его следующем вопросе
+     */
+    private void expireIdle(long now) {
+        Iterator<UserConversations> userIterator = users.values().iterator();
+        while (userIterator.hasNext()) {
+            UserConversations userConversations = userIterator.next();
+            if (now - userConversations.lastUsedNanos <= idleTimeoutNanos) {
+                break;
+            }
+            conversationCount -= userConversations.conversations.size();
+            evictedByIdle.increment(userConversations.conversations.size());
+            userIterator.remove();
+        }
+    }
+
+    private void expireIdle(UserConversations userConversations, long now) {
+        Iterator<Conversation> iterator = userConversations.conversations.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastUsedNanos <= idleTimeoutNanos) {
+                break;
+            }
+            iterator.remove();
+            conversationCount--;
+            evictedByIdle.increment();
+        }
+    }
+
+    /**
+     * Диалог для запроса к модели
+     *
+     * @param topic тема инсайта
+     * @param model модель, сгенерировавшая инсайт
+     * @param messages начало диалога с инсайтом и последние вопросы с ответами
+     * @param asked число уже заданных вопросов
+     */
+    public record Snapshot(String topic, String model, List<ChatMessage> messages, int asked) {
+    }
+
+    private record Seed(String topic, String model, List<ChatMessage> messages) {
+    }
+
+    private static final class Conversation {
+        private final Seed seed;
+        private final Deque<ChatMessage[]> turns = new ArrayDeque<>();
+        private int asked;
+        private long lastUsedNanos;
+
+        private Conversation(Seed seed) {
+            this.seed = seed;
+        }
+    }
+
+    private static final class UserConversations {
+        private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(8, 0.75f, true);
+        private long lastUsedNanos;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.springbootapp.idempotency;
+
+/**
+ * Ключ идемпотентности уже использован пользователем для запроса с другим телом
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String header) {
+        super("Ключ " + header + " уже использован для другого запроса: для нового запроса нужен новый ключ");
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.springbootapp.idempotency;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Ключи идемпотентности запросов генерации (заголовок Idempotency-Key).
+ * <p>
+ * Первый запрос пользователя с ключом запускает генерацию, а ее результат хранится в памяти
+ * insights.idempotency.ttl от этого запроса. Повтор с тем же ключом и тем же телом не запускает новую
+ * генерацию: пока она идет, повтор присоединяется к ней, а после завершения сразу получает ее результат.
+ * Повтор с тем же ключом и другим телом отклоняется. Генерация, завершившаяся ошибкой, не сохраняется:
+ * ни Mono.error, ни ответ с полем error: true (так сервис сообщает о недоступности Ollama и ошибках
+ * разбора), - следующий повтор запускает ее заново.
+ * <p>
+ * Генерация с ключом не отменяется, когда клиент отключается: клиент, передавший ключ, собирается
+ * повторить запрос. Она ограничена крайним сроком первого запроса
+ */
+@Component
+public class IdempotencyKeys {
+
+    static final String STARTED = "started";
+    static final String ATTACHED = "attached";
+    static final String REPLAYED = "replayed";
+    static final String CONFLICT = "conflict";
+
+    // Ключи вложенных карт сортируются, поэтому отпечаток не зависит от порядка полей в теле запроса
+    private static final ObjectMapper FINGERPRINT_MAPPER = new ObjectMapper()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final InsightConfig.Idempotency config;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Counter started;
+    private final Counter attached;
+    private final Counter replayed;
+    private final Counter conflicts;
+
+    // Поля ниже защищены lock; ключи упорядочены по времени первого запроса
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Scope, Execution> executions;
+
+    public IdempotencyKeys(InsightConfig insightConfig, MeterRegistry registry) {
+        this(insightConfig, registry, System::nanoTime);
+    }
+
+    IdempotencyKeys(InsightConfig insightConfig, MeterRegistry registry, LongSupplier clock) {
+        this.config = insightConfig.getIdempotency();
+        this.ttlNanos = config.getTtl().toNanos();
+        this.clock = clock;
+        int maxKeys = Math.max(1, config.getMaxKeys());
+        this.executions = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Scope, Execution> eldest) {
+                return size() > maxKeys;
+            }
+        };
+        Gauge.builder("insight.idempotency.keys", this, IdempotencyKeys::getKeyCount)
+                .description("Количество ключей идемпотентности в памяти")
+                .register(registry);
+        this.started = requestCounter(registry, STARTED);
+        this.attached = requestCounter(registry, ATTACHED);
+        this.replayed = requestCounter(registry, REPLAYED);
+        this.conflicts = requestCounter(registry, CONFLICT);
+    }
+
+    private static Counter requestCounter(MeterRegistry registry, String result) {
+        return Counter.builder("insight.idempotency.requests")
+                .description("Запросы с ключом идемпотентности по результату поиска ключа")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    public String getHeader() {
+        return config.getHeader();
+    }
+
+    /**
+     * Отпечаток тела запроса генерации: тема и параметры в JSON с ключами карт по алфавиту на всех уровнях.
+     * Значения сравниваются как есть: 0.7 и "0.7" дают разные отпечатки
+     *
+     * @param topic тема запроса
+     * @param parameters параметры генерации, в том числе вложенные
+     * @return отпечаток для {@link #execute}
+     */
+    public static String fingerprint(String topic, Map<String, Object> parameters) {
+        try {
+            return FINGERPRINT_MAPPER.writeValueAsString(Map.of("topic", topic, "parameters", parameters));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Параметры запроса не сериализуются: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Выполняет запрос с ключом идемпотентности или присоединяет его к уже выполненному
+     *
+     * @param user пользователь; ключи разных пользователей не пересекаются
+     * @param key значение заголовка или null, если заголовка нет
+     * @param fingerprint отпечаток тела запроса; повтор должен иметь тот же отпечаток
+     * @param call запуск генерации
+     * @return результат генерации первого запроса с этим ключом; IdempotencyKeyReusedException,
+     *         если ключ использован для запроса с другим отпечатком
+     * @throws IllegalArgumentException если ключ пустой или длиннее insights.idempotency.max-key-length
+     */
+    public Mono<Map<String, Object>> execute(String user, String key, String fingerprint,
+                                             Supplier<Mono<Map<String, Object>>> call) {
+        if (!config.isEnabled() || key == null) {
+            return call.get();
+        }
+        if (key.isBlank() || key.length() > config.getMaxKeyLength()) {
+            throw new IllegalArgumentException("Заголовок " + config.getHeader()
+                    + " должен быть непустым и не длиннее " + config.getMaxKeyLength() + " символов");
+        }
+        Scope scope = new Scope(user, key);
+        Execution execution;
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            expire(now);
+            Execution existing = executions.get(scope);
+            if (existing != null) {
+                if (!existing.fingerprint.equals(fingerprint)) {
+                    conflicts.increment();
+                    return Mono.error(new IdempotencyKeyReusedException(config.getHeader()));
+                }
+                (existing.done ? replayed : attached).increment();
+                return existing.result.asMono();
+            }
+            execution = new Execution(fingerprint, now);
+            executions.put(scope, execution);
+        } finally {
+            lock.unlock();
+        }
+
+        started.increment();
+        Mono<Map<String, Object>> generation;
+        try {
+            generation = call.get();
+        } catch (RuntimeException e) {
+            // Недопустимые параметры: запрос не выполнялся, и повтор должен получить ту же ошибку
+            remove(scope, execution);
+            throw e;
+        }
+        generation.subscribe(
+                value -> {
+                    if (Boolean.TRUE.equals(value.get("error"))) {
+                        // Ошибка в теле ответа: повтор должен запустить генерацию заново
+                        remove(scope, execution);
+                    } else {
+                        execution.done = true;
+                    }
+                    execution.result.tryEmitValue(value);
+                },
+                error -> {
+                    remove(scope, execution);
+                    execution.result.tryEmitError(error);
+                },
+                () -> {
+                    execution.done = true;
+                    execution.result.tryEmitEmpty();
+                });
+        return execution.result.asMono();
+    }
+
+    public int getKeyCount() {
+        lock.lock();
+        try {
+            return executions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expire(long now) {
+        Iterator<Execution> eldest = executions.values().iterator();
+        while (eldest.hasNext()) {
+            if (now - eldest.next().createdAt < ttlNanos) {
+                break;
+            }
+            eldest.remove();
+        }
+    }
+
+    private void remove(Scope scope, Execution execution) {
+        lock.lock();
+        try {
+            executions.remove(scope, execution);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Scope(String user, String key) {
+    }
+
+    private static final class Execution {
+        final String fingerprint;
+        final long createdAt;
+        final Sinks.One<Map<String, Object>> result = Sinks.one();
+        volatile boolean done;
+
+        Execution(String fingerprint, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.springbootapp.metrics;
+
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.model.NeuralApiResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Метрики инференса Ollama: время запроса к API с тегом исхода, количество токенов,
+ * скорость генерации, время загрузки модели и оценки промпта.
+ * Счетчики генерации берутся из ответа /api/generate
+ */
+@Component
+public class OllamaMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_TIMEOUT = "timeout";
+    public static final String OUTCOME_HTTP_ERROR = "http-error";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+    public static final String OUTCOME_ERROR = "error";
+
+    // Исходы генераций для счетчика ollama.generations
+    public static final String GENERATION_COMPLETED = "completed";
+    public static final String GENERATION_CANCELLED = "cancelled";
+    public static final String GENERATION_DEADLINE_EXCEEDED = "deadline-exceeded";
+    public static final String GENERATION_FAILED = "failed";
+
+    // Расположение инструкций в запросе для тега prompt метрик оценки промпта
+    public static final String PROMPT_SYSTEM = "system";
+    public static final String PROMPT_INLINE = "inline";
+    // Продолжение диалога через /api/chat
+    public static final String PROMPT_CHAT = "chat";
+
+    private static final String UNKNOWN_MODEL = "unknown";
+
+    private final MeterRegistry registry;
+    private final Duration[] sloBuckets;
+
+    // Метры кэшируются по модели, чтобы не собирать идентификаторы метрик на каждый запрос
+    private final Map<String, GenerationMeters> generationMeters = new ConcurrentHashMap<>();
+    private final Map<String, PromptMeters> promptMeters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> generationOutcomes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> parseFallbacks = new ConcurrentHashMap<>();
+
+    public OllamaMetrics(MeterRegistry registry, OllamaConfig ollamaConfig) {
+        this.registry = registry;
+        List<Duration> slo = ollamaConfig.getMetrics().getSlo();
+        this.sloBuckets = slo == null ? new Duration[0] : slo.toArray(new Duration[0]);
+    }
+
+    /**
+     * Записывает время запроса к Ollama API от подписки до завершения
+     *
+     * @param model модель, к которой выполнялся запрос
+     * @param outcome исход запроса (одна из констант OUTCOME_*)
+     * @param nanos длительность запроса в наносекундах
+     */
+    public void recordRequest(String model, String outcome, long nanos) {
+        String modelTag = model == null || model.isEmpty() ? UNKNOWN_MODEL : model;
+        requestTimers.computeIfAbsent(modelTag + '|' + outcome, k -> Timer.builder("ollama.api.request")
+                        .description("Время выполнения запросов к Ollama API")
+                        .tag("model", modelTag)
+                        .tag("outcome", outcome)
+                        .serviceLevelObjectives(sloBuckets)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Учитывает исход генерации: завершена, отменена клиентом, прервана по крайнему сроку или с ошибкой.
+     * Доля отмененных генераций показывает, сколько мощности модели тратится на ответы, которые никто не прочитает
+     *
+     * @param outcome исход генерации (одна из констант GENERATION_*)
+     */
+    public void recordGenerationOutcome(String outcome) {
+        generationOutcomes.computeIfAbsent(outcome, o -> Counter.builder("ollama.generations")
+                        .description("Количество генераций Ollama по исходу")
+                        .tag("outcome", o)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Учитывает ответ, в котором не нашлось валидного JSON и данные извлечены резервным разбором текста
+     *
+     * @param model модель, сформировавшая ответ
+     */
+    public void recordParseFallback(String model) {
+        String modelTag = model == null || model.isEmpty() ? UNKNOWN_MODEL : model;
+        parseFallbacks.computeIfAbsent(modelTag, m -> Counter.builder("ollama.response.parse.fallback")
+                        .description("Количество ответов Ollama, разобранных резервным методом")
+                        .tag("model", m)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Определяет исход запроса по ошибке, с которой завершился вызов Ollama API
+     *
+     * @param error ошибка запроса
+     * @return timeout, http-error или error
+     */
+    public static String outcomeOf(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t.getClass().getSimpleName().contains("Timeout")) {
+                return OUTCOME_TIMEOUT;
+            }
+            if (t instanceof WebClientResponseException) {
+                return OUTCOME_HTTP_ERROR;
+            }
+        }
+        return OUTCOME_ERROR;
+    }
+
+    /**
+     * Записывает счетчики генерации из ответа Ollama.
+     * Поля, которые Ollama не вернула (например, при ошибке), пропускаются
+     *
+     * @param response ответ от Ollama API
+     */
+    public void recordGeneration(NeuralApiResponse response) {
+        recordGeneration(response, PROMPT_INLINE);
+    }
+
+    /**
+     * Записывает счетчики генерации из ответа Ollama. Метрики оценки промпта (ollama.tokens.prompt,
+     * ollama.prompt.eval.duration) получают тег prompt с расположением инструкций, чтобы сравнивать
+     * время оценки промпта с инструкциями в поле system и внутри промпта
+     *
+     * @param response ответ от Ollama API
+     * @param promptLayout PROMPT_SYSTEM, PROMPT_INLINE или PROMPT_CHAT
+     */
+    public void recordGeneration(NeuralApiResponse response, String promptLayout) {
+        if (response == null) {
+            return;
+        }
+        GenerationMeters meters = metersFor(response.getModel());
+
+        if (response.getEvalCount() != null) {
+            meters.tokensGenerated.increment(response.getEvalCount());
+            if (response.getEvalDuration() != null && response.getEvalDuration() > 0) {
+                meters.tokensPerSecond.record(
+                        response.getEvalCount() * 1_000_000_000.0 / response.getEvalDuration());
+            }
+        }
+        PromptMeters prompt = promptMetersFor(response.getModel(), promptLayout);
+        if (response.getPromptEvalCount() != null) {
+            prompt.promptTokens.increment(response.getPromptEvalCount());
+        }
+        recordNanos(meters.loadDuration, response.getLoadDuration());
+        recordNanos(prompt.promptEvalDuration, response.getPromptEvalDuration());
+        recordNanos(meters.evalDuration, response.getEvalDuration());
+        recordNanos(meters.totalDuration, response.getTotalDuration());
+    }
+
+    private static void recordNanos(Timer timer, Long nanos) {
+        if (nanos != null && nanos >= 0) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private GenerationMeters metersFor(String model) {
+        String tag = model == null || model.isEmpty() ? UNKNOWN_MODEL : model;
+        return generationMeters.computeIfAbsent(tag, m -> new GenerationMeters(registry, m));
+    }
+
+    private PromptMeters promptMetersFor(String model, String promptLayout) {
+        String tag = model == null || model.isEmpty() ? UNKNOWN_MODEL : model;
+        return promptMeters.computeIfAbsent(tag + '|' + promptLayout,
+                k -> new PromptMeters(registry, tag, promptLayout));
+    }
+
+    /**
+     * Набор метрик генерации для одной модели
+     */
+    private static final class GenerationMeters {
+        private final Counter tokensGenerated;
+        private final DistributionSummary tokensPerSecond;
+        private final Timer loadDuration;
+        private final Timer evalDuration;
+        private final Timer totalDuration;
+
+        private GenerationMeters(MeterRegistry registry, String model) {
+            this.tokensGenerated = Counter.builder("ollama.tokens.generated")
+                    .description("Количество сгенерированных токенов (eval_count)")
+                    .baseUnit("tokens")
+                    .tag("model", model)
+                    .register(registry);
+            this.tokensPerSecond = DistributionSummary.builder("ollama.tokens.per.second")
+                    .description("Скорость генерации токенов (eval_count / eval_duration)")
+                    .baseUnit("tokens/s")
+                    .tag("model", model)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.loadDuration = timer(registry, "ollama.model.load.duration",
+                    "Время загрузки модели (load_duration)", model);
+            this.evalDuration = timer(registry, "ollama.eval.duration",
+                    "Время генерации ответа (eval_duration)", model);
+            this.totalDuration = timer(registry, "ollama.total.duration",
+                    "Полное время обработки запроса на стороне Ollama (total_duration)", model);
+        }
+
+        private static Timer timer(MeterRegistry registry, String name, String description, String model) {
+            return Timer.builder(name)
+                    .description(description)
+                    .tag("model", model)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Метрики оценки промпта для одной модели и расположения инструкций
+     */
+    private static final class PromptMeters {
+        private final Counter promptTokens;
+        private final Timer promptEvalDuration;
+
+        private PromptMeters(MeterRegistry registry, String model, String promptLayout) {
+            this.promptTokens = Counter.builder("ollama.tokens.prompt")
+                    .description("Количество токенов промпта, оцененных моделью (prompt_eval_count)")
+                    .baseUnit("tokens")
+                    .tag("model", model)
+                    .tag("prompt", promptLayout)
+                    .register(registry);
+            this.promptEvalDuration = Timer.builder("ollama.prompt.eval.duration")
+                    .description("Время оценки промпта (prompt_eval_duration)")
+                    .tag("model", model)
+                    .tag("prompt", promptLayout)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.springbootapp.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтр, собирающий тайминги стадий запросов к /api/insights.
+ * Тайминги публикуются в гистограмму insight.stage.duration и в заголовок Server-Timing.
+ * Тело ответа буферизуется, чтобы в заголовок попало и время сериализации,
+ * поэтому потоковый /api/insights/stream фильтром не обрабатывается
+ */
+@Component
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private static final String PATH_PREFIX = "/api/insights";
+    // Потоковый ответ нельзя буферизовать: клиент должен получать события по мере генерации
+    private static final String STREAM_PATH = PATH_PREFIX + "/stream";
+    private static final String TIMINGS_ATTRIBUTE = ServerTimingFilter.class.getName() + ".TIMINGS";
+
+    private final Timer[] stageTimers = new Timer[StageTimings.STAGES.length];
+
+    public ServerTimingFilter(MeterRegistry registry) {
+        for (StageTimings.Stage stage : StageTimings.STAGES) {
+            stageTimers[stage.ordinal()] = Timer.builder("insight.stage.duration")
+                    .description("Время выполнения стадии обработки запроса на получение инсайтов")
+                    .tag("stage", stage.getMetricName())
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith(PATH_PREFIX) || path.equals(STREAM_PATH);
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        StageTimings timings = (StageTimings) request.getAttribute(TIMINGS_ATTRIBUTE);
+        if (timings == null) {
+            timings = StageTimings.start();
+            request.setAttribute(TIMINGS_ATTRIBUTE, timings);
+        }
+
+        HttpServletResponse responseToUse = response;
+        if (WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class) == null) {
+            responseToUse = new ContentCachingResponseWrapper(response);
+        }
+
+        StageTimings.bind(timings);
+        try {
+            filterChain.doFilter(request, responseToUse);
+        } finally {
+            StageTimings.unbind();
+            if (!isAsyncStarted(request)) {
+                completeResponse(timings, responseToUse);
+            }
+        }
+    }
+
+    private void completeResponse(StageTimings timings, HttpServletResponse response) throws IOException {
+        long now = System.nanoTime();
+        long bodyWriteStart = timings.getBodyWriteStartNanos();
+        if (bodyWriteStart > 0) {
+            timings.record(StageTimings.Stage.SERIALIZE, now - bodyWriteStart);
+        }
+
+        for (StageTimings.Stage stage : StageTimings.STAGES) {
+            long nanos = timings.getNanos(stage);
+            if (nanos > 0) {
+                stageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        ContentCachingResponseWrapper wrapper =
+                WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+        if (wrapper != null) {
+            if (!wrapper.isCommitted()) {
+                wrapper.setHeader(SERVER_TIMING_HEADER, timings.toServerTimingHeader(now - timings.getStartNanos()));
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.springbootapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Тайминги стадий обработки одного запроса на получение инсайтов.
+ * Экземпляр создается фильтром {@link ServerTimingFilter} на каждый запрос и привязывается к потоку;
+ * стадии, выполняемые в реактивных потоках, записывают время в экземпляр, полученный
+ * через {@link #current()} в потоке запроса.
+ * Вне запроса {@link #current()} возвращает отключенный экземпляр, который игнорирует записи
+ */
+public final class StageTimings {
+
+    /**
+     * Стадии конвейера получения инсайтов
+     */
+    public enum Stage {
+        CACHE("cache", "Поиск в кэше"),
+        QUEUE("queue", "Ожидание в очереди"),
+        OLLAMA("ollama", "Запрос к Ollama"),
+        PARSE("parse", "Извлечение JSON"),
+        SERIALIZE("serialize", "Сериализация ответа");
+
+        private final String metricName;
+        private final String description;
+
+        Stage(String metricName, String description) {
+            this.metricName = metricName;
+            this.description = description;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    static final Stage[] STAGES = Stage.values();
+
+    private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+    private static final StageTimings DISABLED = new StageTimings(false);
+
+    private final boolean enabled;
+    private final long startNanos;
+    // Суммарное время по стадиям в наносекундах; 0 - стадия не выполнялась
+    private final AtomicLongArray stageNanos = new AtomicLongArray(STAGES.length);
+    private volatile long bodyWriteStartNanos;
+
+    private StageTimings(boolean enabled) {
+        this.enabled = enabled;
+        this.startNanos = enabled ? System.nanoTime() : 0L;
+    }
+
+    static StageTimings start() {
+        return new StageTimings(true);
+    }
+
+    /**
+     * Возвращает тайминги текущего запроса или отключенный экземпляр, если запрос не отслеживается
+     *
+     * @return тайминги текущего запроса
+     */
+    public static StageTimings current() {
+        StageTimings timings = CURRENT.get();
+        return timings != null ? timings : DISABLED;
+    }
+
+    /**
+     * Отключенный экземпляр для фоновых запросов, которые не относятся к запросу клиента
+     * и не должны попадать в его тайминги
+     *
+     * @return тайминги, которые ничего не записывают
+     */
+    public static StageTimings disabled() {
+        return DISABLED;
+    }
+
+    static void bind(StageTimings timings) {
+        CURRENT.set(timings);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Добавляет время выполнения стадии
+     *
+     * @param stage стадия
+     * @param nanos длительность в наносекундах
+     */
+    public void record(Stage stage, long nanos) {
+        if (enabled && nanos > 0) {
+            stageNanos.addAndGet(stage.ordinal(), nanos);
+        }
+    }
+
+    /**
+     * Добавляет время стадии, начавшейся в момент startNanos (по System.nanoTime())
+     *
+     * @param stage стадия
+     * @param startNanos момент начала стадии
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        if (enabled) {
+            record(stage, System.nanoTime() - startNanos);
+        }
+    }
+
+    public long getNanos(Stage stage) {
+        return stageNanos.get(stage.ordinal());
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Отмечает момент начала записи тела ответа (начало стадии сериализации)
+     */
+    void markBodyWriteStart() {
+        if (enabled) {
+            bodyWriteStartNanos = System.nanoTime();
+        }
+    }
+
+    long getBodyWriteStartNanos() {
+        return bodyWriteStartNanos;
+    }
+
+    /**
+     * Формирует значение заголовка Server-Timing по выполненным стадиям
+     *
+     * @param totalNanos общее время обработки запроса
+     * @return значение заголовка, например {@code cache;dur=0.04, ollama;dur=2310.5, total;dur=2312.9}
+     */
+    String toServerTimingHeader(long totalNanos) {
+        StringBuilder header = new StringBuilder(128);
+        for (Stage stage : STAGES) {
+            long nanos = getNanos(stage);
+            if (nanos > 0) {
+                appendMetric(header, stage.getMetricName(), nanos);
+            }
+        }
+        appendMetric(header, "total", totalNanos);
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        // Длительность в миллисекундах с точностью до сотых
+        long hundredths = nanos / 10_000;
+        header.append(name).append(";dur=").append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+}
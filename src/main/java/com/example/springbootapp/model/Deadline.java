@@ -0,0 +1,76 @@
+package com.example.springbootapp.model;
+
+import java.time.Duration;
+
+/**
+ * Крайний срок обработки запроса на получение инсайтов.
+ * Передается по всему конвейеру вплоть до запроса к Ollama, чтобы генерация, результат которой
+ * клиент уже не дождется, отменялась, а не занимала модель
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(0L, false);
+
+    // Момент истечения по System.nanoTime()
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private Deadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Крайний срок через заданное время от текущего момента
+     *
+     * @param timeout время на обработку запроса
+     * @return крайний срок
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+    }
+
+    /**
+     * Отсутствие крайнего срока: ограничением служат только таймауты клиента Ollama
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Оставшееся время; для неограниченного срока - null
+     */
+    public Duration remaining() {
+        if (!bounded) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(0L, deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return bounded && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Ограничивает таймаут оставшимся до крайнего срока временем
+     *
+     * @param timeout собственный таймаут операции
+     * @return меньшее из таймаута и оставшегося времени
+     */
+    public Duration cap(Duration timeout) {
+        Duration remaining = remaining();
+        if (remaining == null) {
+            return timeout;
+        }
+        return timeout == null || remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? "Deadline{remaining=" + remaining().toMillis() + "ms}" : "Deadline{none}";
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.springbootapp.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Проверенные параметры генерации: модель, опции Ollama (options в запросе /api/generate)
+ * и запрошенные разделы инсайта.
+ * Значения опций нормализованы, поэтому одинаковые по смыслу параметры дают одинаковый ключ кэша
+ */
+public final class GenerationParameters {
+
+    /**
+     * Разделы инсайта в порядке генерации
+     */
+    public static final List<String> INSIGHT_FIELDS = List.of("overview", "keyConcepts", "facts", "applications");
+
+    private final String model;
+    private final SortedMap<String, Object> options;
+    private final SortedSet<String> fields;
+
+    public GenerationParameters(String model, Map<String, Object> options) {
+        this(model, options, Set.of());
+    }
+
+    /**
+     * @param fields запрошенные разделы из {@link #INSIGHT_FIELDS}; пустой набор или все разделы - полный инсайт
+     */
+    public GenerationParameters(String model, Map<String, Object> options, Collection<String> fields) {
+        this.model = Objects.requireNonNull(model, "model");
+        this.options = Collections.unmodifiableSortedMap(new TreeMap<>(options));
+        this.fields = fields.containsAll(INSIGHT_FIELDS)
+                ? Collections.emptySortedSet() : Collections.unmodifiableSortedSet(new TreeSet<>(fields));
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Опции для поля options запроса к Ollama, отсортированные по имени
+     */
+    public SortedMap<String, Object> getOptions() {
+        return options;
+    }
+
+    /**
+     * Запрошенные разделы инсайта, отсортированные по имени; пустой набор - все разделы
+     */
+    public SortedSet<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Запрошен ли раздел инсайта
+     */
+    public boolean includes(String field) {
+        return fields.isEmpty() || fields.contains(field);
+    }
+
+    /**
+     * Те же параметры для полного инсайта: его запись в кэше содержит все разделы и подходит
+     * для запроса любого их подмножества
+     */
+    public GenerationParameters withAllFields() {
+        return fields.isEmpty() ? this : new GenerationParameters(model, options);
+    }
+
+    /**
+     * Опции в каноническом виде для ключа кэша и истории
+     *
+     * @return строка вида {@code num_predict=300,temperature=0.2} (пустая, если опций нет)
+     */
+    public String optionsKey() {
+        StringBuilder key = new StringBuilder(32);
+        appendOptions(key);
+        return key.toString();
+    }
+
+    /**
+     * Ключ кэша инсайтов для темы.
+     * Тема стоит последней: имя модели, опции и разделы не содержат разделителя, поэтому ключи разных
+     * комбинаций не совпадают, какой бы ни была тема
+     *
+     * @param topic тема запроса
+     * @return ключ вида {@code llama3|num_predict=300,temperature=0.2|тема},
+     *         для части разделов - {@code llama3|temperature=0.2;fields=facts,overview|тема}
+     */
+    public String cacheKey(String topic) {
+        StringBuilder key = new StringBuilder(model.length() + 32 + (topic == null ? 0 : topic.length()));
+        key.append(model).append('|');
+        appendOptions(key);
+        if (!fields.isEmpty()) {
+            key.append(";fields=").append(String.join(",", fields));
+        }
+        return key.append('|').append(topic).toString();
+    }
+
+    private void appendOptions(StringBuilder key) {
+        boolean first = true;
+        for (Map.Entry<String, Object> option : options.entrySet()) {
+            if (!first) {
+                key.append(',');
+            }
+            key.append(option.getKey()).append('=').append(option.getValue());
+            first = false;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GenerationParameters that)) {
+            return false;
+        }
+        return model.equals(that.model) && options.equals(that.options) && fields.equals(that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(model, options, fields);
+    }
+
+    @Override
+    public String toString() {
+        return "GenerationParameters{model=" + model + ", options=" + options
+                + (fields.isEmpty() ? "" : ", fields=" + fields) + "}";
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.springbootapp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись истории сгенерированных инсайтов
+ * JPA-сущность для хранения в базе данных
+ */
+@Entity
+@Table(name = "insight_history")
+@Data
+@NoArgsConstructor
+public class InsightHistory {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 500)
+    private String topic;
+
+    @Column(nullable = false, length = 100)
+    private String model;
+
+    // Опции генерации в каноническом виде: num_predict=300,temperature=0.2
+    @Column(length = 500)
+    private String options;
+
+    @Column(length = 50)
+    private String username;
+
+    // Пользователь и полный текст запроса записей, созданных до появления topic и username;
+    // новые записи их не заполняют
+    @Column(name = "user_id", insertable = false, updatable = false)
+    private Long userId;
+
+    @Column(columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String query;
+
+    // Хэш ответа модели в insight_response_blob; сам ответ читается только по запросу
+    @Column(name = "response_hash", length = 64)
+    private String responseHash;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
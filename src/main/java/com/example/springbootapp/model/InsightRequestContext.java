@@ -0,0 +1,87 @@
+package com.example.springbootapp.model;
+
+import java.util.Locale;
+
+/**
+ * Контекст запроса на получение инсайтов: пользователь, класс приоритета и крайний срок.
+ * По нему планировщик генераций решает, в каком порядке запросы получают доступ к модели
+ */
+public final class InsightRequestContext {
+
+    public static final String SYSTEM_USER = "system";
+    public static final String ANONYMOUS_USER = "anonymous";
+
+    /**
+     * Класс приоритета запроса. Классы обслуживаются в порядке объявления:
+     * пока есть интерактивные запросы, пакетные и фоновые ждут
+     */
+    public enum Priority {
+        // Запросы пользователя, который ждет ответа на странице
+        INTERACTIVE,
+        // Пакетные задания (массовая генерация, выгрузки)
+        BATCH,
+        // Фоновое обновление кэша и прогрев
+        BACKGROUND;
+
+        public String getTagName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Разбирает класс приоритета из заголовка запроса
+         *
+         * @param value значение заголовка (interactive, batch, background) или null
+         * @return класс приоритета; INTERACTIVE, если значение не задано
+         * @throws IllegalArgumentException если значение не соответствует ни одному классу
+         */
+        public static Priority parse(String value) {
+            if (value == null || value.isBlank()) {
+                return INTERACTIVE;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Неизвестный класс приоритета: " + value
+                        + ". Допустимые значения: interactive, batch, background");
+            }
+        }
+    }
+
+    private final String user;
+    private final Priority priority;
+    private final Deadline deadline;
+
+    private InsightRequestContext(String user, Priority priority, Deadline deadline) {
+        this.user = user == null || user.isEmpty() ? ANONYMOUS_USER : user;
+        this.priority = priority == null ? Priority.INTERACTIVE : priority;
+        this.deadline = deadline == null ? Deadline.none() : deadline;
+    }
+
+    public static InsightRequestContext of(String user, Priority priority, Deadline deadline) {
+        return new InsightRequestContext(user, priority, deadline);
+    }
+
+    /**
+     * Контекст внутренних вызовов без пользователя и крайнего срока
+     */
+    public static InsightRequestContext system() {
+        return new InsightRequestContext(SYSTEM_USER, Priority.INTERACTIVE, Deadline.none());
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public String toString() {
+        return "InsightRequestContext{user=" + user + ", priority=" + priority + ", deadline=" + deadline + "}";
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.springbootapp.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сжатый ответ модели, адресуемый по содержимому.
+ * Одинаковые ответы хранятся один раз, записи истории ссылаются на них по хэшу
+ */
+@Entity
+@Immutable
+@Table(name = "insight_response_blob")
+@Data
+@NoArgsConstructor
+public class InsightResponseBlob {
+    // SHA-256 текста ответа в UTF-8
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    // Кодек сжатия (InsightResponseCodec)
+    @Column(nullable = false, length = 20)
+    private String codec;
+
+    // Длина текста ответа в UTF-8
+    @Column(name = "raw_length", nullable = false)
+    private int rawLength;
+
+    @Column(nullable = false)
+    private byte[] data;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Время последнего сохранения записи истории с этим ответом; обновляется запросом touch
+    @Column(name = "last_used_at", nullable = false, insertable = false, updatable = false)
+    private LocalDateTime lastUsedAt;
+}
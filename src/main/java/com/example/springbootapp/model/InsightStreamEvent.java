@@ -0,0 +1,47 @@
+package com.example.springbootapp.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Событие потокового ответа /api/insights/stream
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InsightStreamEvent {
+
+    // Раздел инсайта сгенерирован полностью: field и value
+    public static final String FIELD = "field";
+    // Итоговый инсайт в том же виде, что и ответ /api/insights/generate; последнее событие потока
+    public static final String RESULT = "result";
+    // Ошибка генерации: message и status (HTTP-статус, который получил бы обычный запрос); последнее событие
+    public static final String ERROR = "error";
+
+    // field, result или error
+    private String event;
+    private Map<String, Object> data;
+
+    public static InsightStreamEvent field(String field, Object value) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("field", field);
+        data.put("value", value);
+        return new InsightStreamEvent(FIELD, data);
+    }
+
+    public static InsightStreamEvent result(Map<String, Object> insight) {
+        return new InsightStreamEvent(RESULT, insight);
+    }
+
+    public static InsightStreamEvent error(int status, String message) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("error", true);
+        data.put("status", status);
+        data.put("message", message);
+        return new InsightStreamEvent(ERROR, data);
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.springbootapp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,8 +17,29 @@ import lombok.NoArgsConstructor;
 public class NeuralApiResponse {
     private String model;
     private String response;
+    // Ответ модели в /api/chat приходит сообщением вместо поля response
+    private ChatMessage message;
     private boolean done;
     private String error;
+
+    // Счетчики и длительности генерации, которые Ollama возвращает в ответе /api/generate
+    // (все длительности в наносекундах)
+    @JsonProperty("total_duration")
+    private Long totalDuration;
+    @JsonProperty("load_duration")
+    private Long loadDuration;
+    @JsonProperty("prompt_eval_count")
+    private Integer promptEvalCount;
+    @JsonProperty("prompt_eval_duration")
+    private Long promptEvalDuration;
+    @JsonProperty("eval_count")
+    private Integer evalCount;
+    @JsonProperty("eval_duration")
+    private Long evalDuration;
+
+    // Время запроса к Ollama API от подписки до получения ответа (наносекунды), не сериализуется
+    @JsonIgnore
+    private Long latencyNanos;
     
     // Дополнительные поля для структурированного ответа
     private String overview;
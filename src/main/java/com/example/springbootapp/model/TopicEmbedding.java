@@ -0,0 +1,54 @@
+package com.example.springbootapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Сохраненный эмбеддинг темы для индекса связанных тем.
+ * После перезапуска индекс восстанавливается из этих записей без запросов к модели эмбеддингов
+ */
+@Entity
+@Table(name = "topic_embedding")
+@IdClass(TopicEmbedding.Key.class)
+@Data
+@NoArgsConstructor
+public class TopicEmbedding {
+    // Нормализованная тема - ключ индекса связанных тем
+    @Id
+    @Column(name = "topic_key", length = 500)
+    private String topicKey;
+
+    // Модель эмбеддингов; эмбеддинги разных моделей несравнимы и хранятся отдельно
+    @Id
+    @Column(length = 100)
+    private String model;
+
+    // Исходное написание темы
+    @Column(nullable = false, length = 500)
+    private String topic;
+
+    // Компоненты вектора float32 в порядке little-endian
+    @Column(nullable = false)
+    private byte[] vector;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * Ключ эмбеддинга: тема и модель
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String topicKey;
+        private String model;
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.springbootapp.related;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс приближенного поиска ближайших соседей по косинусному сходству (Hierarchical Navigable Small World).
+ * <p>
+ * Векторы нормализуются при добавлении, поэтому сходство - скалярное произведение. Компоненты хранятся
+ * байтами с масштабом на вектор: в четыре раза меньше памяти, чем float (миллион эмбеддингов
+ * размерности 768 занимает около 750 МБ вместо 3 ГБ), а поиск, который упирается в чтение векторов
+ * из памяти, реже промахивается мимо кэша процессора. Ошибка сходства от квантования - порядка тысячных.
+ * <p>
+ * Узлы образуют иерархию графов: верхние уровни редкие и служат для быстрого перехода в нужную область,
+ * на нижнем уровне поиск идет жадно со списком из ef лучших кандидатов. Время поиска растет
+ * логарифмически с числом векторов.
+ * <p>
+ * Поиски выполняются параллельно под блокировкой чтения, добавление - под блокировкой записи.
+ * Удаление не поддерживается
+ */
+public class HnswIndex {
+
+    private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(Candidate::distance);
+    private static final Comparator<Candidate> FARTHEST_FIRST = NEAREST_FIRST.reversed();
+
+    // Отметки посещенных узлов переиспользуются потоком между поисками
+    private static final ThreadLocal<Visited> VISITED = ThreadLocal.withInitial(Visited::new);
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Поля ниже изменяются только под блокировкой записи
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] keys = new String[16];
+    // Квантованные векторы: компонента = codes[i] * scales
+    private byte[][] codes = new byte[16][];
+    private float[] scales = new float[16];
+    // links[узел][уровень] - соседи узла; нулевой элемент хранит их число
+    private int[][][] links = new int[16][][];
+    private int size;
+    private int dimensions = -1;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * @param m число соседей узла на верхних уровнях (на нижнем - 2 * m)
+     * @param efConstruction ширина поиска соседей при добавлении
+     * @param seed начальное значение генератора уровней
+     */
+    public HnswIndex(int m, int efConstruction, long seed) {
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Добавляет вектор с ключом
+     *
+     * @return false, если ключ уже есть в индексе
+     * @throws IllegalArgumentException если размерность вектора отличается от размерности индекса
+     */
+    public boolean add(String key, float[] vector) {
+        Quantized quantized = quantize(vector);
+        lock.writeLock().lock();
+        try {
+            if (ids.containsKey(key)) {
+                return false;
+            }
+            if (dimensions < 0) {
+                dimensions = vector.length;
+            } else if (dimensions != vector.length) {
+                throw new IllegalArgumentException("Размерность вектора " + vector.length
+                        + " не совпадает с размерностью индекса " + dimensions);
+            }
+            insert(key, quantized);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return ids.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ближайшие соседи вектора
+     *
+     * @param vector вектор запроса
+     * @param k число соседей
+     * @param ef ширина поиска (не меньше k); чем больше, тем точнее и медленнее
+     * @return соседи по убыванию сходства
+     */
+    public List<Match> search(float[] vector, int k, int ef) {
+        Quantized query = quantize(vector);
+        lock.readLock().lock();
+        try {
+            if (size == 0 || vector.length != dimensions) {
+                return List.of();
+            }
+            return toMatches(searchFromTop(query, k, ef, -1), k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ближайшие соседи вектора, уже добавленного в индекс, без него самого
+     *
+     * @param key ключ вектора
+     * @param k число соседей
+     * @param ef ширина поиска
+     * @return соседи по убыванию сходства или пустой список, если ключа нет в индексе
+     */
+    public List<Match> searchByKey(String key, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            Integer id = ids.get(key);
+            if (id == null) {
+                return List.of();
+            }
+            return toMatches(searchFromTop(new Quantized(codes[id], scales[id]), k + 1, ef + 1, id), k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String key, Quantized vector) {
+        int id = size;
+        ensureCapacity(id + 1);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        keys[id] = key;
+        codes[id] = vector.codes;
+        scales[id] = vector.scale;
+        links[id] = new int[level + 1][];
+        for (int lc = 0; lc <= level; lc++) {
+            links[id][lc] = new int[maxNeighbors(lc) + 1];
+        }
+        ids.put(key, id);
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+
+        Candidate nearest = new Candidate(entryPoint, distance(vector, entryPoint));
+        for (int lc = maxLevel; lc > level; lc--) {
+            nearest = greedyStep(vector, nearest, lc);
+        }
+        for (int lc = Math.min(level, maxLevel); lc >= 0; lc--) {
+            List<Candidate> found = searchLayer(vector, nearest, efConstruction, lc, -1);
+            List<Candidate> neighbors = selectNeighbors(found, m);
+            for (Candidate neighbor : neighbors) {
+                connect(id, neighbor.id, lc);
+                connect(neighbor.id, id, lc);
+            }
+            nearest = found.get(0);
+        }
+        if (level > maxLevel) {
+            entryPoint = id;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Добавляет ребро from -> to. Если у узла слишком много соседей, оставляет разнообразный набор
+     * эвристикой выбора соседей
+     */
+    private void connect(int from, int to, int level) {
+        int[] list = links[from][level];
+        int count = list[0];
+        if (count < list.length - 1) {
+            list[count + 1] = to;
+            list[0] = count + 1;
+            return;
+        }
+        Quantized base = new Quantized(codes[from], scales[from]);
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new Candidate(list[i], distance(base, list[i])));
+        }
+        candidates.add(new Candidate(to, distance(base, to)));
+        candidates.sort(NEAREST_FIRST);
+        List<Candidate> kept = selectNeighbors(candidates, list.length - 1);
+        Arrays.fill(list, 0);
+        list[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            list[i + 1] = kept.get(i).id;
+        }
+    }
+
+    /**
+     * Эвристика выбора соседей: кандидат берется, только если он ближе к базовому узлу,
+     * чем к уже выбранным соседям. Так ребра ведут в разные стороны, и граф остается связным
+     *
+     * @param candidates кандидаты по возрастанию расстояния
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int limit) {
+        List<Candidate> selected = new ArrayList<>(limit);
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (distance(new Quantized(codes[candidate.id], scales[candidate.id]), chosen.id)
+                        < candidate.distance) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    private List<Candidate> searchFromTop(Quantized query, int k, int ef, int exclude) {
+        Candidate nearest = new Candidate(entryPoint, distance(query, entryPoint));
+        for (int lc = maxLevel; lc > 0; lc--) {
+            nearest = greedyStep(query, nearest, lc);
+        }
+        return searchLayer(query, nearest, Math.max(ef, k), 0, exclude);
+    }
+
+    private Candidate greedyStep(Quantized query, Candidate start, int level) {
+        Candidate current = start;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] list = links[current.id][level];
+            for (int i = 1; i <= list[0]; i++) {
+                float d = distance(query, list[i]);
+                if (d < current.distance) {
+                    current = new Candidate(list[i], d);
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Поиск на одном уровне графа со списком из ef лучших найденных узлов
+     *
+     * @param exclude узел, который не попадает в результат (-1 - без исключений)
+     * @return найденные узлы по возрастанию расстояния
+     */
+    private List<Candidate> searchLayer(Quantized query, Candidate start, int ef, int level, int exclude) {
+        Visited visited = VISITED.get();
+        visited.reset(size);
+        visited.mark(start.id);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FARTHEST_FIRST);
+        candidates.add(start);
+        if (start.id != exclude) {
+            results.add(start);
+        }
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.distance > results.peek().distance) {
+                break;
+            }
+            int[] list = links[current.id][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbor = list[i];
+                if (!visited.mark(neighbor)) {
+                    continue;
+                }
+                float d = distance(query, neighbor);
+                if (results.size() < ef || d < results.peek().distance) {
+                    Candidate candidate = new Candidate(neighbor, d);
+                    candidates.add(candidate);
+                    if (neighbor != exclude) {
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(NEAREST_FIRST);
+        return sorted;
+    }
+
+    private List<Match> toMatches(List<Candidate> candidates, int k) {
+        List<Match> matches = new ArrayList<>(Math.min(k, candidates.size()));
+        for (Candidate candidate : candidates) {
+            if (matches.size() >= k) {
+                break;
+            }
+            matches.add(new Match(keys[candidate.id], 1.0 - candidate.distance));
+        }
+        return matches;
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newLength = Math.max(capacity, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, newLength);
+            codes = Arrays.copyOf(codes, newLength);
+            scales = Arrays.copyOf(scales, newLength);
+            links = Arrays.copyOf(links, newLength);
+        }
+    }
+
+    /**
+     * Косинусное расстояние от вектора до узла
+     */
+    private float distance(Quantized query, int id) {
+        byte[] a = query.codes;
+        byte[] b = codes[id];
+        int dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1 - dot * query.scale * scales[id];
+    }
+
+    /**
+     * Нормализует вектор и квантует компоненты в [-127, 127] так, чтобы наибольшая по модулю
+     * компонента использовала весь диапазон
+     */
+    private static Quantized quantize(float[] vector) {
+        double norm = 0;
+        float maxAbs = 0;
+        for (float v : vector) {
+            norm += v * v;
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        byte[] codes = new byte[vector.length];
+        if (norm == 0) {
+            return new Quantized(codes, 0);
+        }
+        float scale = maxAbs / 127;
+        for (int i = 0; i < vector.length; i++) {
+            codes[i] = (byte) Math.round(vector[i] / scale);
+        }
+        return new Quantized(codes, (float) (scale / Math.sqrt(norm)));
+    }
+
+    /**
+     * Найденный ключ и его косинусное сходство с запросом
+     */
+    public record Match(String key, double similarity) {
+    }
+
+    private record Candidate(int id, float distance) {
+    }
+
+    private record Quantized(byte[] codes, float scale) {
+    }
+
+    /**
+     * Отметки посещенных узлов: узел посещен, если его отметка равна номеру текущего поиска.
+     * Массив не очищается между поисками
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        private void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return true, если узел еще не был посещен
+         */
+        private boolean mark(int id) {
+            if (marks[id] == epoch) {
+                return false;
+            }
+            marks[id] = epoch;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.springbootapp.related;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.TopicEmbedding;
+import com.example.springbootapp.repository.InsightHistoryRepository;
+import com.example.springbootapp.repository.TopicEmbeddingRepository;
+import com.example.springbootapp.scheduler.GenerationScheduler;
+import com.example.springbootapp.service.NeuralApiService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Связанные темы: темы, по которым уже есть инсайты, с эмбеддингами, близкими к эмбеддингу запрошенной темы.
+ * <p>
+ * Эмбеддинги тем (ollama.embedding.model) хранятся в памяти в индексе {@link HnswIndex} и в таблице
+ * topic_embedding. Новая тема добавляется в индекс в фоне после сохранения ее инсайта, не задерживая ответ.
+ * Запросы эмбеддингов проходят через {@link GenerationScheduler} с классом background и не отнимают
+ * слоты Ollama у интерактивных генераций. После запуска приложения индекс перестраивается в фоне
+ * по темам из insight_history: сохраненные эмбеддинги загружаются из базы, у модели запрашиваются
+ * только недостающие. Поиск по индексу не обращается к Ollama и занимает доли миллисекунды
+ */
+@Component
+public class RelatedTopics {
+
+    private static final Logger log = LoggerFactory.getLogger(RelatedTopics.class);
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private static final InsightRequestContext EMBEDDING_CONTEXT = InsightRequestContext.of(
+            InsightRequestContext.SYSTEM_USER, InsightRequestContext.Priority.BACKGROUND, Deadline.none());
+
+    private final NeuralApiService neuralApiService;
+    private final GenerationScheduler generationScheduler;
+    private final InsightHistoryRepository insightHistoryRepository;
+    private final TopicEmbeddingRepository topicEmbeddingRepository;
+    private final OllamaConfig.Embedding embeddingConfig;
+    private final InsightConfig.Related config;
+    private final HnswIndex index;
+    // Исходное написание темы по нормализованному ключу индекса
+    private final Map<String, String> topics = new ConcurrentHashMap<>();
+    // Темы, эмбеддинг которых уже запрошен: повторные запросы той же темы его не дублируют
+    private final Set<String> indexing = ConcurrentHashMap.newKeySet();
+    private final Timer lookupTimer;
+    private final Counter embeddingFailures;
+    private final AtomicReference<Disposable> rebuild = new AtomicReference<>();
+
+    public RelatedTopics(NeuralApiService neuralApiService, GenerationScheduler generationScheduler,
+                         InsightHistoryRepository insightHistoryRepository,
+                         TopicEmbeddingRepository topicEmbeddingRepository, OllamaConfig ollamaConfig,
+                         InsightConfig insightConfig, MeterRegistry registry) {
+        this.neuralApiService = neuralApiService;
+        this.generationScheduler = generationScheduler;
+        this.insightHistoryRepository = insightHistoryRepository;
+        this.topicEmbeddingRepository = topicEmbeddingRepository;
+        this.embeddingConfig = ollamaConfig.getEmbedding();
+        this.config = insightConfig.getRelated();
+        this.index = new HnswIndex(config.getM(), config.getEfConstruction(), System.nanoTime());
+        Gauge.builder("insight.related.index.size", index, HnswIndex::size)
+                .description("Количество тем в индексе связанных тем")
+                .register(registry);
+        this.lookupTimer = Timer.builder("insight.related.lookup")
+                .description("Время поиска связанных тем в индексе")
+                .register(registry);
+        this.embeddingFailures = Counter.builder("insight.related.embedding.failures")
+                .description("Количество тем, не добавленных в индекс из-за ошибки получения эмбеддинга")
+                .register(registry);
+    }
+
+    /**
+     * Добавляет тему в индекс, запрашивая ее эмбеддинг через планировщик генераций, и сохраняет эмбеддинг
+     * в базу. Ошибки не передаются подписчику: тема без эмбеддинга просто не участвует в связанных темах
+     *
+     * @param topic тема запроса
+     * @return Mono с true, если тема есть в индексе после завершения
+     */
+    public Mono<Boolean> index(String topic) {
+        if (!config.isEnabled() || topic == null || topic.isBlank()) {
+            return Mono.just(false);
+        }
+        String key = normalize(topic);
+        if (index.contains(key)) {
+            return Mono.just(true);
+        }
+        if (index.size() >= config.getMaxTopics() || !indexing.add(key)) {
+            return Mono.just(false);
+        }
+        String original = topic.trim();
+        return generationScheduler.submitTask(EMBEDDING_CONTEXT, "эмбеддинг темы " + original,
+                        () -> neuralApiService.requestEmbedding(original))
+                .flatMap(vector -> {
+                    add(key, original, vector);
+                    return persist(key, original, vector).thenReturn(true);
+                })
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    embeddingFailures.increment();
+                    log.debug("Не удалось добавить тему '{}' в индекс связанных тем: {}", topic, e.toString());
+                    return Mono.just(false);
+                })
+                .doFinally(signal -> indexing.remove(key));
+    }
+
+    /**
+     * Добавляет тему в индекс в фоне, не дожидаясь эмбеддинга
+     *
+     * @param topic тема, по которой сохранен инсайт
+     */
+    public void indexInBackground(String topic) {
+        index(topic).subscribe();
+    }
+
+    /**
+     * Темы, связанные с уже проиндексированной темой
+     *
+     * @param topic тема запроса
+     * @return до insights.related.limit тем по убыванию сходства: topic и similarity
+     */
+    public List<Map<String, Object>> relatedTo(String topic) {
+        if (!config.isEnabled() || topic == null) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        List<HnswIndex.Match> matches = index.searchByKey(normalize(topic), config.getLimit(), config.getEfSearch());
+        List<Map<String, Object>> related = new ArrayList<>(matches.size());
+        for (HnswIndex.Match match : matches) {
+            if (match.similarity() < config.getMinSimilarity()) {
+                break;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("topic", topics.getOrDefault(match.key(), match.key()));
+            entry.put("similarity", Math.round(match.similarity() * 1000) / 1000.0);
+            related.add(entry);
+        }
+        lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return related;
+    }
+
+    /**
+     * Перестраивает индекс по темам из insight_history после запуска приложения.
+     * Эмбеддинги тем берутся из topic_embedding, у модели запрашиваются только недостающие.
+     * Выполняется в фоне: до завершения связанные темы подбираются из уже добавленных
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        AtomicInteger restored = new AtomicInteger();
+        AtomicReference<String> after = new AtomicReference<>("");
+        Disposable task = Mono.fromCallable(() -> insightHistoryRepository.findTopicsAfter(
+                        after.get(), PageRequest.of(0, REBUILD_PAGE_SIZE)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(page -> {
+                    if (!page.isEmpty()) {
+                        after.set(page.get(page.size() - 1));
+                    }
+                })
+                .repeat()
+                .takeUntil(page -> page.size() < REBUILD_PAGE_SIZE)
+                .map(page -> restore(page, restored))
+                .concatMapIterable(missing -> missing, 1)
+                .take(config.getMaxTopics())
+                .flatMap(this::index, Math.max(1, config.getRebuildConcurrency()))
+                .then()
+                .subscribe(
+                        ignored -> { },
+                        e -> log.warn("Не удалось перестроить индекс связанных тем: {}", e.getMessage()),
+                        () -> log.info("Индекс связанных тем перестроен: {} тем, из них {} из сохраненных эмбеддингов,"
+                                        + " за {} мс", index.size(), restored.get(),
+                                (System.nanoTime() - start) / 1_000_000));
+        Disposable previous = rebuild.getAndSet(task);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Disposable task = rebuild.get();
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    /**
+     * Добавляет в индекс темы страницы с сохраненными эмбеддингами текущей модели
+     *
+     * @return темы страницы, для которых эмбеддинг нужно запросить у модели
+     */
+    private List<String> restore(List<String> page, AtomicInteger restored) {
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (String topic : page) {
+            String key = normalize(topic);
+            if (!index.contains(key)) {
+                missing.putIfAbsent(key, topic);
+            }
+        }
+        if (missing.isEmpty()) {
+            return List.of();
+        }
+        for (TopicEmbedding stored : topicEmbeddingRepository.findByModelAndTopicKeyIn(
+                embeddingConfig.getModel(), missing.keySet())) {
+            if (index.size() >= config.getMaxTopics()) {
+                break;
+            }
+            add(stored.getTopicKey(), stored.getTopic(), decode(stored.getVector()));
+            missing.remove(stored.getTopicKey());
+            restored.incrementAndGet();
+        }
+        return new ArrayList<>(missing.values());
+    }
+
+    private void add(String key, String topic, float[] vector) {
+        topics.putIfAbsent(key, topic);
+        index.add(key, vector);
+    }
+
+    /**
+     * Сохраняет эмбеддинг в topic_embedding. Ошибка сохранения не мешает индексу:
+     * тема лишь получит эмбеддинг заново при следующем перестроении
+     */
+    private Mono<Void> persist(String key, String topic, float[] vector) {
+        return Mono.<Void>fromRunnable(() -> topicEmbeddingRepository.upsert(key, topic, embeddingConfig.getModel(),
+                        encode(vector)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.debug("Не удалось сохранить эмбеддинг темы '{}': {}", topic, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] decode(byte[] data) {
+        float[] vector = new float[data.length / Float.BYTES];
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private static String normalize(String topic) {
+        return topic.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.springbootapp.repository;
+
+import com.example.springbootapp.model.InsightHistory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * JPA-репозиторий для работы с историей инсайтов
+ */
+@Repository
+public interface InsightHistoryRepository extends JpaRepository<InsightHistory, Long> {
+
+    /**
+     * Различные темы истории по алфавиту, следующие за указанной (постраничный обход без OFFSET)
+     *
+     * @param after последняя тема предыдущей страницы или пустая строка для первой страницы
+     * @param page размер страницы
+     * @return темы страницы
+     */
+    @Query("select distinct h.topic from InsightHistory h where h.topic > :after order by h.topic")
+    List<String> findTopicsAfter(@Param("after") String after, Pageable page);
+}
@@ -0,0 +1,43 @@
+package com.example.springbootapp.repository;
+
+import com.example.springbootapp.model.InsightResponseBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * JPA-репозиторий сжатых ответов модели
+ */
+@Repository
+public interface InsightResponseBlobRepository extends JpaRepository<InsightResponseBlob, String> {
+
+    /**
+     * Отмечает повторное использование ответа. Очистка ответов без ссылок (InsightHistoryPartitions)
+     * не удаляет ответ, использованный недавно, поэтому запись истории, которая ссылается на него,
+     * не нарушит внешний ключ. Если очистка удаляет ответ одновременно, обновление дожидается ее
+     * и не находит строку
+     *
+     * @return 1, если ответ есть, 0 - если его нет и его нужно сохранить
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE insight_response_blob SET last_used_at = CURRENT_TIMESTAMP WHERE hash = :hash",
+            nativeQuery = true)
+    int touch(@Param("hash") String hash);
+
+    /**
+     * Сохраняет ответ, если ответа с таким хэшем еще нет. Одновременное сохранение одинаковых ответов
+     * не приводит к ошибке уникальности
+     *
+     * @return 1, если ответ сохранен, 0 - если уже был
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO insight_response_blob (hash, codec, raw_length, data) "
+            + "VALUES (:hash, :codec, :rawLength, :data) ON CONFLICT (hash) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash, @Param("codec") String codec,
+                       @Param("rawLength") int rawLength, @Param("data") byte[] data);
+}
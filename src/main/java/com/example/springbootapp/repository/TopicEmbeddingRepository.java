@@ -0,0 +1,42 @@
+package com.example.springbootapp.repository;
+
+import com.example.springbootapp.model.TopicEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JPA-репозиторий сохраненных эмбеддингов тем
+ */
+@Repository
+public interface TopicEmbeddingRepository extends JpaRepository<TopicEmbedding, TopicEmbedding.Key> {
+
+    /**
+     * Эмбеддинги тем, полученные указанной моделью
+     *
+     * @param model модель эмбеддингов
+     * @param topicKeys нормализованные темы
+     * @return найденные эмбеддинги; темы без эмбеддинга этой модели пропускаются
+     */
+    List<TopicEmbedding> findByModelAndTopicKeyIn(String model, Collection<String> topicKeys);
+
+    /**
+     * Сохраняет эмбеддинг темы, полученный моделью, заменяя прежний эмбеддинг той же модели
+     *
+     * @return число сохраненных записей
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO topic_embedding (topic_key, topic, model, vector) "
+            + "VALUES (:topicKey, :topic, :model, :vector) ON CONFLICT (topic_key, model) DO UPDATE "
+            + "SET topic = EXCLUDED.topic, vector = EXCLUDED.vector, "
+            + "created_at = CURRENT_TIMESTAMP", nativeQuery = true)
+    int upsert(@Param("topicKey") String topicKey, @Param("topic") String topic,
+               @Param("model") String model, @Param("vector") byte[] vector);
+}
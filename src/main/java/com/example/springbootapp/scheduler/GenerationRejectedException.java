@@ -0,0 +1,24 @@
+package com.example.springbootapp.scheduler;
+
+import java.time.Duration;
+
+/**
+ * Запрос не допущен в очередь генераций: очередь переполнена или ожидание превысит допустимое.
+ * Клиенту отвечают 503 с заголовком Retry-After
+ */
+public class GenerationRejectedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public GenerationRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Через сколько имеет смысл повторить запрос
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
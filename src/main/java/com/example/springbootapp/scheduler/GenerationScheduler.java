@@ -0,0 +1,591 @@
+package com.example.springbootapp.scheduler;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.metrics.StageTimings;
+import com.example.springbootapp.model.GenerationParameters;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightRequestContext.Priority;
+import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.service.NeuralApiService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Планировщик генераций перед {@link NeuralApiService}.
+ * Ограничивает число одновременных генераций в Ollama и выбирает, какой запрос запустить следующим:
+ * <ul>
+ *     <li>классы приоритета обслуживаются строго по порядку: interactive, batch, background;</li>
+ *     <li>внутри класса запросы разных пользователей чередуются по справедливой очереди
+ *     (start-time fair queuing): каждый запрос получает метку завершения
+ *     {@code max(V, F_user) + 1 / weight}, первым запускается запрос с наименьшей меткой,
+ *     поэтому пользователь с сотней запросов в очереди не задерживает пользователя с одним;</li>
+ *     <li>при равных метках первым идет запрос с меньшим num_predict (shortest job first),
+ *     затем - пришедший раньше.</li>
+ * </ul>
+ * Отмена подписки снимает запрос с очереди или прерывает уже запущенную генерацию.
+ * <p>
+ * Перед постановкой в очередь выполняется контроль допуска: ожидаемое время в очереди оценивается
+ * по числу запросов впереди и скользящему среднему длительности генерации. Если очередь переполнена
+ * или запрос не дождется генерации до своего срока (или insights.admission.max-queue-wait),
+ * он сразу отклоняется с {@link GenerationRejectedException}, не занимая место в очереди.
+ * <p>
+ * При остановке приложения планировщик перестает принимать новые генерации и в пределах
+ * insights.shutdown.drain-timeout дожидается уже принятых. Если клиент отключился во время остановки,
+ * генерация не прерывается, а ее результат передается обработчику, переданному в {@link #submit}.
+ * Генерации, не успевшие завершиться, отменяются, а их клиенты получают 503
+ */
+@Component
+public class GenerationScheduler implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationScheduler.class);
+
+    private static final String NUM_PREDICT = "num_predict";
+
+    // Вес нового измерения в скользящем среднем длительности генерации
+    private static final double SERVICE_TIME_ALPHA = 0.2;
+
+    static final String REJECT_QUEUE_FULL = "queue-full";
+    static final String REJECT_WAIT_TOO_LONG = "wait-too-long";
+    static final String REJECT_SHUTTING_DOWN = "shutting-down";
+
+    static final String DRAIN_COMPLETED = "completed";
+    static final String DRAIN_DETACHED = "detached";
+    static final String DRAIN_ABORTED = "aborted";
+
+    private final NeuralApiService neuralApiService;
+    private final int maxConcurrent;
+    private final boolean shortestJobFirst;
+    private final Map<String, Double> userWeights;
+    private final InsightConfig.Admission admission;
+    private final MeterRegistry registry;
+    private final Duration drainTimeout;
+
+    // Все поля ниже защищены lock
+    private final Object lock = new Object();
+    private final ClassQueue[] queues = new ClassQueue[Priority.values().length];
+    private int running;
+    private long sequence;
+    private double serviceTimeNanos;
+    private final Set<Job<?>> active = new HashSet<>();
+    private boolean draining;
+    private volatile boolean lifecycleRunning;
+
+    public GenerationScheduler(NeuralApiService neuralApiService, InsightConfig insightConfig, MeterRegistry registry) {
+        InsightConfig.Scheduler config = insightConfig.getScheduler();
+        this.neuralApiService = neuralApiService;
+        this.maxConcurrent = Math.max(1, config.getMaxConcurrent());
+        this.shortestJobFirst = config.isShortestJobFirst();
+        this.userWeights = config.getUserWeights() != null ? Map.copyOf(config.getUserWeights()) : Map.of();
+        this.admission = insightConfig.getAdmission();
+        this.registry = registry;
+        this.serviceTimeNanos = admission.getInitialServiceTime().toNanos();
+        this.drainTimeout = insightConfig.getShutdown().getDrainTimeout();
+
+        Comparator<Job<?>> order = Comparator.comparingDouble(job -> job.finishTag);
+        if (shortestJobFirst) {
+            order = order.thenComparingInt(job -> job.expectedTokens);
+        }
+        order = order.thenComparingLong(job -> job.sequence);
+        for (Priority priority : Priority.values()) {
+            queues[priority.ordinal()] = new ClassQueue(priority, order, registry);
+        }
+        Gauge.builder("insight.scheduler.running", this, GenerationScheduler::getRunning)
+                .description("Количество генераций, выполняемых в Ollama")
+                .register(registry);
+        Gauge.builder("insight.scheduler.service.time", this, s -> s.getEstimatedServiceTime().toNanos() / 1e9)
+                .description("Скользящее среднее длительности генерации, по которому оценивается ожидание в очереди")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("insight.shutdown.draining", this, s -> s.isDraining() ? 1 : 0)
+                .description("1, пока приложение дожидается генераций перед остановкой")
+                .register(registry);
+    }
+
+    /**
+     * Ставит генерацию в очередь. Запрос к Ollama выполняется, когда до него дойдет очередь;
+     * время ожидания записывается в стадию queue
+     *
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @param topic тема для анализа
+     * @param parameters проверенные параметры генерации
+     * @return Mono с ответом нейросети или ошибкой {@link GenerationRejectedException}, если запрос не допущен
+     */
+    public Mono<NeuralApiResponse> submit(InsightRequestContext context, String topic, GenerationParameters parameters) {
+        return submit(context, topic, parameters, response -> {
+        });
+    }
+
+    /**
+     * Ставит генерацию в очередь с обработчиком результата, оставшегося без подписчика
+     *
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @param topic тема для анализа
+     * @param parameters проверенные параметры генерации
+     * @param detachedResultHandler получает ответ генерации, от которой клиент отключился во время остановки
+     * @return Mono с ответом нейросети или ошибкой {@link GenerationRejectedException}, если запрос не допущен
+     */
+    public Mono<NeuralApiResponse> submit(InsightRequestContext context, String topic, GenerationParameters parameters,
+                                          Consumer<NeuralApiResponse> detachedResultHandler) {
+        return schedule(context, topic, parameters,
+                () -> neuralApiService.requestInsightsFromApi(topic, parameters, context.getDeadline()),
+                StageTimings.current(), detachedResultHandler);
+    }
+
+    /**
+     * Ставит в очередь произвольный запрос к модели (например, продолжение диалога через /api/chat).
+     * Запрос проходит тот же контроль допуска и занимает тот же слот, что и генерация инсайта
+     *
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @param description описание запроса для логов
+     * @param parameters проверенные параметры генерации (num_predict учитывается при выборе очередности)
+     * @param request запрос к модели, выполняемый при подписке
+     * @return Mono с ответом нейросети или ошибкой {@link GenerationRejectedException}, если запрос не допущен
+     */
+    public Mono<NeuralApiResponse> submit(InsightRequestContext context, String description,
+                                          GenerationParameters parameters,
+                                          Supplier<Mono<NeuralApiResponse>> request) {
+        return schedule(context, description, parameters, request, StageTimings.current(), response -> {
+        });
+    }
+
+    /**
+     * Ставит в очередь вспомогательный запрос к Ollama, не являющийся генерацией (например, эмбеддинг темы).
+     * Запрос проходит контроль допуска и занимает слот наравне с генерациями своего класса приоритета,
+     * но его длительность не учитывается в оценке ожидания в очереди
+     *
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @param description описание запроса для логов
+     * @param request запрос к модели, выполняемый при подписке
+     * @return Mono с результатом запроса или ошибкой {@link GenerationRejectedException}, если запрос не допущен
+     */
+    public <T> Mono<T> submitTask(InsightRequestContext context, String description, Supplier<Mono<T>> request) {
+        // Запрос выполняется вне запроса клиента, поэтому его ожидание не попадает в тайминги клиента
+        return schedule(context, description, null, request, StageTimings.disabled(), result -> {
+        });
+    }
+
+    private <T> Mono<T> schedule(InsightRequestContext context, String topic, GenerationParameters parameters,
+                                 Supplier<Mono<T>> request, StageTimings timings,
+                                 Consumer<T> detachedResultHandler) {
+        return Mono.<T>create(sink -> {
+            Job<T> job = new Job<>(context, topic, parameters, request, sink, timings, detachedResultHandler);
+            GenerationRejectedException rejection = enqueue(job);
+            if (rejection != null) {
+                sink.error(rejection);
+                return;
+            }
+            sink.onCancel(() -> cancel(job));
+            dispatch();
+        });
+    }
+
+    /**
+     * Количество запросов в очереди класса
+     */
+    public int getQueueDepth(Priority priority) {
+        synchronized (lock) {
+            return queues[priority.ordinal()].queue.size();
+        }
+    }
+
+    public int getRunning() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public boolean isDraining() {
+        synchronized (lock) {
+            return draining;
+        }
+    }
+
+    /**
+     * Скользящее среднее длительности генерации
+     */
+    public Duration getEstimatedServiceTime() {
+        synchronized (lock) {
+            return Duration.ofNanos((long) serviceTimeNanos);
+        }
+    }
+
+    /**
+     * Оценка ожидания в очереди для нового запроса класса: запросы своего и более приоритетных классов
+     * проходят по слотам партиями по maxConcurrent, каждая партия занимает в среднем serviceTime
+     */
+    public Duration estimateQueueWait(Priority priority) {
+        synchronized (lock) {
+            return Duration.ofNanos(estimateQueueWaitNanos(priority));
+        }
+    }
+
+    private long estimateQueueWaitNanos(Priority priority) {
+        int ahead = 0;
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            ahead += queues[i].queue.size();
+        }
+        if (ahead == 0 && running < maxConcurrent) {
+            return 0L;
+        }
+        long batches = (ahead + 1L + maxConcurrent - 1) / maxConcurrent;
+        return (long) (batches * serviceTimeNanos);
+    }
+
+    /**
+     * Проверяет допуск и ставит запрос в очередь
+     *
+     * @return причина отказа или null, если запрос поставлен в очередь
+     */
+    private GenerationRejectedException enqueue(Job<?> job) {
+        Priority priority = job.context.getPriority();
+        GenerationRejectedException rejection;
+        synchronized (lock) {
+            rejection = admit(job);
+            if (rejection == null) {
+                addToQueue(job);
+            }
+        }
+        if (rejection != null) {
+            log.debug("Запрос пользователя {} класса {} отклонен: {}", job.context.getUser(),
+                    priority.getTagName(), rejection.getMessage());
+        }
+        return rejection;
+    }
+
+    private GenerationRejectedException admit(Job<?> job) {
+        Priority priority = job.context.getPriority();
+        if (draining) {
+            countRejection(priority, REJECT_SHUTTING_DOWN);
+            return new GenerationRejectedException("Приложение останавливается", Duration.ofSeconds(1));
+        }
+        if (!admission.isEnabled()) {
+            return null;
+        }
+        long waitNanos = estimateQueueWaitNanos(priority);
+        Duration retryAfter = Duration.ofSeconds(Math.max(1L, (long) Math.ceil(waitNanos / 1e9)));
+
+        int queued = queuedTotal();
+        // Ограничение глубины действует, только если запросу действительно придется ждать
+        if (waitNanos > 0 && queued >= admission.getMaxQueueDepth()) {
+            countRejection(priority, REJECT_QUEUE_FULL);
+            return new GenerationRejectedException("Очередь генераций переполнена", retryAfter);
+        }
+
+        long limitNanos = admission.getMaxQueueWait().toNanos();
+        Duration remaining = job.context.getDeadline().remaining();
+        if (remaining != null) {
+            limitNanos = Math.min(limitNanos, remaining.toNanos());
+        }
+        if (waitNanos > limitNanos) {
+            countRejection(priority, REJECT_WAIT_TOO_LONG);
+            return new GenerationRejectedException("Ожидаемое время в очереди генераций "
+                    + retryAfter.toSeconds() + " с превышает допустимое", retryAfter);
+        }
+        return null;
+    }
+
+    private void countRejection(Priority priority, String reason) {
+        registry.counter("insight.admission.rejected", "class", priority.getTagName(), "reason", reason)
+                .increment();
+    }
+
+    // Вызывается под lock
+    private void addToQueue(Job<?> job) {
+        ClassQueue classQueue = queues[job.context.getPriority().ordinal()];
+        double weight = userWeights.getOrDefault(job.context.getUser(), 1.0);
+        double start = Math.max(classQueue.virtualTime,
+                classQueue.lastFinish.getOrDefault(job.context.getUser(), 0.0));
+        job.startTag = start;
+        job.finishTag = start + 1.0 / Math.max(weight, 0.001);
+        job.sequence = sequence++;
+        classQueue.lastFinish.put(job.context.getUser(), job.finishTag);
+        classQueue.queue.add(job);
+    }
+
+    /**
+     * Запускает ожидающие генерации, пока есть свободные слоты
+     */
+    private void dispatch() {
+        List<Job<?>> toStart = new ArrayList<>();
+        synchronized (lock) {
+            while (running < maxConcurrent) {
+                Job<?> job = pollNext();
+                if (job == null) {
+                    break;
+                }
+                job.state = JobState.RUNNING;
+                running++;
+                active.add(job);
+                toStart.add(job);
+            }
+        }
+        toStart.forEach(this::start);
+    }
+
+    private Job<?> pollNext() {
+        for (ClassQueue classQueue : queues) {
+            Job<?> job = classQueue.queue.poll();
+            if (job != null) {
+                classQueue.virtualTime = Math.max(classQueue.virtualTime, job.startTag);
+                if (classQueue.queue.isEmpty()) {
+                    // Очередь опустела: история меток пользователей больше не нужна
+                    classQueue.lastFinish.clear();
+                }
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private <T> void start(Job<T> job) {
+        long waited = System.nanoTime() - job.enqueuedNanos;
+        queues[job.context.getPriority().ordinal()].waitTimer.record(waited, TimeUnit.NANOSECONDS);
+        job.timings.record(StageTimings.Stage.QUEUE, waited);
+        long startedNanos = System.nanoTime();
+
+        Disposable upstream;
+        try {
+            upstream = job.request.get()
+                    .doOnSuccess(response -> {
+                        // Быстрые ответы с ошибкой и вспомогательные запросы не отражают длительность генерации
+                        if (response instanceof NeuralApiResponse generated && generated.getError() == null) {
+                            recordServiceTime(System.nanoTime() - startedNanos);
+                        }
+                    })
+                    .doFinally(signal -> release(job))
+                    .subscribe(response -> deliver(job, response), job.sink::error, job.sink::success);
+        } catch (RuntimeException e) {
+            release(job);
+            job.sink.error(e);
+            return;
+        }
+        synchronized (lock) {
+            job.upstream = upstream;
+            if (job.state != JobState.CANCELLED) {
+                return;
+            }
+        }
+        // Подписчик отменил запрос, пока генерация запускалась
+        upstream.dispose();
+    }
+
+    private void recordServiceTime(long nanos) {
+        synchronized (lock) {
+            serviceTimeNanos += SERVICE_TIME_ALPHA * (nanos - serviceTimeNanos);
+        }
+    }
+
+    private <T> void deliver(Job<T> job, T response) {
+        boolean detached;
+        synchronized (lock) {
+            detached = job.state == JobState.DETACHED;
+        }
+        if (!detached) {
+            job.sink.success(response);
+            return;
+        }
+        try {
+            job.detachedResultHandler.accept(response);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сохранить результат генерации по теме '{}': {}", job.topic, e.getMessage());
+        }
+    }
+
+    private void release(Job<?> job) {
+        synchronized (lock) {
+            if (!active.remove(job)) {
+                return;
+            }
+            running--;
+            if (draining && job.state != JobState.CANCELLED) {
+                countDrained(job.state == JobState.DETACHED ? DRAIN_DETACHED : DRAIN_COMPLETED, 1);
+            }
+            lock.notifyAll();
+        }
+        dispatch();
+    }
+
+    private void cancel(Job<?> job) {
+        Disposable upstream;
+        synchronized (lock) {
+            JobState previous = job.state;
+            if (previous == JobState.RUNNING && draining) {
+                // Во время остановки генерацию дорабатываем, чтобы сохранить уже потраченную работу
+                job.state = JobState.DETACHED;
+                return;
+            }
+            if (previous != JobState.QUEUED && previous != JobState.RUNNING) {
+                return;
+            }
+            job.state = JobState.CANCELLED;
+            if (previous == JobState.QUEUED) {
+                queues[job.context.getPriority().ordinal()].queue.remove(job);
+                lock.notifyAll();
+                log.debug("Запрос пользователя {} снят с очереди {}", job.context.getUser(),
+                        job.context.getPriority().getTagName());
+                return;
+            }
+            upstream = job.upstream;
+        }
+        if (upstream != null) {
+            upstream.dispose();
+        }
+    }
+
+    private void countDrained(String outcome, int count) {
+        registry.counter("insight.shutdown.generations", "outcome", outcome).increment(count);
+    }
+
+    @Override
+    public void start() {
+        lifecycleRunning = true;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return lifecycleRunning;
+    }
+
+    /**
+     * Останавливает прием генераций и дожидается принятых. Фаза по умолчанию останавливается раньше
+     * корректного завершения веб-сервера, поэтому на время ожидания запросы из кэша продолжают обслуживаться
+     */
+    @Override
+    public void stop() {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        List<Job<?>> aborted = new ArrayList<>();
+        List<Disposable> upstreams = new ArrayList<>();
+        synchronized (lock) {
+            draining = true;
+            log.info("Остановка: ожидание {} генераций в работе и {} в очереди", running, queuedTotal());
+            while (running + queuedTotal() > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    break;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (ClassQueue classQueue : queues) {
+                aborted.addAll(classQueue.queue);
+                classQueue.queue.clear();
+            }
+            for (Job<?> job : active) {
+                aborted.add(job);
+                if (job.upstream != null) {
+                    upstreams.add(job.upstream);
+                }
+            }
+            aborted.forEach(job -> job.state = JobState.CANCELLED);
+            lifecycleRunning = false;
+        }
+
+        if (!aborted.isEmpty()) {
+            log.warn("Остановка: {} генераций не завершились за {} и отменены", aborted.size(), drainTimeout);
+            countDrained(DRAIN_ABORTED, aborted.size());
+        }
+        upstreams.forEach(Disposable::dispose);
+        GenerationRejectedException rejection =
+                new GenerationRejectedException("Приложение останавливается", Duration.ofSeconds(1));
+        aborted.forEach(job -> job.sink.error(rejection));
+    }
+
+    private int queuedTotal() {
+        int queued = 0;
+        for (ClassQueue classQueue : queues) {
+            queued += classQueue.queue.size();
+        }
+        return queued;
+    }
+
+    private enum JobState {
+        QUEUED, RUNNING, DETACHED, CANCELLED
+    }
+
+    /**
+     * Запрос на генерацию в очереди планировщика
+     */
+    private static final class Job<T> {
+        private final InsightRequestContext context;
+        private final String topic;
+        private final GenerationParameters parameters;
+        private final Supplier<Mono<T>> request;
+        private final MonoSink<T> sink;
+        private final StageTimings timings;
+        private final Consumer<T> detachedResultHandler;
+        private final int expectedTokens;
+        private final long enqueuedNanos = System.nanoTime();
+        private double startTag;
+        private double finishTag;
+        private long sequence;
+        private JobState state = JobState.QUEUED;
+        private Disposable upstream;
+
+        private Job(InsightRequestContext context, String topic, GenerationParameters parameters,
+                    Supplier<Mono<T>> request, MonoSink<T> sink, StageTimings timings,
+                    Consumer<T> detachedResultHandler) {
+            this.context = context;
+            this.topic = topic;
+            this.parameters = parameters;
+            this.request = request;
+            this.sink = sink;
+            this.timings = timings;
+            this.detachedResultHandler = detachedResultHandler;
+            // Без num_predict длина ответа неизвестна: такие запросы считаем самыми длинными
+            Object numPredict = parameters != null ? parameters.getOptions().get(NUM_PREDICT) : null;
+            this.expectedTokens = numPredict instanceof Integer tokens ? tokens : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Очередь одного класса приоритета со своим виртуальным временем справедливой очереди
+     */
+    private final class ClassQueue {
+        private final PriorityQueue<Job<?>> queue;
+        private final Map<String, Double> lastFinish = new HashMap<>();
+        private final Timer waitTimer;
+        private double virtualTime;
+
+        private ClassQueue(Priority priority, Comparator<Job<?>> order, MeterRegistry registry) {
+            this.queue = new PriorityQueue<>(order);
+            Gauge.builder("insight.scheduler.queue.depth", GenerationScheduler.this, s -> s.getQueueDepth(priority))
+                    .description("Количество запросов, ожидающих генерации")
+                    .tag("class", priority.getTagName())
+                    .register(registry);
+            this.waitTimer = Timer.builder("insight.scheduler.queue.wait")
+                    .description("Время ожидания запроса в очереди планировщика генераций")
+                    .tag("class", priority.getTagName())
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.springbootapp.service;
+
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обслуживание помесячных секций insight_history (секционирование по created_at, changelog-5).
+ * <p>
+ * После запуска приложения и затем раз в insights.history.maintenance-interval создаются секции
+ * на insights.history.partitions-ahead месяцев вперед, а секции старше insights.history.retention-months
+ * отсоединяются и удаляются целиком: это не оставляет мертвых строк и не нагружает autovacuum, в отличие
+ * от DELETE. После удаления секций удаляются ответы insight_response_blob, на которые больше нет ссылок.
+ * <p>
+ * Обслуживание выполняется в одной транзакции под pg_try_advisory_xact_lock, поэтому при нескольких
+ * экземплярах приложения его выполняет один из них, а остальные пропускают запуск
+ */
+@Component
+public class InsightHistoryPartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(InsightHistoryPartitions.class);
+
+    private static final String PARTITION_PREFIX = "insight_history_p";
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    // Ключ advisory-блокировки обслуживания секций
+    private static final long LOCK_KEY = 4_917_049L;
+
+    // Ответ без ссылок из истории удаляется не раньше, чем через сутки после последнего использования:
+    // ответ сохраняется или отмечается (touch) до записи истории, и такой ответ еще может ждать ее
+    private static final Duration ORPHAN_GRACE = Duration.ofDays(1);
+
+    private static final String LIST_PARTITIONS = """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'insight_history'::regclass
+            """;
+
+    private static final String DELETE_ORPHAN_BLOBS = """
+            DELETE FROM insight_response_blob b
+            WHERE b.last_used_at < ?
+              AND NOT EXISTS (SELECT 1 FROM insight_history h WHERE h.response_hash = b.hash)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InsightConfig.History config;
+    private final Clock clock;
+    private final Counter partitionsCreated;
+    private final Counter partitionsDropped;
+    private final Counter blobsDeleted;
+    private final AtomicReference<Disposable> maintenance = new AtomicReference<>();
+
+    public InsightHistoryPartitions(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                    InsightConfig insightConfig, MeterRegistry registry) {
+        this(jdbcTemplate, new TransactionTemplate(transactionManager), insightConfig, registry,
+                Clock.systemDefaultZone());
+    }
+
+    InsightHistoryPartitions(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             InsightConfig insightConfig, MeterRegistry registry, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.config = insightConfig.getHistory();
+        this.clock = clock;
+        this.partitionsCreated = partitionCounter(registry, "created");
+        this.partitionsDropped = partitionCounter(registry, "dropped");
+        this.blobsDeleted = Counter.builder("insight.history.response.blobs.deleted")
+                .description("Количество ответов, удаленных после удаления ссылавшихся на них секций истории")
+                .register(registry);
+    }
+
+    private static Counter partitionCounter(MeterRegistry registry, String action) {
+        return Counter.builder("insight.history.partitions")
+                .description("Количество созданных и удаленных секций insight_history")
+                .tag("action", action)
+                .register(registry);
+    }
+
+    /**
+     * Запускает периодическое обслуживание секций. Первый запуск - сразу, чтобы секция текущего месяца
+     * появилась до первой записи в историю, даже если приложение долго не запускалось
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isPartitionMaintenance()) {
+            return;
+        }
+        Disposable task = Flux.interval(Duration.ZERO, config.getMaintenanceInterval(), Schedulers.boundedElastic())
+                .subscribe(tick -> {
+                    try {
+                        maintain();
+                    } catch (RuntimeException e) {
+                        log.warn("Не удалось обслужить секции insight_history: {}", e.getMessage());
+                    }
+                });
+        Disposable previous = maintenance.getAndSet(task);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Disposable task = maintenance.get();
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    /**
+     * Создает недостающие секции и удаляет устаревшие
+     *
+     * @return false, если обслуживание в это время выполняет другой экземпляр приложения
+     */
+    boolean maintain() {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class,
+                    LOCK_KEY);
+            if (!Boolean.TRUE.equals(locked)) {
+                log.debug("Секции insight_history обслуживает другой экземпляр приложения");
+                return false;
+            }
+            YearMonth current = YearMonth.now(clock);
+            SortedSet<YearMonth> existing = partitions();
+            for (int i = 0; i <= config.getPartitionsAhead(); i++) {
+                YearMonth month = current.plusMonths(i);
+                if (!existing.contains(month)) {
+                    create(month);
+                }
+            }
+            if (config.getRetentionMonths() <= 0) {
+                return true;
+            }
+            YearMonth oldest = current.minusMonths(config.getRetentionMonths());
+            List<YearMonth> expired = List.copyOf(existing.headSet(oldest));
+            expired.forEach(this::drop);
+            if (!expired.isEmpty()) {
+                int deleted = jdbcTemplate.update(DELETE_ORPHAN_BLOBS,
+                        LocalDateTime.now(clock).minus(ORPHAN_GRACE));
+                blobsDeleted.increment(deleted);
+                log.info("Удалено {} секций insight_history до {} и {} ответов без ссылок", expired.size(),
+                        oldest, deleted);
+            }
+            return true;
+        }));
+    }
+
+    /**
+     * Месяцы существующих секций; секции с другими именами не трогаются
+     */
+    private SortedSet<YearMonth> partitions() {
+        SortedSet<YearMonth> months = new TreeSet<>();
+        for (String name : jdbcTemplate.queryForList(LIST_PARTITIONS, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            }
+        }
+        return months;
+    }
+
+    private void create(YearMonth month) {
+        // Границы формируются из YearMonth, а не из пользовательского ввода, поэтому подставляются в текст DDL
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month)
+                + " PARTITION OF insight_history FOR VALUES FROM ('" + month.atDay(1)
+                + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+        partitionsCreated.increment();
+        log.info("Создана секция {}", partitionName(month));
+    }
+
+    private void drop(YearMonth month) {
+        String name = partitionName(month);
+        jdbcTemplate.execute("ALTER TABLE insight_history DETACH PARTITION " + name);
+        jdbcTemplate.execute("DROP TABLE " + name);
+        partitionsDropped.increment();
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+}
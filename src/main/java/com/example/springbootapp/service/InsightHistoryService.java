@@ -0,0 +1,114 @@
+package com.example.springbootapp.service;
+
+import com.example.springbootapp.model.GenerationParameters;
+import com.example.springbootapp.model.InsightHistory;
+import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.repository.InsightHistoryRepository;
+import com.example.springbootapp.repository.InsightResponseBlobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Сервис для сохранения истории сгенерированных инсайтов.
+ * Ответы модели хранятся сжатыми в insight_response_blob по хэшу содержимого: одинаковые ответы
+ * на повторяющиеся темы сохраняются один раз, а обход истории не читает тексты ответов
+ */
+@Service
+public class InsightHistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(InsightHistoryService.class);
+
+    private final InsightHistoryRepository insightHistoryRepository;
+    private final InsightResponseBlobRepository responseBlobRepository;
+    private final Counter blobsCreated;
+    private final Counter blobsReused;
+
+    public InsightHistoryService(InsightHistoryRepository insightHistoryRepository,
+                                 InsightResponseBlobRepository responseBlobRepository,
+                                 MeterRegistry registry) {
+        this.insightHistoryRepository = insightHistoryRepository;
+        this.responseBlobRepository = responseBlobRepository;
+        this.blobsCreated = blobCounter(registry, "created");
+        this.blobsReused = blobCounter(registry, "reused");
+    }
+
+    private static Counter blobCounter(MeterRegistry registry, String result) {
+        return Counter.builder("insight.history.response.blobs")
+                .description("Ответы, сохраненные в историю: новые или совпавшие с уже сохраненными")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Сохраняет успешный ответ модели в историю. Ответы с ошибкой не сохраняются
+     *
+     * @param topic тема запроса
+     * @param parameters параметры генерации
+     * @param user пользователь, запросивший генерацию
+     * @param response ответ нейросети
+     */
+    public void record(String topic, GenerationParameters parameters, String user, NeuralApiResponse response) {
+        if (response == null || response.getError() != null || response.getResponse() == null) {
+            return;
+        }
+        InsightHistory history = new InsightHistory();
+        history.setTopic(topic);
+        history.setModel(parameters.getModel());
+        history.setOptions(parameters.optionsKey());
+        history.setUsername(user);
+        history.setResponseHash(storeResponse(response.getResponse()));
+        insightHistoryRepository.save(history);
+    }
+
+    /**
+     * Текст ответа записи истории. Ответ читается и распаковывается только при вызове
+     *
+     * @param history запись истории
+     * @return текст ответа или пустой Optional, если ответ не сохранялся
+     */
+    public Optional<String> getResponse(InsightHistory history) {
+        if (history.getResponseHash() == null) {
+            return Optional.empty();
+        }
+        return responseBlobRepository.findById(history.getResponseHash())
+                .map(blob -> InsightResponseCodec.decompress(blob.getCodec(), blob.getData(), blob.getRawLength()));
+    }
+
+    /**
+     * Сохраняет сжатый ответ, если такого еще нет, а существующий отмечает как использованный,
+     * чтобы очистка ответов без ссылок не удалила его до записи истории
+     *
+     * @return хэш ответа
+     */
+    private String storeResponse(String response) {
+        byte[] text = response.getBytes(StandardCharsets.UTF_8);
+        String hash = InsightResponseCodec.hash(text);
+        if (responseBlobRepository.touch(hash) > 0) {
+            blobsReused.increment();
+            return hash;
+        }
+        int inserted = responseBlobRepository.insertIfAbsent(hash, InsightResponseCodec.DEFLATE_V1,
+                text.length, InsightResponseCodec.compress(text));
+        (inserted > 0 ? blobsCreated : blobsReused).increment();
+        return hash;
+    }
+
+    /**
+     * Сохраняет ответ в историю в отдельном потоке, не задерживая ответ клиенту.
+     * Ошибка сохранения только записывается в лог
+     */
+    public void recordAsync(String topic, GenerationParameters parameters, String user, NeuralApiResponse response) {
+        Mono.fromRunnable(() -> record(topic, parameters, user, response))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.warn("Не удалось сохранить инсайт по теме '{}' в историю: {}",
+                        topic, e.getMessage()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.springbootapp.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие ответов модели для хранения в insight_response_blob.
+ * <p>
+ * Ответы сжимаются Deflate с предустановленным словарем: ответы короткие, и без словаря Deflate не успевает
+ * накопить повторы, а словарь сразу содержит ключи JSON инсайта, обрамление markdown и частые обороты.
+ * Словарь нельзя менять: сжатые им данные читаются только с ним же. Новый словарь вводится
+ * новым кодеком, а старый остается для чтения
+ */
+public final class InsightResponseCodec {
+
+    // Deflate без заголовка zlib со словарем DICTIONARY_V1
+    public static final String DEFLATE_V1 = "deflate-v1";
+    // Несжатый UTF-8: ответы, перенесенные миграцией из insight_history.response
+    public static final String NONE = "none";
+
+    // Самые частые фрагменты - в конце словаря: Deflate кодирует близкие ссылки короче
+    private static final byte[] DICTIONARY_V1 = String.join("",
+            "Это область, которая изучает и описывает процессы, явления и методы. ",
+            "Она играет важную роль в науке, технологиях и повседневной жизни, ",
+            "а также в развитии общества, экономики, медицины, образования и промышленности. ",
+            "История развития началась в XX веке, и сегодня исследования продолжаются. ",
+            "Например, используется для анализа данных, моделирования, оптимизации и ",
+            "позволяет решать задачи, которые ранее были недоступны. ",
+            "Интересный факт: впервые был описан в году ученым, который ",
+            "Ключевые концепции: определение, принцип, свойства, структура, ",
+            "Вот анализ темы в формате JSON:\n",
+            "```json\n{\n  \"overview\": \"",
+            "\",\n  \"keyConcepts\": [\n    \"",
+            "\"\n  ],\n  \"facts\": [\n    \"",
+            "\"\n  ],\n  \"applications\": \"",
+            "\"\n}\n```",
+            "\",\n    \"").getBytes(StandardCharsets.UTF_8);
+
+    private InsightResponseCodec() {
+    }
+
+    /**
+     * Адрес ответа по содержимому: SHA-256 текста в UTF-8 в шестнадцатеричном виде
+     */
+    public static String hash(byte[] response) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(response));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Сжимает текст ответа в UTF-8 кодеком {@link #DEFLATE_V1}
+     */
+    public static byte[] compress(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 3));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Восстанавливает текст ответа
+     *
+     * @param codec кодек, которым сжаты данные
+     * @param data сжатые данные
+     * @param rawLength длина текста в UTF-8
+     * @return текст ответа
+     * @throws IllegalArgumentException если кодек неизвестен или данные повреждены
+     */
+    public static String decompress(String codec, byte[] data, int rawLength) {
+        if (NONE.equals(codec)) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        if (!DEFLATE_V1.equals(codec)) {
+            throw new IllegalArgumentException("Неизвестный кодек ответа: " + codec);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(DICTIONARY_V1);
+            inflater.setInput(data);
+            byte[] output = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(output, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IllegalArgumentException("Поврежденный ответ: " + length + " байт из " + rawLength);
+            }
+            return new String(output, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Поврежденный ответ", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.example.springbootapp.service;
 
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightStreamEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 import java.util.Map;
 
 /**
@@ -15,4 +20,56 @@ public interface InsightService {
      * @return карта, содержащая обзор, ключевые понятия и связанные ссылки
      */
     Map<String, Object> getInsightsForTopic(String topic);
+
+    /**
+     * Получает аналитические данные по теме с заданными параметрами генерации
+     *
+     * @param topic тема для анализа
+     * @param parameters параметры генерации из запроса: model, length и опции Ollama (может быть null)
+     * @return карта, содержащая обзор, ключевые понятия и связанные ссылки
+     * @throws IllegalArgumentException если параметры генерации недопустимы
+     */
+    Map<String, Object> getInsightsForTopic(String topic, Map<String, Object> parameters);
+
+    /**
+     * Асинхронно получает аналитические данные по теме с учетом крайнего срока.
+     * Отмена подписки (например, при отключении клиента) прерывает обращение к нейросети
+     *
+     * @param topic тема для анализа
+     * @param parameters параметры генерации из запроса (может быть null)
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @return Mono с результатом; при истечении срока завершается с TimeoutException,
+     *         при отказе в допуске к генерации - с GenerationRejectedException
+     * @throws IllegalArgumentException если параметры генерации недопустимы
+     */
+    Mono<Map<String, Object>> getInsightsForTopicAsync(String topic, Map<String, Object> parameters,
+                                                       InsightRequestContext context);
+
+    /**
+     * Получает аналитические данные по теме потоком событий: каждый раздел инсайта передается
+     * событием field, как только модель его дописала, а последним идет событие result с итоговым
+     * инсайтом. Отмена подписки прерывает обращение к нейросети
+     *
+     * @param topic тема для анализа
+     * @param parameters параметры генерации из запроса (может быть null)
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @return Flux событий; при истечении срока завершается с TimeoutException,
+     *         при отказе в допуске к генерации - с GenerationRejectedException
+     * @throws IllegalArgumentException если параметры генерации недопустимы
+     */
+    Flux<InsightStreamEvent> streamInsightsForTopic(String topic, Map<String, Object> parameters,
+                                                    InsightRequestContext context);
+
+    /**
+     * Задает уточняющий вопрос к сгенерированному инсайту. Вопрос продолжает диалог пользователя
+     * с моделью: модели передаются инсайт и предыдущие вопросы с ответами
+     *
+     * @param insightId идентификатор инсайта из поля insightId ответа
+     * @param question вопрос
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @return Mono с ответом на вопрос; при истечении срока завершается с TimeoutException,
+     *         при отказе в допуске к генерации - с GenerationRejectedException
+     * @throws com.example.springbootapp.followup.ConversationNotFoundException если инсайт неизвестен или устарел
+     */
+    Mono<Map<String, Object>> followUp(String insightId, String question, InsightRequestContext context);
 }
@@ -1,9 +1,14 @@
 package com.example.springbootapp.service;
 
+import com.example.springbootapp.model.ChatMessage;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.GenerationParameters;
 import com.example.springbootapp.model.NeuralApiResponse;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Сервис для взаимодействия с API нейросети
@@ -17,7 +22,78 @@ public interface NeuralApiService {
      * @return Mono с ответом от нейросети
      */
     Mono<NeuralApiResponse> requestInsightsFromApi(String topic);
+
+    /**
+     * Отправляет запрос к API нейросети с выбранной моделью и опциями генерации
+     *
+     * @param topic тема для анализа
+     * @param parameters проверенные параметры генерации
+     * @return Mono с ответом от нейросети
+     */
+    Mono<NeuralApiResponse> requestInsightsFromApi(String topic, GenerationParameters parameters);
+
+    /**
+     * Отправляет запрос к API нейросети с учетом крайнего срока обработки.
+     * Отмена подписки на результат прерывает генерацию на стороне нейросети
+     *
+     * @param topic тема для анализа
+     * @param parameters проверенные параметры генерации
+     * @param deadline крайний срок; по его истечении Mono завершается с TimeoutException
+     * @return Mono с ответом от нейросети
+     */
+    Mono<NeuralApiResponse> requestInsightsFromApi(String topic, GenerationParameters parameters, Deadline deadline);
+
+    /**
+     * Запрашивает инсайт с потоковым ответом нейросети. Фрагменты текста передаются получателю
+     * по мере генерации, а Mono завершается полным ответом, как у {@link #requestInsightsFromApi}
+     *
+     * @param topic тема для анализа
+     * @param parameters проверенные параметры генерации
+     * @param deadline крайний срок; по его истечении Mono завершается с TimeoutException
+     * @param tokens получатель фрагментов ответа; вызывается последовательно
+     * @return Mono с полным ответом от нейросети
+     */
+    Mono<NeuralApiResponse> streamInsightsFromApi(String topic, GenerationParameters parameters, Deadline deadline,
+                                                  Consumer<String> tokens);
+
+    /**
+     * Продолжает диалог через /api/chat. Текст ответа модели возвращается в поле response
+     *
+     * @param messages история диалога, последним - вопрос пользователя
+     * @param parameters проверенные параметры генерации
+     * @param deadline крайний срок; по его истечении Mono завершается с TimeoutException
+     * @return Mono с ответом от нейросети
+     */
+    Mono<NeuralApiResponse> chat(List<ChatMessage> messages, GenerationParameters parameters, Deadline deadline);
+
+    /**
+     * Сообщения, с которыми генерируется инсайт по теме: инструкции и тема.
+     * Начало диалога, продолжающего инсайт, совпадает с промптом генерации
+     *
+     * @param topic тема для анализа
+     * @param parameters параметры генерации инсайта (запрошенные разделы)
+     * @return системное сообщение с инструкциями и сообщение пользователя с темой
+     */
+    List<ChatMessage> insightMessages(String topic, GenerationParameters parameters);
+
+    /**
+     * Запрашивает эмбеддинг текста у модели эмбеддингов (ollama.embedding.model)
+     *
+     * @param text текст, например тема запроса
+     * @return Mono с вектором эмбеддинга
+     */
+    Mono<float[]> requestEmbedding(String text);
     
+    /**
+     * Проверяет, что ответ нейросети содержит JSON инсайта со всеми запрошенными разделами,
+     * то есть не потребует резервного разбора текста
+     *
+     * @param response ответ от нейросети
+     * @param parameters параметры генерации (запрошенные разделы)
+     * @return true, если ответ без ошибки и содержит структурированный инсайт
+     */
+    boolean hasStructuredContent(NeuralApiResponse response, GenerationParameters parameters);
+
     /**
      * Преобразует ответ нейросети в формат, ожидаемый клиентами
      * 
@@ -0,0 +1,212 @@
+package com.example.springbootapp.service.impl;
+
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.model.GenerationParameters;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Проверяет и нормализует параметры генерации из клиентского запроса.
+ * Модель выбирается из списка ollama.allowed-models, опции Ollama проверяются по допустимым диапазонам,
+ * параметр length преобразуется в num_predict по ollama.generation.length-presets,
+ * параметр fields ограничивает инсайт частью разделов.
+ * Недопустимые параметры приводят к IllegalArgumentException с описанием ошибки для клиента
+ */
+@Component
+public class GenerationParametersResolver {
+
+    static final String DEFAULT_MODEL = "llama2";
+
+    private static final String MODEL = "model";
+    private static final String LENGTH = "length";
+    private static final String NUM_PREDICT = "num_predict";
+    private static final String FIELDS = "fields";
+
+    /**
+     * Допустимая опция Ollama: целочисленная или дробная, с диапазоном значений
+     */
+    private enum OptionSpec {
+        NUM_PREDICT_OPTION(NUM_PREDICT, true, 1, Integer.MAX_VALUE),
+        TEMPERATURE("temperature", false, 0, 2),
+        TOP_P("top_p", false, 0, 1),
+        TOP_K("top_k", true, 1, 1000),
+        REPEAT_PENALTY("repeat_penalty", false, 0, 2),
+        SEED("seed", true, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        private final String name;
+        private final boolean integer;
+        private final double min;
+        private final double max;
+
+        OptionSpec(String name, boolean integer, double min, double max) {
+            this.name = name;
+            this.integer = integer;
+            this.min = min;
+            this.max = max;
+        }
+
+        static OptionSpec byName(String name) {
+            for (OptionSpec spec : values()) {
+                if (spec.name.equals(name)) {
+                    return spec;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String defaultModel;
+    private final Set<String> allowedModels;
+    private final OllamaConfig.Generation limits;
+    private final GenerationParameters defaults;
+
+    public GenerationParametersResolver(OllamaConfig ollamaConfig) {
+        String model = ollamaConfig.getModel();
+        this.defaultModel = model == null || model.isEmpty() ? DEFAULT_MODEL : model;
+        Set<String> allowed = new LinkedHashSet<>();
+        allowed.add(defaultModel);
+        if (ollamaConfig.getAllowedModels() != null) {
+            allowed.addAll(ollamaConfig.getAllowedModels());
+        }
+        this.allowedModels = Collections.unmodifiableSet(allowed);
+        this.limits = ollamaConfig.getGeneration();
+        this.defaults = new GenerationParameters(defaultModel, Map.of());
+    }
+
+    /**
+     * Параметры по умолчанию: модель из конфигурации без дополнительных опций
+     */
+    public GenerationParameters defaults() {
+        return defaults;
+    }
+
+    /**
+     * Проверяет параметры из запроса и приводит их к нормализованному виду
+     *
+     * @param parameters параметры из тела запроса (может быть null)
+     * @return проверенные параметры генерации
+     * @throws IllegalArgumentException если параметр неизвестен или выходит за допустимые границы
+     */
+    public GenerationParameters resolve(Map<String, Object> parameters) {
+        if (parameters == null || parameters.isEmpty()) {
+            return defaults;
+        }
+
+        String model = defaultModel;
+        Map<String, Object> options = new TreeMap<>();
+        Set<String> fields = Set.of();
+        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+            String name = entry.getKey();
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            if (MODEL.equals(name)) {
+                model = value.toString();
+                if (!allowedModels.contains(model)) {
+                    throw new IllegalArgumentException("Модель " + model + " недоступна. Допустимые модели: "
+                            + String.join(", ", allowedModels));
+                }
+            } else if (LENGTH.equals(name)) {
+                Integer preset = limits.getLengthPresets().get(value.toString());
+                if (preset == null) {
+                    throw new IllegalArgumentException("Недопустимое значение length: " + value
+                            + ". Допустимые значения: " + String.join(", ", limits.getLengthPresets().keySet()));
+                }
+                // Явно заданный num_predict приоритетнее пресета
+                options.putIfAbsent(NUM_PREDICT, preset);
+            } else if (FIELDS.equals(name)) {
+                fields = parseFields(value);
+            } else {
+                OptionSpec spec = OptionSpec.byName(name);
+                if (spec == null) {
+                    throw new IllegalArgumentException("Неизвестный параметр генерации: " + name);
+                }
+                options.put(name, normalize(spec, value));
+            }
+        }
+
+        Object numPredict = options.get(NUM_PREDICT);
+        if (numPredict != null && (Integer) numPredict > limits.getMaxNumPredict()) {
+            throw new IllegalArgumentException("num_predict не может превышать " + limits.getMaxNumPredict());
+        }
+        return new GenerationParameters(model, options, fields);
+    }
+
+    /**
+     * Разбирает список разделов инсайта: строку через запятую или JSON-массив
+     */
+    private static Set<String> parseFields(Object value) {
+        Collection<?> names = value instanceof Collection<?> list ? list : List.of(value.toString().split(","));
+        Set<String> fields = new LinkedHashSet<>();
+        for (Object name : names) {
+            String field = String.valueOf(name).trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            if (!GenerationParameters.INSIGHT_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Недопустимый раздел в fields: " + field
+                        + ". Допустимые разделы: " + String.join(", ", GenerationParameters.INSIGHT_FIELDS));
+            }
+            fields.add(field);
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("Параметр fields должен содержать хотя бы один раздел");
+        }
+        return fields;
+    }
+
+    /**
+     * Те же параметры генерации с другой моделью
+     *
+     * @param parameters проверенные параметры генерации
+     * @param model модель
+     * @return параметры с указанной моделью и теми же опциями и разделами
+     * @throws IllegalArgumentException если модель не входит в список разрешенных
+     */
+    public GenerationParameters withModel(GenerationParameters parameters, String model) {
+        if (!allowedModels.contains(model)) {
+            throw new IllegalArgumentException("Модель " + model + " недоступна. Допустимые модели: "
+                    + String.join(", ", allowedModels));
+        }
+        return new GenerationParameters(model, parameters.getOptions(), parameters.getFields());
+    }
+
+    /**
+     * Приводит значение опции к числу канонического вида: целые - Integer,
+     * дробные - BigDecimal без незначащих нулей (0.70 и 0.7 дают одинаковый ключ кэша)
+     */
+    private static Object normalize(OptionSpec spec, Object value) {
+        BigDecimal number;
+        try {
+            number = new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + spec.name + " должен быть числом");
+        }
+        if (number.doubleValue() < spec.min || number.doubleValue() > spec.max) {
+            throw new IllegalArgumentException("Параметр " + spec.name + " должен быть в диапазоне от "
+                    + formatBound(spec.min) + " до " + formatBound(spec.max));
+        }
+        if (spec.integer) {
+            try {
+                return number.intValueExact();
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Параметр " + spec.name + " должен быть целым числом");
+            }
+        }
+        BigDecimal normalized = number.stripTrailingZeros();
+        return normalized.scale() < 0 ? normalized.setScale(0) : normalized;
+    }
+
+    private static String formatBound(double bound) {
+        return bound == Math.rint(bound) ? Long.toString((long) bound) : Double.toString(bound);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.springbootapp.service.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Инкрементальный разбор JSON инсайта из фрагментов ответа, которые модель возвращает по мере генерации.
+ * <p>
+ * Фрагменты подаются в неблокирующий парсер Jackson, и каждое поле верхнего уровня передается получателю,
+ * как только закрывается его значение: обзор доступен, пока модель еще пишет факты.
+ * Текст до первой '{' (например, начало блока ```json) пропускается, текст после закрытия объекта
+ * игнорируется. Если ответ оказался не JSON, разбор прекращается без ошибки: поля будут получены
+ * из полного ответа.
+ * <p>
+ * Класс не потокобезопасен: фрагменты должны подаваться последовательно
+ */
+public class IncrementalInsightParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BiConsumer<String, Object> listener;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private String field;
+    // Значение-массив или объект, собираемое до закрытия
+    private TokenBuffer value;
+
+    /**
+     * @param listener получатель поля: имя и значение (строка, список строк или карта)
+     */
+    public IncrementalInsightParser(BiConsumer<String, Object> listener) {
+        this.listener = listener;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось создать неблокирующий JSON-парсер", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Разбирает очередной фрагмент ответа и передает получателю закрытые в нем поля
+     *
+     * @param chunk фрагмент текста ответа модели
+     */
+    public void feed(String chunk) {
+        if (finished || chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) {
+                return;
+            }
+            chunk = chunk.substring(start);
+            started = true;
+        }
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+            }
+        } catch (IOException e) {
+            // Ответ не является JSON инсайта: дальнейшие фрагменты не разбираются
+            finished = true;
+        }
+    }
+
+    /**
+     * Закрыт ли корневой объект (или разбор прекращен)
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (value != null) {
+            value.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd() && --depth == 1) {
+                JsonNode node = MAPPER.readTree(value.asParser());
+                value = null;
+                listener.accept(field, toValue(node));
+            }
+            return;
+        }
+        if (depth == 0) {
+            if (token != JsonToken.START_OBJECT) {
+                finished = true;
+                return;
+            }
+            depth = 1;
+            return;
+        }
+        switch (token) {
+            case FIELD_NAME -> field = parser.currentName();
+            case END_OBJECT -> {
+                depth = 0;
+                finished = true;
+            }
+            case START_ARRAY, START_OBJECT -> {
+                value = new TokenBuffer(parser);
+                value.copyCurrentEvent(parser);
+                depth++;
+            }
+            case VALUE_NULL -> {
+                // Пустой раздел не передается
+            }
+            default -> listener.accept(field, parser.getText());
+        }
+    }
+
+    /**
+     * Приводит значение к виду полного разбора ответа: массив - список строк, объект - карта
+     */
+    private static Object toValue(JsonNode node) {
+        if (node.isArray()) {
+            List<String> items = new ArrayList<>(node.size());
+            for (JsonNode item : node) {
+                items.add(item.isValueNode() ? item.asText() : item.toString());
+            }
+            return items;
+        }
+        return MAPPER.convertValue(node, Object.class);
+    }
+}
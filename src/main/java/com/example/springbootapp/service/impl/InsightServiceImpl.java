@@ -1,14 +1,42 @@
 package com.example.springbootapp.service.impl;
 
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.followup.InsightConversations;
+import com.example.springbootapp.metrics.StageTimings;
+import com.example.springbootapp.model.ChatMessage;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.GenerationParameters;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightStreamEvent;
 import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.related.RelatedTopics;
+import com.example.springbootapp.scheduler.GenerationRejectedException;
+import com.example.springbootapp.scheduler.GenerationScheduler;
+import com.example.springbootapp.service.InsightHistoryService;
 import com.example.springbootapp.service.InsightService;
 import com.example.springbootapp.service.NeuralApiService;
-import org.springframework.cache.annotation.Cacheable;
+import com.example.springbootapp.trending.TrendingTopics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Реализация сервиса для взаимодействия с внешним ИИ API
@@ -17,45 +45,501 @@ import java.util.Map;
 @Service
 public class InsightServiceImpl implements InsightService {
 
+    public static final String INSIGHTS_CACHE = "insightsCache";
+
+    // Инструкции генерации требуют JSON, а ответ на уточняющий вопрос нужен текстом
+    private static final String FOLLOWUP_INSTRUCTION = "\n\nОтветь обычным текстом, без JSON.";
+
+    // Параметр запроса, включающий гонку моделей, и тег гонки без структурированного ответа
+    private static final String RACE = "race";
+    private static final String RACE_NO_WINNER = "none";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
     private final NeuralApiService neuralApiService;
+    private final Cache insightsCache;
+    private final GenerationParametersResolver parametersResolver;
+    private final GenerationScheduler generationScheduler;
+    private final InsightHistoryService insightHistoryService;
+    private final TrendingTopics trendingTopics;
+    private final RelatedTopics relatedTopics;
+    private final InsightConversations conversations;
+    private final InsightConfig.Race raceConfig;
+    private final MeterRegistry registry;
+    private final Map<String, Counter> raceWins = new ConcurrentHashMap<>();
+    private final Timer streamFirstField;
     
     /**
      * Конструктор с автоматическим внедрением зависимостей
      * 
      * @param neuralApiService сервис для работы с API нейросети
+     * @param cacheManager менеджер кэшей, содержащий кэш insightsCache
+     * @param parametersResolver проверка параметров генерации из запроса
+     * @param generationScheduler планировщик, через который выполняются генерации
+     * @param insightHistoryService сервис истории сгенерированных инсайтов
+     * @param trendingTopics учет популярных тем
+     * @param relatedTopics индекс связанных тем
+     * @param conversations диалоги с уточняющими вопросами к инсайтам
+     * @param insightConfig настройки обработки запросов (режим гонки моделей)
+     * @param registry реестр метрик
      */
-    public InsightServiceImpl(NeuralApiService neuralApiService) {
+    public InsightServiceImpl(NeuralApiService neuralApiService, CacheManager cacheManager,
+                              GenerationParametersResolver parametersResolver,
+                              GenerationScheduler generationScheduler,
+                              InsightHistoryService insightHistoryService,
+                              TrendingTopics trendingTopics,
+                              RelatedTopics relatedTopics,
+                              InsightConversations conversations,
+                              InsightConfig insightConfig,
+                              MeterRegistry registry) {
         this.neuralApiService = neuralApiService;
+        this.insightsCache = cacheManager.getCache(INSIGHTS_CACHE);
+        this.parametersResolver = parametersResolver;
+        this.generationScheduler = generationScheduler;
+        this.insightHistoryService = insightHistoryService;
+        this.trendingTopics = trendingTopics;
+        this.relatedTopics = relatedTopics;
+        this.conversations = conversations;
+        this.raceConfig = insightConfig.getRace();
+        this.registry = registry;
+        this.streamFirstField = Timer.builder("insight.stream.first.field")
+                .description("Время от потокового запроса до отправки клиенту первого раздела инсайта")
+                .register(registry);
     }
 
     /**
-     * Получает аналитические данные по указанной теме через API нейросети Ollama
-     * Результаты кэшируются по ключу темы для предотвращения повторных вызовов API
+     * Получает аналитические данные по указанной теме с параметрами генерации по умолчанию
      * 
      * @param topic тема для анализа
      * @return карта, содержащая обзор, ключевые понятия и связанные ссылки
      */
     @Override
-    @Cacheable(value = "insightsCache", key = "#topic")
     public Map<String, Object> getInsightsForTopic(String topic) {
-        try {
-            // Вызываем Ollama API и блокируем поток до получения ответа
-            NeuralApiResponse response = neuralApiService.requestInsightsFromApi(topic)
-                .onErrorResume(e -> {
+        return getInsights(topic, parametersResolver.defaults(), InsightRequestContext.system()).block();
+    }
+
+    @Override
+    public Map<String, Object> getInsightsForTopic(String topic, Map<String, Object> parameters) {
+        return getInsightsForTopicAsync(topic, parameters, InsightRequestContext.system()).block();
+    }
+
+    /**
+     * Параметр race: true включает гонку моделей из insights.race.models (см. {@link #race})
+     */
+    @Override
+    public Mono<Map<String, Object>> getInsightsForTopicAsync(String topic, Map<String, Object> parameters,
+                                                              InsightRequestContext context) {
+        if (parameters != null && parameters.containsKey(RACE)) {
+            Map<String, Object> generationParameters = new HashMap<>(parameters);
+            if (isRace(generationParameters.remove(RACE))) {
+                return race(topic, resolveRace(generationParameters), context);
+            }
+            return getInsights(topic, parametersResolver.resolve(generationParameters), context);
+        }
+        return getInsights(topic, parametersResolver.resolve(parameters), context);
+    }
+
+    private static boolean isRace(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return Boolean.TRUE.equals(value);
+        }
+        String text = value.toString().trim();
+        if (!"true".equalsIgnoreCase(text) && !"false".equalsIgnoreCase(text)) {
+            throw new IllegalArgumentException("Параметр race должен быть true или false");
+        }
+        return Boolean.parseBoolean(text);
+    }
+
+    /**
+     * Параметры генерации для каждой модели гонки: опции из запроса с моделями из insights.race.models
+     */
+    private List<GenerationParameters> resolveRace(Map<String, Object> parameters) {
+        if (parameters.get("model") != null) {
+            throw new IllegalArgumentException("Параметр model нельзя задать вместе с race");
+        }
+        List<String> models = raceConfig.getModels() == null ? List.of()
+                : raceConfig.getModels().stream().distinct().toList();
+        if (models.size() < 2) {
+            throw new IllegalArgumentException(
+                    "Режим race не настроен: insights.race.models должен содержать не меньше двух моделей");
+        }
+        GenerationParameters base = parametersResolver.resolve(parameters);
+        List<GenerationParameters> entrants = new ArrayList<>(models.size());
+        for (String model : models) {
+            entrants.add(parametersResolver.withModel(base, model));
+        }
+        return entrants;
+    }
+
+    /**
+     * Получает аналитические данные по указанной теме через API нейросети Ollama
+     * Генерация ставится в очередь планировщика с приоритетом и пользователем из контекста запроса.
+     * Результаты кэшируются по ключу из модели, опций генерации и темы, поэтому ответы
+     * с разными параметрами не смешиваются.
+     * Кэш используется напрямую, чтобы время поиска в нем попадало в тайминги стадий запроса;
+     * поиск выполняется сразу в потоке запроса, а обращение к нейросети - при подписке.
+     * Успешные ответы сохраняются в историю; ответы с ошибкой не кэшируются.
+     * Истечение крайнего срока передается подписчику как TimeoutException,
+     * остальные ошибки преобразуются в ответ с полем error.
+     * Каждый запрос, включая попадания в кэш, учитывается в популярных темах.
+     * Ответ дополняется полем relatedTopics - близкими темами, по которым инсайты уже есть. Они подбираются
+     * при каждом ответе, включая попадания в кэш; сама тема добавляется в индекс в фоне после сохранения инсайта
+     * 
+     * @param topic тема для анализа
+     * @param parameters проверенные параметры генерации
+     * @param context пользователь, класс приоритета и крайний срок запроса
+     * @return Mono с картой, содержащей обзор, ключевые понятия и связанные ссылки
+     */
+    private Mono<Map<String, Object>> getInsights(String topic, GenerationParameters parameters,
+                                                  InsightRequestContext context) {
+        Deadline deadline = context.getDeadline();
+        StageTimings timings = StageTimings.current();
+        trendingTopics.record(topic);
+
+        long cacheStart = System.nanoTime();
+        String cacheKey = parameters.cacheKey(topic);
+        Map<String, Object> cached = cachedInsight(topic, parameters);
+        timings.recordSince(StageTimings.Stage.CACHE, cacheStart);
+        if (cached != null) {
+            return Mono.just(fromCache(topic, parameters, cached));
+        }
+
+        // Генерация, от которой клиент отключился во время остановки приложения, дорабатывается
+        // планировщиком, и ее результат сохраняется без подписчика
+        return generationScheduler.submit(context, topic, parameters,
+                        response -> storeResult(topic, parameters, context, cacheKey, response))
+                .onErrorResume(e -> !propagatesToClient(e, deadline), e -> {
                     NeuralApiResponse errorResponse = new NeuralApiResponse();
                     errorResponse.setError("Ошибка при обращении к API: " + e.getMessage());
                     return Mono.just(errorResponse);
                 })
-                .block();
-            
-            // Преобразуем ответ нейросети в ожидаемый клиентом формат
-            return neuralApiService.convertResponseToInsightFormat(response);
-        } catch (Exception e) {
-            // Если произошла ошибка, возвращаем информацию об ошибке
+                .map(response -> {
+                    if (response.getLatencyNanos() != null) {
+                        timings.record(StageTimings.Stage.OLLAMA, response.getLatencyNanos());
+                    }
+
+                    // Преобразуем ответ нейросети в ожидаемый клиентом формат
+                    long parseStart = System.nanoTime();
+                    Map<String, Object> result = storeResult(topic, parameters, context, cacheKey, response);
+                    timings.recordSince(StageTimings.Stage.PARSE, parseStart);
+                    return result;
+                })
+                .onErrorResume(e -> !propagatesToClient(e, deadline), e -> {
+                    // Если произошла ошибка, возвращаем информацию об ошибке
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("error", true);
+                    errorResponse.put("message", "Ошибка при обработке запроса к нейросети: " + e.getMessage());
+                    return Mono.just(errorResponse);
+                });
+    }
+
+    /**
+     * Гонка моделей: тема одновременно отправляется всем моделям через планировщик,
+     * и клиент получает первый ответ со структурированным инсайтом. Остальные генерации отменяются,
+     * а при insights.race.complete-losers доходят до конца, и их результат кэшируется для следующих
+     * запросов с этой моделью. Если структурированного ответа нет ни у одной модели, возвращается
+     * первый успешный ответ. Победы моделей учитываются в метрике insight.race.wins.
+     * Попадание в кэш любой из моделей возвращается сразу, без гонки
+     */
+    private Mono<Map<String, Object>> race(String topic, List<GenerationParameters> entrants,
+                                           InsightRequestContext context) {
+        Deadline deadline = context.getDeadline();
+        StageTimings timings = StageTimings.current();
+        trendingTopics.record(topic);
+
+        long cacheStart = System.nanoTime();
+        for (GenerationParameters parameters : entrants) {
+            Map<String, Object> cached = cachedInsight(topic, parameters);
+            if (cached != null) {
+                timings.recordSince(StageTimings.Stage.CACHE, cacheStart);
+                return Mono.just(fromCache(topic, parameters, cached));
+            }
+        }
+        timings.recordSince(StageTimings.Stage.CACHE, cacheStart);
+
+        return Mono.defer(() -> {
+            List<Mono<RaceEntry>> runs = new ArrayList<>(entrants.size());
+            for (GenerationParameters parameters : entrants) {
+                String cacheKey = parameters.cacheKey(topic);
+                Mono<RaceEntry> run = generationScheduler.submit(context, topic, parameters,
+                                response -> storeResult(topic, parameters, context, cacheKey, response))
+                        .map(response -> new RaceEntry(parameters.getModel(), response,
+                                storeResult(topic, parameters, context, cacheKey, response),
+                                neuralApiService.hasStructuredContent(response, parameters), null))
+                        .onErrorResume(e -> Mono.just(new RaceEntry(parameters.getModel(), null, null, false, e)));
+                if (raceConfig.isCompleteLosers()) {
+                    // Генерация доходит до конца и кэшируется независимо от исхода гонки
+                    run = run.cache();
+                    run.subscribe();
+                }
+                runs.add(run);
+            }
+            return Flux.merge(runs)
+                    .takeUntil(RaceEntry::structured)
+                    .collectList()
+                    .flatMap(entries -> finishRace(entries, deadline, timings));
+        });
+    }
+
+    private Mono<Map<String, Object>> finishRace(List<RaceEntry> entries, Deadline deadline, StageTimings timings) {
+        if (entries.isEmpty()) {
+            // Планировщик может завершить генерацию без ответа, например при отмене во время остановки
+            countRaceWin(RACE_NO_WINNER);
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", true);
-            errorResponse.put("message", "Ошибка при обработке запроса к нейросети: " + e.getMessage());
-            return errorResponse;
+            errorResponse.put("message", "Ошибка при обработке запроса к нейросети: ни одна модель не вернула ответ");
+            return Mono.just(errorResponse);
         }
+        RaceEntry last = entries.get(entries.size() - 1);
+        RaceEntry winner = last.structured() ? last
+                : entries.stream().filter(entry -> entry.error() == null).findFirst().orElse(null);
+        countRaceWin(last.structured() ? last.model() : RACE_NO_WINNER);
+        if (winner == null) {
+            Throwable error = entries.stream().map(RaceEntry::error)
+                    .filter(e -> propagatesToClient(e, deadline)).findFirst().orElse(last.error());
+            if (propagatesToClient(error, deadline)) {
+                return Mono.error(error);
+            }
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", true);
+            errorResponse.put("message", "Ошибка при обработке запроса к нейросети: " + error.getMessage());
+            return Mono.just(errorResponse);
+        }
+        if (winner.response().getLatencyNanos() != null) {
+            timings.record(StageTimings.Stage.OLLAMA, winner.response().getLatencyNanos());
+        }
+        Map<String, Object> result = new LinkedHashMap<>(winner.result());
+        result.put("model", winner.model());
+        return Mono.just(result);
+    }
+
+    private void countRaceWin(String model) {
+        raceWins.computeIfAbsent(model, tag -> Counter.builder("insight.race.wins")
+                        .description("Количество гонок моделей, в которых модель первой вернула структурированный инсайт")
+                        .tag("model", tag)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Результат одной модели в гонке
+     */
+    private record RaceEntry(String model, NeuralApiResponse response, Map<String, Object> result,
+                             boolean structured, Throwable error) {
+    }
+
+    @Override
+    public Flux<InsightStreamEvent> streamInsightsForTopic(String topic, Map<String, Object> parameters,
+                                                           InsightRequestContext context) {
+        Map<String, Object> generationParameters = parameters != null ? new HashMap<>(parameters) : new HashMap<>();
+        if (isRace(generationParameters.remove(RACE))) {
+            throw new IllegalArgumentException("Параметр race недоступен для потокового ответа");
+        }
+        GenerationParameters resolved = parametersResolver.resolve(generationParameters);
+        return Flux.defer(() -> streamInsights(topic, resolved, context));
+    }
+
+    /**
+     * Потоковая генерация: ответ модели разбирается {@link IncrementalInsightParser} по мере поступления,
+     * и каждый запрошенный раздел отправляется событием field сразу после закрытия его значения.
+     * Итоговый инсайт кэшируется и сохраняется в историю так же, как при обычном запросе,
+     * и завершает поток событием result. Инсайт из кэша отдается теми же событиями без генерации
+     */
+    private Flux<InsightStreamEvent> streamInsights(String topic, GenerationParameters parameters,
+                                                    InsightRequestContext context) {
+        Deadline deadline = context.getDeadline();
+        trendingTopics.record(topic);
+
+        Map<String, Object> cached = cachedInsight(topic, parameters);
+        if (cached != null) {
+            List<InsightStreamEvent> events = new ArrayList<>();
+            for (String field : GenerationParameters.INSIGHT_FIELDS) {
+                if (cached.get(field) != null) {
+                    events.add(InsightStreamEvent.field(field, cached.get(field)));
+                }
+            }
+            events.add(InsightStreamEvent.result(fromCache(topic, parameters, cached)));
+            return Flux.fromIterable(events);
+        }
+
+        String cacheKey = parameters.cacheKey(topic);
+        return Flux.create(sink -> {
+            long start = System.nanoTime();
+            AtomicBoolean firstField = new AtomicBoolean();
+            IncrementalInsightParser parser = new IncrementalInsightParser((field, value) -> {
+                if (GenerationParameters.INSIGHT_FIELDS.contains(field) && parameters.includes(field)) {
+                    if (firstField.compareAndSet(false, true)) {
+                        streamFirstField.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    sink.next(InsightStreamEvent.field(field, value));
+                }
+            });
+            Disposable generation = generationScheduler.submit(context, topic, parameters,
+                            () -> neuralApiService.streamInsightsFromApi(topic, parameters, deadline, parser::feed))
+                    .onErrorResume(e -> !propagatesToClient(e, deadline), e -> {
+                        NeuralApiResponse errorResponse = new NeuralApiResponse();
+                        errorResponse.setError("Ошибка при обращении к API: " + e.getMessage());
+                        return Mono.just(errorResponse);
+                    })
+                    .map(response -> storeResult(topic, parameters, context, cacheKey, response))
+                    .subscribe(result -> {
+                        sink.next(InsightStreamEvent.result(result));
+                        sink.complete();
+                    }, sink::error);
+            sink.onDispose(generation);
+        });
+    }
+
+    /**
+     * Задает уточняющий вопрос через /api/chat. Запрос проходит через планировщик генераций
+     * наравне с генерацией инсайтов; ответ добавляется в диалог только при успехе
+     */
+    @Override
+    public Mono<Map<String, Object>> followUp(String insightId, String question, InsightRequestContext context) {
+        Deadline deadline = context.getDeadline();
+        StageTimings timings = StageTimings.current();
+        InsightConversations.Snapshot conversation = conversations.open(context.getUser(), insightId);
+        GenerationParameters parameters = parametersResolver.resolve(Map.of("model", conversation.model()));
+        ChatMessage questionMessage = new ChatMessage(ChatMessage.USER, question.trim() + FOLLOWUP_INSTRUCTION);
+        List<ChatMessage> messages = new ArrayList<>(conversation.messages());
+        messages.add(questionMessage);
+
+        return generationScheduler.submit(context, conversation.topic(), parameters,
+                        () -> neuralApiService.chat(messages, parameters, deadline))
+                .map(response -> {
+                    if (response.getLatencyNanos() != null) {
+                        timings.record(StageTimings.Stage.OLLAMA, response.getLatencyNanos());
+                    }
+                    if (response.getError() != null || response.getResponse() == null) {
+                        throw new IllegalStateException(response.getError() != null
+                                ? response.getError() : "Пустой ответ модели");
+                    }
+                    String answer = response.getResponse().trim();
+                    int turn = conversations.append(context.getUser(), insightId, questionMessage,
+                            new ChatMessage(ChatMessage.ASSISTANT, response.getResponse()));
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("insightId", insightId);
+                    result.put("topic", conversation.topic());
+                    result.put("question", question.trim());
+                    result.put("answer", answer);
+                    result.put("turn", turn);
+                    return result;
+                })
+                .onErrorResume(e -> !propagatesToClient(e, deadline), e -> {
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("error", true);
+                    errorResponse.put("message", "Ошибка при обработке уточняющего вопроса: " + e.getMessage());
+                    return Mono.just(errorResponse);
+                });
+    }
+
+    /**
+     * Инсайт из кэша. Запросу части разделов подходит и запись полного инсайта с теми же моделью
+     * и опциями: из нее берутся только запрошенные разделы
+     *
+     * @return инсайт или null, если подходящей записи нет
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> cachedInsight(String topic, GenerationParameters parameters) {
+        Cache.ValueWrapper cached = insightsCache.get(parameters.cacheKey(topic));
+        if (cached != null) {
+            return (Map<String, Object>) cached.get();
+        }
+        if (parameters.getFields().isEmpty()) {
+            return null;
+        }
+        cached = insightsCache.get(parameters.withAllFields().cacheKey(topic));
+        return cached != null ? selectFields((Map<String, Object>) cached.get(), parameters) : null;
+    }
+
+    /**
+     * Копия инсайта без незапрошенных разделов
+     */
+    private static Map<String, Object> selectFields(Map<String, Object> insight, GenerationParameters parameters) {
+        Map<String, Object> selected = new HashMap<>(insight);
+        for (String field : GenerationParameters.INSIGHT_FIELDS) {
+            if (!parameters.includes(field)) {
+                selected.remove(field);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Преобразует ответ нейросети, кэширует успешный результат и сохраняет его в историю.
+     * Неполный ответ (без части разделов) отдается клиенту, но не кэшируется, чтобы следующий запрос
+     * получил все разделы. Ответ клиенту дополняется связанными темами и insightId, по которому к инсайту
+     * можно задать уточняющий вопрос; в кэш они не попадают (см. {@link #fromCache})
+     */
+    private Map<String, Object> storeResult(String topic, GenerationParameters parameters,
+                                            InsightRequestContext context, String cacheKey,
+                                            NeuralApiResponse response) {
+        Map<String, Object> result = neuralApiService.convertResponseToInsightFormat(response);
+        if (result != null && !Boolean.TRUE.equals(result.get("error"))) {
+            if (!parameters.getFields().isEmpty()) {
+                // Резервный разбор текста заполняет все разделы
+                result = selectFields(result, parameters);
+            }
+            if (!result.containsKey("missingSections")) {
+                insightsCache.put(cacheKey, result);
+                insightHistoryService.recordAsync(topic, parameters, context.getUser(), response);
+                // Эмбеддинг запрашивается после ответа и не задерживает его
+                relatedTopics.indexInBackground(topic);
+            }
+            result = new LinkedHashMap<>(result);
+            result.put("relatedTopics", relatedTopics.relatedTo(topic));
+            if (conversations.isEnabled()) {
+                result.put("insightId", conversations.register(cacheKey, topic, parameters.getModel(),
+                        neuralApiService.insightMessages(topic, parameters), response.getResponse()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Копия инсайта из кэша со связанными темами и insightId. Связанные темы подбираются при чтении:
+     * индекс пополняется после сохранения инсайта, и темы, появившиеся позже, тоже попадают в ответ.
+     * Идентификатор не хранится в кэше: кэш может пережить начало диалога (вытеснение
+     * по insights.followup.max-insights, перезапуск с off-heap кэшем в файле), поэтому начало
+     * восстанавливается из разделов инсайта, если его уже нет
+     */
+    private Map<String, Object> fromCache(String topic, GenerationParameters parameters,
+                                          Map<String, Object> cached) {
+        Map<String, Object> result = new LinkedHashMap<>(cached);
+        result.put("relatedTopics", relatedTopics.relatedTo(topic));
+        // Тема могла не попасть в индекс: планировщик отклонил эмбеддинг или индекс еще перестраивается
+        relatedTopics.indexInBackground(topic);
+        if (!conversations.isEnabled()) {
+            return result;
+        }
+        result.put("insightId", conversations.reseed(parameters.cacheKey(topic), topic, parameters.getModel(),
+                () -> neuralApiService.insightMessages(topic, parameters), () -> insightText(cached)));
+        return result;
+    }
+
+    /**
+     * Разделы инсайта в виде JSON, который модель вернула бы на промпт генерации
+     */
+    private static String insightText(Map<String, Object> insight) {
+        Map<String, Object> sections = new LinkedHashMap<>();
+        for (String field : GenerationParameters.INSIGHT_FIELDS) {
+            if (insight.get(field) != null) {
+                sections.put(field, insight.get(field));
+            }
+        }
+        try {
+            return JSON.writeValueAsString(sections);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать инсайт", e);
+        }
+    }
+
+    /**
+     * Истечение срока и отказ в допуске к генерации передаются подписчику как ошибки,
+     * чтобы клиент получил 504 или 503, а не ответ с описанием ошибки
+     */
+    private static boolean propagatesToClient(Throwable error, Deadline deadline) {
+        return error instanceof GenerationRejectedException
+                || error instanceof TimeoutException && deadline.isExpired();
     }
 }
@@ -1,23 +1,43 @@
 package com.example.springbootapp.service.impl;
 
 import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.metrics.OllamaMetrics;
+import com.example.springbootapp.model.ChatMessage;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.GenerationParameters;
 import com.example.springbootapp.model.NeuralApiResponse;
 import com.example.springbootapp.service.NeuralApiService;
-import io.micrometer.core.annotation.Timed;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.LoopResources;
 
+import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,69 +47,431 @@ import java.util.regex.Pattern;
 @Service
 public class NeuralApiServiceImpl implements NeuralApiService {
 
+    private static final Logger log = LoggerFactory.getLogger(NeuralApiServiceImpl.class);
+
+    // Длина фрагмента ответа, который попадает в отладочный лог
+    private static final int LOG_PREVIEW_LENGTH = 100;
+    // Схема адреса Ollama на том же хосте: unix:///путь/к/сокету
+    private static final String UNIX_SCHEME = "unix://";
+
+    private static final ObjectMapper SECTION_MAPPER = new ObjectMapper();
+    // Маркер пункта списка: "-", "*", "•" или номер "1." / "1)"
+    private static final Pattern LIST_MARKER = Pattern.compile("^\\s*(?:[-*•]|\\d+[.)])\\s*");
+
+    private static final String ASSISTANT_ROLE = "Ты - умный аналитический ассистент.";
+    private static final String ACCURACY_INSTRUCTIONS = "Ответ должен быть точным, информативным и научно обоснованным.";
+    private static final List<Section> ALL_SECTIONS = List.of(Section.values());
+    // Инструкции без темы: одинаковы для всех запросов, поэтому Ollama берет их оценку из кэша префикса
+    private static final String SYSTEM_PROMPT = buildSystemPrompt(ALL_SECTIONS);
+
     private final WebClient webClient;
     private final OllamaConfig ollamaConfig;
+    private final OllamaMetrics ollamaMetrics;
+    private final int successLogSampleRate;
     private String baseApiUrl;
 
-    public NeuralApiServiceImpl(OllamaConfig ollamaConfig) {
+    public NeuralApiServiceImpl(OllamaConfig ollamaConfig, OllamaMetrics ollamaMetrics) {
         this.ollamaConfig = ollamaConfig;
+        this.ollamaMetrics = ollamaMetrics;
+        this.successLogSampleRate = Math.max(1, ollamaConfig.getLogging().getSuccessSampleRate());
         
         String apiUrl = ollamaConfig.getApiUrl();
-        System.out.println("Initializing NeuralApiService with API URL: " + apiUrl);
+        log.info("Initializing NeuralApiService with API URL: {}", apiUrl);
         
         if (apiUrl == null || apiUrl.isEmpty()) {
             // Установка URL по умолчанию, если он не загрузился из конфигурации
             apiUrl = "http://localhost:11434";
-            System.out.println("WARNING: API URL is null or empty, using default: " + apiUrl);
+            log.warn("API URL is null or empty, using default: {}", apiUrl);
         }
         
-        // Убедимся, что apiUrl содержит полный URL с протоколом
-        if (!apiUrl.startsWith("http://") && !apiUrl.startsWith("https://")) {
+        this.baseApiUrl = apiUrl;
+        // Сжатие включено, как у коннектора WebClient по умолчанию
+        HttpClient httpClient = HttpClient.create().compress(true);
+        if (apiUrl.startsWith(UNIX_SCHEME)) {
+            // Запросы идут через сокет, а не loopback TCP
+            String socketPath = apiUrl.substring(UNIX_SCHEME.length());
+            if (socketPath.isEmpty()) {
+                throw new IllegalStateException("Не указан путь к сокету Ollama: " + apiUrl);
+            }
+            if (!LoopResources.DEFAULT_NATIVE || !LoopResources.hasNativeSupport()) {
+                // Без нативного транспорта адрес сокета не поддерживается, и запросы падали бы при первом вызове
+                throw new IllegalStateException("Адрес " + apiUrl + " требует нативного транспорта Netty"
+                        + " (epoll на Linux, kqueue на macOS), а он недоступен на " + System.getProperty("os.name")
+                        + " " + System.getProperty("os.arch") + (LoopResources.DEFAULT_NATIVE ? ""
+                        : " или отключен reactor.netty.native=false") + ". Соберите приложение с профилем native-*"
+                        + " для этой платформы или укажите http://-адрес Ollama");
+            }
+            httpClient = httpClient.remoteAddress(() -> new DomainSocketAddress(socketPath));
+            apiUrl = "http://localhost";
+        } else if (!apiUrl.startsWith("http://") && !apiUrl.startsWith("https://")) {
+            // Убедимся, что apiUrl содержит полный URL с протоколом
             apiUrl = "http://" + apiUrl;
-            System.out.println("Adding protocol to API URL: " + apiUrl);
+            log.info("Adding protocol to API URL: {}", apiUrl);
+            this.baseApiUrl = apiUrl;
         }
-        
-        this.baseApiUrl = apiUrl;
+        if (ollamaConfig.getTransport().isH2c()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C);
+        }
+        log.info("Ollama API transport: {}, {}", baseApiUrl.startsWith(UNIX_SCHEME) ? "unix socket" : "tcp",
+                ollamaConfig.getTransport().isH2c() ? "h2c" : "HTTP/1.1");
+
+        ClientHttpConnector connector = new ReactorClientHttpConnector(httpClient);
+        if (baseApiUrl.startsWith(UNIX_SCHEME)) {
+            // Запрос с абсолютным URI reactor-netty отправляет по TCP на хост из URI,
+            // с относительным - на заданный remoteAddress, то есть в сокет
+            ClientHttpConnector socketConnector = connector;
+            connector = (method, uri, requestCallback) -> socketConnector.connect(method,
+                    URI.create(uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery()),
+                    requestCallback);
+        }
+
         this.webClient = WebClient.builder()
                 .baseUrl(apiUrl)
+                .clientConnector(connector)
                 .build();
     }
 
     @Override
-    @Timed(value = "ollama.api.request", description = "Время выполнения запросов к Ollama API")
     public Mono<NeuralApiResponse> requestInsightsFromApi(String topic) {
-        String model = ollamaConfig.getModel();
+        return requestInsightsFromApi(topic, null);
+    }
+
+    @Override
+    public Mono<NeuralApiResponse> requestInsightsFromApi(String topic, GenerationParameters parameters) {
+        return requestInsightsFromApi(topic, parameters, Deadline.none());
+    }
+
+    /**
+     * Отправляет запрос к Ollama API с моделью и опциями из параметров генерации;
+     * без параметров используется модель из конфигурации.
+     * Таймаут запроса ограничен оставшимся до крайнего срока временем. При отмене подписки
+     * (клиент отключился или истек срок) соединение с Ollama закрывается, и генерация прекращается.
+     * Время каждого HTTP-запроса к Ollama учитывается в {@link #exchange}, а исход генерации -
+     * один раз на инсайт, сколько бы запросов он ни включал (см. {@link #countGeneration}).
+     * При ollama.generation.parallel-sections разделы инсайта запрашиваются отдельными промптами
+     * одновременно (см. {@link #requestSections}). При ollama.generation.system-prompt инструкции
+     * передаются в поле system, а в prompt - только тема.
+     * Если в параметрах запрошена часть разделов, промпт описывает только их: модель не тратит
+     * токены ответа на остальные, а время генерации растет с числом токенов ответа
+     */
+    @Override
+    public Mono<NeuralApiResponse> requestInsightsFromApi(String topic, GenerationParameters parameters,
+                                                          Deadline deadline) {
+        String model = resolveModel(parameters);
+        List<Section> sections = sections(parameters);
+        if (ollamaConfig.getGeneration().isParallelSections()) {
+            return countGeneration(deadline, requestSections(topic, model, sections, parameters, deadline));
+        }
+        if (ollamaConfig.getGeneration().isSystemPrompt()) {
+            return countGeneration(deadline,
+                    generate(model, systemPrompt(sections), buildTopicPrompt(topic), parameters, deadline));
+        }
+        return countGeneration(deadline, generate(model, null, buildPrompt(topic, sections), parameters, deadline));
+    }
+
+    /**
+     * Запрашивает инсайт одним промптом с потоковым ответом Ollama (stream: true) и передает фрагменты
+     * текста получателю по мере генерации. Режим ollama.generation.parallel-sections не применяется:
+     * разделы идут в одном ответе друг за другом, и первый из них доступен раньше остальных
+     */
+    @Override
+    public Mono<NeuralApiResponse> streamInsightsFromApi(String topic, GenerationParameters parameters,
+                                                         Deadline deadline, Consumer<String> tokens) {
+        String model = resolveModel(parameters);
+        List<Section> sections = sections(parameters);
+        boolean systemPrompt = ollamaConfig.getGeneration().isSystemPrompt();
+        Map<String, Object> requestBody = generateRequest(model,
+                systemPrompt ? systemPrompt(sections) : null,
+                systemPrompt ? buildTopicPrompt(topic) : buildPrompt(topic, sections), parameters, true);
+        String promptLayout = systemPrompt ? OllamaMetrics.PROMPT_SYSTEM : OllamaMetrics.PROMPT_INLINE;
+
+        log.debug("Отправка потокового запроса к Ollama API: {}/api/generate, модель: {}", baseApiUrl, model);
+        return countGeneration(deadline, exchange(model, promptLayout, deadline, () -> {
+            StringBuilder text = new StringBuilder();
+            return webClient.post()
+                    .uri("/api/generate")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToFlux(NeuralApiResponse.class)
+                    .doOnNext(chunk -> {
+                        if (chunk.getResponse() != null && !chunk.getResponse().isEmpty()) {
+                            text.append(chunk.getResponse());
+                            tokens.accept(chunk.getResponse());
+                        }
+                    })
+                    // Последняя строка потока (done: true) содержит счетчики и длительности генерации
+                    .last()
+                    .map(last -> {
+                        last.setResponse(text.toString());
+                        return last;
+                    });
+        }));
+    }
+
+    private String resolveModel(GenerationParameters parameters) {
+        String model = parameters != null ? parameters.getModel() : ollamaConfig.getModel();
         if (model == null || model.isEmpty()) {
             model = "llama2";
-            System.out.println("WARNING: Model name is null or empty, using default: " + model);
+            log.warn("Model name is null or empty, using default: {}", model);
         }
-        
+        return model;
+    }
+
+    /**
+     * Запрашивает разделы инсайта (overview, keyConcepts, facts, applications или их часть) отдельными промптами
+     * одновременно и собирает их в JSON той же структуры, что и ответ на общий промпт.
+     * Время ответа определяется самым длинным разделом, а не суммой всех разделов.
+     * Если часть разделов не удалось получить, ответ содержит остальные и список missingSections;
+     * если не удалось получить ни одного, Mono завершается ошибкой первого раздела
+     */
+    private Mono<NeuralApiResponse> requestSections(String topic, String model, List<Section> sections,
+                                                    GenerationParameters parameters, Deadline deadline) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Flux.fromIterable(sections)
+                    .flatMap(section -> generateSection(section, topic, model, parameters, deadline)
+                            .map(response -> response.getError() != null
+                                    ? SectionResult.failed(section, new IllegalStateException(response.getError()))
+                                    : SectionResult.completed(section, response))
+                            .onErrorResume(e -> Mono.just(SectionResult.failed(section, e))))
+                    .collectList()
+                    .flatMap(results -> mergeSections(model, results, System.nanoTime() - start));
+        });
+    }
+
+    private Mono<NeuralApiResponse> generateSection(Section section, String topic, String model,
+                                                    GenerationParameters parameters, Deadline deadline) {
+        if (ollamaConfig.getGeneration().isSystemPrompt()) {
+            return generate(model, section.system(), buildTopicPrompt(topic), parameters, deadline);
+        }
+        return generate(model, null, section.prompt(topic), parameters, deadline);
+    }
+
+    private Mono<NeuralApiResponse> mergeSections(String model, List<SectionResult> results, long latencyNanos) {
+        Map<String, Object> sections = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        Throwable firstError = null;
+        NeuralApiResponse merged = new NeuralApiResponse();
+        merged.setModel(model);
+        merged.setDone(true);
+        merged.setLatencyNanos(latencyNanos);
+        // Разделы в порядке перечисления, а не завершения
+        results.sort(Comparator.comparing(SectionResult::section));
+        for (SectionResult result : results) {
+            Section section = result.section();
+            if (result.error() != null) {
+                log.debug("Раздел {} не получен: {}", section.field, result.error().toString());
+                missing.add(section.field);
+                firstError = firstError != null ? firstError : result.error();
+                continue;
+            }
+            NeuralApiResponse response = result.response();
+            sections.put(section.field, section.list
+                    ? parseList(response.getResponse()) : trimToEmpty(response.getResponse()));
+            merged.setEvalCount(sum(merged.getEvalCount(), response.getEvalCount()));
+            merged.setPromptEvalCount(sum(merged.getPromptEvalCount(), response.getPromptEvalCount()));
+        }
+        if (sections.isEmpty()) {
+            return Mono.error(firstError);
+        }
+        if (!missing.isEmpty()) {
+            sections.put("missingSections", missing);
+        }
+        try {
+            merged.setResponse("```json\n" + SECTION_MAPPER.writeValueAsString(sections) + "\n```");
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        return Mono.just(merged);
+    }
+
+    /**
+     * Отправляет один промпт в /api/generate и учитывает метрики запроса.
+     * Системный промпт передается отдельным полем system: шаблон модели ставит его перед промптом,
+     * поэтому у запросов с одинаковым system совпадает начало контекста, и Ollama не оценивает его заново
+     *
+     * @param system неизменные инструкции или null, если они уже включены в prompt
+     */
+    private Mono<NeuralApiResponse> generate(String model, String system, String prompt,
+                                             GenerationParameters parameters, Deadline deadline) {
+        Map<String, Object> requestBody = generateRequest(model, system, prompt, parameters, false);
+        String promptLayout = system != null ? OllamaMetrics.PROMPT_SYSTEM : OllamaMetrics.PROMPT_INLINE;
+        return send("/api/generate", requestBody, model, promptLayout, deadline);
+    }
+
+    private static Map<String, Object> generateRequest(String model, String system, String prompt,
+                                                       GenerationParameters parameters, boolean stream) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
-        requestBody.put("prompt", buildPrompt(topic));
+        if (system != null) {
+            requestBody.put("system", system);
+        }
+        requestBody.put("prompt", prompt);
+        requestBody.put("stream", stream);
+        if (parameters != null && !parameters.getOptions().isEmpty()) {
+            requestBody.put("options", parameters.getOptions());
+        }
+        return requestBody;
+    }
+
+    /**
+     * Отправляет диалог в /api/chat. Ollama переиспользует кэш префикса, совпадающего с предыдущим
+     * запросом, поэтому при продолжении диалога оцениваются в основном новые сообщения.
+     * Продолжение диалога учитывается в счетчике исходов как отдельная генерация
+     */
+    @Override
+    public Mono<NeuralApiResponse> chat(List<ChatMessage> messages, GenerationParameters parameters,
+                                        Deadline deadline) {
+        String model = resolveModel(parameters);
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        requestBody.put("messages", messages);
         requestBody.put("stream", false);
+        if (parameters != null && !parameters.getOptions().isEmpty()) {
+            requestBody.put("options", parameters.getOptions());
+        }
+        return countGeneration(deadline, send("/api/chat", requestBody, model, OllamaMetrics.PROMPT_CHAT, deadline)
+                .doOnNext(response -> {
+                    if (response.getResponse() == null && response.getMessage() != null) {
+                        response.setResponse(response.getMessage().getContent());
+                    }
+                }));
+    }
+
+    @Override
+    public List<ChatMessage> insightMessages(String topic, GenerationParameters parameters) {
+        List<ChatMessage> messages = new ArrayList<>(2);
+        messages.add(new ChatMessage(ChatMessage.SYSTEM, systemPrompt(sections(parameters))));
+        messages.add(new ChatMessage(ChatMessage.USER, buildTopicPrompt(topic)));
+        return messages;
+    }
+
+    /**
+     * Отправляет запрос генерации в Ollama API и учитывает метрики запроса
+     */
+    private Mono<NeuralApiResponse> send(String uri, Map<String, Object> requestBody, String model,
+                                         String promptLayout, Deadline deadline) {
+        log.debug("Отправка запроса к Ollama API: {}{}, модель: {}", baseApiUrl, uri, model);
         
-        System.out.println("Отправка запроса к Ollama API: " + this.baseApiUrl + "/api/generate");
-        System.out.println("Используемая модель: " + model);
-        
-        return webClient.post()
-                .uri("/api/generate")
+        return exchange(model, promptLayout, deadline, () -> webClient.post()
+                .uri(uri)
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(requestBody)
                 .retrieve()
-                .bodyToMono(NeuralApiResponse.class)
-                .doOnSuccess(response -> {
-                    System.out.println("Успешно получен ответ от Ollama API");
-                    System.out.println("Ответ: " + (response.getResponse() != null ? 
-                        (response.getResponse().length() > 100 ? 
-                            response.getResponse().substring(0, 100) + "..." : 
-                            response.getResponse()) : 
-                        "null"));
-                })
-                .doOnError(error -> {
-                    System.err.println("Ошибка при запросе к Ollama API: " + error.getMessage());
-                    error.printStackTrace();
-                });
+                .bodyToMono(NeuralApiResponse.class));
+    }
+
+    /**
+     * Учитывает исход генерации в счетчике ollama.generations один раз на запрос инсайта или диалога.
+     * При ollama.generation.parallel-sections генерация включает по запросу к Ollama на раздел,
+     * поэтому исход учитывается здесь, а не в {@link #exchange}
+     */
+    private Mono<NeuralApiResponse> countGeneration(Deadline deadline, Mono<NeuralApiResponse> generation) {
+        return generation
+                .doOnSuccess(response -> ollamaMetrics.recordGenerationOutcome(OllamaMetrics.GENERATION_COMPLETED))
+                .doOnError(error -> ollamaMetrics.recordGenerationOutcome(deadline.isExpired()
+                        ? OllamaMetrics.GENERATION_DEADLINE_EXCEEDED : OllamaMetrics.GENERATION_FAILED))
+                .doOnCancel(() -> ollamaMetrics.recordGenerationOutcome(deadline.isExpired()
+                        ? OllamaMetrics.GENERATION_DEADLINE_EXCEEDED : OllamaMetrics.GENERATION_CANCELLED));
+    }
+
+    /**
+     * Выполняет HTTP-запрос к Ollama с таймаутом по крайнему сроку и учитывает его время
+     * в ollama.api.request с исходом запроса
+     *
+     * @param call запрос, создаваемый при подписке
+     */
+    private Mono<NeuralApiResponse> exchange(String requestModel, String promptLayout, Deadline deadline,
+                                             Supplier<Mono<NeuralApiResponse>> call) {
+        return Mono.defer(() -> {
+            if (deadline.isExpired()) {
+                // Срок истек, пока запрос ждал своей очереди: Ollama не вызываем
+                return Mono.error(new TimeoutException("Истек срок обработки запроса до обращения к Ollama"));
+            }
+            long start = System.nanoTime();
+            return call.get()
+                    .timeout(deadline.cap(ollamaConfig.getTimeout()))
+                    .doOnSuccess(response -> {
+                        long latencyNanos = System.nanoTime() - start;
+                        if (response != null) {
+                            response.setLatencyNanos(latencyNanos);
+                        }
+                        ollamaMetrics.recordRequest(requestModel, OllamaMetrics.OUTCOME_SUCCESS, latencyNanos);
+                        ollamaMetrics.recordGeneration(response, promptLayout);
+                        if (shouldLogSuccess()) {
+                            log.debug("Успешно получен ответ от Ollama API (1 из {}): {}",
+                                    successLogSampleRate, preview(response != null ? response.getResponse() : null));
+                        }
+                    })
+                    .doOnError(error -> {
+                        ollamaMetrics.recordRequest(requestModel, OllamaMetrics.outcomeOf(error),
+                                System.nanoTime() - start);
+                        log.warn("Ошибка при запросе к Ollama API (модель {}): {}", requestModel, error.toString());
+                        log.debug("Стек ошибки запроса к Ollama API", error);
+                    })
+                    .doOnCancel(() -> {
+                        ollamaMetrics.recordRequest(requestModel, OllamaMetrics.OUTCOME_CANCELLED,
+                                System.nanoTime() - start);
+                        log.debug("Запрос к Ollama API отменен (модель {})", requestModel);
+                    });
+        });
+    }
+
+    /**
+     * Запрашивает эмбеддинг через /api/embeddings. Время запроса учитывается в метрике
+     * ollama.api.request с тегом модели эмбеддингов
+     */
+    @Override
+    public Mono<float[]> requestEmbedding(String text) {
+        String model = ollamaConfig.getEmbedding().getModel();
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        requestBody.put("prompt", text);
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return webClient.post()
+                    .uri("/api/embeddings")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(requestBody)
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)
+                    .timeout(ollamaConfig.getEmbedding().getTimeout())
+                    .map(NeuralApiServiceImpl::toVector)
+                    .doOnSuccess(vector -> ollamaMetrics.recordRequest(model, OllamaMetrics.OUTCOME_SUCCESS,
+                            System.nanoTime() - start))
+                    .doOnError(error -> {
+                        ollamaMetrics.recordRequest(model, OllamaMetrics.outcomeOf(error), System.nanoTime() - start);
+                        log.debug("Ошибка при запросе эмбеддинга (модель {}): {}", model, error.toString());
+                    });
+        });
+    }
+
+    private static float[] toVector(JsonNode body) {
+        JsonNode embedding = body.get("embedding");
+        if (embedding == null || !embedding.isArray() || embedding.isEmpty()) {
+            throw new IllegalStateException("Ответ Ollama не содержит эмбеддинга");
+        }
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) embedding.get(i).asDouble();
+        }
+        return vector;
+    }
+
+    @Override
+    public boolean hasStructuredContent(NeuralApiResponse response, GenerationParameters parameters) {
+        if (response == null || response.getError() != null || response.getResponse() == null) {
+            return false;
+        }
+        Map<String, Object> parsed = parseStructuredResponse(response.getResponse());
+        if (parsed == null || parsed.containsKey("missingSections")) {
+            return false;
+        }
+        // Для полного инсайта достаточно обзора, для части разделов нужны все запрошенные
+        return parameters == null || parameters.getFields().isEmpty()
+                ? parsed.containsKey("overview") : parsed.keySet().containsAll(parameters.getFields());
     }
 
     @Override
@@ -104,11 +486,14 @@ public class NeuralApiServiceImpl implements NeuralApiService {
 
         // Обработка ответа от нейросети
         String content = response.getResponse();
-        System.out.println("Преобразование ответа нейросети: " + (content != null ? 
-            (content.length() > 100 ? content.substring(0, 100) + "..." : content) : "null"));
         
-        // Парсим ответ и получаем структурированные данные
-        Map<String, Object> parsedData = parseNeuralResponse(content);
+        // Парсим ответ и получаем структурированные данные,
+        // при отсутствии валидного JSON используем резервный метод извлечения
+        Map<String, Object> parsedData = parseStructuredResponse(content);
+        if (parsedData == null) {
+            ollamaMetrics.recordParseFallback(response.getModel());
+            parsedData = extractDataManually(content);
+        }
         
         if (parsedData.isEmpty() && content != null && !content.isEmpty()) {
             // Если не удалось распарсить JSON, пытаемся извлечь его из текста
@@ -117,10 +502,10 @@ public class NeuralApiServiceImpl implements NeuralApiService {
                 if (jsonStr != null) {
                     ObjectMapper mapper = new ObjectMapper();
                     parsedData = mapper.readValue(jsonStr, new TypeReference<Map<String, Object>>() {});
-                    System.out.println("Успешно извлечен и распарсен JSON из ответа");
+                    log.debug("Успешно извлечен и распарсен JSON из ответа");
                 }
             } catch (Exception e) {
-                System.err.println("Ошибка при извлечении JSON из ответа: " + e.getMessage());
+                log.debug("Ошибка при извлечении JSON из ответа: {}", e.getMessage());
                 // Если не удалось распарсить JSON, используем весь ответ как overview
                 parsedData.put("overview", content);
             }
@@ -157,22 +542,175 @@ public class NeuralApiServiceImpl implements NeuralApiService {
     }
 
     /**
-     * Создает структурированный промпт для запроса к нейросети
-     * 
-     * @param topic тема для анализа
-     * @return промпт для нейросети
+     * Решает, попадет ли успешная генерация в отладочный лог.
+     * Логируется в среднем одна из successLogSampleRate генераций; при выключенном DEBUG
+     * проверка сводится к одному сравнению уровня
+     *
+     * @return true, если генерацию нужно залогировать
+     */
+    private boolean shouldLogSuccess() {
+        return log.isDebugEnabled()
+                && (successLogSampleRate == 1 || ThreadLocalRandom.current().nextInt(successLogSampleRate) == 0);
+    }
+
+    private static String preview(String content) {
+        if (content == null) {
+            return "null";
+        }
+        return content.length() > LOG_PREVIEW_LENGTH ? content.substring(0, LOG_PREVIEW_LENGTH) + "..." : content;
+    }
+
+    /**
+     * Промпт с темой перед инструкциями для запрошенных разделов инсайта
+     */
+    private static String buildPrompt(String topic, List<Section> sections) {
+        return ASSISTANT_ROLE + " Твоя задача - предоставить структурированный и информативный анализ на тему '"
+               + topic + "'." + formatInstructions(sections);
+    }
+
+    /**
+     * Системный промпт для запрошенных разделов; для полного инсайта - общий для всех запросов
+     */
+    private static String systemPrompt(List<Section> sections) {
+        return sections == ALL_SECTIONS ? SYSTEM_PROMPT : buildSystemPrompt(sections);
+    }
+
+    private static String buildSystemPrompt(List<Section> sections) {
+        return ASSISTANT_ROLE
+                + " Твоя задача - предоставить структурированный и информативный анализ темы, которую назовет пользователь."
+                + formatInstructions(sections);
+    }
+
+    /**
+     * Описание формата ответа: JSON только с запрошенными разделами
+     */
+    private static String formatInstructions(List<Section> sections) {
+        StringBuilder format = new StringBuilder(512)
+                .append("\n\nОтвет должен быть в следующем формате JSON (важно придерживаться этого формата):\n")
+                .append("```json\n{");
+        for (int i = 0; i < sections.size(); i++) {
+            format.append(i > 0 ? "," : "").append("\n  ").append(sections.get(i).format);
+        }
+        return format.append("\n}\n```\n\n")
+                .append(ACCURACY_INSTRUCTIONS).append(" Используй современные данные.")
+                .append(" Не включай информацию, в которой не уверен.")
+                .toString();
+    }
+
+    /**
+     * Разделы инсайта, запрошенные в параметрах генерации, в порядке перечисления
+     */
+    private static List<Section> sections(GenerationParameters parameters) {
+        if (parameters == null || parameters.getFields().isEmpty()) {
+            return ALL_SECTIONS;
+        }
+        List<Section> sections = new ArrayList<>(parameters.getFields().size());
+        for (Section section : ALL_SECTIONS) {
+            if (parameters.includes(section.field)) {
+                sections.add(section);
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Промпт пользователя к системному промпту: только тема
+     */
+    private static String buildTopicPrompt(String topic) {
+        return "Тема: '" + topic + "'";
+    }
+
+    /**
+     * Разделы инсайта: строка формата JSON для общего промпта и промпт для режима параллельной генерации
+     */
+    private enum Section {
+        OVERVIEW("overview", false,
+                "\"overview\": \"Всесторонний обзор темы на 2-3 абзаца, охватывающий определение, историю, значимость и актуальность темы.\"",
+                "Напиши всесторонний обзор темы на 2-3 абзаца, охватывающий определение, "
+                + "историю, значимость и актуальность темы. Ответь только текстом обзора, без заголовков."),
+        KEY_CONCEPTS("keyConcepts", true,
+                "\"keyConcepts\": [\"Концепция 1 с кратким пояснением\", \"Концепция 2 с кратким пояснением\", ...]",
+                "Перечисли 5-7 ключевых концепций темы с кратким пояснением каждой. "
+                + "Ответь только JSON-массивом строк: [\"Концепция 1 с кратким пояснением\", ...]"),
+        FACTS("facts", true,
+                "\"facts\": [\"Интересный факт 1\", \"Интересный факт 2\", ...]",
+                "Приведи 3-5 интересных фактов о теме. "
+                + "Ответь только JSON-массивом строк: [\"Интересный факт 1\", ...]"),
+        APPLICATIONS("applications", false,
+                "\"applications\": \"Описание практических применений или значимости темы в реальной жизни\"",
+                "Опиши практические применения или значимость темы в реальной жизни "
+                + "в одном абзаце. Ответь только текстом, без заголовков.");
+
+        private final String field;
+        private final boolean list;
+        private final String format;
+        private final String instruction;
+
+        Section(String field, boolean list, String format, String instruction) {
+            this.field = field;
+            this.list = list;
+            this.format = format;
+            this.instruction = instruction;
+        }
+
+        private String prompt(String topic) {
+            return ASSISTANT_ROLE + " Тема: '" + topic + "'.\n\n" + instruction
+                    + "\n\n" + ACCURACY_INSTRUCTIONS + " Не включай информацию, в которой не уверен.";
+        }
+
+        private String system() {
+            return ASSISTANT_ROLE + " Пользователь назовет тему.\n\n" + instruction
+                    + "\n\n" + ACCURACY_INSTRUCTIONS + " Не включай информацию, в которой не уверен.";
+        }
+    }
+
+    private record SectionResult(Section section, NeuralApiResponse response, Throwable error) {
+
+        private static SectionResult completed(Section section, NeuralApiResponse response) {
+            return new SectionResult(section, response, null);
+        }
+
+        private static SectionResult failed(Section section, Throwable error) {
+            return new SectionResult(section, null, error);
+        }
+    }
+
+    /**
+     * Разбирает раздел-список: JSON-массив строк или, если модель ответила текстом, строки списка
      */
-    private String buildPrompt(String topic) {
-        return "Ты - умный аналитический ассистент. Твоя задача - предоставить структурированный и информативный анализ на тему '" + topic + "'."
-               + "\n\nОтвет должен быть в следующем формате JSON (важно придерживаться этого формата):\n"
-               + "```json\n{"
-               + "\n  \"overview\": \"Всесторонний обзор темы на 2-3 абзаца, охватывающий определение, историю, значимость и актуальность темы.\","
-               + "\n  \"keyConcepts\": [\"Концепция 1 с кратким пояснением\", \"Концепция 2 с кратким пояснением\", ...],"
-               + "\n  \"facts\": [\"Интересный факт 1\", \"Интересный факт 2\", ...],"
-               + "\n  \"applications\": \"Описание практических применений или значимости темы в реальной жизни\""
-               + "\n}\n```\n\n"
-               + "Ответ должен быть точным, информативным и научно обоснованным. Используй современные данные."
-               + " Не включай информацию, в которой не уверен.";
+    private static List<String> parseList(String content) {
+        if (content == null) {
+            return new ArrayList<>();
+        }
+        int open = content.indexOf('[');
+        int close = content.lastIndexOf(']');
+        if (open >= 0 && close > open) {
+            try {
+                return SECTION_MAPPER.readValue(content.substring(open, close + 1),
+                        new TypeReference<List<String>>() {});
+            } catch (JsonProcessingException e) {
+                log.debug("Раздел-список не является JSON-массивом строк: {}", e.getMessage());
+            }
+        }
+        List<String> items = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            String item = LIST_MARKER.matcher(line).replaceFirst("").trim();
+            if (!item.isEmpty()) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private static String trimToEmpty(String content) {
+        return content == null ? "" : content.trim();
+    }
+
+    private static Integer sum(Integer total, Integer value) {
+        if (value == null) {
+            return total;
+        }
+        return total == null ? value : total + value;
     }
 
     /**
@@ -194,7 +732,6 @@ public class NeuralApiServiceImpl implements NeuralApiService {
         if (jsonMatcher.find()) {
             String jsonContent = jsonMatcher.group(1).trim();
             if (jsonContent.startsWith("{") && jsonContent.endsWith("}")) {
-                System.out.println("Извлечен JSON из markdown блока кода");
                 return jsonContent;
             }
         }
@@ -209,10 +746,9 @@ public class NeuralApiServiceImpl implements NeuralApiService {
                 // Проверяем, является ли найденная строка валидным JSON
                 ObjectMapper mapper = new ObjectMapper();
                 mapper.readTree(jsonCandidate);
-                System.out.println("Извлечен JSON между фигурными скобками");
                 return jsonCandidate;
             } catch (Exception e) {
-                System.out.println("Найденная строка не является валидным JSON: " + e.getMessage());
+                log.debug("Найденная строка не является валидным JSON: {}", e.getMessage());
             }
         }
 
@@ -220,12 +756,12 @@ public class NeuralApiServiceImpl implements NeuralApiService {
     }
 
     /**
-     * Парсит ответ нейросети и преобразует его в структурированный формат
+     * Парсит JSON из ответа нейросети и преобразует его в структурированный формат
      *
      * @param content ответ от нейросети
-     * @return структурированный ответ в виде Map
+     * @return структурированный ответ в виде Map или null, если валидный JSON не найден
      */
-    private Map<String, Object> parseNeuralResponse(String content) {
+    private Map<String, Object> parseStructuredResponse(String content) {
         Map<String, Object> result = new HashMap<>();
         
         try {
@@ -261,16 +797,24 @@ public class NeuralApiServiceImpl implements NeuralApiService {
                 if (rootNode.has("applications")) {
                     result.put("applications", rootNode.get("applications").asText());
                 }
+
+                // Разделы, не полученные в режиме параллельной генерации
+                if (rootNode.has("missingSections") && rootNode.get("missingSections").isArray()) {
+                    List<String> missing = new ArrayList<>();
+                    for (JsonNode section : rootNode.get("missingSections")) {
+                        missing.add(section.asText());
+                    }
+                    result.put("missingSections", missing);
+                }
                 
                 return result;
             }
         } catch (Exception e) {
             // При ошибке парсинга используем резервный метод извлечения
-            System.err.println("Ошибка при парсинге JSON из ответа нейросети: " + e.getMessage());
+            log.debug("Ошибка при парсинге JSON из ответа нейросети: {}", e.getMessage());
         }
         
-        // Если не удалось распарсить JSON, используем резервный метод
-        return extractDataManually(content);
+        return null;
     }
     
     /**
@@ -0,0 +1,310 @@
+package com.example.springbootapp.simulator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Логика симулятора Ollama API без привязки к веб-слою.
+ * Планирует генерацию (задержки, число токенов, ошибки и битый JSON) по настройкам
+ * {@link OllamaSimulatorConfig} и формирует тела ответов в формате Ollama
+ */
+public class OllamaSimulator {
+
+    private static final Pattern TOPIC_PATTERN = Pattern.compile("'([^']{1,200})'");
+    private static final String[] FILLER = {
+            "исследования", "показывают", "что", "эта", "область", "активно", "развивается", "и",
+            "находит", "применение", "в", "науке", "технологиях", "образовании", "и", "промышленности"
+    };
+
+    private final OllamaSimulatorConfig config;
+    private final Supplier<Random> random;
+    private final Map<String, Instant> loadedModels = new ConcurrentHashMap<>();
+    // Последний системный промпт (или история диалога) модели: как в кэше префикса Ollama,
+    // его токены повторно не оцениваются
+    private final Map<String, String> cachedSystemPrompts = new ConcurrentHashMap<>();
+
+    public OllamaSimulator(OllamaSimulatorConfig config) {
+        this(config, ThreadLocalRandom::current);
+    }
+
+    public OllamaSimulator(OllamaSimulatorConfig config, Supplier<Random> random) {
+        this.config = config;
+        this.random = random;
+    }
+
+    /**
+     * План одной генерации: задержки, текст ответа по токенам и исход
+     */
+    public static final class GenerationPlan {
+        private final String model;
+        private final boolean error;
+        private final long loadNanos;
+        private final long promptEvalNanos;
+        private final long perTokenNanos;
+        private final int promptTokens;
+        private final List<String> tokens;
+
+        GenerationPlan(String model, boolean error, long loadNanos, long promptEvalNanos,
+                       long perTokenNanos, int promptTokens, List<String> tokens) {
+            this.model = model;
+            this.error = error;
+            this.loadNanos = loadNanos;
+            this.promptEvalNanos = promptEvalNanos;
+            this.perTokenNanos = perTokenNanos;
+            this.promptTokens = promptTokens;
+            this.tokens = tokens;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+
+        /**
+         * Задержка до первого токена: загрузка модели и оценка промпта
+         */
+        public long getFirstTokenNanos() {
+            return loadNanos + promptEvalNanos;
+        }
+
+        public long getPerTokenNanos() {
+            return perTokenNanos;
+        }
+
+        public long getTotalNanos() {
+            return getFirstTokenNanos() + perTokenNanos * tokens.size();
+        }
+
+        public List<String> getTokens() {
+            return tokens;
+        }
+
+        public String getText() {
+            return String.join("", tokens);
+        }
+    }
+
+    /**
+     * Планирует генерацию ответа на промпт
+     *
+     * @param model запрошенная модель
+     * @param prompt промпт
+     * @param numPredict ограничение числа токенов из options.num_predict или null
+     * @return план генерации
+     */
+    public GenerationPlan plan(String model, String prompt, Integer numPredict) {
+        return plan(model, null, prompt, numPredict);
+    }
+
+    /**
+     * Планирует генерацию ответа на промпт с системным промптом. Если системный промпт продолжает
+     * предыдущий для этой модели, оцениваются только новые токены, а время оценки
+     * уменьшается пропорционально
+     *
+     * @param model запрошенная модель
+     * @param system системный промпт или история диалога, или null
+     * @param prompt промпт
+     * @param numPredict ограничение числа токенов из options.num_predict или null
+     * @return план генерации
+     */
+    public GenerationPlan plan(String model, String system, String prompt, Integer numPredict) {
+        Random rnd = random.get();
+        long loadNanos = 0L;
+        if (loadedModels.putIfAbsent(model, Instant.now()) == null) {
+            loadNanos = config.getLoadDuration().toNanos();
+        }
+        long promptEvalNanos = logNormal(rnd, config.getPromptEvalLatency().toNanos());
+        long perTokenNanos = (long) (1_000_000_000L / Math.max(0.001, config.getTokensPerSecond()));
+        int promptTokens = prompt == null ? 0 : Math.max(1, prompt.length() / 4);
+        if (system != null && !system.isEmpty()) {
+            int systemTokens = Math.max(1, system.length() / 4);
+            String cached = cachedSystemPrompts.put(model, system);
+            int newTokens = cached != null && system.startsWith(cached)
+                    ? (system.length() - cached.length()) / 4 : systemTokens;
+            promptEvalNanos = promptEvalNanos * (promptTokens + newTokens) / Math.max(1, systemTokens + promptTokens);
+            promptTokens += newTokens;
+        }
+
+        boolean error = rnd.nextDouble() < config.getErrorRate();
+        if (error) {
+            return new GenerationPlan(model, true, loadNanos, promptEvalNanos, perTokenNanos, promptTokens, List.of());
+        }
+
+        int tokenCount = (int) Math.max(1, logNormal(rnd, config.getResponseTokens()));
+        boolean malformed = rnd.nextDouble() < config.getMalformedRate();
+        List<String> tokens = renderTokens(rnd, extractTopic(prompt), tokenCount, malformed);
+        if (numPredict != null && numPredict > 0 && tokens.size() > numPredict) {
+            // Как и Ollama, обрываем ответ на num_predict токенах, даже если JSON не закрыт
+            tokens = tokens.subList(0, numPredict);
+        }
+        return new GenerationPlan(model, false, loadNanos, promptEvalNanos, perTokenNanos, promptTokens, tokens);
+    }
+
+    /**
+     * Формирует промежуточный фрагмент потокового ответа /api/generate
+     */
+    public Map<String, Object> chunk(GenerationPlan plan, String token) {
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("model", plan.getModel());
+        chunk.put("created_at", Instant.now().toString());
+        chunk.put("response", token);
+        chunk.put("done", false);
+        return chunk;
+    }
+
+    /**
+     * Формирует итоговый ответ /api/generate со счетчиками генерации
+     *
+     * @param plan план генерации
+     * @param includeText включать ли полный текст (для непотокового режима)
+     */
+    public Map<String, Object> finalResponse(GenerationPlan plan, boolean includeText) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("model", plan.getModel());
+        response.put("created_at", Instant.now().toString());
+        response.put("response", includeText ? plan.getText() : "");
+        response.put("done", true);
+        response.put("done_reason", "stop");
+        response.put("total_duration", plan.getTotalNanos());
+        response.put("load_duration", plan.loadNanos);
+        response.put("prompt_eval_count", plan.promptTokens);
+        response.put("prompt_eval_duration", plan.promptEvalNanos);
+        response.put("eval_count", plan.getTokens().size());
+        response.put("eval_duration", plan.getPerTokenNanos() * plan.getTokens().size());
+        return response;
+    }
+
+    /**
+     * Формирует итоговый ответ /api/chat: текст ответа в поле message
+     */
+    public Map<String, Object> chatResponse(GenerationPlan plan) {
+        Map<String, Object> response = finalResponse(plan, false);
+        response.remove("response");
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", "assistant");
+        message.put("content", plan.getText());
+        response.put("message", message);
+        return response;
+    }
+
+    public Map<String, Object> errorResponse(GenerationPlan plan) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", "simulated failure for model " + plan.getModel());
+        return response;
+    }
+
+    /**
+     * Детерминированный нормированный вектор эмбеддинга для текста
+     *
+     * @param prompt текст
+     * @return вектор размерности embeddingDimensions
+     */
+    public List<Double> embedding(String prompt) {
+        Random rnd = new Random(prompt == null ? 0 : prompt.hashCode());
+        int dimensions = Math.max(1, config.getEmbeddingDimensions());
+        double[] vector = new double[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = rnd.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        norm = Math.sqrt(norm);
+        List<Double> embedding = new ArrayList<>(dimensions);
+        for (double v : vector) {
+            embedding.add(v / norm);
+        }
+        return embedding;
+    }
+
+    /**
+     * Модели, к которым уже обращались (ответ /api/ps)
+     */
+    public List<Map<String, Object>> loadedModels() {
+        List<Map<String, Object>> models = new ArrayList<>();
+        Collection<Map.Entry<String, Instant>> entries = loadedModels.entrySet();
+        for (Map.Entry<String, Instant> entry : entries) {
+            Map<String, Object> model = new LinkedHashMap<>();
+            model.put("name", entry.getKey());
+            model.put("model", entry.getKey());
+            model.put("size", 4_000_000_000L);
+            model.put("expires_at", entry.getValue().plusSeconds(300).toString());
+            models.add(model);
+        }
+        return models;
+    }
+
+    public long getEmbeddingLatencyNanos() {
+        return config.getEmbeddingLatency().toNanos();
+    }
+
+    private long logNormal(Random rnd, double median) {
+        return (long) (median * Math.exp(config.getLatencySigma() * rnd.nextGaussian()));
+    }
+
+    private static String extractTopic(String prompt) {
+        if (prompt == null) {
+            return "тема";
+        }
+        Matcher matcher = TOPIC_PATTERN.matcher(prompt);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        return prompt.length() > 60 ? prompt.substring(0, 60) : prompt;
+    }
+
+    /**
+     * Строит текст ответа, разбитый на токены-слова.
+     * Валидный ответ - JSON со структурой инсайта в markdown-блоке; битый - текст без JSON
+     */
+    private static List<String> renderTokens(Random rnd, String topic, int tokenCount, boolean malformed) {
+        List<String> tokens = new ArrayList<>(tokenCount + 32);
+        if (malformed) {
+            addWords(tokens, "Конечно! Вот обзор темы " + topic + ":\n\n");
+            fill(rnd, tokens, tokenCount);
+            addWords(tokens, "\n\n- " + topic + " остается важной областью исследований.");
+            return tokens;
+        }
+        int sectionTokens = Math.max(1, tokenCount / 4);
+        addWords(tokens, "```json\n{\n  \"overview\": \"" + topic + ": ");
+        fill(rnd, tokens, sectionTokens * 2);
+        addWords(tokens, "\",\n  \"keyConcepts\": [\"Понятие 1: ");
+        fill(rnd, tokens, sectionTokens / 2);
+        addWords(tokens, "\", \"Понятие 2: ");
+        fill(rnd, tokens, sectionTokens / 2);
+        addWords(tokens, "\"],\n  \"facts\": [\"");
+        fill(rnd, tokens, sectionTokens / 2);
+        addWords(tokens, "\"],\n  \"applications\": \"");
+        fill(rnd, tokens, sectionTokens / 2);
+        addWords(tokens, "\"\n}\n```");
+        return tokens;
+    }
+
+    private static void fill(Random rnd, List<String> tokens, int count) {
+        for (int i = 0; i < count; i++) {
+            tokens.add(FILLER[rnd.nextInt(FILLER.length)] + (i + 1 < count ? " " : ""));
+        }
+    }
+
+    private static void addWords(List<String> tokens, String text) {
+        int start = 0;
+        for (int i = 1; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i - 1) == ' ') {
+                tokens.add(text.substring(start, i));
+                start = i;
+            }
+        }
+    }
+}
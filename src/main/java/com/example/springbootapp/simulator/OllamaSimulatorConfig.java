@@ -0,0 +1,106 @@
+package com.example.springbootapp.simulator;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Настройки симулятора Ollama API (профиль ollama-sim)
+ */
+@Configuration
+@Profile(OllamaSimulatorConfig.PROFILE)
+@ConfigurationProperties(prefix = "ollama.simulator")
+public class OllamaSimulatorConfig {
+
+    public static final String PROFILE = "ollama-sim";
+
+    // Однократная задержка "загрузки" модели при первом обращении к ней
+    private Duration loadDuration = Duration.ZERO;
+    // Медиана задержки до первого токена (оценка промпта)
+    private Duration promptEvalLatency = Duration.ofMillis(150);
+    // Разброс логнормального распределения задержек и длины ответа
+    private double latencySigma = 0.4;
+    private double tokensPerSecond = 40;
+    // Медиана длины ответа в токенах
+    private int responseTokens = 250;
+    // Доля запросов, завершающихся ошибкой HTTP 500
+    private double errorRate = 0.0;
+    // Доля ответов без валидного JSON
+    private double malformedRate = 0.05;
+    private int embeddingDimensions = 768;
+    private Duration embeddingLatency = Duration.ofMillis(20);
+
+    public Duration getLoadDuration() {
+        return loadDuration;
+    }
+
+    public void setLoadDuration(Duration loadDuration) {
+        this.loadDuration = loadDuration;
+    }
+
+    public Duration getPromptEvalLatency() {
+        return promptEvalLatency;
+    }
+
+    public void setPromptEvalLatency(Duration promptEvalLatency) {
+        this.promptEvalLatency = promptEvalLatency;
+    }
+
+    public double getLatencySigma() {
+        return latencySigma;
+    }
+
+    public void setLatencySigma(double latencySigma) {
+        this.latencySigma = latencySigma;
+    }
+
+    public double getTokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    public void setTokensPerSecond(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    public int getResponseTokens() {
+        return responseTokens;
+    }
+
+    public void setResponseTokens(int responseTokens) {
+        this.responseTokens = responseTokens;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public double getMalformedRate() {
+        return malformedRate;
+    }
+
+    public void setMalformedRate(double malformedRate) {
+        this.malformedRate = malformedRate;
+    }
+
+    public int getEmbeddingDimensions() {
+        return embeddingDimensions;
+    }
+
+    public void setEmbeddingDimensions(int embeddingDimensions) {
+        this.embeddingDimensions = embeddingDimensions;
+    }
+
+    public Duration getEmbeddingLatency() {
+        return embeddingLatency;
+    }
+
+    public void setEmbeddingLatency(Duration embeddingLatency) {
+        this.embeddingLatency = embeddingLatency;
+    }
+}
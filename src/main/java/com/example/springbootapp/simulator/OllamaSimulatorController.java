@@ -0,0 +1,157 @@
+package com.example.springbootapp.simulator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Симулятор Ollama API для нагрузочного тестирования без реальной модели.
+ * Реализует /api/generate (потоковый и непотоковый режимы), /api/chat (непотоковый режим),
+ * /api/embeddings и /api/ps.
+ * Задержки выдерживаются таймерами Reactor, поэтому ожидающие ответы не занимают потоки сервлета
+ */
+@RestController
+@Profile(OllamaSimulatorConfig.PROFILE)
+public class OllamaSimulatorController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final OllamaSimulator simulator;
+    private final ObjectMapper objectMapper;
+
+    public OllamaSimulatorController(OllamaSimulatorConfig config, ObjectMapper objectMapper) {
+        this.simulator = new OllamaSimulator(config);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Имитирует /api/generate. Как и Ollama, по умолчанию отвечает потоком NDJSON
+     *
+     * @param body тело запроса (model, system, prompt, stream, options)
+     * @return поток фрагментов ответа или единичный JSON-ответ
+     */
+    @PostMapping("/api/generate")
+    public ResponseEntity<ResponseBodyEmitter> generate(@RequestBody Map<String, Object> body) {
+        String model = String.valueOf(body.getOrDefault("model", "llama2"));
+        boolean stream = !Boolean.FALSE.equals(body.get("stream"));
+        OllamaSimulator.GenerationPlan plan = simulator.plan(model, (String) body.get("system"),
+                (String) body.get("prompt"), numPredict(body));
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(
+                Duration.ofNanos(plan.getTotalNanos()).toMillis() + 30_000L);
+        MediaType mediaType = stream && !plan.isError() ? NDJSON : MediaType.APPLICATION_JSON;
+
+        Flux<String> lines;
+        if (plan.isError()) {
+            lines = Mono.delay(Duration.ofNanos(plan.getFirstTokenNanos()))
+                    .map(tick -> toJson(simulator.errorResponse(plan)))
+                    .flux();
+        } else if (stream) {
+            lines = Mono.delay(Duration.ofNanos(plan.getFirstTokenNanos()))
+                    .thenMany(Flux.fromIterable(plan.getTokens())
+                            .delayElements(Duration.ofNanos(plan.getPerTokenNanos()))
+                            .map(token -> toJson(simulator.chunk(plan, token)) + "\n"))
+                    .concatWith(Mono.fromSupplier(() -> toJson(simulator.finalResponse(plan, false)) + "\n"));
+        } else {
+            lines = Mono.delay(Duration.ofNanos(plan.getTotalNanos()))
+                    .map(tick -> toJson(simulator.finalResponse(plan, true)))
+                    .flux();
+        }
+
+        Disposable subscription = lines.subscribe(
+                line -> send(emitter, line, mediaType),
+                emitter::completeWithError,
+                emitter::complete);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+
+        HttpStatus status = plan.isError() ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK;
+        return ResponseEntity.status(status).contentType(mediaType).body(emitter);
+    }
+
+    /**
+     * Имитирует /api/chat в непотоковом режиме. Все сообщения, кроме последнего, считаются
+     * префиксом диалога: при продолжении диалога оцениваются только новые сообщения
+     *
+     * @param body тело запроса (model, messages, options)
+     * @return ответ с сообщением модели
+     */
+    @PostMapping("/api/chat")
+    public Mono<ResponseEntity<Map<String, Object>>> chat(@RequestBody Map<String, Object> body) {
+        String model = String.valueOf(body.getOrDefault("model", "llama2"));
+        StringBuilder history = new StringBuilder();
+        String last = null;
+        if (body.get("messages") instanceof List<?> messages) {
+            for (Object message : messages) {
+                if (last != null) {
+                    history.append(last).append('\n');
+                }
+                last = message instanceof Map<?, ?> map ? String.valueOf(map.get("content")) : String.valueOf(message);
+            }
+        }
+        OllamaSimulator.GenerationPlan plan = simulator.plan(model, history.toString(), last, numPredict(body));
+        return Mono.delay(Duration.ofNanos(plan.getTotalNanos()))
+                .map(tick -> plan.isError()
+                        ? ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(simulator.errorResponse(plan))
+                        : ResponseEntity.ok(simulator.chatResponse(plan)));
+    }
+
+    /**
+     * Имитирует /api/embeddings
+     */
+    @PostMapping("/api/embeddings")
+    public Mono<Map<String, Object>> embeddings(@RequestBody Map<String, Object> body) {
+        String prompt = (String) body.get("prompt");
+        return Mono.delay(Duration.ofNanos(simulator.getEmbeddingLatencyNanos()))
+                .map(tick -> Map.of("embedding", simulator.embedding(prompt)));
+    }
+
+    /**
+     * Имитирует /api/ps - список загруженных моделей
+     */
+    @GetMapping("/api/ps")
+    public Map<String, Object> runningModels() {
+        return Map.of("models", simulator.loadedModels());
+    }
+
+    private static Integer numPredict(Map<String, Object> body) {
+        if (body.get("options") instanceof Map<?, ?> options && options.get("num_predict") instanceof Number n) {
+            return n.intValue();
+        }
+        return null;
+    }
+
+    private String toJson(Map<String, Object> value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(ResponseBodyEmitter emitter, String line, MediaType mediaType) {
+        try {
+            emitter.send(line, mediaType);
+        } catch (IOException e) {
+            // Клиент закрыл соединение - прекращаем генерацию
+            throw Exceptions.propagate(e);
+        }
+    }
+}
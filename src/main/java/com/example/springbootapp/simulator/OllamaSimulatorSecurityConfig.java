@@ -0,0 +1,26 @@
+package com.example.springbootapp.simulator;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Открывает эндпоинты симулятора Ollama без аутентификации, как у настоящего Ollama
+ */
+@Configuration
+@Profile(OllamaSimulatorConfig.PROFILE)
+public class OllamaSimulatorSecurityConfig {
+
+    @Bean
+    @Order(1)
+    public SecurityFilterChain ollamaSimulatorFilterChain(HttpSecurity http) throws Exception {
+        http
+            .securityMatcher("/api/generate", "/api/chat", "/api/embeddings", "/api/ps")
+            .csrf(csrf -> csrf.disable())
+            .authorizeHttpRequests(authorizeRequests -> authorizeRequests.anyRequest().permitAll());
+        return http.build();
+    }
+}
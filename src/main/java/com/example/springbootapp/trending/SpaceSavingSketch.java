@@ -0,0 +1,128 @@
+package com.example.springbootapp.trending;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Алгоритм Space-Saving для поиска самых частых ключей в потоке с экспоненциальным затуханием.
+ * Хранит не больше capacity счетчиков: новый ключ при заполнении вытесняет счетчик с минимальным весом
+ * и наследует его вес как верхнюю границу ошибки. Любой ключ с долей потока больше 1 / capacity
+ * гарантированно присутствует среди счетчиков.
+ * <p>
+ * Вес события затухает как {@code exp(-age / tau)}. Чтобы не пересчитывать все счетчики на каждом событии,
+ * новые события получают растущий вес {@code exp((t - landmark) / tau)}, а при чтении веса делятся
+ * на тот же множитель для текущего момента. Когда показатель становится большим, счетчики
+ * перемасштабируются.
+ * <p>
+ * Класс не потокобезопасен
+ */
+public class SpaceSavingSketch {
+
+    // Порог показателя экспоненты, после которого счетчики перемасштабируются
+    private static final double RESCALE_EXPONENT = 30.0;
+
+    private final int capacity;
+    private final double tauNanos;
+    private final Map<String, Counter> counters;
+    private final TreeSet<Counter> ordered = new TreeSet<>(
+            Comparator.comparingDouble((Counter c) -> c.count).thenComparing(c -> c.key));
+    private long landmarkNanos;
+
+    /**
+     * @param capacity максимальное число счетчиков
+     * @param tauNanos постоянная затухания в наносекундах
+     * @param nowNanos текущее время
+     */
+    public SpaceSavingSketch(int capacity, long tauNanos, long nowNanos) {
+        this.capacity = Math.max(1, capacity);
+        this.tauNanos = Math.max(1L, tauNanos);
+        this.counters = new HashMap<>(this.capacity * 2);
+        this.landmarkNanos = nowNanos;
+    }
+
+    /**
+     * Учитывает одно событие по ключу
+     */
+    public void add(String key, long nowNanos) {
+        double exponent = (nowNanos - landmarkNanos) / tauNanos;
+        if (exponent > RESCALE_EXPONENT) {
+            rescale(nowNanos);
+            exponent = 0;
+        }
+        double weight = Math.exp(exponent);
+
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            ordered.remove(counter);
+            counter.count += weight;
+            ordered.add(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counter = new Counter(key, weight, 0);
+        } else {
+            Counter min = ordered.pollFirst();
+            counters.remove(min.key);
+            counter = new Counter(key, min.count + weight, min.count);
+        }
+        counters.put(key, counter);
+        ordered.add(counter);
+    }
+
+    /**
+     * Самые частые ключи на текущий момент
+     *
+     * @param limit максимальное количество ключей
+     * @param nowNanos текущее время
+     * @return ключи по убыванию затухающего веса
+     */
+    public List<Entry> top(int limit, long nowNanos) {
+        double scale = Math.exp(-(nowNanos - landmarkNanos) / tauNanos);
+        List<Entry> top = new ArrayList<>(Math.min(limit, counters.size()));
+        Iterator<Counter> iterator = ordered.descendingIterator();
+        while (iterator.hasNext() && top.size() < limit) {
+            Counter counter = iterator.next();
+            top.add(new Entry(counter.key, counter.count * scale, counter.error * scale));
+        }
+        return top;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private void rescale(long nowNanos) {
+        double factor = Math.exp(-(nowNanos - landmarkNanos) / tauNanos);
+        // Округление может уравнять близкие веса, поэтому упорядоченное множество строится заново
+        ordered.clear();
+        for (Counter counter : counters.values()) {
+            counter.count *= factor;
+            counter.error *= factor;
+            ordered.add(counter);
+        }
+        landmarkNanos = nowNanos;
+    }
+
+    /**
+     * Ключ с оценкой веса: настоящий вес лежит в диапазоне [weight - error, weight]
+     */
+    public record Entry(String key, double weight, double error) {
+    }
+
+    private static final class Counter {
+        private final String key;
+        private double count;
+        private double error;
+
+        private Counter(String key, double count, double error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
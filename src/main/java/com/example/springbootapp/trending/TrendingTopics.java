@@ -0,0 +1,156 @@
+package com.example.springbootapp.trending;
+
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Популярные темы за последние 5 минут, час и сутки (окна задаются insights.trending.windows).
+ * <p>
+ * Запрос только записывает тему в кольцевой буфер фиксированного размера (одна атомарная операция,
+ * без блокировок). Буфер разбирается в скетчи {@link SpaceSavingSketch} фоновым потоком каждые 100 мс
+ * и при чтении. При отставании разбора старые записи буфера перезаписываются: популярные темы
+ * от этого не теряются, а число пропущенных записей считается в метрике insight.trending.dropped.
+ * Память ограничена размером буфера и insights.trending.capacity счетчиков на окно
+ */
+@Component
+public class TrendingTopics {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MASK = BUFFER_SIZE - 1;
+    private static final long DRAIN_INTERVAL_MILLIS = 100;
+    private static final int MAX_TOPIC_LENGTH = 200;
+
+    private final AtomicReferenceArray<String> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final LongSupplier clock;
+    private final Counter dropped;
+    private final ScheduledExecutorService drainer;
+
+    // Поля ниже доступны только под drainLock
+    private final Map<Duration, SpaceSavingSketch> sketches = new LinkedHashMap<>();
+    private long readIndex;
+
+    public TrendingTopics(InsightConfig insightConfig, MeterRegistry registry) {
+        this(insightConfig, registry, System::nanoTime);
+    }
+
+    TrendingTopics(InsightConfig insightConfig, MeterRegistry registry, LongSupplier clock) {
+        InsightConfig.Trending config = insightConfig.getTrending();
+        this.clock = clock;
+        long now = clock.getAsLong();
+        for (Duration window : config.getWindows()) {
+            sketches.put(window, new SpaceSavingSketch(config.getCapacity(), window.toNanos(), now));
+        }
+        this.dropped = Counter.builder("insight.trending.dropped")
+                .description("Количество запросов, не учтенных в популярных темах из-за переполнения буфера")
+                .register(registry);
+        this.drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trending-topics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::tryDrain, DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainer.shutdownNow();
+    }
+
+    /**
+     * Учитывает запрос по теме
+     *
+     * @param topic тема запроса
+     */
+    public void record(String topic) {
+        if (topic == null || topic.isBlank()) {
+            return;
+        }
+        long index = writeIndex.getAndIncrement();
+        buffer.lazySet((int) (index & MASK), topic);
+    }
+
+    /**
+     * Окна, за которые доступны популярные темы
+     */
+    public List<Duration> getWindows() {
+        return new ArrayList<>(sketches.keySet());
+    }
+
+    /**
+     * Самые популярные темы за окно
+     *
+     * @param window одно из окон insights.trending.windows
+     * @param limit максимальное число тем
+     * @return темы по убыванию затухающей частоты
+     * @throws IllegalArgumentException если окно не настроено
+     */
+    public List<SpaceSavingSketch.Entry> top(Duration window, int limit) {
+        SpaceSavingSketch sketch = sketches.get(window);
+        if (sketch == null) {
+            throw new IllegalArgumentException("Недопустимое окно " + window + ". Допустимые окна: " + getWindows());
+        }
+        drainLock.lock();
+        try {
+            drain();
+            return Collections.unmodifiableList(sketch.top(limit, clock.getAsLong()));
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void tryDrain() {
+        if (drainLock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    private void drain() {
+        long end = writeIndex.get();
+        if (end - readIndex > BUFFER_SIZE) {
+            dropped.increment(end - readIndex - BUFFER_SIZE);
+            readIndex = end - BUFFER_SIZE;
+        }
+        long now = clock.getAsLong();
+        for (long i = readIndex; i < end; i++) {
+            // Запись, которую поток еще не успел положить в буфер, пропускается
+            String topic = buffer.getAndSet((int) (i & MASK), null);
+            if (topic != null) {
+                String key = normalize(topic);
+                for (SpaceSavingSketch sketch : sketches.values()) {
+                    sketch.add(key, now);
+                }
+            }
+        }
+        readIndex = end;
+    }
+
+    private static String normalize(String topic) {
+        String key = topic.trim().toLowerCase(Locale.ROOT);
+        return key.length() > MAX_TOPIC_LENGTH ? key.substring(0, MAX_TOPIC_LENGTH) : key;
+    }
+}
@@ -0,0 +1,27 @@
+-- liquibase formatted sql
+
+-- changeset author:insight-history:3
+-- comment: История сгенерированных инсайтов: тема, опции генерации и имя пользователя в таблице insight_history
+-- Таблица создана в changelog.sql с привязкой к users через user_id и текстом запроса в query.
+-- Приложение сохраняет инсайты по теме и имени пользователя (включая anonymous и system, которых нет в users),
+-- поэтому user_id и query становятся необязательными, а тема и имя пользователя существующих записей
+-- заполняются из них
+ALTER TABLE insight_history ADD COLUMN topic VARCHAR(500);
+ALTER TABLE insight_history ADD COLUMN options VARCHAR(500);
+ALTER TABLE insight_history ADD COLUMN username VARCHAR(50);
+
+UPDATE insight_history SET topic = left(query, 500);
+
+UPDATE insight_history h
+SET username = u.username
+FROM users u
+WHERE u.id = h.user_id;
+
+ALTER TABLE insight_history ALTER COLUMN topic SET NOT NULL;
+ALTER TABLE insight_history ALTER COLUMN model TYPE VARCHAR(100);
+ALTER TABLE insight_history ALTER COLUMN user_id DROP NOT NULL;
+ALTER TABLE insight_history ALTER COLUMN query DROP NOT NULL;
+ALTER TABLE insight_history ALTER COLUMN response DROP NOT NULL;
+
+CREATE INDEX idx_insight_history_created_at ON insight_history (created_at);
+CREATE INDEX idx_insight_history_topic ON insight_history (topic);
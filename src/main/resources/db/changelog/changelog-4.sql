@@ -0,0 +1,34 @@
+-- liquibase formatted sql
+
+-- changeset author:insight-response-blob:4
+-- comment: Ответы моделей в отдельной таблице с адресацией по содержимому
+CREATE TABLE insight_response_blob (
+    hash VARCHAR(64) PRIMARY KEY,
+    codec VARCHAR(20) NOT NULL,
+    raw_length INTEGER NOT NULL,
+    data BYTEA NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Ответ есть у всех записей из changelog.sql (там response NOT NULL) и у записей, сохраненных
+-- после changelog-3; хэш считается один раз на запись, затем по нему переносятся уникальные ответы
+ALTER TABLE insight_history ADD COLUMN response_hash VARCHAR(64);
+
+UPDATE insight_history
+SET response_hash = encode(sha256(convert_to(response, 'UTF8')), 'hex')
+WHERE response IS NOT NULL;
+
+-- Сохраненные ответы переносятся без сжатия (кодек none, InsightResponseCodec.NONE), одинаковые - один раз
+INSERT INTO insight_response_blob (hash, codec, raw_length, data)
+SELECT DISTINCT ON (response_hash) response_hash, 'none',
+       octet_length(convert_to(response, 'UTF8')), convert_to(response, 'UTF8')
+FROM insight_history
+WHERE response_hash IS NOT NULL
+ORDER BY response_hash;
+
+ALTER TABLE insight_history ADD CONSTRAINT fk_insight_history_response_hash
+    FOREIGN KEY (response_hash) REFERENCES insight_response_blob (hash);
+
+ALTER TABLE insight_history DROP COLUMN response;
+
+CREATE INDEX idx_insight_history_response_hash ON insight_history (response_hash);
@@ -0,0 +1,60 @@
+-- liquibase formatted sql
+
+-- changeset author:insight-history-partitions:5 splitStatements:false
+-- comment: Помесячное секционирование insight_history по created_at
+ALTER TABLE insight_history RENAME TO insight_history_unpartitioned;
+ALTER TABLE insight_history_unpartitioned RENAME CONSTRAINT insight_history_pkey TO insight_history_unpartitioned_pkey;
+DROP INDEX idx_insight_history_created_at;
+DROP INDEX idx_insight_history_topic;
+DROP INDEX idx_insight_history_response_hash;
+
+-- Ключ секционированной таблицы обязан включать created_at; id по-прежнему выдает insight_history_id_seq.
+-- Столбцы и ссылки те же, что у таблицы после changelog-3 и changelog-4, включая user_id и query записей
+-- из changelog.sql
+CREATE TABLE insight_history (
+    id BIGINT NOT NULL DEFAULT nextval('insight_history_id_seq'),
+    user_id BIGINT,
+    query TEXT,
+    model VARCHAR(100) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    topic VARCHAR(500) NOT NULL,
+    options VARCHAR(500),
+    username VARCHAR(50),
+    response_hash VARCHAR(64),
+    PRIMARY KEY (id, created_at),
+    CONSTRAINT fk_insight_history_user FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
+    CONSTRAINT fk_insight_history_response FOREIGN KEY (response_hash) REFERENCES insight_response_blob (hash)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE insight_history_id_seq OWNED BY insight_history.id;
+
+-- Секции insight_history_pYYYY_MM с месяца самой старой записи до трех месяцев вперед;
+-- дальше их заранее создает InsightHistoryPartitions
+DO $$
+DECLARE
+    partition_start DATE;
+    last_start DATE;
+BEGIN
+    SELECT date_trunc('month', COALESCE(min(created_at), CURRENT_TIMESTAMP))::date,
+           (date_trunc('month', GREATEST(COALESCE(max(created_at), CURRENT_TIMESTAMP), CURRENT_TIMESTAMP))
+               + INTERVAL '3 months')::date
+    INTO partition_start, last_start
+    FROM insight_history_unpartitioned;
+
+    WHILE partition_start <= last_start LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF insight_history FOR VALUES FROM (%L) TO (%L)',
+                       'insight_history_p' || to_char(partition_start, 'YYYY_MM'),
+                       partition_start, (partition_start + INTERVAL '1 month')::date);
+        partition_start := (partition_start + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO insight_history (id, user_id, query, model, created_at, topic, options, username, response_hash)
+SELECT id, user_id, query, model, created_at, topic, options, username, response_hash
+FROM insight_history_unpartitioned;
+
+DROP TABLE insight_history_unpartitioned;
+
+CREATE INDEX idx_insight_history_created_at ON insight_history (created_at);
+CREATE INDEX idx_insight_history_topic ON insight_history (topic);
+CREATE INDEX idx_insight_history_response_hash ON insight_history (response_hash);
@@ -0,0 +1,13 @@
+-- liquibase formatted sql
+
+-- changeset author:topic-embedding:6
+-- comment: Эмбеддинги тем индекса связанных тем, чтобы после перезапуска не запрашивать их у модели заново
+-- Эмбеддинги разных моделей лежат в разных пространствах, поэтому модель входит в ключ
+CREATE TABLE topic_embedding (
+    topic_key VARCHAR(500) NOT NULL,
+    model VARCHAR(100) NOT NULL,
+    topic VARCHAR(500) NOT NULL,
+    vector BYTEA NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (topic_key, model)
+);
@@ -0,0 +1,5 @@
+-- liquibase formatted sql
+
+-- changeset author:insight-response-blob-last-used:7
+-- comment: Время последнего использования ответа: очистка ответов без ссылок не трогает только что переиспользованный ответ
+ALTER TABLE insight_response_blob ADD COLUMN last_used_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
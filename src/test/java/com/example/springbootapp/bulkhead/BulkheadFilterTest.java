@@ -0,0 +1,93 @@
+package com.example.springbootapp.bulkhead;
+
+import com.example.springbootapp.config.BulkheadConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для фильтра изоляции групп эндпоинтов
+ */
+public class BulkheadFilterTest {
+
+    private SimpleMeterRegistry registry;
+    private BulkheadFilter filter;
+
+    @BeforeEach
+    public void setup() {
+        BulkheadConfig config = new BulkheadConfig();
+        config.getInsights().setMaxConcurrent(1);
+        config.getInsights().setMaxWait(Duration.ZERO);
+        registry = new SimpleMeterRegistry();
+        filter = new BulkheadFilter(config, registry);
+    }
+
+    /**
+     * Тест на отклонение запросов переполненной группы без влияния на другие группы
+     */
+    @Test
+    public void testSaturatedGroupDoesNotAffectOthers() throws Exception {
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        MockHttpServletResponse users = new MockHttpServletResponse();
+        MockHttpServletResponse health = new MockHttpServletResponse();
+
+        // Пока поток сервера обрабатывает запрос к инсайтам, группа insights заполнена
+        filter.doFilter(request("/api/insights"), new MockHttpServletResponse(), (req, res) -> {
+            filter.doFilter(request("/api/insights"), rejected, new MockFilterChain());
+            filter.doFilter(request("/api/users/1"), users, new MockFilterChain());
+            filter.doFilter(request("/actuator/health"), health, new MockFilterChain());
+            assertEquals(1.0, registry.get("http.bulkhead.active").tag("group", "insights").gauge().value());
+            assertEquals(0.0, registry.get("http.bulkhead.active").tag("group", "users").gauge().value());
+        });
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1.0, registry.get("http.bulkhead.rejected").tag("group", "insights").counter().count());
+        assertEquals(200, users.getStatus());
+        assertEquals(200, health.getStatus());
+        assertEquals(0.0, registry.get("http.bulkhead.active").tag("group", "insights").gauge().value());
+    }
+
+    /**
+     * Тест на возврат места асинхронным запросом при выходе потока из обработчика:
+     * ожидание генерации не занимает место, и следующий запрос, например попадание в кэш, принимается
+     */
+    @Test
+    public void testAsyncRequestReleasesWhenThreadReturns() throws Exception {
+        MockHttpServletRequest inFlight = request("/api/insights/generate");
+        inFlight.setAsyncSupported(true);
+        filter.doFilter(inFlight, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+
+        assertTrue(inFlight.isAsyncStarted());
+        assertEquals(0.0, registry.get("http.bulkhead.active").tag("group", "insights").gauge().value());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("/api/insights"), response, new MockFilterChain());
+        assertEquals(200, response.getStatus());
+        inFlight.getAsyncContext().complete();
+        assertEquals(0.0, registry.get("http.bulkhead.active").tag("group", "insights").gauge().value());
+    }
+
+    /**
+     * Тест на пропуск запросов вне групп
+     */
+    @Test
+    public void testUngroupedPathsAreNotLimited() {
+        assertNull(filter.resolve(request("/insights")));
+        assertEquals("auth", filter.resolve(request("/login")).getName());
+        assertEquals("auth", filter.resolve(request("/api/auth/register")).getName());
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        return new MockHttpServletRequest("POST", path);
+    }
+}
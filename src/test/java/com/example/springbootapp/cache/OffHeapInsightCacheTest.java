@@ -0,0 +1,130 @@
+package com.example.springbootapp.cache;
+
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.Cache;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Модульные тесты кэша инсайтов вне кучи
+ */
+public class OffHeapInsightCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private InsightConfig.OffHeapCache config;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        config = new InsightConfig.OffHeapCache();
+        config.setCapacity(DataSize.ofKilobytes(4));
+        config.setSegmentSize(DataSize.ofKilobytes(1));
+    }
+
+    /**
+     * Тест на чтение значения: возвращается равная копия, изменения которой не попадают в кэш
+     */
+    @Test
+    public void testPutAndGet() {
+        OffHeapInsightCache cache = new OffHeapInsightCache("insightsCache", config, meterRegistry);
+        Map<String, Object> insight = insight("Квантовые вычисления");
+
+        cache.put("тема", insight);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> cached = (Map<String, Object>) cache.get("тема").get();
+        assertEquals(insight, cached);
+
+        cached.put("overview", "изменено");
+        assertEquals(insight, cache.get("тема").get());
+        assertNull(cache.get("другая тема"));
+        assertTrue(cache.getUsedBytes() > 0);
+    }
+
+    /**
+     * Тест на вытеснение: при заполнении журнала затираются самые старые записи
+     */
+    @Test
+    public void testEvictsOldestWhenFull() {
+        config.setCompress(false);
+        OffHeapInsightCache cache = new OffHeapInsightCache("insightsCache", config, meterRegistry);
+
+        for (int i = 0; i < 40; i++) {
+            cache.put("тема " + i, insight("тема " + i));
+        }
+
+        assertNull(cache.get("тема 0"));
+        assertEquals(insight("тема 39"), cache.get("тема 39").get());
+        assertTrue(meterRegistry.get("insight.cache.offheap.evicted").counter().count() > 0);
+        assertTrue(cache.getUsedBytes() <= DataSize.ofKilobytes(4).toBytes());
+        double entries = meterRegistry.get("insight.cache.offheap.entries").gauge().value();
+        for (int i = 40 - (int) entries; i < 40; i++) {
+            assertEquals(insight("тема " + i), cache.get("тема " + i).get());
+        }
+    }
+
+    /**
+     * Тест на замену и удаление значения по ключу, а также на отказ для значения больше сегмента
+     */
+    @Test
+    public void testReplaceEvictAndReject() {
+        OffHeapInsightCache cache = new OffHeapInsightCache("insightsCache", config, meterRegistry);
+        cache.put("тема", insight("старый обзор"));
+        cache.put("тема", insight("новый обзор"));
+        assertEquals(insight("новый обзор"), cache.get("тема").get());
+
+        cache.evict("тема");
+        assertNull(cache.get("тема"));
+
+        // Случайный текст не сжимается и не помещается в сегмент
+        StringBuilder large = new StringBuilder();
+        Random random = new Random(1);
+        while (large.length() < 2048) {
+            large.append((char) ('a' + random.nextInt(26)));
+        }
+        cache.put("тема", insight("обзор"));
+        cache.put("тема", Map.of("overview", large.toString()));
+        assertNull(cache.get("тема"));
+        assertEquals(1.0, meterRegistry.get("insight.cache.offheap.rejected").counter().count());
+    }
+
+    /**
+     * Тест на хранение в отображенном в память файле
+     */
+    @Test
+    public void testMappedFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("insights.cache");
+        config.setPath(file.toString());
+        Cache cache = new OffHeapInsightCache("insightsCache", config, meterRegistry);
+
+        cache.put("тема", insight("Фотосинтез"));
+
+        assertNotNull(cache.get("тема"));
+        assertEquals(insight("Фотосинтез"), cache.get("тема").get());
+        assertTrue(Files.size(file) > 0);
+    }
+
+    private static Map<String, Object> insight(String overview) {
+        Map<String, Object> insight = new LinkedHashMap<>();
+        insight.put("overview", overview);
+        insight.put("keyConcepts", List.of("Кубит", "Суперпозиция"));
+        insight.put("facts", List.of("Факт 1", "Факт 2"));
+        insight.put("applications", "Криптография");
+        insight.put("relatedTopics", List.of(Map.of("topic", "Кубит", "score", 0.9)));
+        return insight;
+    }
+}
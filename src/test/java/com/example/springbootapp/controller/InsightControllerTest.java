@@ -1,27 +1,58 @@
 package com.example.springbootapp.controller;
 
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.idempotency.IdempotencyKeys;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightRequestContext.Priority;
+import com.example.springbootapp.model.InsightStreamEvent;
+import com.example.springbootapp.scheduler.GenerationRejectedException;
 import com.example.springbootapp.service.InsightService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -34,7 +65,6 @@ public class InsightControllerTest {
     @Mock
     private InsightService insightService;
 
-    @InjectMocks
     private InsightController insightController;
 
     private ObjectMapper objectMapper = new ObjectMapper();
@@ -42,6 +72,8 @@ public class InsightControllerTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        insightController = new InsightController(insightService, new InsightConfig(),
+                new IdempotencyKeys(new InsightConfig(), new SimpleMeterRegistry()));
         mockMvc = MockMvcBuilders.standaloneSetup(insightController).build();
     }
 
@@ -56,10 +88,10 @@ public class InsightControllerTest {
 
         // Настраиваем поведение мока
         Map<String, Object> serviceResponse = prepareSuccessServiceResponse();
-        when(insightService.getInsightsForTopic(anyString())).thenReturn(serviceResponse);
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any())).thenReturn(Mono.just(serviceResponse));
 
         // Выполняем запрос и проверяем ответ
-        mockMvc.perform(post("/api/insights")
+        performAsync(post("/api/insights")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(requestBody)))
                 .andExpect(status().isOk())
@@ -77,7 +109,7 @@ public class InsightControllerTest {
         Map<String, String> requestBody = new HashMap<>();
 
         // Выполняем запрос и проверяем ответ
-        mockMvc.perform(post("/api/insights")
+        performAsync(post("/api/insights")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(requestBody)))
                 .andExpect(status().isBadRequest())
@@ -94,7 +126,7 @@ public class InsightControllerTest {
         requestBody.put("topic", "");
 
         // Выполняем запрос и проверяем ответ
-        mockMvc.perform(post("/api/insights")
+        performAsync(post("/api/insights")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(requestBody)))
                 .andExpect(status().isBadRequest())
@@ -111,10 +143,10 @@ public class InsightControllerTest {
         requestBody.put("topic", "ошибочная тема");
 
         // Настраиваем поведение мока для имитации ошибки
-        when(insightService.getInsightsForTopic(anyString())).thenThrow(new RuntimeException("Тестовая ошибка"));
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any())).thenThrow(new RuntimeException("Тестовая ошибка"));
 
         // Выполняем запрос и проверяем ответ
-        mockMvc.perform(post("/api/insights")
+        performAsync(post("/api/insights")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(requestBody)))
                 .andExpect(status().isInternalServerError())
@@ -122,6 +154,218 @@ public class InsightControllerTest {
                 .andExpect(jsonPath("$.message").exists());
     }
 
+    /**
+     * Тест на передачу срока из заголовка X-Request-Timeout в сервис
+     */
+    @Test
+    public void testGenerateInsights_DeadlineFromHeader() throws Exception {
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.just(prepareSuccessServiceResponse()));
+
+        performAsync(post("/api/insights/generate")
+                .header("X-Request-Timeout", "2s")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\",\"parameters\":{\"length\":\"short\"}}"))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<InsightRequestContext> context = ArgumentCaptor.forClass(InsightRequestContext.class);
+        verify(insightService).getInsightsForTopicAsync(eq("тема"), eq(Map.of("length", "short")), context.capture());
+        Deadline deadline = context.getValue().getDeadline();
+        assertTrue(deadline.isBounded());
+        assertTrue(deadline.remaining().compareTo(Duration.ofSeconds(2)) <= 0);
+        assertTrue(deadline.remaining().compareTo(Duration.ofSeconds(1)) > 0);
+        assertEquals(Priority.INTERACTIVE, context.getValue().getPriority());
+    }
+
+    /**
+     * Тест на передачу класса приоритета из заголовка X-Request-Priority и отклонение неизвестного класса
+     */
+    @Test
+    public void testGetInsights_PriorityHeader() throws Exception {
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.just(prepareSuccessServiceResponse()));
+
+        performAsync(post("/api/insights")
+                .header("X-Request-Priority", "batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<InsightRequestContext> context = ArgumentCaptor.forClass(InsightRequestContext.class);
+        verify(insightService).getInsightsForTopicAsync(eq("тема"), any(), context.capture());
+        assertEquals(Priority.BATCH, context.getValue().getPriority());
+
+        performAsync(post("/api/insights")
+                .header("X-Request-Priority", "urgent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Тест на отклонение некорректного срока в заголовке
+     */
+    @Test
+    public void testGetInsights_InvalidDeadlineHeader() throws Exception {
+        performAsync(post("/api/insights")
+                .header("X-Request-Timeout", "скоро")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", is(true)));
+        verify(insightService, never()).getInsightsForTopicAsync(anyString(), any(), any());
+    }
+
+    /**
+     * Тест на ответ 504, если сервис сообщил об истечении срока
+     */
+    @Test
+    public void testGetInsights_DeadlineExceeded() throws Exception {
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.error(new TimeoutException("deadline")));
+
+        performAsync(post("/api/insights")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"))
+                .andExpect(status().isGatewayTimeout())
+                .andExpect(jsonPath("$.error", is(true)));
+    }
+
+    /**
+     * Тест на ответ 503 с Retry-After при отказе в допуске к генерации
+     */
+    @Test
+    public void testGetInsights_Overloaded() throws Exception {
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.error(new GenerationRejectedException("Очередь генераций переполнена",
+                        Duration.ofSeconds(12))));
+
+        performAsync(post("/api/insights")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "12"))
+                .andExpect(jsonPath("$.error", is(true)));
+    }
+
+    /**
+     * Тест на отмену обращения к нейросети по истечении срока асинхронного запроса
+     */
+    @Test
+    public void testGetInsights_TimeoutCancelsUpstream() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.<Map<String, Object>>never().doOnCancel(() -> cancelled.set(true)));
+
+        MvcResult mvcResult = startAsync(post("/api/insights")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"));
+        MockAsyncContext asyncContext = (MockAsyncContext) mvcResult.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        assertTrue(cancelled.get(), "Подписка на результат должна быть отменена");
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isGatewayTimeout());
+    }
+
+    /**
+     * Тест на отмену обращения к нейросети при отключении клиента
+     */
+    @Test
+    public void testGetInsights_ClientDisconnectCancelsUpstream() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.<Map<String, Object>>never().doOnCancel(() -> cancelled.set(true)));
+
+        MvcResult mvcResult = startAsync(post("/api/insights")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"тема\"}"));
+        MockAsyncContext asyncContext = (MockAsyncContext) mvcResult.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onError(new AsyncEvent(asyncContext, new IOException("Connection reset by peer")));
+        }
+
+        assertTrue(cancelled.get(), "Подписка на результат должна быть отменена");
+    }
+
+    /**
+     * Тест на потоковый ответ NDJSON: разделы и итоговый инсайт передаются отдельными строками,
+     * а ошибка после начала потока - событием error со статусом
+     */
+    @Test
+    public void testStreamInsights_Ndjson() throws Exception {
+        Map<String, Object> insight = prepareSuccessServiceResponse();
+        when(insightService.streamInsightsForTopic(eq("тема"), any(), any())).thenReturn(Flux.just(
+                InsightStreamEvent.field("overview", insight.get("overview")),
+                InsightStreamEvent.result(insight)));
+
+        MvcResult mvcResult = startAsync(post("/api/insights/stream?fields=overview")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .content("{\"topic\":\"тема\"}"));
+
+        String[] lines = mvcResult.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("field", objectMapper.readTree(lines[0]).get("event").asText());
+        assertEquals("overview", objectMapper.readTree(lines[0]).get("data").get("field").asText());
+        assertEquals("result", objectMapper.readTree(lines[1]).get("event").asText());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> parameters = ArgumentCaptor.forClass(Map.class);
+        verify(insightService).streamInsightsForTopic(eq("тема"), parameters.capture(), any());
+        assertEquals("overview", parameters.getValue().get("fields"));
+
+        when(insightService.streamInsightsForTopic(eq("тема"), any(), any())).thenReturn(Flux.error(
+                new GenerationRejectedException("Очередь генераций переполнена", Duration.ofSeconds(12))));
+        mvcResult = startAsync(post("/api/insights/stream")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .content("{\"topic\":\"тема\"}"));
+
+        String error = mvcResult.getResponse().getContentAsString().trim();
+        assertEquals("error", objectMapper.readTree(error).get("event").asText());
+        assertEquals(503, objectMapper.readTree(error).get("data").get("status").asInt());
+    }
+
+    /**
+     * Тест на повтор запроса с заголовком Idempotency-Key: повтор получает результат первого запроса
+     * без новой генерации, а тот же ключ с другим телом отклоняется с кодом 422
+     */
+    @Test
+    public void testGenerateInsights_IdempotencyKey() throws Exception {
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any()))
+                .thenReturn(Mono.just(prepareSuccessServiceResponse()));
+
+        for (int i = 0; i < 2; i++) {
+            performAsync(post("/api/insights/generate")
+                    .header("Idempotency-Key", "ключ-1")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"topic\":\"тема\",\"parameters\":{\"length\":\"short\"}}"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.overview", is("Обзор темы: тестовая тема")));
+        }
+        verify(insightService, times(1)).getInsightsForTopicAsync(anyString(), any(), any());
+
+        performAsync(post("/api/insights/generate")
+                .header("Idempotency-Key", "ключ-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"topic\":\"другая тема\"}"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.error", is(true)));
+        verify(insightService, times(1)).getInsightsForTopicAsync(anyString(), any(), any());
+    }
+
+    private MvcResult startAsync(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private ResultActions performAsync(MockHttpServletRequestBuilder request) throws Exception {
+        return mockMvc.perform(asyncDispatch(startAsync(request)));
+    }
+
     /**
      * Подготавливает успешный ответ от сервиса для тестов
      */
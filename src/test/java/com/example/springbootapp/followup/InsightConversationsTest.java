@@ -0,0 +1,93 @@
+package com.example.springbootapp.followup;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Тесты для хранения диалогов с уточняющими вопросами
+ */
+public class InsightConversationsTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private SimpleMeterRegistry registry;
+    private InsightConfig insightConfig;
+
+    @BeforeEach
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        insightConfig = new InsightConfig();
+        insightConfig.getFollowup().setMaxTurns(2);
+        insightConfig.getFollowup().setMaxConversationsPerUser(2);
+        insightConfig.getFollowup().setIdleTimeout(Duration.ofMinutes(30));
+    }
+
+    /**
+     * Тест на окно диалога: начало с инсайтом сохраняется, старые вопросы вытесняются
+     */
+    @Test
+    public void testWindowKeepsInsightAndLatestTurns() {
+        InsightConversations conversations = new InsightConversations(insightConfig, registry, clock::get);
+        String insightId = register(conversations, "тема");
+
+        for (int i = 1; i <= 3; i++) {
+            conversations.append("user", insightId, message(ChatMessage.USER, "вопрос " + i),
+                    message(ChatMessage.ASSISTANT, "ответ " + i));
+        }
+        InsightConversations.Snapshot snapshot = conversations.open("user", insightId);
+
+        assertEquals(3, snapshot.asked());
+        assertEquals(List.of("инструкции", "Тема: 'тема'", "инсайт", "вопрос 2", "ответ 2", "вопрос 3", "ответ 3"),
+                snapshot.messages().stream().map(ChatMessage::getContent).toList());
+        // Диалог другого пользователя по тому же инсайту начинается заново
+        assertEquals(3, conversations.open("other", insightId).messages().size());
+        assertEquals(2, conversations.getConversationCount());
+    }
+
+    /**
+     * Тест на вытеснение давно не использованных диалогов пользователя и удаление неактивных
+     */
+    @Test
+    public void testEviction() {
+        InsightConversations conversations = new InsightConversations(insightConfig, registry, clock::get);
+        String first = register(conversations, "первая");
+        String second = register(conversations, "вторая");
+        String third = register(conversations, "третья");
+
+        conversations.append("user", first, message(ChatMessage.USER, "вопрос"), message(ChatMessage.ASSISTANT, "ответ"));
+        conversations.open("user", second);
+        conversations.open("user", third);
+
+        // Диалог по первому инсайту вытеснен: открывается новый, без вопросов
+        assertEquals(0, conversations.open("user", first).asked());
+        assertEquals(2, conversations.getConversationCount());
+        assertEquals(2.0, registry.get("insight.followup.evicted")
+                .tag("reason", InsightConversations.EVICTED_CAPACITY).counter().count());
+
+        clock.addAndGet(Duration.ofMinutes(31).toNanos());
+        conversations.open("other", first);
+        assertEquals(1, conversations.getConversationCount());
+        assertEquals(2.0, registry.get("insight.followup.evicted")
+                .tag("reason", InsightConversations.EVICTED_IDLE).counter().count());
+
+        assertThrows(ConversationNotFoundException.class, () -> conversations.open("user", "unknown"));
+    }
+
+    private static String register(InsightConversations conversations, String topic) {
+        return conversations.register(topic, topic, "llama2", List.of(message(ChatMessage.SYSTEM, "инструкции"),
+                message(ChatMessage.USER, "Тема: '" + topic + "'")), "инсайт");
+    }
+
+    private static ChatMessage message(String role, String content) {
+        return new ChatMessage(role, content);
+    }
+}
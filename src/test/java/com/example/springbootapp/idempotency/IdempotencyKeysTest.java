@@ -0,0 +1,160 @@
+package com.example.springbootapp.idempotency;
+
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Модульные тесты ключей идемпотентности
+ */
+public class IdempotencyKeysTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyKeys keys;
+
+    @BeforeEach
+    public void setUp() {
+        InsightConfig insightConfig = new InsightConfig();
+        insightConfig.getIdempotency().setTtl(Duration.ofMinutes(10));
+        meterRegistry = new SimpleMeterRegistry();
+        keys = new IdempotencyKeys(insightConfig, meterRegistry, now::get);
+    }
+
+    /**
+     * Тест на присоединение повтора к идущей генерации: генерация запускается один раз и не отменяется,
+     * когда первый клиент отключается, а после завершения повтор получает сохраненный результат
+     */
+    @Test
+    public void testRetryAttachesToInFlightGeneration() {
+        Sinks.One<Map<String, Object>> generation = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        Mono<Map<String, Object>> call = generation.asMono().doOnCancel(cancelled::incrementAndGet);
+
+        Mono<Map<String, Object>> first = keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return call;
+        });
+        // Первый клиент не дождался ответа
+        first.subscribe().dispose();
+        Mono<Map<String, Object>> retry = keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return call;
+        });
+
+        generation.tryEmitValue(Map.of("overview", "обзор"));
+        StepVerifier.create(retry).expectNext(Map.of("overview", "обзор")).verifyComplete();
+        StepVerifier.create(keys.execute("user", "k1", "тема", Mono::empty))
+                .expectNext(Map.of("overview", "обзор")).verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, cancelled.get());
+        assertEquals(1.0, requests(IdempotencyKeys.ATTACHED));
+        assertEquals(1.0, requests(IdempotencyKeys.REPLAYED));
+    }
+
+    /**
+     * Тест на область действия ключа: другой пользователь и другое тело не получают чужой результат
+     */
+    @Test
+    public void testKeyIsScopedToUserAndRequest() {
+        keys.execute("user", "k1", "тема", () -> Mono.just(Map.of("overview", "первый"))).block();
+
+        StepVerifier.create(keys.execute("other", "k1", "тема", () -> Mono.just(Map.of("overview", "второй"))))
+                .expectNext(Map.of("overview", "второй")).verifyComplete();
+        StepVerifier.create(keys.execute("user", "k1", "другая тема", () -> Mono.just(Map.of())))
+                .verifyError(IdempotencyKeyReusedException.class);
+        assertThrows(IllegalArgumentException.class,
+                () -> keys.execute("user", " ", "тема", () -> Mono.just(Map.of())));
+        assertEquals(1.0, requests(IdempotencyKeys.CONFLICT));
+    }
+
+    /**
+     * Тест на повтор после ошибки и после истечения ttl: генерация запускается заново
+     */
+    @Test
+    public void testFailedAndExpiredGenerationsRunAgain() {
+        AtomicInteger calls = new AtomicInteger();
+        StepVerifier.create(keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("Ollama недоступна"));
+        })).verifyError(IllegalStateException.class);
+
+        keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return Mono.just(Map.of("overview", "обзор"));
+        }).block();
+        assertEquals(2, calls.get());
+
+        now.addAndGet(Duration.ofMinutes(10).toNanos());
+        keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return Mono.just(Map.of("overview", "новый обзор"));
+        }).block();
+        assertEquals(3, calls.get());
+        assertEquals(1, keys.getKeyCount());
+    }
+
+    /**
+     * Тест на ответ с ошибкой в теле (Ollama недоступна): он передается ожидающим запросам,
+     * но не сохраняется, и повтор запускает генерацию заново
+     */
+    @Test
+    public void testErrorResponseIsNotStored() {
+        Map<String, Object> failure = new HashMap<>();
+        failure.put("error", true);
+        failure.put("message", "Ошибка при обращении к нейросети: Connection refused");
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return Mono.just(failure);
+        })).expectNext(failure).verifyComplete();
+        assertEquals(0, keys.getKeyCount());
+
+        StepVerifier.create(keys.execute("user", "k1", "тема", () -> {
+            calls.incrementAndGet();
+            return Mono.just(Map.of("overview", "обзор"));
+        })).expectNext(Map.of("overview", "обзор")).verifyComplete();
+        assertEquals(2, calls.get());
+        assertEquals(0.0, requests(IdempotencyKeys.REPLAYED));
+    }
+
+    /**
+     * Тест на отпечаток тела: порядок ключей вложенных параметров не важен, значения - важны
+     */
+    @Test
+    public void testFingerprintIsCanonicalForNestedParameters() {
+        Map<String, Object> options = new LinkedHashMap<>();
+        options.put("temperature", 0.2);
+        options.put("top_k", 40);
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("top_k", 40);
+        reordered.put("temperature", 0.2);
+
+        assertEquals(IdempotencyKeys.fingerprint("тема", Map.of("model", "llama2", "options", options)),
+                IdempotencyKeys.fingerprint("тема", Map.of("options", reordered, "model", "llama2")));
+        assertNotEquals(IdempotencyKeys.fingerprint("тема", Map.of("options", options)),
+                IdempotencyKeys.fingerprint("тема", Map.of("options", Map.of("temperature", 0.3, "top_k", 40))));
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("insight.idempotency.requests").tag("result", result).counter().count();
+    }
+}
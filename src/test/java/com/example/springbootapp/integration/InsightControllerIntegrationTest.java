@@ -14,6 +14,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
@@ -25,8 +26,10 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -90,7 +93,7 @@ public class InsightControllerIntegrationTest {
         successResponse.put("overview", "Интеграционный тестовый ответ");
         successResponse.put("keyConcepts", new String[] {"Понятие 1", "Понятие 2"});
         successResponse.put("facts", new String[] {"Факт 1"});
-        when(insightService.getInsightsForTopic(anyString())).thenReturn(successResponse);
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any())).thenReturn(Mono.just(successResponse));
     }
     
     /**
@@ -103,9 +106,12 @@ public class InsightControllerIntegrationTest {
         requestBody.put("topic", "интеграционный тест");
 
         // Выполняем запрос и проверяем результаты
-        mockMvc.perform(post("/api/insights")
+        MvcResult mvcResult = mockMvc.perform(post("/api/insights")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(requestBody)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.overview").exists());
     }
@@ -119,16 +125,19 @@ public class InsightControllerIntegrationTest {
         Map<String, Object> errorResponse = new HashMap<>();
         errorResponse.put("error", true);
         errorResponse.put("message", "API недоступно");
-        when(insightService.getInsightsForTopic("ошибка интеграции")).thenReturn(errorResponse);
+        when(insightService.getInsightsForTopicAsync(eq("ошибка интеграции"), any(), any())).thenReturn(Mono.just(errorResponse));
 
         // Создаем тело запроса
         Map<String, String> requestBody = new HashMap<>();
         requestBody.put("topic", "ошибка интеграции");
 
         // Выполняем запрос и проверяем результаты обработки ошибки
-        mockMvc.perform(post("/api/insights")
+        MvcResult mvcResult = mockMvc.perform(post("/api/insights")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(requestBody)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.error").value(true));
     }
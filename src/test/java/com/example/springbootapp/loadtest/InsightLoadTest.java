@@ -0,0 +1,232 @@
+package com.example.springbootapp.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест /api/insights.
+ * Запускается против приложения с профилем ollama-sim на localhost и выводит пропускную способность
+ * и перцентили p50/p99/p999 по каждому сценарию смеси.
+ * <p>
+ * Запуск: {@code ./mvnw test -Dtest=InsightLoadTest -Dloadtest.enabled=true -Dloadtest.mix=hot:70,cold:20,generate:10}
+ * <p>
+ * Параметры (системные свойства): loadtest.url, loadtest.user, loadtest.password, loadtest.concurrency,
+ * loadtest.duration-seconds, loadtest.warmup-seconds, loadtest.rate (запросов в секунду, 0 - замкнутый цикл),
+ * loadtest.mix, loadtest.hot-topics
+ */
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+public class InsightLoadTest {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final String baseUrl = System.getProperty("loadtest.url", "http://localhost:8080");
+    private final String user = System.getProperty("loadtest.user", "admin");
+    private final String password = System.getProperty("loadtest.password", "admin");
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 10);
+    private final double rate = Double.parseDouble(System.getProperty("loadtest.rate", "0"));
+    private final int hotTopics = Integer.getInteger("loadtest.hot-topics", 20);
+    private final Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix", "hot:70,cold:20,generate:10"));
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final String authorization = "Basic " + Base64.getEncoder()
+            .encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private volatile boolean measuring;
+
+    /**
+     * Сценарий смеси: путь запроса и генератор тела
+     */
+    private enum Scenario {
+        HOT, COLD, GENERATE
+    }
+
+    @Test
+    public void runLoad() throws Exception {
+        List<Scenario> weighted = new ArrayList<>();
+        mix.forEach((name, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(Scenario.valueOf(name.toUpperCase()));
+            }
+        });
+        for (Scenario scenario : Scenario.values()) {
+            recorders.put(scenario.name().toLowerCase(), new Recorder(MAX_LATENCY_NANOS, 3));
+        }
+
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long intervalNanos = rate > 0 ? (long) (concurrency * 1_000_000_000L / rate) : 0L;
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> runWorker(weighted, end, intervalNanos));
+        }
+
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, measureStart - System.nanoTime()));
+        recorders.values().forEach(Recorder::reset);
+        statusCounts.clear();
+        measuring = true;
+
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(durationSeconds + 600L, TimeUnit.SECONDS), "Нагрузка не завершилась");
+
+        String report = buildReport(TimeUnit.NANOSECONDS.toSeconds(end - measureStart));
+        System.out.println(report);
+        Path reportFile = Path.of("target", "loadtest-report.txt");
+        Files.createDirectories(reportFile.getParent());
+        Files.writeString(reportFile, report);
+    }
+
+    private void runWorker(List<Scenario> weighted, long end, long intervalNanos) {
+        // В режиме фиксированной частоты задержка считается от запланированного момента отправки,
+        // чтобы очередь на стороне клиента не скрывала задержки сервера (coordinated omission)
+        long intendedStart = System.nanoTime()
+                + (intervalNanos > 0 ? ThreadLocalRandom.current().nextLong(intervalNanos) : 0L);
+        while (true) {
+            if (intervalNanos > 0) {
+                long wait = intendedStart - System.nanoTime();
+                if (wait > 0) {
+                    sleepNanos(wait);
+                }
+            } else {
+                intendedStart = System.nanoTime();
+            }
+            if (intendedStart >= end) {
+                return;
+            }
+
+            Scenario scenario = weighted.get(ThreadLocalRandom.current().nextInt(weighted.size()));
+            int status = execute(scenario);
+            long latency = System.nanoTime() - intendedStart;
+            if (measuring) {
+                recorders.get(scenario.name().toLowerCase()).recordValue(Math.min(latency, MAX_LATENCY_NANOS));
+                statusCounts.computeIfAbsent(scenario.name().toLowerCase() + " " + status, k -> new LongAdder())
+                        .increment();
+            }
+            intendedStart += intervalNanos;
+        }
+    }
+
+    private int execute(Scenario scenario) {
+        String path;
+        String body;
+        switch (scenario) {
+            case COLD -> {
+                path = "/api/insights";
+                body = "{\"topic\":\"нагрузочная тема " + UUID.randomUUID() + "\"}";
+            }
+            case GENERATE -> {
+                path = "/api/insights/generate";
+                body = "{\"topic\":\"" + hotTopic() + "\",\"parameters\":{\"length\":\"short\"}}";
+            }
+            default -> {
+                path = "/api/insights";
+                body = "{\"topic\":\"" + hotTopic() + "\"}";
+            }
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private String hotTopic() {
+        return "популярная тема " + ThreadLocalRandom.current().nextInt(hotTopics);
+    }
+
+    private String buildReport(long measuredSeconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Нагрузка на %s: %d потоков, %d с замера, смесь %s%s%n", baseUrl, concurrency,
+                measuredSeconds, mix, rate > 0 ? ", частота " + rate + " rps" : ", замкнутый цикл"));
+        report.append(String.format("%-10s %10s %10s %10s %10s %10s %10s%n",
+                "сценарий", "запросов", "rps", "p50, мс", "p99, мс", "p999, мс", "max, мс"));
+
+        Histogram total = new Histogram(MAX_LATENCY_NANOS, 3);
+        for (Map.Entry<String, Recorder> entry : new TreeMap<>(recorders).entrySet()) {
+            Histogram histogram = entry.getValue().getIntervalHistogram();
+            total.add(histogram);
+            appendRow(report, entry.getKey(), histogram, measuredSeconds);
+        }
+        appendRow(report, "всего", total, measuredSeconds);
+
+        report.append("Коды ответов:").append(System.lineSeparator());
+        new TreeMap<>(statusCounts).forEach((key, count) ->
+                report.append(String.format("  %-20s %d%n", key, count.sum())));
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, Histogram histogram, long seconds) {
+        report.append(String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / (double) Math.max(1, seconds),
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue())));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            weights.put(kv[0].trim(), Integer.parseInt(kv[1].trim()));
+        }
+        return weights;
+    }
+}
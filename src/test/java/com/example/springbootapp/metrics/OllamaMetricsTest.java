@@ -0,0 +1,124 @@
+package com.example.springbootapp.metrics;
+
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.model.NeuralApiResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для проверки записи метрик инференса Ollama
+ */
+public class OllamaMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private OllamaMetrics ollamaMetrics;
+
+    @BeforeEach
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        ollamaMetrics = new OllamaMetrics(registry, new OllamaConfig());
+    }
+
+    /**
+     * Тест записи счетчиков токенов и длительностей с тегом модели
+     */
+    @Test
+    public void testRecordGeneration() {
+        NeuralApiResponse response = new NeuralApiResponse();
+        response.setModel("llama2");
+        response.setEvalCount(200);
+        response.setEvalDuration(4_000_000_000L);
+        response.setPromptEvalCount(50);
+        response.setPromptEvalDuration(500_000_000L);
+        response.setLoadDuration(2_000_000_000L);
+        response.setTotalDuration(7_000_000_000L);
+
+        ollamaMetrics.recordGeneration(response);
+
+        assertEquals(200.0, registry.get("ollama.tokens.generated").tag("model", "llama2").counter().count());
+        assertEquals(50.0, registry.get("ollama.tokens.prompt").tag("model", "llama2").counter().count());
+        assertEquals(50.0, registry.get("ollama.tokens.per.second").tag("model", "llama2").summary().max(), 0.001);
+        assertEquals(2.0, registry.get("ollama.model.load.duration").tag("model", "llama2").timer()
+                .totalTime(TimeUnit.SECONDS), 0.001);
+        assertEquals(0.5, registry.get("ollama.prompt.eval.duration").tag("model", "llama2").timer()
+                .totalTime(TimeUnit.SECONDS), 0.001);
+        assertEquals(7.0, registry.get("ollama.total.duration").tag("model", "llama2").timer()
+                .totalTime(TimeUnit.SECONDS), 0.001);
+    }
+
+    /**
+     * Тест на ответ без счетчиков (например, ответ с ошибкой)
+     */
+    @Test
+    public void testRecordGenerationWithoutCounters() {
+        NeuralApiResponse response = new NeuralApiResponse();
+        response.setError("model not found");
+
+        ollamaMetrics.recordGeneration(response);
+
+        assertEquals(0.0, registry.get("ollama.tokens.generated").tag("model", "unknown").counter().count());
+        assertEquals(0L, registry.get("ollama.eval.duration").tag("model", "unknown").timer().count());
+    }
+
+    /**
+     * Тест записи времени запроса с тегами исхода и SLO-бакетами из конфигурации
+     */
+    @Test
+    public void testRecordRequest() {
+        ollamaMetrics.recordRequest("llama2", OllamaMetrics.OUTCOME_SUCCESS, 3_000_000_000L);
+        ollamaMetrics.recordRequest("llama2", OllamaMetrics.OUTCOME_SUCCESS, 7_000_000_000L);
+        ollamaMetrics.recordRequest("llama2", OllamaMetrics.OUTCOME_TIMEOUT, 120_000_000_000L);
+
+        assertEquals(2L, registry.get("ollama.api.request")
+                .tags("model", "llama2", "outcome", "success").timer().count());
+        assertEquals(1L, registry.get("ollama.api.request")
+                .tags("model", "llama2", "outcome", "timeout").timer().count());
+        assertTrue(registry.get("ollama.api.request").tags("outcome", "success").timer()
+                .takeSnapshot().histogramCounts().length > 0, "Должны публиковаться SLO-бакеты");
+    }
+
+    /**
+     * Тест классификации ошибок запроса по исходам
+     */
+    @Test
+    public void testOutcomeOf() {
+        assertEquals(OllamaMetrics.OUTCOME_TIMEOUT, OllamaMetrics.outcomeOf(new TimeoutException("Did not observe")));
+        assertEquals(OllamaMetrics.OUTCOME_HTTP_ERROR, OllamaMetrics.outcomeOf(
+                WebClientResponseException.create(HttpStatus.NOT_FOUND.value(), "Not Found", null, null, null)));
+        assertEquals(OllamaMetrics.OUTCOME_ERROR, OllamaMetrics.outcomeOf(new ConnectException("Connection refused")));
+    }
+
+    /**
+     * Тест на счетчик исходов генераций
+     */
+    @Test
+    public void testRecordGenerationOutcome() {
+        ollamaMetrics.recordGenerationOutcome(OllamaMetrics.GENERATION_COMPLETED);
+        ollamaMetrics.recordGenerationOutcome(OllamaMetrics.GENERATION_COMPLETED);
+        ollamaMetrics.recordGenerationOutcome(OllamaMetrics.GENERATION_CANCELLED);
+
+        assertEquals(2.0, registry.get("ollama.generations").tag("outcome", "completed").counter().count());
+        assertEquals(1.0, registry.get("ollama.generations").tag("outcome", "cancelled").counter().count());
+    }
+
+    /**
+     * Тест на счетчик ответов, разобранных резервным методом
+     */
+    @Test
+    public void testRecordParseFallback() {
+        ollamaMetrics.recordParseFallback("llama2");
+        ollamaMetrics.recordParseFallback(null);
+
+        assertEquals(1.0, registry.get("ollama.response.parse.fallback").tag("model", "llama2").counter().count());
+        assertEquals(1.0, registry.get("ollama.response.parse.fallback").tag("model", "unknown").counter().count());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.springbootapp.metrics;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.controller.InsightController;
+import com.example.springbootapp.idempotency.IdempotencyKeys;
+import com.example.springbootapp.service.InsightService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Тесты для проверки фильтра, публикующего тайминги стадий в заголовке Server-Timing
+ */
+public class ServerTimingFilterTest {
+
+    @Mock
+    private InsightService insightService;
+
+    private SimpleMeterRegistry registry;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        registry = new SimpleMeterRegistry();
+        mockMvc = MockMvcBuilders.standaloneSetup(new InsightController(insightService, new InsightConfig(),
+                new IdempotencyKeys(new InsightConfig(), new SimpleMeterRegistry())))
+                .setControllerAdvice(new ServerTimingResponseBodyAdvice())
+                .addFilters(new ServerTimingFilter(registry))
+                .build();
+    }
+
+    /**
+     * Тест на наличие заголовка Server-Timing и запись стадий в гистограммы
+     */
+    @Test
+    public void testServerTimingHeader() throws Exception {
+        when(insightService.getInsightsForTopicAsync(anyString(), any(), any())).thenAnswer(invocation -> {
+            StageTimings.current().record(StageTimings.Stage.CACHE, 40_000L);
+            StageTimings.current().record(StageTimings.Stage.OLLAMA, 1_500_000_000L);
+            Map<String, Object> response = new HashMap<>();
+            response.put("overview", "Обзор");
+            return Mono.just(response);
+        });
+
+        MvcResult mvcResult = mockMvc.perform(post("/api/insights")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"topic\":\"тема\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.overview").value("Обзор"))
+                .andExpect(header().string(ServerTimingFilter.SERVER_TIMING_HEADER, containsString("cache;dur=0.04")))
+                .andExpect(header().string(ServerTimingFilter.SERVER_TIMING_HEADER, containsString("ollama;dur=1500.00")))
+                .andExpect(header().string(ServerTimingFilter.SERVER_TIMING_HEADER, containsString("serialize;dur=")))
+                .andExpect(header().string(ServerTimingFilter.SERVER_TIMING_HEADER, containsString("total;dur=")));
+
+        assertEquals(1L, registry.get("insight.stage.duration").tag("stage", "ollama").timer().count());
+        assertEquals(0L, registry.get("insight.stage.duration").tag("stage", "queue").timer().count());
+    }
+
+    /**
+     * Тест на то, что вне отслеживаемого запроса тайминги не накапливаются
+     */
+    @Test
+    public void testDisabledOutsideRequest() {
+        StageTimings timings = StageTimings.current();
+        timings.record(StageTimings.Stage.OLLAMA, 1_000L);
+        assertEquals(0L, timings.getNanos(StageTimings.Stage.OLLAMA));
+        assertTrue(timings.toServerTimingHeader(0L).startsWith("total"));
+    }
+}
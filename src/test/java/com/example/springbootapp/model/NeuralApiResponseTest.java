@@ -1,5 +1,6 @@
 package com.example.springbootapp.model;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -74,4 +75,21 @@ public class NeuralApiResponseTest {
         assertEquals(links, apiResponse.getRelatedLinks());
         assertEquals(2, apiResponse.getRelatedLinks().length);
     }
+
+    @Test
+    public void testOllamaCountersDeserialization() throws Exception {
+        // Проверка маппинга счетчиков генерации из ответа /api/generate
+        String json = "{\"model\":\"llama2\",\"response\":\"ok\",\"done\":true,"
+                + "\"total_duration\":5000,\"load_duration\":1000,\"prompt_eval_count\":26,"
+                + "\"prompt_eval_duration\":1500,\"eval_count\":290,\"eval_duration\":2500}";
+
+        NeuralApiResponse response = new ObjectMapper().readValue(json, NeuralApiResponse.class);
+
+        assertEquals(5000L, response.getTotalDuration());
+        assertEquals(1000L, response.getLoadDuration());
+        assertEquals(26, response.getPromptEvalCount());
+        assertEquals(1500L, response.getPromptEvalDuration());
+        assertEquals(290, response.getEvalCount());
+        assertEquals(2500L, response.getEvalDuration());
+    }
 }
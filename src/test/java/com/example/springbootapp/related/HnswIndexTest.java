@@ -0,0 +1,115 @@
+package com.example.springbootapp.related;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для индекса ближайших соседей HNSW
+ */
+public class HnswIndexTest {
+
+    /**
+     * Тест на полноту поиска: приближенный поиск находит почти всех точных ближайших соседей
+     */
+    @Test
+    public void testRecallAgainstExactSearch() {
+        Random random = new Random(7);
+        HnswIndex index = new HnswIndex(16, 100, 42);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            float[] vector = randomVector(random, 32);
+            vectors.add(vector);
+            assertTrue(index.add("v" + i, vector));
+        }
+        assertEquals(3000, index.size());
+
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVector(random, 32);
+            Set<String> exact = exactNearest(vectors, query, 10);
+            for (HnswIndex.Match match : index.search(query, 10, 64)) {
+                if (exact.contains(match.key())) {
+                    found++;
+                }
+            }
+            expected += exact.size();
+        }
+        assertTrue(found >= expected * 0.9, "Полнота поиска " + found + " из " + expected);
+    }
+
+    /**
+     * Тест на поиск соседей добавленного вектора: сам вектор в результат не попадает,
+     * соседи упорядочены по убыванию сходства
+     */
+    @Test
+    public void testSearchByKeyExcludesItself() {
+        HnswIndex index = new HnswIndex(4, 16, 1);
+        index.add("a", new float[]{1, 0, 0});
+        index.add("b", new float[]{0.9f, 0.1f, 0});
+        index.add("c", new float[]{0, 1, 0});
+        index.add("d", new float[]{0, 0, 1});
+
+        List<HnswIndex.Match> matches = index.searchByKey("a", 2, 8);
+        assertEquals(2, matches.size());
+        assertEquals("b", matches.get(0).key());
+        assertTrue(matches.get(0).similarity() > matches.get(1).similarity());
+        assertTrue(index.searchByKey("x", 2, 8).isEmpty());
+    }
+
+    /**
+     * Тест на повторное добавление ключа и проверку размерности
+     */
+    @Test
+    public void testDuplicateKeyAndDimensionMismatch() {
+        HnswIndex index = new HnswIndex(4, 16, 1);
+        assertTrue(index.add("a", new float[]{1, 0}));
+        assertFalse(index.add("a", new float[]{0, 1}));
+        assertThrows(IllegalArgumentException.class, () -> index.add("b", new float[]{1, 0, 0}));
+        assertEquals(1, index.size());
+    }
+
+    private static Set<String> exactNearest(List<float[]> vectors, float[] query, int k) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.comparingDouble(i -> -cosine(vectors.get(i), query)));
+        Set<String> nearest = new HashSet<>();
+        for (int i = 0; i < k; i++) {
+            nearest.add("v" + ids.get(i));
+        }
+        return nearest;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
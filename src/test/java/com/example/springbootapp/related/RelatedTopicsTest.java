@@ -0,0 +1,118 @@
+package com.example.springbootapp.related;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.model.TopicEmbedding;
+import com.example.springbootapp.repository.InsightHistoryRepository;
+import com.example.springbootapp.repository.TopicEmbeddingRepository;
+import com.example.springbootapp.scheduler.GenerationScheduler;
+import com.example.springbootapp.service.NeuralApiService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тесты для подбора связанных тем
+ */
+public class RelatedTopicsTest {
+
+    private NeuralApiService neuralApiService;
+    private InsightHistoryRepository insightHistoryRepository;
+    private TopicEmbeddingRepository topicEmbeddingRepository;
+    private SimpleMeterRegistry registry;
+    private RelatedTopics relatedTopics;
+
+    @BeforeEach
+    public void setup() {
+        neuralApiService = mock(NeuralApiService.class);
+        insightHistoryRepository = mock(InsightHistoryRepository.class);
+        topicEmbeddingRepository = mock(TopicEmbeddingRepository.class);
+        registry = new SimpleMeterRegistry();
+        relatedTopics = new RelatedTopics(neuralApiService,
+                new GenerationScheduler(neuralApiService, new InsightConfig(), registry),
+                insightHistoryRepository, topicEmbeddingRepository, new OllamaConfig(), new InsightConfig(), registry);
+    }
+
+    /**
+     * Тест на подбор близких тем: далекая тема отсекается порогом сходства,
+     * а повторная индексация темы не запрашивает эмбеддинг
+     */
+    @Test
+    public void testRelatedTopicsAboveThreshold() {
+        embed("Машинное обучение", 1, 0, 0);
+        embed("Нейронные сети", 0.9f, 0.3f, 0);
+        embed("Глубокое обучение", 0.8f, 0.5f, 0.1f);
+        embed("История Рима", 0, 0, 1);
+
+        for (String topic : List.of("Машинное обучение", "Нейронные сети", "Глубокое обучение", "История Рима")) {
+            assertTrue(relatedTopics.index(topic).block());
+        }
+        assertTrue(relatedTopics.index(" машинное обучение ").block());
+        verify(neuralApiService, times(1)).requestEmbedding("Машинное обучение");
+        verify(topicEmbeddingRepository, times(1)).upsert(eq("машинное обучение"), eq("Машинное обучение"),
+                eq("nomic-embed-text"), any());
+
+        List<Map<String, Object>> related = relatedTopics.relatedTo("машинное обучение");
+        assertEquals(2, related.size());
+        assertEquals("Нейронные сети", related.get(0).get("topic"));
+        assertEquals("Глубокое обучение", related.get(1).get("topic"));
+        assertEquals(1.0, registry.get("insight.related.lookup").timer().count());
+    }
+
+    /**
+     * Тест на ошибку получения эмбеддинга: тема не индексируется, ошибка не передается дальше
+     */
+    @Test
+    public void testEmbeddingFailure() {
+        when(neuralApiService.requestEmbedding("тема")).thenReturn(Mono.error(new IllegalStateException("нет модели")));
+
+        assertFalse(relatedTopics.index("тема").block());
+        assertTrue(relatedTopics.relatedTo("тема").isEmpty());
+        assertEquals(1.0, registry.get("insight.related.embedding.failures").counter().count());
+    }
+
+    /**
+     * Тест на перестроение индекса после запуска: сохраненные эмбеддинги текущей модели загружаются из базы,
+     * а у модели запрашиваются только темы без сохраненного эмбеддинга
+     */
+    @Test
+    public void testRebuildRestoresStoredEmbeddings() {
+        when(insightHistoryRepository.findTopicsAfter(eq(""), any())).thenReturn(List.of("Квантовые вычисления", "Кубиты"));
+        TopicEmbedding stored = new TopicEmbedding();
+        stored.setTopicKey("квантовые вычисления");
+        stored.setTopic("Квантовые вычисления");
+        stored.setModel("nomic-embed-text");
+        stored.setVector(RelatedTopics.encode(new float[]{1, 0.1f, 0}));
+        when(topicEmbeddingRepository.findByModelAndTopicKeyIn("nomic-embed-text",
+                Set.of("квантовые вычисления", "кубиты"))).thenReturn(List.of(stored));
+        embed("Кубиты", 0.9f, 0.2f, 0);
+
+        relatedTopics.rebuild();
+
+        verify(topicEmbeddingRepository, timeout(5000)).upsert(eq("кубиты"), eq("Кубиты"), eq("nomic-embed-text"), any());
+        assertEquals("Кубиты", relatedTopics.relatedTo("Квантовые вычисления").get(0).get("topic"));
+        verify(neuralApiService, never()).requestEmbedding("Квантовые вычисления");
+        relatedTopics.shutdown();
+    }
+
+    private void embed(String topic, float... vector) {
+        when(neuralApiService.requestEmbedding(topic)).thenReturn(Mono.just(vector));
+    }
+}
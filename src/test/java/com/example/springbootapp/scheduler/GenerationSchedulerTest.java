@@ -0,0 +1,323 @@
+package com.example.springbootapp.scheduler;
+
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.GenerationParameters;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightRequestContext.Priority;
+import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.service.NeuralApiService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тесты для планировщика генераций
+ */
+public class GenerationSchedulerTest {
+
+    private NeuralApiService neuralApiService;
+    private SimpleMeterRegistry registry;
+    private GenerationScheduler scheduler;
+
+    // Темы в порядке запуска генераций и незавершенные генерации по темам
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, Sinks.One<NeuralApiResponse>> pending = new HashMap<>();
+
+    @BeforeEach
+    public void setup() {
+        neuralApiService = mock(NeuralApiService.class);
+        when(neuralApiService.requestInsightsFromApi(anyString(), any(), any())).thenAnswer(invocation -> {
+            String topic = invocation.getArgument(0);
+            Sinks.One<NeuralApiResponse> sink = Sinks.one();
+            started.add(topic);
+            pending.put(topic, sink);
+            return sink.asMono();
+        });
+        registry = new SimpleMeterRegistry();
+
+        InsightConfig config = new InsightConfig();
+        config.getScheduler().setMaxConcurrent(1);
+        config.getAdmission().setEnabled(false);
+        scheduler = new GenerationScheduler(neuralApiService, config, registry);
+    }
+
+    /**
+     * Тест на ограничение числа одновременных генераций и запуск следующей после завершения
+     */
+    @Test
+    public void testLimitsConcurrency() {
+        List<NeuralApiResponse> results = new ArrayList<>();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null).subscribe(results::add);
+        scheduler.submit(context("a", Priority.INTERACTIVE), "вторая", null).subscribe(results::add);
+
+        assertEquals(List.of("первая"), started);
+        assertEquals(1, scheduler.getRunning());
+        assertEquals(1, scheduler.getQueueDepth(Priority.INTERACTIVE));
+        assertEquals(1.0, registry.get("insight.scheduler.queue.depth").tag("class", "interactive").gauge().value());
+
+        complete("первая");
+
+        assertEquals(List.of("первая", "вторая"), started);
+        assertEquals(1, results.size());
+        assertEquals(0, scheduler.getQueueDepth(Priority.INTERACTIVE));
+        assertEquals(2, registry.get("insight.scheduler.queue.wait").tag("class", "interactive").timer().count());
+    }
+
+    /**
+     * Тест на строгий приоритет классов: интерактивный запрос обгоняет фоновые и пакетные
+     */
+    @Test
+    public void testInteractiveBeforeBatch() {
+        scheduler.submit(context("a", Priority.BATCH), "занимает слот", null).subscribe();
+        scheduler.submit(context("a", Priority.BACKGROUND), "фоновая", null).subscribe();
+        scheduler.submit(context("a", Priority.BATCH), "пакетная", null).subscribe();
+        scheduler.submit(context("b", Priority.INTERACTIVE), "интерактивная", null).subscribe();
+
+        complete("занимает слот");
+        complete("интерактивная");
+        complete("пакетная");
+
+        assertEquals(List.of("занимает слот", "интерактивная", "пакетная", "фоновая"), started);
+    }
+
+    /**
+     * Тест на вспомогательный запрос: он ждет слот наравне с генерациями своего класса,
+     * но его длительность не меняет оценку длительности генерации
+     */
+    @Test
+    public void testTaskSharesSlotsWithGenerations() {
+        Sinks.One<float[]> embedding = Sinks.one();
+        List<float[]> results = new ArrayList<>();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "занимает слот", null).subscribe();
+        scheduler.submitTask(context("system", Priority.BACKGROUND), "эмбеддинг", embedding::asMono)
+                .subscribe(results::add);
+
+        assertEquals(1, scheduler.getQueueDepth(Priority.BACKGROUND));
+        complete("занимает слот");
+        Duration serviceTime = scheduler.getEstimatedServiceTime();
+        assertEquals(1, scheduler.getRunning());
+
+        embedding.tryEmitValue(new float[]{1, 0});
+
+        assertEquals(1, results.size());
+        assertEquals(0, scheduler.getRunning());
+        assertEquals(serviceTime, scheduler.getEstimatedServiceTime());
+    }
+
+    /**
+     * Тест на справедливость: одиночный запрос пользователя не ждет всю очередь другого пользователя
+     */
+    @Test
+    public void testFairnessBetweenUsers() {
+        scheduler.submit(context("a", Priority.INTERACTIVE), "a0", null).subscribe();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "a1", null).subscribe();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "a2", null).subscribe();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "a3", null).subscribe();
+        scheduler.submit(context("b", Priority.INTERACTIVE), "b1", null).subscribe();
+
+        complete("a0");
+        complete(started.get(1));
+
+        assertEquals(List.of("a0", "a1", "b1"), started);
+    }
+
+    /**
+     * Тест на запуск более короткой генерации первой при равных метках справедливой очереди
+     */
+    @Test
+    public void testShortestJobFirst() {
+        GenerationParameters longJob = new GenerationParameters("llama2", Map.of("num_predict", 1600));
+        GenerationParameters shortJob = new GenerationParameters("llama2", Map.of("num_predict", 300));
+
+        scheduler.submit(context("a", Priority.INTERACTIVE), "занимает слот", null).subscribe();
+        scheduler.submit(context("b", Priority.INTERACTIVE), "длинная", longJob).subscribe();
+        scheduler.submit(context("c", Priority.INTERACTIVE), "короткая", shortJob).subscribe();
+
+        complete("занимает слот");
+
+        assertEquals(List.of("занимает слот", "короткая"), started);
+    }
+
+    /**
+     * Тест на снятие запроса с очереди при отмене подписки
+     */
+    @Test
+    public void testCancelRemovesQueuedJob() {
+        scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null).subscribe();
+        Disposable queued = scheduler.submit(context("b", Priority.INTERACTIVE), "отмененная", null).subscribe();
+        scheduler.submit(context("c", Priority.INTERACTIVE), "третья", null).subscribe();
+
+        queued.dispose();
+        assertEquals(1, scheduler.getQueueDepth(Priority.INTERACTIVE));
+
+        complete("первая");
+
+        assertEquals(List.of("первая", "третья"), started);
+    }
+
+    /**
+     * Тест на освобождение слота при отмене запущенной генерации
+     */
+    @Test
+    public void testCancelRunningJobReleasesSlot() {
+        Disposable running = scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null).subscribe();
+        scheduler.submit(context("b", Priority.INTERACTIVE), "вторая", null).subscribe();
+
+        running.dispose();
+
+        assertEquals(0, pending.get("первая").currentSubscriberCount());
+        assertEquals(List.of("первая", "вторая"), started);
+    }
+
+    /**
+     * Тест на отказ в допуске при переполненной очереди
+     */
+    @Test
+    public void testRejectsWhenQueueFull() {
+        InsightConfig config = new InsightConfig();
+        config.getScheduler().setMaxConcurrent(1);
+        config.getAdmission().setMaxQueueDepth(1);
+        config.getAdmission().setMaxQueueWait(Duration.ofMinutes(10));
+        scheduler = new GenerationScheduler(neuralApiService, config, registry);
+
+        scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null).subscribe();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "вторая", null).subscribe();
+
+        StepVerifier.create(scheduler.submit(context("b", Priority.INTERACTIVE), "третья", null))
+                .expectError(GenerationRejectedException.class)
+                .verify();
+        assertEquals(1, scheduler.getQueueDepth(Priority.INTERACTIVE));
+        assertEquals(1.0, registry.get("insight.admission.rejected")
+                .tags("class", "interactive", "reason", GenerationScheduler.REJECT_QUEUE_FULL).counter().count());
+    }
+
+    /**
+     * Тест на отказ в допуске, если запрос не дождется генерации до своего срока, и на оценку Retry-After
+     */
+    @Test
+    public void testRejectsWhenWaitExceedsDeadline() {
+        InsightConfig config = new InsightConfig();
+        config.getScheduler().setMaxConcurrent(1);
+        config.getAdmission().setInitialServiceTime(Duration.ofSeconds(10));
+        scheduler = new GenerationScheduler(neuralApiService, config, registry);
+
+        scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null).subscribe();
+        assertEquals(Duration.ofSeconds(10), scheduler.estimateQueueWait(Priority.INTERACTIVE));
+
+        InsightRequestContext impatient = InsightRequestContext.of("b", Priority.INTERACTIVE,
+                Deadline.after(Duration.ofSeconds(5)));
+        StepVerifier.create(scheduler.submit(impatient, "нетерпеливая", null))
+                .expectErrorSatisfies(error -> {
+                    assertInstanceOf(GenerationRejectedException.class, error);
+                    assertEquals(Duration.ofSeconds(10), ((GenerationRejectedException) error).getRetryAfter());
+                })
+                .verify();
+
+        // Без жесткого срока запрос укладывается в insights.admission.max-queue-wait
+        scheduler.submit(context("b", Priority.INTERACTIVE), "терпеливая", null).subscribe();
+        assertEquals(1, scheduler.getQueueDepth(Priority.INTERACTIVE));
+        assertEquals(List.of("первая"), started);
+    }
+
+    /**
+     * Тест на остановку: новые генерации отклоняются, остановка дожидается выполняемой генерации
+     */
+    @Test
+    public void testStopDrainsRunningGenerations() throws Exception {
+        List<NeuralApiResponse> results = new ArrayList<>();
+        scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null).subscribe(results::add);
+
+        Thread stopping = new Thread(scheduler::stop);
+        stopping.start();
+        awaitDraining();
+
+        StepVerifier.create(scheduler.submit(context("b", Priority.INTERACTIVE), "новая", null))
+                .expectError(GenerationRejectedException.class)
+                .verify();
+        assertTrue(stopping.isAlive());
+
+        complete("первая");
+        stopping.join(5000);
+
+        assertFalse(stopping.isAlive());
+        assertEquals(1, results.size());
+        assertEquals(1.0, registry.get("insight.shutdown.generations")
+                .tag("outcome", GenerationScheduler.DRAIN_COMPLETED).counter().count());
+        assertEquals(List.of("первая"), started);
+    }
+
+    /**
+     * Тест на остановку: генерация отключившегося клиента дорабатывается и передается обработчику,
+     * а не успевшие завершиться генерации отменяются по истечении срока
+     */
+    @Test
+    public void testStopDetachesAndAbortsAtDeadline() throws Exception {
+        InsightConfig config = new InsightConfig();
+        config.getScheduler().setMaxConcurrent(1);
+        config.getAdmission().setEnabled(false);
+        config.getShutdown().setDrainTimeout(Duration.ofMillis(300));
+        scheduler = new GenerationScheduler(neuralApiService, config, registry);
+
+        List<NeuralApiResponse> detached = new ArrayList<>();
+        Disposable client = scheduler.submit(context("a", Priority.INTERACTIVE), "первая", null, detached::add)
+                .subscribe();
+        AtomicReference<Throwable> abortError = new AtomicReference<>();
+        scheduler.submit(context("b", Priority.INTERACTIVE), "вторая", null).subscribe(null, abortError::set);
+
+        Thread stopping = new Thread(scheduler::stop);
+        stopping.start();
+        awaitDraining();
+
+        client.dispose();
+        assertEquals(1, pending.get("первая").currentSubscriberCount());
+        complete("первая");
+        stopping.join(5000);
+
+        assertFalse(stopping.isAlive());
+        assertEquals(1, detached.size());
+        assertEquals(List.of("первая", "вторая"), started);
+        assertInstanceOf(GenerationRejectedException.class, abortError.get());
+        assertEquals(0, pending.get("вторая").currentSubscriberCount());
+        assertEquals(1.0, registry.get("insight.shutdown.generations")
+                .tag("outcome", GenerationScheduler.DRAIN_DETACHED).counter().count());
+        assertEquals(1.0, registry.get("insight.shutdown.generations")
+                .tag("outcome", GenerationScheduler.DRAIN_ABORTED).counter().count());
+    }
+
+    private void awaitDraining() throws InterruptedException {
+        for (int i = 0; i < 500 && !scheduler.isDraining(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(scheduler.isDraining());
+    }
+
+    private void complete(String topic) {
+        NeuralApiResponse response = new NeuralApiResponse();
+        response.setResponse(topic);
+        pending.get(topic).tryEmitValue(response);
+    }
+
+    private static InsightRequestContext context(String user, Priority priority) {
+        return InsightRequestContext.of(user, priority, Deadline.none());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.springbootapp.service;
+
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Модульные тесты обслуживания секций insight_history
+ */
+public class InsightHistoryPartitionsTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private InsightConfig insightConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private InsightHistoryPartitions partitions;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), any())).thenReturn(true);
+        insightConfig = new InsightConfig();
+        insightConfig.getHistory().setPartitionsAhead(2);
+        insightConfig.getHistory().setRetentionMonths(3);
+        meterRegistry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(Instant.parse("2026-10-19T12:00:00Z"), ZoneOffset.UTC);
+        partitions = new InsightHistoryPartitions(jdbcTemplate, transactionTemplate, insightConfig, meterRegistry,
+                clock);
+    }
+
+    /**
+     * Тест на создание недостающих секций текущего и следующих месяцев и удаление секций старше срока хранения
+     */
+    @Test
+    public void testCreatesAheadAndDropsExpired() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "insight_history_p2026_06", "insight_history_p2026_07", "insight_history_p2026_10",
+                "insight_history_archive"));
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(4);
+
+        assertTrue(partitions.maintain());
+
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS insight_history_p2026_11 PARTITION OF insight_history"
+                + " FOR VALUES FROM ('2026-11-01') TO ('2026-12-01')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS insight_history_p2026_12 PARTITION OF insight_history"
+                + " FOR VALUES FROM ('2026-12-01') TO ('2027-01-01')");
+        verify(jdbcTemplate, never()).execute(eq("CREATE TABLE IF NOT EXISTS insight_history_p2026_10"
+                + " PARTITION OF insight_history FOR VALUES FROM ('2026-10-01') TO ('2026-11-01')"));
+        verify(jdbcTemplate).execute("ALTER TABLE insight_history DETACH PARTITION insight_history_p2026_06");
+        verify(jdbcTemplate).execute("DROP TABLE insight_history_p2026_06");
+        verify(jdbcTemplate, never()).execute("DROP TABLE insight_history_p2026_07");
+        verify(jdbcTemplate, never()).execute("DROP TABLE insight_history_archive");
+
+        assertEquals(2.0, meterRegistry.get("insight.history.partitions").tag("action", "created").counter().count());
+        assertEquals(1.0, meterRegistry.get("insight.history.partitions").tag("action", "dropped").counter().count());
+        assertEquals(4.0, meterRegistry.get("insight.history.response.blobs.deleted").counter().count());
+    }
+
+    /**
+     * Тест на пропуск обслуживания, когда его выполняет другой экземпляр, и на хранение без срока
+     */
+    @Test
+    public void testSkipsWhenLockedAndKeepsHistoryWithoutRetention() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), any())).thenReturn(false);
+        assertFalse(partitions.maintain());
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class));
+
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), any())).thenReturn(true);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "insight_history_p2020_01", "insight_history_p2026_10", "insight_history_p2026_11",
+                "insight_history_p2026_12"));
+        insightConfig.getHistory().setRetentionMonths(0);
+
+        assertTrue(partitions.maintain());
+        verify(jdbcTemplate, never()).execute(anyString());
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+}
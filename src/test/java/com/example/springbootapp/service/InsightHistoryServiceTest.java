@@ -0,0 +1,93 @@
+package com.example.springbootapp.service;
+
+import com.example.springbootapp.model.GenerationParameters;
+import com.example.springbootapp.model.InsightHistory;
+import com.example.springbootapp.model.InsightResponseBlob;
+import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.repository.InsightHistoryRepository;
+import com.example.springbootapp.repository.InsightResponseBlobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Модульные тесты сохранения истории инсайтов
+ */
+public class InsightHistoryServiceTest {
+
+    private InsightHistoryRepository historyRepository;
+    private InsightResponseBlobRepository blobRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private InsightHistoryService service;
+
+    @BeforeEach
+    public void setUp() {
+        historyRepository = mock(InsightHistoryRepository.class);
+        blobRepository = mock(InsightResponseBlobRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new InsightHistoryService(historyRepository, blobRepository, meterRegistry);
+    }
+
+    /**
+     * Тест на сохранение одинаковых ответов: сжатый ответ записывается один раз,
+     * обе записи истории ссылаются на него по хэшу, а текст восстанавливается по запросу
+     */
+    @Test
+    public void testRecordStoresResponseOnce() {
+        NeuralApiResponse response = new NeuralApiResponse();
+        response.setResponse("{\"overview\": \"Обзор\"}");
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+        when(blobRepository.touch(anyString())).thenReturn(0, 1);
+        when(blobRepository.insertIfAbsent(anyString(), anyString(), anyInt(), data.capture())).thenReturn(1);
+
+        service.record("тема", new GenerationParameters("llama2", Map.of()), "user", response);
+        service.record("тема", new GenerationParameters("llama2", Map.of()), "user", response);
+
+        ArgumentCaptor<InsightHistory> history = ArgumentCaptor.forClass(InsightHistory.class);
+        verify(historyRepository, times(2)).save(history.capture());
+        String hash = history.getValue().getResponseHash();
+        assertEquals(hash, history.getAllValues().get(0).getResponseHash());
+        // Повторный ответ только отмечается, чтобы очистка ответов без ссылок его не удалила
+        verify(blobRepository, times(2)).touch(hash);
+        verify(blobRepository).insertIfAbsent(eq(hash), eq(InsightResponseCodec.DEFLATE_V1), anyInt(), any());
+        assertEquals(1.0, meterRegistry.get("insight.history.response.blobs").tag("result", "reused").counter().count());
+
+        InsightResponseBlob blob = new InsightResponseBlob();
+        blob.setHash(hash);
+        blob.setCodec(InsightResponseCodec.DEFLATE_V1);
+        blob.setData(data.getValue());
+        blob.setRawLength(response.getResponse().getBytes(StandardCharsets.UTF_8).length);
+        when(blobRepository.findById(hash)).thenReturn(Optional.of(blob));
+        assertEquals(Optional.of(response.getResponse()), service.getResponse(history.getValue()));
+    }
+
+    /**
+     * Тест на ответ с ошибкой: в историю не сохраняется
+     */
+    @Test
+    public void testRecordSkipsErrors() {
+        NeuralApiResponse response = new NeuralApiResponse();
+        response.setError("Ошибка");
+
+        service.record("тема", new GenerationParameters("llama2", Map.of()), "user", response);
+
+        verify(blobRepository, never()).insertIfAbsent(anyString(), anyString(), anyInt(), any());
+        verify(historyRepository, never()).save(any());
+    }
+}
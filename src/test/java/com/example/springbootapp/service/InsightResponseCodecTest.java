@@ -0,0 +1,62 @@
+package com.example.springbootapp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Модульные тесты сжатия ответов модели
+ */
+public class InsightResponseCodecTest {
+
+    private static final String RESPONSE = "Вот анализ темы в формате JSON:\n```json\n{\n"
+            + "  \"overview\": \"Фотосинтез - это процесс, при котором растения преобразуют энергию света в химическую.\",\n"
+            + "  \"keyConcepts\": [\n    \"Хлорофилл: пигмент, поглощающий свет\",\n    \"Световая фаза\"\n  ],\n"
+            + "  \"facts\": [\n    \"Фотосинтез дает почти весь кислород атмосферы\"\n  ],\n"
+            + "  \"applications\": \"Сельское хозяйство и производство биотоплива\"\n}\n```";
+
+    /**
+     * Тест на восстановление ответа и выигрыш словаря перед Deflate без словаря
+     */
+    @Test
+    public void testRoundTripWithDictionary() throws Exception {
+        byte[] text = RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = InsightResponseCodec.compress(text);
+
+        assertEquals(RESPONSE, InsightResponseCodec.decompress(InsightResponseCodec.DEFLATE_V1, compressed, text.length));
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(plain,
+                new Deflater(Deflater.BEST_COMPRESSION, true))) {
+            out.write(text);
+        }
+        assertTrue(compressed.length < plain.size(),
+                "со словарем " + compressed.length + " байт, без словаря " + plain.size());
+    }
+
+    /**
+     * Тест на ответы, перенесенные миграцией без сжатия, и на поврежденные данные
+     */
+    @Test
+    public void testUncompressedAndCorrupted() {
+        byte[] text = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        assertEquals(RESPONSE, InsightResponseCodec.decompress(InsightResponseCodec.NONE, text, text.length));
+
+        byte[] compressed = InsightResponseCodec.compress(text);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        assertThrows(IllegalArgumentException.class,
+                () -> InsightResponseCodec.decompress(InsightResponseCodec.DEFLATE_V1, truncated, text.length));
+        assertThrows(IllegalArgumentException.class,
+                () -> InsightResponseCodec.decompress("zstd", compressed, text.length));
+        assertEquals(InsightResponseCodec.hash(text), InsightResponseCodec.hash(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(64, InsightResponseCodec.hash(text).length());
+    }
+}
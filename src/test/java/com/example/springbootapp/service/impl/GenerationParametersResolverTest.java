@@ -0,0 +1,113 @@
+package com.example.springbootapp.service.impl;
+
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.model.GenerationParameters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Модульные тесты для проверки и нормализации параметров генерации
+ */
+public class GenerationParametersResolverTest {
+
+    private GenerationParametersResolver resolver;
+
+    @BeforeEach
+    public void setup() {
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModel("llama3");
+        ollamaConfig.setAllowedModels(List.of("phi3"));
+        ollamaConfig.getGeneration().setMaxNumPredict(1000);
+        resolver = new GenerationParametersResolver(ollamaConfig);
+    }
+
+    /**
+     * Тест на параметры по умолчанию: модель из конфигурации без опций
+     */
+    @Test
+    public void testDefaults() {
+        assertSame(resolver.defaults(), resolver.resolve(null));
+        assertSame(resolver.defaults(), resolver.resolve(Map.of()));
+        assertEquals("llama3", resolver.defaults().getModel());
+        assertTrue(resolver.defaults().getOptions().isEmpty());
+    }
+
+    /**
+     * Тест на преобразование length в num_predict и приоритет явного num_predict
+     */
+    @Test
+    public void testLengthPreset() {
+        assertEquals(300, resolver.resolve(Map.of("length", "short")).getOptions().get("num_predict"));
+        assertEquals(120, resolver.resolve(Map.of("length", "short", "num_predict", 120))
+                .getOptions().get("num_predict"));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("length", "huge")));
+    }
+
+    /**
+     * Тест на нормализацию значений: эквивалентные параметры дают одинаковый ключ кэша
+     */
+    @Test
+    public void testNormalizedCacheKey() {
+        GenerationParameters fromNumbers = resolver.resolve(Map.of("temperature", 0.70, "num_predict", 200));
+        GenerationParameters fromStrings = resolver.resolve(Map.of("num_predict", "200", "temperature", "0.7"));
+
+        assertEquals(new BigDecimal("0.7"), fromNumbers.getOptions().get("temperature"));
+        assertEquals(fromNumbers, fromStrings);
+        assertEquals("llama3|num_predict=200,temperature=0.7|тема", fromNumbers.cacheKey("тема"));
+        assertEquals("llama3||тема", resolver.defaults().cacheKey("тема"));
+    }
+
+    /**
+     * Тест на выбор модели из списка разрешенных
+     */
+    @Test
+    public void testModelAllowList() {
+        assertEquals("phi3", resolver.resolve(Map.of("model", "phi3")).getModel());
+        assertEquals(resolver.defaults(), resolver.resolve(Map.of("model", "llama3")));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("model", "mixtral")));
+    }
+
+    /**
+     * Тест на отклонение неизвестных параметров и значений вне диапазона
+     */
+    @Test
+    public void testInvalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("mirostat", 1)));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("temperature", 2.5)));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("top_k", 1.5)));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("top_p", "высокий")));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("num_predict", 5000)));
+
+        Map<String, Object> withNull = new HashMap<>();
+        withNull.put("temperature", null);
+        assertSame(resolver.defaults().getModel(), resolver.resolve(withNull).getModel());
+    }
+
+    /**
+     * Тест на разделы инсайта: порядок и формат списка не влияют на ключ кэша,
+     * а запрос всех разделов совпадает с полным инсайтом
+     */
+    @Test
+    public void testFields() {
+        GenerationParameters fromString = resolver.resolve(Map.of("fields", "overview, facts"));
+        GenerationParameters fromList = resolver.resolve(Map.of("fields", List.of("facts", "overview")));
+
+        assertEquals(fromString, fromList);
+        assertEquals("llama3|;fields=facts,overview|тема", fromString.cacheKey("тема"));
+        assertEquals(resolver.defaults().cacheKey("тема"), fromString.withAllFields().cacheKey("тема"));
+        assertEquals(resolver.defaults(),
+                resolver.resolve(Map.of("fields", "overview,keyConcepts,facts,applications")));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("fields", "summary")));
+        assertThrows(IllegalArgumentException.class, () -> resolver.resolve(Map.of("fields", " , ")));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.springbootapp.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Модульные тесты инкрементального разбора JSON инсайта
+ */
+public class IncrementalInsightParserTest {
+
+    /**
+     * Тест на раннюю передачу полей: обзор доступен, пока следующие разделы еще не сгенерированы
+     */
+    @Test
+    public void testEmitsFieldsAsTheyClose() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        IncrementalInsightParser parser = new IncrementalInsightParser(fields::put);
+
+        String head = "Вот ответ:\n```json\n{\n  \"overview\": \"Квантовые \\\"вычисления\\\" - это...\",\n  \"keyConcepts\": [\"Кубит\", ";
+        // Ответ поступает по несколько символов, как токены модели
+        for (int i = 0; i < head.length(); i += 3) {
+            parser.feed(head.substring(i, Math.min(head.length(), i + 3)));
+        }
+
+        assertEquals(List.of("overview"), new ArrayList<>(fields.keySet()));
+        assertEquals("Квантовые \"вычисления\" - это...", fields.get("overview"));
+
+        parser.feed("\"Суперпозиция\"],\n  \"facts\": [],\n  \"applications\": \"Криптография\"\n}");
+        parser.feed("\n```");
+
+        assertTrue(parser.isFinished());
+        assertEquals(List.of("Кубит", "Суперпозиция"), fields.get("keyConcepts"));
+        assertEquals(List.of(), fields.get("facts"));
+        assertEquals("Криптография", fields.get("applications"));
+    }
+
+    /**
+     * Тест на ответ не в формате JSON: разбор прекращается без ошибок и полей
+     */
+    @Test
+    public void testStopsOnInvalidJson() {
+        List<String> fields = new ArrayList<>();
+        IncrementalInsightParser parser = new IncrementalInsightParser((field, value) -> fields.add(field));
+
+        parser.feed("{ обзор: без кавычек }");
+        parser.feed("\"overview\": \"текст\"}");
+
+        assertTrue(parser.isFinished());
+        assertFalse(fields.contains("overview"));
+    }
+}
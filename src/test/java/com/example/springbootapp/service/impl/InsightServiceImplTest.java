@@ -1,21 +1,45 @@
 package com.example.springbootapp.service.impl;
 
+import com.example.springbootapp.config.InsightConfig;
+import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.followup.ConversationNotFoundException;
+import com.example.springbootapp.followup.InsightConversations;
+import com.example.springbootapp.model.ChatMessage;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.GenerationParameters;
+import com.example.springbootapp.model.InsightRequestContext;
+import com.example.springbootapp.model.InsightRequestContext.Priority;
+import com.example.springbootapp.model.InsightStreamEvent;
 import com.example.springbootapp.model.NeuralApiResponse;
+import com.example.springbootapp.related.RelatedTopics;
+import com.example.springbootapp.scheduler.GenerationRejectedException;
+import com.example.springbootapp.scheduler.GenerationScheduler;
+import com.example.springbootapp.service.InsightHistoryService;
 import com.example.springbootapp.service.NeuralApiService;
+import com.example.springbootapp.trending.TrendingTopics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -27,7 +51,18 @@ public class InsightServiceImplTest {
     // Mock для NeuralApiService
     @Mock
     private NeuralApiService neuralApiService;
+
+    @Mock
+    private InsightHistoryService insightHistoryService;
+
+    @Mock
+    private TrendingTopics trendingTopics;
+
+    @Mock
+    private RelatedTopics relatedTopics;
     
+    private InsightConversations conversations;
+
     private InsightServiceImpl insightService;
 
     @BeforeEach
@@ -36,7 +71,16 @@ public class InsightServiceImplTest {
         MockitoAnnotations.openMocks(this);
         
         // Создаем обычный экземпляр сервиса с mock-зависимостью, без использования spy
-        insightService = new InsightServiceImpl(neuralApiService);
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModel("test-model");
+        ollamaConfig.setAllowedModels(List.of("small-model"));
+        conversations = new InsightConversations(new InsightConfig(), new SimpleMeterRegistry());
+        insightService = new InsightServiceImpl(neuralApiService,
+                new ConcurrentMapCacheManager(InsightServiceImpl.INSIGHTS_CACHE),
+                new GenerationParametersResolver(ollamaConfig),
+                new GenerationScheduler(neuralApiService, new InsightConfig(), new SimpleMeterRegistry()),
+                insightHistoryService, trendingTopics, relatedTopics, conversations,
+                new InsightConfig(), new SimpleMeterRegistry());
         
         // Настраиваем поведение mock-объекта NeuralApiService для обычных запросов
         NeuralApiResponse mockResponse = new NeuralApiResponse();
@@ -44,7 +88,7 @@ public class InsightServiceImplTest {
         mockResponse.setResponse("Тестовый ответ для темы");
         mockResponse.setDone(true);
         
-        when(neuralApiService.requestInsightsFromApi(anyString()))
+        when(neuralApiService.requestInsightsFromApi(anyString(), any(), any()))
             .thenReturn(Mono.just(mockResponse));
             
         Map<String, Object> mockFormattedResponse = new HashMap<>();
@@ -104,6 +148,10 @@ public class InsightServiceImplTest {
         Map<?, ?> firstLink = (Map<?, ?>) relatedLinks.get(0);
         assertTrue(firstLink.containsKey("title"), "Ссылка должна содержать заголовок");
         assertTrue(firstLink.containsKey("url"), "Ссылка должна содержать URL");
+
+        // Успешная генерация сохраняется в историю
+        verify(insightHistoryService).recordAsync(eq(topic), any(), eq(InsightRequestContext.SYSTEM_USER), any());
+        verify(trendingTopics).record(topic);
     }
     
     /**
@@ -112,7 +160,7 @@ public class InsightServiceImplTest {
     @Test
     public void testGetInsightsForTopic_EmptyTopic() {
         // Настраиваем поведение mock-объекта для пустой темы
-        when(neuralApiService.requestInsightsFromApi(""))
+        when(neuralApiService.requestInsightsFromApi(eq(""), any(), any()))
             .thenReturn(Mono.error(new IllegalArgumentException("Тема не может быть пустой")));
         
         // Подготавливаем ответ для пустой темы
@@ -149,7 +197,7 @@ public class InsightServiceImplTest {
         errorApiResponse.setError("API timeout");
         
         // Настраиваем поведение mock-объекта для темы, вызывающей таймаут
-        when(neuralApiService.requestInsightsFromApi(eq("таймаут-тема")))
+        when(neuralApiService.requestInsightsFromApi(eq("таймаут-тема"), any(), any()))
             .thenReturn(Mono.just(errorApiResponse));
         
         // Настраиваем поведение convertResponseToInsightFormat для ответа с ошибкой
@@ -168,6 +216,7 @@ public class InsightServiceImplTest {
         assertTrue(result.containsKey("message"), "Результат должен содержать поле message");
         assertTrue(((String) result.get("message")).contains("API timeout"), 
                 "Сообщение об ошибке должно содержать причину");
+        verify(insightHistoryService, never()).recordAsync(anyString(), any(), any(), any());
     }
     
     /**
@@ -182,9 +231,343 @@ public class InsightServiceImplTest {
         Map<String, Object> result = insightService.getInsightsForTopic(testTopic);
         
         // Проверяем вызов нейросети через мок NeuralApiService
-        verify(neuralApiService, times(1)).requestInsightsFromApi(eq(testTopic));
+        verify(neuralApiService, times(1)).requestInsightsFromApi(eq(testTopic), any(), any());
         
         // Проверяем наличие результата
         assertNotNull(result, "Результат не должен быть null");
     }
+
+    /**
+     * Тест на повторный запрос темы: второй вызов обслуживается из кэша без обращения к нейросети
+     */
+    @Test
+    public void testGetInsightsForTopic_CachedResult() {
+        String topic = "кэшируемая тема";
+
+        Map<String, Object> first = insightService.getInsightsForTopic(topic);
+        Map<String, Object> second = insightService.getInsightsForTopic(topic);
+
+        // Из кэша возвращается копия с тем же insightId: сам идентификатор в кэше не хранится
+        assertEquals(first, second, "Повторный запрос должен вернуть результат из кэша");
+        verify(neuralApiService, times(1)).requestInsightsFromApi(eq(topic), any(), any());
+    }
+
+    /**
+     * Тест на добавление связанных тем: тема индексируется в фоне после генерации, а связанные темы
+     * подбираются при каждом ответе, поэтому ответ из кэша видит темы, появившиеся в индексе позже
+     */
+    @Test
+    public void testGetInsightsForTopic_RelatedTopics() {
+        String topic = "машинное обучение";
+        List<Map<String, Object>> related = List.of(Map.of("topic", "нейронные сети", "similarity", 0.87));
+        when(relatedTopics.relatedTo(topic)).thenReturn(List.of(), related);
+
+        Map<String, Object> first = insightService.getInsightsForTopic(topic);
+        Map<String, Object> second = insightService.getInsightsForTopic(topic);
+
+        assertEquals(List.of(), first.get("relatedTopics"));
+        assertEquals(related, second.get("relatedTopics"));
+        assertEquals(first.get("overview"), second.get("overview"));
+        assertEquals(first.get("insightId"), second.get("insightId"));
+        verify(relatedTopics, times(2)).indexInBackground(topic);
+        verify(relatedTopics, times(2)).relatedTo(topic);
+    }
+
+    /**
+     * Тест на неполный ответ параллельной генерации разделов: он отдается клиенту, но не кэшируется
+     */
+    @Test
+    public void testGetInsightsForTopic_PartialResultNotCached() {
+        String topic = "тема без фактов";
+        Map<String, Object> partial = new HashMap<>();
+        partial.put("overview", "Обзор");
+        partial.put("missingSections", List.of("facts"));
+        when(neuralApiService.convertResponseToInsightFormat(any(NeuralApiResponse.class))).thenReturn(partial);
+
+        assertEquals(List.of("facts"), insightService.getInsightsForTopic(topic).get("missingSections"));
+        insightService.getInsightsForTopic(topic);
+
+        verify(neuralApiService, times(2)).requestInsightsFromApi(eq(topic), any(), any());
+        verify(insightHistoryService, never()).recordAsync(any(), any(), any(), any());
+    }
+
+    /**
+     * Тест на разделение кэша по параметрам генерации: разные модели и опции не смешиваются,
+     * а эквивалентные параметры попадают в один ключ
+     */
+    @Test
+    public void testGetInsightsForTopic_CacheKeyIncludesParameters() {
+        String topic = "тема с параметрами";
+
+        insightService.getInsightsForTopic(topic, Map.of("length", "short"));
+        insightService.getInsightsForTopic(topic, Map.of("num_predict", 300));
+        insightService.getInsightsForTopic(topic, Map.of("model", "small-model", "length", "short"));
+        insightService.getInsightsForTopic(topic, Map.of("model", "test-model"));
+        insightService.getInsightsForTopic(topic);
+
+        ArgumentCaptor<GenerationParameters> captor = ArgumentCaptor.forClass(GenerationParameters.class);
+        verify(neuralApiService, times(3)).requestInsightsFromApi(eq(topic), captor.capture(), any());
+        assertEquals(Map.of("num_predict", 300), captor.getAllValues().get(0).getOptions());
+        assertEquals("small-model", captor.getAllValues().get(1).getModel());
+        assertTrue(captor.getAllValues().get(2).getOptions().isEmpty());
+    }
+
+    /**
+     * Тест на отклонение недопустимых параметров генерации до обращения к нейросети
+     */
+    @Test
+    public void testGetInsightsForTopic_InvalidParameters() {
+        assertThrows(IllegalArgumentException.class,
+                () -> insightService.getInsightsForTopic("тема", Map.of("model", "unknown-model")));
+        assertThrows(IllegalArgumentException.class,
+                () -> insightService.getInsightsForTopic("тема", Map.of("temperature", 5)));
+        verify(neuralApiService, never()).requestInsightsFromApi(anyString(), any(), any());
+    }
+
+    /**
+     * Тест на передачу истечения срока подписчику: ответ не подменяется ошибкой и не кэшируется
+     */
+    @Test
+    public void testGetInsightsForTopicAsync_DeadlineExceeded() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+        when(neuralApiService.requestInsightsFromApi(eq("долгая тема"), any(), eq(deadline)))
+                .thenReturn(Mono.error(new TimeoutException("deadline")));
+
+        InsightRequestContext context = InsightRequestContext.of("user", Priority.INTERACTIVE, deadline);
+        StepVerifier.create(insightService.getInsightsForTopicAsync("долгая тема", null, context))
+                .expectError(TimeoutException.class)
+                .verify();
+        verify(neuralApiService, never()).convertResponseToInsightFormat(any());
+    }
+
+    /**
+     * Тест на контроль допуска: при перегрузке новая тема отклоняется, а ответ из кэша отдается всегда
+     */
+    @Test
+    public void testGetInsightsForTopicAsync_OverloadAdmitsCacheHits() {
+        InsightConfig insightConfig = new InsightConfig();
+        insightConfig.getScheduler().setMaxConcurrent(1);
+        insightConfig.getAdmission().setMaxQueueDepth(0);
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModel("test-model");
+        InsightServiceImpl service = new InsightServiceImpl(neuralApiService,
+                new ConcurrentMapCacheManager(InsightServiceImpl.INSIGHTS_CACHE),
+                new GenerationParametersResolver(ollamaConfig),
+                new GenerationScheduler(neuralApiService, insightConfig, new SimpleMeterRegistry()),
+                insightHistoryService, trendingTopics, relatedTopics, conversations,
+                insightConfig, new SimpleMeterRegistry());
+        InsightRequestContext context = InsightRequestContext.of("user", Priority.INTERACTIVE, Deadline.none());
+
+        service.getInsightsForTopic("популярная тема");
+        when(neuralApiService.requestInsightsFromApi(eq("долгая тема"), any(), any())).thenReturn(Mono.never());
+        service.getInsightsForTopicAsync("долгая тема", null, context).subscribe();
+
+        StepVerifier.create(service.getInsightsForTopicAsync("новая тема", null, context))
+                .expectError(GenerationRejectedException.class)
+                .verify();
+        StepVerifier.create(service.getInsightsForTopicAsync("популярная тема", null, context))
+                .expectNextCount(1)
+                .verifyComplete();
+        verify(neuralApiService, never()).requestInsightsFromApi(eq("новая тема"), any(), any());
+    }
+
+    /**
+     * Тест на запрос части разделов: запись полного инсайта в кэше отвечает на него без генерации
+     */
+    @Test
+    public void testGetInsightsForTopic_FieldsFromFullCacheEntry() {
+        insightService.getInsightsForTopic("тестовая тема");
+
+        Map<String, Object> result = insightService.getInsightsForTopic("тестовая тема",
+                Map.of("fields", "overview"));
+
+        assertEquals("Обзор темы: тестовая тема", result.get("overview"));
+        assertFalse(result.containsKey("keyConcepts"));
+        assertTrue(result.containsKey("relatedLinks"));
+        verify(neuralApiService, times(1)).requestInsightsFromApi(anyString(), any(), any());
+    }
+
+    /**
+     * Тест на потоковый ответ: разделы передаются по мере разбора фрагментов, последним - итоговый инсайт,
+     * а повторный запрос отдается из кэша теми же событиями
+     */
+    @Test
+    public void testStreamInsightsForTopic() {
+        NeuralApiResponse streamed = new NeuralApiResponse();
+        streamed.setModel("test-model");
+        streamed.setResponse("{\"overview\": \"Обзор\", \"facts\": [\"Факт\"]}");
+        when(neuralApiService.streamInsightsFromApi(eq("поток"), any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<String> tokens = invocation.getArgument(3);
+            return Mono.fromCallable(() -> {
+                tokens.accept("{\"overview\": \"Обзор\",");
+                tokens.accept(" \"facts\": [\"Факт\"]}");
+                return streamed;
+            });
+        });
+        InsightRequestContext context = InsightRequestContext.of("user", Priority.INTERACTIVE, Deadline.none());
+
+        StepVerifier.create(insightService.streamInsightsForTopic("поток", Map.of("fields", "overview"), context))
+                .expectNext(InsightStreamEvent.field("overview", "Обзор"))
+                .assertNext(event -> {
+                    assertEquals(InsightStreamEvent.RESULT, event.getEvent());
+                    assertEquals("Обзор темы: тестовая тема", event.getData().get("overview"));
+                    assertFalse(event.getData().containsKey("keyConcepts"));
+                })
+                .verifyComplete();
+        StepVerifier.create(insightService.streamInsightsForTopic("поток", Map.of("fields", "overview"), context))
+                .expectNextCount(2)
+                .verifyComplete();
+        verify(neuralApiService, times(1)).streamInsightsFromApi(eq("поток"), any(), any(), any());
+        assertThrows(IllegalArgumentException.class,
+                () -> insightService.streamInsightsForTopic("поток", Map.of("race", true), context));
+    }
+
+    /**
+     * Тест на гонку моделей: побеждает первая модель со структурированным ответом,
+     * генерация второй модели отменяется, а победа учитывается в метрике
+     */
+    @Test
+    public void testGetInsightsForTopicAsync_Race() {
+        InsightConfig insightConfig = new InsightConfig();
+        insightConfig.getRace().setModels(List.of("test-model", "small-model"));
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModel("test-model");
+        ollamaConfig.setAllowedModels(List.of("small-model"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InsightServiceImpl service = new InsightServiceImpl(neuralApiService,
+                new ConcurrentMapCacheManager(InsightServiceImpl.INSIGHTS_CACHE),
+                new GenerationParametersResolver(ollamaConfig),
+                new GenerationScheduler(neuralApiService, insightConfig, new SimpleMeterRegistry()),
+                insightHistoryService, trendingTopics, relatedTopics, conversations,
+                insightConfig, registry);
+        NeuralApiResponse smallResponse = new NeuralApiResponse();
+        smallResponse.setModel("small-model");
+        smallResponse.setResponse("Быстрый ответ");
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(neuralApiService.requestInsightsFromApi(eq("гонка"), argThat(p -> "small-model".equals(p.getModel())), any()))
+                .thenReturn(Mono.just(smallResponse));
+        when(neuralApiService.requestInsightsFromApi(eq("гонка"), argThat(p -> "test-model".equals(p.getModel())), any()))
+                .thenReturn(Mono.<NeuralApiResponse>never().doOnCancel(() -> cancelled.set(true)));
+        when(neuralApiService.hasStructuredContent(eq(smallResponse), any())).thenReturn(true);
+        InsightRequestContext context = InsightRequestContext.of("user", Priority.INTERACTIVE, Deadline.none());
+
+        Map<String, Object> result = service.getInsightsForTopicAsync("гонка", Map.of("race", "true"), context).block();
+
+        assertEquals("small-model", result.get("model"));
+        assertEquals("Обзор темы: тестовая тема", result.get("overview"));
+        assertTrue(cancelled.get());
+        assertEquals(1.0, registry.get("insight.race.wins").tag("model", "small-model").counter().count());
+        assertThrows(IllegalArgumentException.class, () -> service.getInsightsForTopicAsync("гонка",
+                Map.of("race", true, "model", "small-model"), context));
+        assertThrows(IllegalArgumentException.class, () -> insightService.getInsightsForTopicAsync("гонка",
+                Map.of("race", true), context));
+    }
+
+    /**
+     * Тест на гонку, в которой ни одна модель не вернула ответ: клиент получает ответ с ошибкой,
+     * а гонка учитывается как гонка без победителя
+     */
+    @Test
+    public void testGetInsightsForTopicAsync_RaceWithoutResponses() {
+        InsightConfig insightConfig = new InsightConfig();
+        insightConfig.getRace().setModels(List.of("test-model", "small-model"));
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModel("test-model");
+        ollamaConfig.setAllowedModels(List.of("small-model"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InsightServiceImpl service = new InsightServiceImpl(neuralApiService,
+                new ConcurrentMapCacheManager(InsightServiceImpl.INSIGHTS_CACHE),
+                new GenerationParametersResolver(ollamaConfig),
+                new GenerationScheduler(neuralApiService, insightConfig, new SimpleMeterRegistry()),
+                insightHistoryService, trendingTopics, relatedTopics, conversations,
+                insightConfig, registry);
+        when(neuralApiService.requestInsightsFromApi(eq("пустая гонка"), any(), any())).thenReturn(Mono.empty());
+        InsightRequestContext context = InsightRequestContext.of("user", Priority.INTERACTIVE, Deadline.none());
+
+        Map<String, Object> result = service.getInsightsForTopicAsync("пустая гонка", Map.of("race", "true"), context)
+                .block();
+
+        assertEquals(true, result.get("error"));
+        assertEquals(1.0, registry.get("insight.race.wins").tag("model", "none").counter().count());
+    }
+
+    /**
+     * Тест на уточняющий вопрос: модели передается инсайт, а ответ добавляется в диалог пользователя
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFollowUp() {
+        when(neuralApiService.insightMessages(eq("тестовая тема"), any())).thenReturn(List.of(
+                new ChatMessage(ChatMessage.SYSTEM, "инструкции"), new ChatMessage(ChatMessage.USER, "Тема: 'тестовая тема'")));
+        NeuralApiResponse chatResponse = new NeuralApiResponse();
+        chatResponse.setMessage(new ChatMessage(ChatMessage.ASSISTANT, "Подробнее о первом понятии"));
+        chatResponse.setResponse("Подробнее о первом понятии");
+        when(neuralApiService.chat(anyList(), any(), any())).thenReturn(Mono.just(chatResponse));
+        InsightRequestContext context = InsightRequestContext.of("user", Priority.INTERACTIVE, Deadline.none());
+
+        String insightId = (String) insightService.getInsightsForTopic("тестовая тема").get("insightId");
+        assertNotNull(insightId);
+        insightService.followUp(insightId, "Что значит понятие 1?", context).block();
+        Map<String, Object> result = insightService.followUp(insightId, "А понятие 2?", context).block();
+
+        assertEquals("Подробнее о первом понятии", result.get("answer"));
+        assertEquals(2, result.get("turn"));
+        ArgumentCaptor<List<ChatMessage>> messages = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<GenerationParameters> parameters = ArgumentCaptor.forClass(GenerationParameters.class);
+        verify(neuralApiService, times(2)).chat(messages.capture(), parameters.capture(), any());
+        assertEquals("test-model", parameters.getValue().getModel());
+        List<ChatMessage> second = messages.getAllValues().get(1);
+        // Инсайт (3 сообщения), первый вопрос с ответом и новый вопрос
+        assertEquals(6, second.size());
+        assertEquals("Тестовый ответ для темы", second.get(2).getContent());
+        assertTrue(second.get(5).getContent().startsWith("А понятие 2?"));
+
+        assertThrows(ConversationNotFoundException.class,
+                () -> insightService.followUp("unknown", "Вопрос", context));
+    }
+
+    /**
+     * Тест на инсайт из кэша, пережившего начала диалогов (перезапуск с off-heap кэшем в файле):
+     * insightId не хранится в кэше, а начало диалога восстанавливается из разделов инсайта
+     * под тем же идентификатором
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachedInsightReseedsConversation() {
+        when(neuralApiService.insightMessages(eq("тестовая тема"), any())).thenReturn(List.of(
+                new ChatMessage(ChatMessage.SYSTEM, "инструкции"), new ChatMessage(ChatMessage.USER, "Тема: 'тестовая тема'")));
+        NeuralApiResponse chatResponse = new NeuralApiResponse();
+        chatResponse.setResponse("Подробнее");
+        when(neuralApiService.chat(anyList(), any(), any())).thenReturn(Mono.just(chatResponse));
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(InsightServiceImpl.INSIGHTS_CACHE);
+        InsightServiceImpl beforeRestart = service(cacheManager);
+
+        String insightId = (String) beforeRestart.getInsightsForTopic("тестовая тема").get("insightId");
+        assertNotNull(insightId);
+        Map<Object, Object> cache = (Map<Object, Object>) cacheManager.getCache(InsightServiceImpl.INSIGHTS_CACHE)
+                .getNativeCache();
+        assertEquals(1, cache.size());
+        assertFalse(((Map<String, Object>) cache.values().iterator().next()).containsKey("insightId"));
+
+        InsightServiceImpl afterRestart = service(cacheManager);
+        assertEquals(insightId, afterRestart.getInsightsForTopic("тестовая тема").get("insightId"));
+        afterRestart.followUp(insightId, "Что значит понятие 1?",
+                InsightRequestContext.of("user", Priority.INTERACTIVE, Deadline.none())).block();
+
+        verify(neuralApiService, times(1)).requestInsightsFromApi(anyString(), any(), any());
+        ArgumentCaptor<List<ChatMessage>> messages = ArgumentCaptor.forClass(List.class);
+        verify(neuralApiService).chat(messages.capture(), any(), any());
+        assertEquals(ChatMessage.ASSISTANT, messages.getValue().get(2).getRole());
+        assertTrue(messages.getValue().get(2).getContent().contains("Обзор темы: тестовая тема"));
+    }
+
+    private InsightServiceImpl service(ConcurrentMapCacheManager cacheManager) {
+        OllamaConfig ollamaConfig = new OllamaConfig();
+        ollamaConfig.setModel("test-model");
+        return new InsightServiceImpl(neuralApiService, cacheManager, new GenerationParametersResolver(ollamaConfig),
+                new GenerationScheduler(neuralApiService, new InsightConfig(), new SimpleMeterRegistry()),
+                insightHistoryService, trendingTopics, relatedTopics,
+                new InsightConversations(new InsightConfig(), new SimpleMeterRegistry()),
+                new InsightConfig(), new SimpleMeterRegistry());
+    }
 }
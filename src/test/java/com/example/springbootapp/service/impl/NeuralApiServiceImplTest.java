@@ -1,17 +1,45 @@
 package com.example.springbootapp.service.impl;
 
 import com.example.springbootapp.config.OllamaConfig;
+import com.example.springbootapp.metrics.OllamaMetrics;
+import com.example.springbootapp.model.ChatMessage;
+import com.example.springbootapp.model.Deadline;
+import com.example.springbootapp.model.GenerationParameters;
 import com.example.springbootapp.model.NeuralApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.unix.DomainSocketAddress;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.test.StepVerifier;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,6 +56,8 @@ public class NeuralApiServiceImplTest {
     private OllamaConfig ollamaConfig;
 
     private NeuralApiServiceImpl neuralApiService;
+
+    private SimpleMeterRegistry meterRegistry;
     
     @Mock
     private WebClient webClientMock;
@@ -54,7 +84,8 @@ public class NeuralApiServiceImplTest {
         ollamaConfig.setModel("llama2");
         
         // Создаем сервис с реальной конфигурацией
-        neuralApiService = new NeuralApiServiceImpl(ollamaConfig);
+        meterRegistry = new SimpleMeterRegistry();
+        neuralApiService = new NeuralApiServiceImpl(ollamaConfig, new OllamaMetrics(meterRegistry, ollamaConfig));
     }
 
     /**
@@ -103,6 +134,29 @@ public class NeuralApiServiceImplTest {
         assertTrue(result.containsKey("relatedLinks"));
     }
     
+    /**
+     * Тест на учет резервного разбора: время запроса при разборе ответа не записывается
+     */
+    @Test
+    public void testParseFallbackRecordedOnConversion() {
+        NeuralApiResponse jsonResponse = new NeuralApiResponse();
+        jsonResponse.setModel("llama2");
+        jsonResponse.setResponse("{\"overview\": \"Обзор\"}");
+        jsonResponse.setLatencyNanos(2_000_000L);
+
+        NeuralApiResponse textResponse = new NeuralApiResponse();
+        textResponse.setModel("llama2");
+        textResponse.setResponse("Ответ без JSON.\n\n- Понятие, не похожее на JSON");
+        textResponse.setLatencyNanos(3_000_000L);
+
+        neuralApiService.convertResponseToInsightFormat(jsonResponse);
+        neuralApiService.convertResponseToInsightFormat(textResponse);
+
+        assertEquals(1.0, meterRegistry.get("ollama.response.parse.fallback")
+                .tag("model", "llama2").counter().count());
+        assertNull(meterRegistry.find("ollama.api.request").timer());
+    }
+    
     /**
      * Тест на обработку ошибки в ответе от API
      */
@@ -130,9 +184,12 @@ public class NeuralApiServiceImplTest {
         // Вызываем приватный метод buildPrompt через рефлексию
         String prompt = null;
         try {
-            java.lang.reflect.Method method = NeuralApiServiceImpl.class.getDeclaredMethod("buildPrompt", String.class);
+            java.lang.reflect.Field allSections = NeuralApiServiceImpl.class.getDeclaredField("ALL_SECTIONS");
+            allSections.setAccessible(true);
+            java.lang.reflect.Method method = NeuralApiServiceImpl.class.getDeclaredMethod("buildPrompt",
+                    String.class, List.class);
             method.setAccessible(true);
-            prompt = (String) method.invoke(neuralApiService, "тестовая тема");
+            prompt = (String) method.invoke(null, "тестовая тема", allSections.get(null));
         } catch (Exception e) {
             fail("Не удалось вызвать метод buildPrompt: " + e.getMessage());
         }
@@ -178,9 +235,326 @@ public class NeuralApiServiceImplTest {
         // Не устанавливаем значения - они будут null по умолчанию
         
         // Создаем новый экземпляр сервиса с такой конфигурацией
-        NeuralApiServiceImpl serviceWithNullConfig = new NeuralApiServiceImpl(nullConfig);
+        NeuralApiServiceImpl serviceWithNullConfig = new NeuralApiServiceImpl(nullConfig, new OllamaMetrics(new SimpleMeterRegistry(), nullConfig));
         
         // Проверяем, что сервис был создан и не выбросил исключение
         assertNotNull(serviceWithNullConfig);
     }
+
+    /**
+     * Тест на то, что запрос с истекшим сроком не отправляется в Ollama и учитывается в счетчике генераций
+     */
+    @Test
+    public void testExpiredDeadlineSkipsOllama() {
+        StepVerifier.create(neuralApiService.requestInsightsFromApi("тема", null, Deadline.after(Duration.ZERO)))
+                .expectError(TimeoutException.class)
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("ollama.generations")
+                .tag("outcome", OllamaMetrics.GENERATION_DEADLINE_EXCEEDED).counter().count());
+        assertNull(meterRegistry.find("ollama.api.request").timer(), "Запрос к Ollama не должен выполняться");
+    }
+
+    /**
+     * Тест на параллельную генерацию разделов: все разделы запрашиваются одновременно,
+     * а ответ без одного раздела собирается из остальных
+     */
+    @Test
+    public void testParallelSectionsReturnPartialResult() throws Exception {
+        CountDownLatch allSectionsStarted = new CountDownLatch(4);
+        HttpServer server = startOllama(exchange -> {
+            // Инструкции раздела передаются в поле system
+            String prompt = (String) new ObjectMapper().readValue(exchange.getRequestBody(), Map.class).get("system");
+            allSectionsStarted.countDown();
+            boolean concurrent = allSectionsStarted.await(5, TimeUnit.SECONDS);
+            if (prompt.contains("интересных фактов")) {
+                respond(exchange, 500, "{\"error\":\"out of memory\"}");
+            } else if (prompt.contains("ключевых концепций")) {
+                respond(exchange, 200, ollamaResponse("[\"Кубит\", \"Суперпозиция\"]"));
+            } else if (prompt.contains("практические применения")) {
+                respond(exchange, 200, ollamaResponse("Криптография и моделирование молекул"));
+            } else {
+                respond(exchange, 200, ollamaResponse(concurrent ? "Обзор темы" : "Разделы запрошены по очереди"));
+            }
+        });
+        try {
+            ollamaConfig.setApiUrl("http://localhost:" + server.getAddress().getPort());
+            ollamaConfig.getGeneration().setParallelSections(true);
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+
+            NeuralApiResponse response = service.requestInsightsFromApi("квантовые вычисления", null, Deadline.none())
+                    .block(Duration.ofSeconds(10));
+            Map<String, Object> result = service.convertResponseToInsightFormat(response);
+
+            assertEquals("Обзор темы", result.get("overview"));
+            assertEquals(List.of("Кубит", "Суперпозиция"), result.get("keyConcepts"));
+            assertEquals("Криптография и моделирование молекул", result.get("applications"));
+            assertFalse(result.containsKey("facts"));
+            assertEquals(List.of("facts"), result.get("missingSections"));
+            assertEquals(30, response.getEvalCount());
+            // Время учитывается по каждому запросу раздела, а исход - один раз на инсайт
+            assertEquals(3L, meterRegistry.get("ollama.api.request")
+                    .tags("model", "llama2", "outcome", OllamaMetrics.OUTCOME_SUCCESS).timer().count());
+            assertEquals(1L, meterRegistry.get("ollama.api.request")
+                    .tags("model", "llama2", "outcome", OllamaMetrics.OUTCOME_HTTP_ERROR).timer().count());
+            assertEquals(1.0, meterRegistry.get("ollama.generations")
+                    .tag("outcome", OllamaMetrics.GENERATION_COMPLETED).counter().count());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Тест на ошибку, если не получен ни один раздел
+     */
+    @Test
+    public void testParallelSectionsAllFailed() throws Exception {
+        HttpServer server = startOllama(exchange -> respond(exchange, 500, "{\"error\":\"model not found\"}"));
+        try {
+            ollamaConfig.setApiUrl("http://localhost:" + server.getAddress().getPort());
+            ollamaConfig.getGeneration().setParallelSections(true);
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+
+            StepVerifier.create(service.requestInsightsFromApi("тема", null, Deadline.none()))
+                    .expectError(WebClientResponseException.class)
+                    .verify(Duration.ofSeconds(10));
+
+            assertEquals(1.0, meterRegistry.get("ollama.generations")
+                    .tag("outcome", OllamaMetrics.GENERATION_FAILED).counter().count());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Тест на системный промпт: инструкции передаются в поле system, одинаковом для всех тем,
+     * в prompt - только тема, а время оценки промпта учитывается с тегом prompt
+     */
+    @Test
+    public void testSystemPromptSeparatesInstructions() throws Exception {
+        List<Map<?, ?>> requests = new CopyOnWriteArrayList<>();
+        HttpServer server = startOllama(exchange -> {
+            requests.add(new ObjectMapper().readValue(exchange.getRequestBody(), Map.class));
+            respond(exchange, 200, new ObjectMapper().writeValueAsString(Map.of(
+                    "model", "llama2", "response", "{}", "done", true,
+                    "prompt_eval_count", 12, "prompt_eval_duration", 40_000_000L)));
+        });
+        try {
+            ollamaConfig.setApiUrl("http://localhost:" + server.getAddress().getPort());
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+
+            service.requestInsightsFromApi("квантовые вычисления").block(Duration.ofSeconds(10));
+            service.requestInsightsFromApi("фотосинтез").block(Duration.ofSeconds(10));
+
+            assertEquals(2, requests.size());
+            String system = (String) requests.get(0).get("system");
+            assertTrue(system.contains("keyConcepts"));
+            assertFalse(system.contains("квантовые вычисления"));
+            assertEquals(system, requests.get(1).get("system"));
+            assertEquals("Тема: 'фотосинтез'", requests.get(1).get("prompt"));
+            assertEquals(24.0, meterRegistry.get("ollama.tokens.prompt")
+                    .tags("model", "llama2", "prompt", OllamaMetrics.PROMPT_SYSTEM).counter().count());
+            assertEquals(2L, meterRegistry.get("ollama.prompt.eval.duration")
+                    .tags("model", "llama2", "prompt", OllamaMetrics.PROMPT_SYSTEM).timer().count());
+
+            ollamaConfig.getGeneration().setSystemPrompt(false);
+            service.requestInsightsFromApi("фотосинтез").block(Duration.ofSeconds(10));
+
+            assertNull(requests.get(2).get("system"));
+            assertTrue(((String) requests.get(2).get("prompt")).contains("keyConcepts"));
+            assertEquals(1L, meterRegistry.get("ollama.prompt.eval.duration")
+                    .tags("model", "llama2", "prompt", OllamaMetrics.PROMPT_INLINE).timer().count());
+
+            // Для части разделов промпт описывает только их
+            service.requestInsightsFromApi("фотосинтез",
+                    new GenerationParameters("llama2", Map.of(), List.of("overview")), Deadline.none())
+                    .block(Duration.ofSeconds(10));
+
+            String subset = (String) requests.get(3).get("prompt");
+            assertTrue(subset.contains("\"overview\""));
+            assertFalse(subset.contains("keyConcepts"));
+            assertFalse(subset.contains("applications"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Тест на потоковый ответ: фрагменты передаются по мере получения, а Mono завершается полным ответом
+     * со счетчиками из последней строки потока
+     */
+    @Test
+    public void testStreamInsights() throws Exception {
+        List<Map<?, ?>> requests = new CopyOnWriteArrayList<>();
+        HttpServer server = startOllama(exchange -> {
+            requests.add(new ObjectMapper().readValue(exchange.getRequestBody(), Map.class));
+            byte[] body = String.join("\n",
+                    "{\"model\":\"llama2\",\"response\":\"{\\\"overview\\\": \",\"done\":false}",
+                    "{\"model\":\"llama2\",\"response\":\"\\\"Обзор\\\"}\",\"done\":false}",
+                    "{\"model\":\"llama2\",\"response\":\"\",\"done\":true,\"eval_count\":2}",
+                    "").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        try {
+            ollamaConfig.setApiUrl("http://localhost:" + server.getAddress().getPort());
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+            List<String> tokens = new CopyOnWriteArrayList<>();
+
+            NeuralApiResponse response = service.streamInsightsFromApi("фотосинтез", null, Deadline.none(), tokens::add)
+                    .block(Duration.ofSeconds(10));
+
+            assertEquals(true, requests.get(0).get("stream"));
+            assertEquals(List.of("{\"overview\": ", "\"Обзор\"}"), tokens);
+            assertEquals("{\"overview\": \"Обзор\"}", response.getResponse());
+            assertEquals(2, response.getEvalCount());
+            assertNotNull(response.getLatencyNanos());
+            assertEquals("Обзор", service.convertResponseToInsightFormat(response).get("overview"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Тест на продолжение диалога через /api/chat: текст сообщения модели возвращается в поле response,
+     * а пустая модель в параметрах заменяется моделью по умолчанию, как и при генерации
+     */
+    @Test
+    public void testChat() throws Exception {
+        List<Map<?, ?>> requests = new CopyOnWriteArrayList<>();
+        HttpServer server = startOllama(exchange -> {
+            requests.add(new ObjectMapper().readValue(exchange.getRequestBody(), Map.class));
+            respond(exchange, 200, new ObjectMapper().writeValueAsString(Map.of(
+                    "model", "llama2", "done", true, "prompt_eval_count", 8,
+                    "message", Map.of("role", "assistant", "content", "Уточнение"))));
+        });
+        try {
+            ollamaConfig.setApiUrl("http://localhost:" + server.getAddress().getPort());
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+            List<ChatMessage> messages = new ArrayList<>(service.insightMessages("фотосинтез", null));
+            messages.add(new ChatMessage(ChatMessage.ASSISTANT, "{}"));
+            messages.add(new ChatMessage(ChatMessage.USER, "Подробнее?"));
+
+            NeuralApiResponse response = service.chat(messages, new GenerationParameters("", Map.of()), Deadline.none())
+                    .block(Duration.ofSeconds(10));
+
+            assertEquals("Уточнение", response.getResponse());
+            assertEquals("llama2", requests.get(0).get("model"));
+            List<?> sent = (List<?>) requests.get(0).get("messages");
+            assertEquals(4, sent.size());
+            assertEquals("system", ((Map<?, ?>) sent.get(0)).get("role"));
+            assertEquals(8.0, meterRegistry.get("ollama.tokens.prompt")
+                    .tags("model", "llama2", "prompt", OllamaMetrics.PROMPT_CHAT).counter().count());
+            assertEquals(1L, meterRegistry.get("ollama.api.request")
+                    .tags("model", "llama2", "outcome", OllamaMetrics.OUTCOME_SUCCESS).timer().count());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Тест на запрос к Ollama через unix-сокет по адресу unix:///путь
+     */
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void testUnixSocketTransport(@TempDir Path dir) {
+        Path socket = dir.resolve("ollama.sock");
+        List<String> hosts = new CopyOnWriteArrayList<>();
+        DisposableServer server = reactor.netty.http.server.HttpServer.create()
+                .bindAddress(() -> new DomainSocketAddress(socket.toString()))
+                .route(routes -> routes.post("/api/generate", (request, response) -> {
+                    hosts.add(request.requestHeaders().get("Host"));
+                    return response.header("Content-Type", "application/json")
+                            .sendString(request.receive().aggregate().asString()
+                                    .map(body -> "{\"model\":\"llama2\",\"response\":\"unix\",\"done\":true}"));
+                }))
+                .bindNow();
+        try {
+            ollamaConfig.setApiUrl("unix://" + socket);
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+
+            NeuralApiResponse response = service.requestInsightsFromApi("фотосинтез").block(Duration.ofSeconds(10));
+
+            assertEquals("unix", response.getResponse());
+            assertEquals(1, hosts.size());
+            assertNotNull(hosts.get(0));
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    /**
+     * Тест на h2c: запросы отправляются по HTTP/2 без TLS
+     */
+    @Test
+    public void testH2cTransport() {
+        List<String> protocols = new CopyOnWriteArrayList<>();
+        DisposableServer server = reactor.netty.http.server.HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.H2C)
+                .route(routes -> routes.post("/api/generate", (request, response) -> {
+                    protocols.add(request.version().text());
+                    return response.header("Content-Type", "application/json")
+                            .sendString(request.receive().aggregate().asString()
+                                    .map(body -> "{\"model\":\"llama2\",\"response\":\"h2c\",\"done\":true}"));
+                }))
+                .bindNow();
+        try {
+            ollamaConfig.setApiUrl("http://localhost:" + server.port());
+            ollamaConfig.getTransport().setH2c(true);
+            NeuralApiServiceImpl service = new NeuralApiServiceImpl(ollamaConfig,
+                    new OllamaMetrics(meterRegistry, ollamaConfig));
+
+            NeuralApiResponse response = service.requestInsightsFromApi("фотосинтез").block(Duration.ofSeconds(10));
+
+            assertEquals("h2c", response.getResponse());
+            assertEquals(List.of("HTTP/2.0"), protocols);
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    private static HttpServer startOllama(ExchangeHandler handler) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        for (String path : List.of("/api/generate", "/api/chat")) {
+            server.createContext(path, exchange -> {
+                try {
+                    handler.handle(exchange);
+                } catch (Exception e) {
+                    respond(exchange, 500, "{}");
+                }
+            });
+        }
+        server.start();
+        return server;
+    }
+
+    private static String ollamaResponse(String content) throws IOException {
+        return new ObjectMapper().writeValueAsString(Map.of(
+                "model", "llama2", "response", content, "done", true, "eval_count", 10));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private interface ExchangeHandler {
+        void handle(HttpExchange exchange) throws Exception;
+    }
 }
@@ -0,0 +1,113 @@
+package com.example.springbootapp.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для проверки логики симулятора Ollama
+ */
+public class OllamaSimulatorTest {
+
+    private OllamaSimulatorConfig config;
+
+    @BeforeEach
+    public void setup() {
+        config = new OllamaSimulatorConfig();
+        config.setLatencySigma(0.0);
+        config.setMalformedRate(0.0);
+        config.setPromptEvalLatency(Duration.ofMillis(100));
+        config.setTokensPerSecond(50);
+        config.setResponseTokens(120);
+    }
+
+    /**
+     * Тест на валидный JSON в ответе и согласованность счетчиков с планом
+     */
+    @Test
+    public void testPlanProducesValidInsightJson() throws Exception {
+        OllamaSimulator simulator = new OllamaSimulator(config, () -> new Random(42));
+
+        OllamaSimulator.GenerationPlan plan = simulator.plan("llama2", "Анализ на тему 'квантовые вычисления'.", null);
+
+        assertFalse(plan.isError());
+        assertEquals(100_000_000L, plan.getFirstTokenNanos());
+        assertEquals(20_000_000L, plan.getPerTokenNanos());
+
+        String text = plan.getText();
+        String json = text.substring(text.indexOf('{'), text.lastIndexOf('}') + 1);
+        Map<?, ?> parsed = new ObjectMapper().readValue(json, Map.class);
+        assertTrue(parsed.get("overview").toString().startsWith("квантовые вычисления"));
+        assertTrue(parsed.containsKey("keyConcepts"));
+
+        Map<String, Object> response = simulator.finalResponse(plan, true);
+        assertEquals(plan.getTokens().size(), response.get("eval_count"));
+        assertEquals(plan.getTotalNanos(), response.get("total_duration"));
+    }
+
+    /**
+     * Тест на кэш системного промпта: повторный системный промпт не оценивается заново
+     */
+    @Test
+    public void testCachedSystemPrompt() {
+        OllamaSimulator simulator = new OllamaSimulator(config, () -> new Random(3));
+        String system = "x".repeat(400);
+
+        Map<String, Object> first = simulator.finalResponse(simulator.plan("llama2", system, "Тема: 'a'", 5), true);
+        Map<String, Object> second = simulator.finalResponse(simulator.plan("llama2", system, "Тема: 'b'", 5), true);
+
+        assertEquals(102, first.get("prompt_eval_count"));
+        assertEquals(2, second.get("prompt_eval_count"));
+        assertTrue((Long) second.get("prompt_eval_duration") < (Long) first.get("prompt_eval_duration"));
+    }
+
+    /**
+     * Тест на ограничение длины ответа через num_predict и внедрение ошибок
+     */
+    @Test
+    public void testNumPredictAndErrorInjection() {
+        OllamaSimulator simulator = new OllamaSimulator(config, () -> new Random(7));
+        assertEquals(10, simulator.plan("llama2", "prompt", 10).getTokens().size());
+
+        config.setErrorRate(1.0);
+        OllamaSimulator.GenerationPlan plan = simulator.plan("llama2", "prompt", null);
+        assertTrue(plan.isError());
+        assertTrue(simulator.errorResponse(plan).containsKey("error"));
+    }
+
+    /**
+     * Тест на ответы без JSON при 100% доле битых ответов
+     */
+    @Test
+    public void testMalformedResponses() {
+        config.setMalformedRate(1.0);
+        OllamaSimulator simulator = new OllamaSimulator(config, () -> new Random(1));
+
+        String text = simulator.plan("llama2", "тема 'тест'", null).getText();
+
+        assertFalse(text.contains("{"), "Битый ответ не должен содержать JSON");
+    }
+
+    /**
+     * Тест на детерминированность и нормировку эмбеддингов
+     */
+    @Test
+    public void testEmbedding() {
+        config.setEmbeddingDimensions(16);
+        OllamaSimulator simulator = new OllamaSimulator(config);
+
+        List<Double> first = simulator.embedding("тема");
+        List<Double> second = simulator.embedding("тема");
+
+        assertEquals(16, first.size());
+        assertEquals(first, second);
+        assertEquals(1.0, first.stream().mapToDouble(v -> v * v).sum(), 1e-9);
+    }
+}
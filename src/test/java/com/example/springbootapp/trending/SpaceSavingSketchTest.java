@@ -0,0 +1,77 @@
+package com.example.springbootapp.trending;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для скетча Space-Saving с затуханием
+ */
+public class SpaceSavingSketchTest {
+
+    private static final long TAU = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Тест на поиск частых ключей среди множества редких при ограниченном числе счетчиков
+     */
+    @Test
+    public void testFindsHeavyHittersWithBoundedMemory() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(50, TAU, 0);
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            int r = random.nextInt(100);
+            String key = r < 20 ? "горячая" : r < 30 ? "теплая" : "редкая " + random.nextInt(100_000);
+            sketch.add(key, 0);
+        }
+
+        List<SpaceSavingSketch.Entry> top = sketch.top(2, 0);
+        assertEquals("горячая", top.get(0).key());
+        assertEquals("теплая", top.get(1).key());
+        assertEquals(50, sketch.size());
+        // Оценка не меньше настоящего числа событий и не больше него на величину ошибки
+        assertTrue(top.get(0).weight() - top.get(0).error() <= 4_200);
+        assertTrue(top.get(0).weight() >= 3_800);
+    }
+
+    /**
+     * Тест на затухание: тема, популярная давно, уступает теме, популярной сейчас
+     */
+    @Test
+    public void testOldEventsDecay() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(10, TAU, 0);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("вчерашняя", 0);
+        }
+        long later = 10 * TAU;
+        for (int i = 0; i < 10; i++) {
+            sketch.add("сегодняшняя", later);
+        }
+
+        List<SpaceSavingSketch.Entry> top = sketch.top(2, later);
+        assertEquals("сегодняшняя", top.get(0).key());
+        assertEquals(10.0, top.get(0).weight(), 1e-6);
+        assertEquals(100 * Math.exp(-10), top.get(1).weight(), 1e-6);
+    }
+
+    /**
+     * Тест на перемасштабирование счетчиков при большом возрасте без потери порядка
+     */
+    @Test
+    public void testRescaleKeepsOrder() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(10, TAU, 0);
+        sketch.add("a", 0);
+        sketch.add("a", 0);
+        sketch.add("b", 0);
+        long later = 31 * TAU;
+        sketch.add("c", later);
+
+        List<SpaceSavingSketch.Entry> top = sketch.top(3, later);
+        assertEquals(List.of("c", "a", "b"), top.stream().map(SpaceSavingSketch.Entry::key).toList());
+        assertEquals(1.0, top.get(0).weight(), 1e-9);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.springbootapp.trending;
+
+import com.example.springbootapp.config.InsightConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тесты для учета популярных тем
+ */
+public class TrendingTopicsTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private SimpleMeterRegistry registry;
+    private TrendingTopics trendingTopics;
+
+    @BeforeEach
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        trendingTopics = new TrendingTopics(new InsightConfig(), registry, clock::get);
+    }
+
+    /**
+     * Тест на учет тем без учета регистра и пробелов
+     */
+    @Test
+    public void testRecordAndTop() {
+        trendingTopics.record("Квантовые вычисления");
+        trendingTopics.record(" квантовые вычисления ");
+        trendingTopics.record("Блокчейн");
+        trendingTopics.record("  ");
+
+        List<SpaceSavingSketch.Entry> top = trendingTopics.top(Duration.ofMinutes(5), 10);
+        assertEquals(2, top.size());
+        assertEquals("квантовые вычисления", top.get(0).key());
+        assertEquals(2.0, top.get(0).weight(), 1e-9);
+    }
+
+    /**
+     * Тест на разные окна: в коротком окне старая тема затухает быстрее, чем в суточном
+     */
+    @Test
+    public void testWindowsDecayIndependently() {
+        for (int i = 0; i < 50; i++) {
+            trendingTopics.record("утренняя");
+        }
+        trendingTopics.top(Duration.ofMinutes(5), 1);
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        for (int i = 0; i < 5; i++) {
+            trendingTopics.record("свежая");
+        }
+
+        assertEquals("свежая", trendingTopics.top(Duration.ofMinutes(5), 1).get(0).key());
+        assertEquals("утренняя", trendingTopics.top(Duration.ofHours(24), 1).get(0).key());
+    }
+
+    /**
+     * Тест на учет всех записей из нескольких потоков
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    trendingTopics.record("тема " + (i % 5));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<SpaceSavingSketch.Entry> top = trendingTopics.top(Duration.ofHours(1), 10);
+        double total = top.stream().mapToDouble(SpaceSavingSketch.Entry::weight).sum();
+        double dropped = registry.get("insight.trending.dropped").counter().count();
+        assertEquals(5, top.size());
+        assertTrue(total + dropped <= 2000 && total >= 1900, "учтено " + total + ", пропущено " + dropped);
+    }
+
+    /**
+     * Тест на отклонение ненастроенного окна
+     */
+    @Test
+    public void testUnknownWindow() {
+        assertThrows(IllegalArgumentException.class, () -> trendingTopics.top(Duration.ofMinutes(7), 10));
+    }
+}